@@ -0,0 +1,200 @@
+package org.jamsim.ascape;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.ascape.model.Agent;
+
+/**
+ * The active set of a {@link MicroSimScape}, ie: the members that have not
+ * called {@link MicroSimCell#deactivate()} this run, in scape order. Also
+ * counts modifications of the members and of the active set, so eg: the scape
+ * dataframe can tell whether its rows are still the members without comparing
+ * every agent.
+ * <p>
+ * The active set is only brought up to date when it is read. If the members
+ * have not changed, it is compacted in place, which only touches agents that
+ * were active.
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+final class ActiveAgents {
+
+	/**
+	 * Scape members.
+	 */
+	private final Collection<?> members;
+
+	/**
+	 * Active agents, in scape order, followed by unused slots.
+	 */
+	private Object[] agents = new Object[0];
+
+	private int count = 0;
+
+	/**
+	 * Number of scape members when {@link #agents} was last built from the
+	 * members, or -1 to rebuild from the members.
+	 */
+	private int indexedMembers = -1;
+
+	/**
+	 * Whether an agent has been deactivated since the active set was last
+	 * updated. Set by agents, which may be iterating in parallel.
+	 */
+	private volatile boolean changed = true;
+
+	/**
+	 * See {@link #getMembersModCount()}.
+	 */
+	private int membersModCount = 0;
+
+	/**
+	 * Number of members when {@link #membersModCount} was last checked.
+	 */
+	private int modCountSize = -1;
+
+	/**
+	 * See {@link #getModCount()}.
+	 */
+	private int modCount = 0;
+
+	/**
+	 * Construct the active set of {@code members}.
+	 *
+	 * @param members
+	 *            scape members
+	 */
+	ActiveAgents(Collection<?> members) {
+		this.members = members;
+	}
+
+	/**
+	 * Rebuild the active set from the members, eg: after agents have been
+	 * added or removed, or their active state restored.
+	 */
+	void membersChanged() {
+		membersModCount++;
+		indexedMembers = -1;
+		changed = true;
+	}
+
+	/**
+	 * Called by {@link MicroSimCell#deactivate()}, including when iterating
+	 * in parallel.
+	 */
+	void agentDeactivated() {
+		changed = true;
+	}
+
+	/**
+	 * Get the active agents, followed by unused slots. Only valid until the
+	 * active set is next updated.
+	 *
+	 * @return active agents, up to {@link #getCount()}
+	 */
+	Object[] getArray() {
+		update();
+		return agents;
+	}
+
+	/**
+	 * Get a read only copy of the active agents.
+	 *
+	 * @return active agents
+	 */
+	List<Object> getList() {
+		update();
+		return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(
+				agents, count)));
+	}
+
+	/**
+	 * Number of active agents.
+	 *
+	 * @return number of active agents
+	 */
+	int getCount() {
+		update();
+		return count;
+	}
+
+	/**
+	 * See {@link MicroSimScape#getMembersModCount()}.
+	 *
+	 * @return members modification count
+	 */
+	int getMembersModCount() {
+		int size = members.size();
+		if (size != modCountSize) {
+			modCountSize = size;
+			membersModCount++;
+		}
+		return membersModCount;
+	}
+
+	/**
+	 * See {@link MicroSimScape#getActiveModCount()}.
+	 *
+	 * @return active set modification count
+	 */
+	int getModCount() {
+		update();
+		return modCount;
+	}
+
+	/**
+	 * Bring {@link #agents} up to date.
+	 */
+	private void update() {
+		if (indexedMembers != -1 && indexedMembers != members.size()) {
+			indexedMembers = -1;
+		}
+
+		if (!changed && indexedMembers != -1) {
+			return;
+		}
+		changed = false;
+
+		Object[] updated;
+		int length;
+		if (indexedMembers == -1) {
+			updated = members.toArray();
+			length = updated.length;
+			indexedMembers = length;
+		} else {
+			updated = agents;
+			length = count;
+		}
+
+		int active = 0;
+		for (int i = 0; i < length; i++) {
+			if (isActive((Agent) updated[i])) {
+				updated[active++] = updated[i];
+			}
+		}
+
+		if (updated != agents || active != count) {
+			modCount++;
+		}
+
+		// release agents no longer active
+		Arrays.fill(updated, active, length, null);
+
+		agents = updated;
+		count = active;
+	}
+
+	private static boolean isActive(Agent agent) {
+		if (agent.isDelete()) {
+			return false;
+		}
+		return !(agent instanceof MicroSimCell<?>)
+				|| ((MicroSimCell<?>) agent).isActive();
+	}
+
+}
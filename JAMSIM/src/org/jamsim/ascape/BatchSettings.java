@@ -0,0 +1,338 @@
+package org.jamsim.ascape;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.jamsim.ascape.weights.WeightCalculator;
+
+/**
+ * Run parameters for a headless (batch) simulation. Used instead of the
+ * preferences and file chooser dialogs when there is no display.
+ * <p>
+ * Parameters are read from properties files and/or command line arguments of
+ * the form {@code key=value}. Arguments without an {@code =} are treated as
+ * the path of a properties file. Arguments are processed in order, so later
+ * values replace earlier ones.
+ * </p>
+ * <p>
+ * Apart from {@link #RUNS_KEY}, {@link #ITERATIONS_KEY}, {@link #THREADS_KEY},
+ * {@link #ITERATION_THREADS_KEY}, {@link #ACTIVE_ONLY_KEY},
+ * {@link #WEIGHT_CALCULATOR_KEY}, {@link #CHECKPOINTS_KEY},
+ * {@link #RESUME_KEY} and {@link #SEED_KEY} every parameter is a file
+ * location keyed by the same name used in the preferences, eg:
+ * {@code base file}, {@code output directory}, {@code R startup file} or a
+ * dataset name.
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class BatchSettings {
+
+	/**
+	 * Key of the number of runs parameter.
+	 */
+	public static final String RUNS_KEY = "runs";
+
+	/**
+	 * Key of the number of iterations per run parameter.
+	 */
+	public static final String ITERATIONS_KEY = "iterations";
+
+	/**
+	 * Key of the number of threads parameter, ie: the number of runs executed
+	 * at the same time.
+	 */
+	public static final String THREADS_KEY = "threads";
+
+	/**
+	 * Key of the name of the weight calculator to use, as stored in the
+	 * preferences by the GUI.
+	 */
+	public static final String WEIGHT_CALCULATOR_KEY =
+			WeightCalculator.WCALC_KEY;
+
+	/**
+	 * Key of the number of threads used to iterate the agents of a run. See
+	 * {@link MicroSimScape#setIterationThreads(int)}.
+	 */
+	public static final String ITERATION_THREADS_KEY = "iteration threads";
+
+	/**
+	 * Key of whether to iterate, and create per iteration dataframes of,
+	 * active agents only ({@code true} or {@code false}). See
+	 * {@link MicroSimScape#setActiveOnly(boolean)}.
+	 */
+	public static final String ACTIVE_ONLY_KEY = "active only";
+
+	/**
+	 * Key of the comma separated iterations at which to write a checkpoint.
+	 * See {@link CheckpointListener}.
+	 */
+	public static final String CHECKPOINTS_KEY = "checkpoint iterations";
+
+	/**
+	 * Key of the checkpoint file to resume each run from.
+	 */
+	public static final String RESUME_KEY = "resume from";
+
+	/**
+	 * Key of the seed of keyed random number streams, ie: a stream for each
+	 * agent and run. Models that support this draw the same numbers whether
+	 * runs are executed sequentially or concurrently, so only execute runs
+	 * concurrently (see {@link RootScape#createRunFactory()}) when it is
+	 * specified.
+	 */
+	public static final String SEED_KEY = "seed";
+
+	/**
+	 * Keys that are not file locations.
+	 */
+	private static final Set<String> NON_LOCATION_KEYS =
+			new HashSet<String>(Arrays.asList(RUNS_KEY, ITERATIONS_KEY,
+					THREADS_KEY, ITERATION_THREADS_KEY, ACTIVE_ONLY_KEY,
+					WEIGHT_CALCULATOR_KEY, CHECKPOINTS_KEY, RESUME_KEY,
+					SEED_KEY));
+
+	private final Properties props;
+
+	/**
+	 * Construct from a set of properties.
+	 *
+	 * @param props
+	 *            batch parameters
+	 */
+	public BatchSettings(Properties props) {
+		this.props = props;
+	}
+
+	/**
+	 * Create {@link BatchSettings} from command line arguments. Each argument
+	 * is either a {@code key=value} pair or the path of a properties file.
+	 *
+	 * @param args
+	 *            command line arguments
+	 * @return batch settings
+	 * @throws IOException
+	 *             if problem reading a properties file
+	 */
+	public static BatchSettings fromArgs(String[] args) throws IOException {
+		Properties props = new Properties();
+
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+
+			if (equals == -1) {
+				loadProperties(new File(arg), props);
+			} else {
+				props.setProperty(arg.substring(0, equals).trim(), arg
+						.substring(equals + 1).trim());
+			}
+		}
+
+		return new BatchSettings(props);
+	}
+
+	private static void loadProperties(File file, Properties props)
+			throws IOException {
+		if (!file.exists()) {
+			throw new FileNotFoundException("Batch properties file "
+					+ file.getPath() + " does not exist");
+		}
+
+		InputStream ins = new FileInputStream(file);
+		try {
+			props.load(ins);
+		} finally {
+			ins.close();
+		}
+	}
+
+	/**
+	 * Number of simulation runs.
+	 *
+	 * @param defaultRuns
+	 *            value returned if not specified
+	 * @return number of runs
+	 */
+	public int getNumberRuns(int defaultRuns) {
+		return getInt(RUNS_KEY, defaultRuns);
+	}
+
+	/**
+	 * Number of iterations per run.
+	 *
+	 * @param defaultIterations
+	 *            value returned if not specified
+	 * @return number of iterations
+	 */
+	public int getNumberIterations(int defaultIterations) {
+		return getInt(ITERATIONS_KEY, defaultIterations);
+	}
+
+	/**
+	 * Number of runs executed at the same time.
+	 *
+	 * @param defaultThreads
+	 *            value returned if not specified
+	 * @return number of threads
+	 */
+	public int getNumberThreads(int defaultThreads) {
+		return getInt(THREADS_KEY, defaultThreads);
+	}
+
+	/**
+	 * Name of the weight calculator to use.
+	 *
+	 * @return weight calculator name, or {@code null} if not specified
+	 */
+	public String getWeightCalculatorName() {
+		return props.getProperty(WEIGHT_CALCULATOR_KEY);
+	}
+
+	/**
+	 * Number of threads used to iterate the agents of a run.
+	 *
+	 * @param defaultThreads
+	 *            value returned if not specified
+	 * @return number of iteration threads
+	 */
+	public int getNumberIterationThreads(int defaultThreads) {
+		return getInt(ITERATION_THREADS_KEY, defaultThreads);
+	}
+
+	/**
+	 * Whether to iterate active agents only.
+	 *
+	 * @param defaultActiveOnly
+	 *            value returned if not specified
+	 * @return active only
+	 */
+	public boolean isActiveOnly(boolean defaultActiveOnly) {
+		return getBoolean(ACTIVE_ONLY_KEY, defaultActiveOnly);
+	}
+
+	/**
+	 * Iterations at the end of which a checkpoint is written.
+	 *
+	 * @return checkpoint iterations, or an empty array if not specified
+	 */
+	public int[] getCheckpointIterations() {
+		String value = props.getProperty(CHECKPOINTS_KEY);
+
+		if (value == null || value.trim().length() == 0) {
+			return new int[0];
+		}
+
+		String[] items = value.split(",");
+		int[] iterations = new int[items.length];
+
+		for (int i = 0; i < items.length; i++) {
+			try {
+				iterations[i] = Integer.parseInt(items[i].trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Batch parameter \""
+						+ CHECKPOINTS_KEY + "\" is not a list of integers: "
+						+ value, e);
+			}
+		}
+
+		return iterations;
+	}
+
+	/**
+	 * Checkpoint file to resume each run from.
+	 *
+	 * @return checkpoint file, or {@code null} if not specified
+	 */
+	public File getResumeCheckpoint() {
+		String value = props.getProperty(RESUME_KEY);
+		return value == null ? null : new File(value);
+	}
+
+	/**
+	 * Seed of keyed random number streams.
+	 *
+	 * @return seed, or {@code null} if not specified, ie: the model's default
+	 *         random number generator is used
+	 */
+	public Long getSeed() {
+		String value = props.getProperty(SEED_KEY);
+
+		if (value == null) {
+			return null;
+		}
+
+		try {
+			return Long.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Batch parameter \""
+					+ SEED_KEY + "\" is not an integer: " + value, e);
+		}
+	}
+
+	private int getInt(String key, int defaultValue) {
+		String value = props.getProperty(key);
+
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Batch parameter \"" + key
+					+ "\" is not an integer: " + value, e);
+		}
+	}
+
+	private boolean getBoolean(String key, boolean defaultValue) {
+		String value = props.getProperty(key);
+
+		if (value == null) {
+			return defaultValue;
+		}
+
+		if ("true".equalsIgnoreCase(value.trim())) {
+			return true;
+		}
+		if ("false".equalsIgnoreCase(value.trim())) {
+			return false;
+		}
+		throw new IllegalArgumentException("Batch parameter \"" + key
+				+ "\" is not true or false: " + value);
+	}
+
+	/**
+	 * Get the file locations, ie: all parameters other than the number of runs,
+	 * iterations and threads, active only, the weight calculator, the
+	 * checkpoint parameters and the seed.
+	 *
+	 * @return map of file locations keyed by preferences key
+	 */
+	public Map<String, String> getFileLocations() {
+		Map<String, String> locations = new LinkedHashMap<String, String>();
+
+		for (String key : props.stringPropertyNames()) {
+			if (!NON_LOCATION_KEYS.contains(key)) {
+				locations.put(key, props.getProperty(key));
+			}
+		}
+
+		return locations;
+	}
+
+	@Override
+	public String toString() {
+		return props.toString();
+	}
+}
@@ -0,0 +1,122 @@
+package org.jamsim.ascape;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.ascape.model.event.DefaultScapeListener;
+import org.ascape.model.event.ScapeEvent;
+
+/**
+ * Writes checkpoints of a {@link MicroSimScape} at chosen iterations, and/or
+ * resumes each run from a checkpoint. See {@link ScapeCheckpoint}.
+ * <p>
+ * Checkpoints are written to the scape's output directory, named by
+ * {@link #getCheckpointFile(MicroSimScape, int, int)}. When resuming, the
+ * agents' state is restored after they have been initialised (see
+ * {@link MicroSimScape#restoreCheckpoint(File)}).
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class CheckpointListener extends DefaultScapeListener {
+
+	private static final long serialVersionUID = -3806744624781370946L;
+
+	private final MicroSimScape<?> msscape;
+
+	private final int[] checkpointIterations;
+
+	private final File resumeFrom;
+
+	private int runNumber = 0;
+
+	/**
+	 * Construct {@link CheckpointListener}.
+	 * 
+	 * @param scape
+	 *            microsim scape
+	 * @param checkpointIterations
+	 *            iterations at the end of which a checkpoint is written, or an
+	 *            empty array for none
+	 * @param resumeFrom
+	 *            checkpoint to resume each run from, or {@code null} to start
+	 *            each run from the first iteration
+	 */
+	public CheckpointListener(MicroSimScape<?> scape,
+			int[] checkpointIterations, File resumeFrom) {
+		super("Checkpoints");
+		this.msscape = scape;
+		this.checkpointIterations = checkpointIterations.clone();
+		this.resumeFrom = resumeFrom;
+		Arrays.sort(this.checkpointIterations);
+	}
+
+	/**
+	 * Get the file the checkpoint of a run and iteration is written to.
+	 * 
+	 * @param scape
+	 *            microsim scape
+	 * @param run
+	 *            run number
+	 * @param iteration
+	 *            iteration
+	 * @return checkpoint file
+	 */
+	public static File getCheckpointFile(MicroSimScape<?> scape, int run,
+			int iteration) {
+		return new File(scape.getOutputDirectory(), scape.getName() + " run "
+				+ run + " iteration " + iteration + ".checkpoint");
+	}
+
+	/**
+	 * Resume the run from the checkpoint, if any.
+	 * 
+	 * @param scapeEvent
+	 *            scape event
+	 */
+	@Override
+	public void scapeInitialized(ScapeEvent scapeEvent) {
+		runNumber++;
+
+		if (resumeFrom == null) {
+			return;
+		}
+
+		int iteration;
+		try {
+			iteration = msscape.restoreCheckpoint(resumeFrom);
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+
+		System.out.println("Resumed run " + runNumber + " at iteration "
+				+ iteration + " from " + resumeFrom.getPath());
+	}
+
+	/**
+	 * Write a checkpoint if this is a checkpoint iteration.
+	 * 
+	 * @param scapeEvent
+	 *            scape event
+	 */
+	@Override
+	public void scapeIterated(ScapeEvent scapeEvent) {
+		int iteration = msscape.getIteration();
+
+		if (Arrays.binarySearch(checkpointIterations, iteration) < 0) {
+			return;
+		}
+
+		File file = getCheckpointFile(msscape, runNumber, iteration);
+		try {
+			msscape.writeCheckpoint(file);
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+
+		System.out.println("Wrote checkpoint " + file.getPath());
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.jamsim.ascape;
+
+import java.io.IOException;
+
+import org.apache.commons.lang.mutable.MutableInt;
+import org.ascape.model.event.DefaultScapeListener;
+import org.ascape.model.event.ScapeEvent;
+
+/**
+ * Executes all runs with a {@link ConcurrentRunExecutor} when the scape
+ * starts, then closes the runner. Used instead of a
+ * {@link MultipleRunController} when running headless with more than one
+ * thread. The scape this is added to is only a template: it is never iterated.
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class ConcurrentRunController extends DefaultScapeListener {
+
+	private static final long serialVersionUID = -4094738713446120851L;
+
+	private final ConcurrentRunExecutor<?> executor;
+
+	private final MutableInt numberRuns;
+
+	/**
+	 * Construct {@link ConcurrentRunController}.
+	 *
+	 * @param executor
+	 *            executor that runs the simulation
+	 * @param numberRuns
+	 *            number of runs for the simulation. This is a
+	 *            {@link MutableInt} so it can be changed after construction.
+	 */
+	public ConcurrentRunController(ConcurrentRunExecutor<?> executor,
+			MutableInt numberRuns) {
+		super("Concurrent Run Controller");
+		this.executor = executor;
+		this.numberRuns = numberRuns;
+	}
+
+	@Override
+	public void scapeStarted(ScapeEvent scapeEvent) {
+		try {
+			executor.execute(numberRuns.intValue());
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		} finally {
+			scape.getRunner().close();
+		}
+	}
+}
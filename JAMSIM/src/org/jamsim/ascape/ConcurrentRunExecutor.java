@@ -0,0 +1,361 @@
+package org.jamsim.ascape;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ascape.model.Scape;
+import org.ascape.model.space.ListSpace;
+import org.jamsim.ascape.weights.WeightCalculator;
+import org.omancode.util.io.Output;
+import org.omancode.util.io.OutputToPrintStream;
+
+/**
+ * Executes independent simulation runs at the same time on a pool of worker
+ * threads, instead of one after the other as {@link MultipleRunController}
+ * does.
+ * <p>
+ * Each run gets its own {@link ScapeData} (and so its own
+ * {@link org.jamsim.math.RNG} stream) from a {@link RunFactory}, its own copy
+ * of the agents loaded from the base file, and its own scape. Agents are
+ * initialised and then iterated for the required number of iterations. As
+ * for a {@link MicroSimScape}, the agents are weighted by the
+ * {@link WeightCalculator} (if any) when they are loaded, and if
+ * {@link #setActiveOnly(boolean)} only active agents are iterated.
+ * </p>
+ * <p>
+ * Runs don't fire scape events. Instead each run's start and end are passed
+ * to {@link RunListener}s in run order, on the thread that called
+ * {@link #execute(int)}, so listeners such as R run commands, stat collectors
+ * and output datasets see runs in the same order as a sequential simulation.
+ * Iteration events are not fired, so iteration R commands and events are not
+ * supported (see {@link RootScape#getConcurrentRunsUnsupportedReason()}).
+ * </p>
+ * <p>
+ * To bound memory at most {@code 2 * numThreads} runs are loaded at any one
+ * time.
+ * </p>
+ *
+ * @param <D>
+ *            a scape data class that defines data external to the scape for use
+ *            by agents, and for loading agents.
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class ConcurrentRunExecutor<D extends ScapeData> {
+
+	private final RunFactory<D> factory;
+
+	private final File basefile;
+
+	private final int numIterations;
+
+	private final int numThreads;
+
+	private final Output output;
+
+	private final List<RunListener> listeners = new ArrayList<RunListener>();
+
+	private WeightCalculator wcalc;
+
+	/**
+	 * Incremented each time {@link #wcalc} notifies it has changed, so runs
+	 * weighted before the change are reweighted.
+	 */
+	private volatile int weightsVersion = 0;
+
+	private boolean activeOnly = false;
+
+	/**
+	 * Construct a {@link ConcurrentRunExecutor}.
+	 *
+	 * @param factory
+	 *            creates the {@link ScapeData} for each run
+	 * @param basefile
+	 *            base file each run loads its agents from
+	 * @param numIterations
+	 *            number of iterations per run
+	 * @param numThreads
+	 *            number of worker threads, ie: runs executing at the same time
+	 * @param output
+	 *            progress output, if {@code null} uses the default
+	 *            {@link OutputToPrintStream} instance (ie: prints to
+	 *            System.out).
+	 */
+	public ConcurrentRunExecutor(RunFactory<D> factory, File basefile,
+			int numIterations, int numThreads, Output output) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("numThreads (" + numThreads
+					+ ") must be at least 1");
+		}
+		this.factory = factory;
+		this.basefile = basefile;
+		this.numIterations = numIterations;
+		this.numThreads = numThreads;
+		this.output = output == null ? new OutputToPrintStream() : output;
+	}
+
+	/**
+	 * Add a listener that receives each run's results.
+	 *
+	 * @param listener
+	 *            run listener
+	 */
+	public void addRunListener(RunListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Weight each run's agents with {@code wcalc}, as
+	 * {@link MicroSimScape#setWeightCalculator(WeightCalculator)} weights the
+	 * scape's agents. Agents are weighted when they are loaded. If
+	 * {@code wcalc} changes, runs already loaded are weighted again before
+	 * they are passed to the {@link RunListener}s.
+	 * 
+	 * @param wcalc
+	 *            weight calculator
+	 */
+	public void setWeightCalculator(WeightCalculator wcalc) {
+		this.wcalc = wcalc;
+		wcalc.addObserver(new Observer() {
+			@Override
+			public void update(Observable o, Object arg) {
+				weightsVersion++;
+			}
+		});
+	}
+
+	/**
+	 * Iterate only active agents, ie: those that have not called
+	 * {@link MicroSimCell#deactivate()} during the run. See
+	 * {@link MicroSimScape#setActiveOnly(boolean)}.
+	 * 
+	 * @param activeOnly
+	 *            {@code true} to iterate only active agents
+	 */
+	public void setActiveOnly(boolean activeOnly) {
+		this.activeOnly = activeOnly;
+	}
+
+	/**
+	 * Execute {@code numberRuns} runs and wait for them to complete.
+	 *
+	 * @param numberRuns
+	 *            number of runs
+	 * @throws IOException
+	 *             if problem loading a run, or a listener fails
+	 */
+	public void execute(int numberRuns) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		LinkedList<Future<CompletedRun>> inFlight =
+				new LinkedList<Future<CompletedRun>>();
+		int window = 2 * numThreads;
+		int nextRun = 1;
+
+		output.println("Executing " + numberRuns + " runs on " + numThreads
+				+ " threads");
+
+		try {
+			while (nextRun <= numberRuns && nextRun <= window) {
+				inFlight.add(pool.submit(createRun(nextRun++)));
+			}
+
+			for (int run = 1; run <= numberRuns; run++) {
+				CompletedRun completed = waitFor(inFlight.removeFirst());
+
+				// keep the workers busy while the results are processed
+				if (nextRun <= numberRuns) {
+					inFlight.add(pool.submit(createRun(nextRun++)));
+				}
+
+				output.println("Completed run " + run + " of " + numberRuns);
+
+				if (completed.weightsVersion != weightsVersion) {
+					completed.weightsVersion = weight(completed.agents);
+				}
+
+				for (int i = 0; i < listeners.size(); i++) {
+					listeners.get(i).runStarted(run,
+							completed.initialStates[i]);
+				}
+
+				for (RunListener listener : listeners) {
+					listener.runCompleted(run, completed.agents);
+				}
+			}
+
+			for (int i = listeners.size() - 1; i >= 0; i--) {
+				listeners.get(i).allRunsCompleted(numberRuns);
+			}
+
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Create the {@link ScapeData} and agents for a run, and weight the
+	 * agents. Done on the calling thread, because loading uses the non
+	 * thread-safe file loader.
+	 */
+	private Callable<CompletedRun> createRun(int run)
+			throws IOException {
+		D data = factory.createScapeData(run);
+
+		// agents capture the data current at their creation
+		MicroSimCell.setData(data);
+
+		List<MicroSimCell<?>> agents =
+				new ArrayList<MicroSimCell<?>>(data.loadAgents(basefile));
+
+		return new IndependentRun(run, agents, weight(agents));
+	}
+
+	/**
+	 * Weight agents with the current weight calculator, if any.
+	 * 
+	 * @return version of the weights applied
+	 */
+	private int weight(List<MicroSimCell<?>> agents) {
+		int version = weightsVersion;
+		if (wcalc != null) {
+			for (MicroSimCell<?> agent : agents) {
+				agent.setWeight(wcalc);
+			}
+		}
+		return version;
+	}
+
+	private static CompletedRun waitFor(Future<CompletedRun> future)
+			throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * The agents of a completed run, and the state each {@link RunListener}
+	 * captured when the run started.
+	 */
+	private static class CompletedRun {
+
+		private final List<MicroSimCell<?>> agents;
+
+		private final Object[] initialStates;
+
+		/**
+		 * Version of the weights applied to {@link #agents}.
+		 */
+		private int weightsVersion;
+
+		public CompletedRun(List<MicroSimCell<?>> agents,
+				Object[] initialStates, int weightsVersion) {
+			this.agents = agents;
+			this.initialStates = initialStates;
+			this.weightsVersion = weightsVersion;
+		}
+	}
+
+	/**
+	 * A single run, executed on a worker thread.
+	 */
+	private class IndependentRun implements Callable<CompletedRun> {
+
+		private final int run;
+
+		private final List<MicroSimCell<?>> agents;
+
+		private final RunScape scape;
+
+		private final int weightsVersion;
+
+		public IndependentRun(int run, List<MicroSimCell<?>> agents,
+				int weightsVersion) {
+			this.run = run;
+			this.agents = agents;
+			this.scape = new RunScape(run);
+			this.weightsVersion = weightsVersion;
+		}
+
+		@Override
+		public CompletedRun call() throws IOException {
+			for (MicroSimCell<?> agent : agents) {
+				scape.add(agent);
+				agent.setScape(scape);
+			}
+
+			for (MicroSimCell<?> agent : agents) {
+				agent.initialize();
+			}
+
+			Object[] initialStates = new Object[listeners.size()];
+			for (int i = 0; i < initialStates.length; i++) {
+				initialStates[i] =
+						listeners.get(i).runInitialized(run, agents);
+			}
+
+			for (int i = 1; i <= numIterations; i++) {
+				scape.iteration = i;
+
+				for (MicroSimCell<?> agent : agents) {
+					if (!activeOnly || agent.isActive()) {
+						agent.iterate();
+					}
+				}
+			}
+
+			return new CompletedRun(agents, initialStates, weightsVersion);
+		}
+	}
+
+	/**
+	 * Scape that holds the agents of a single run. Supplies the iteration to
+	 * agents, as there is no runner, and the run number (see
+	 * {@link MicroSimCell#getRun()}).
+	 */
+	static class RunScape extends Scape {
+
+		private static final long serialVersionUID = -1735563180947358452L;
+
+		private final int run;
+
+		private int iteration;
+
+		public RunScape(int run) {
+			super(new ListSpace());
+			this.run = run;
+			setName("Run " + run);
+		}
+
+		@Override
+		public int getIteration() {
+			return iteration;
+		}
+
+		public int getRun() {
+			return run;
+		}
+	}
+
+}
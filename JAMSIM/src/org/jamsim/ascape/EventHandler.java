@@ -0,0 +1,24 @@
+package org.jamsim.ascape;
+
+/**
+ * An agent that handles events scheduled on an {@link EventScheduler}, eg:
+ * death, onset of a condition or retirement at a time drawn from a waiting
+ * time distribution.
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public interface EventHandler {
+
+	/**
+	 * Handle an event that is due. May schedule further events for this or
+	 * any other agent at or after {@code time}.
+	 *
+	 * @param eventType
+	 *            the event type given when the event was scheduled
+	 * @param time
+	 *            the time the event was scheduled for
+	 */
+	void handleEvent(int eventType, double time);
+
+}
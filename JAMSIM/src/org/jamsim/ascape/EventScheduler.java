@@ -0,0 +1,367 @@
+package org.jamsim.ascape;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Discrete-event engine for time-to-event microsimulation. Agents (ie:
+ * {@link EventHandler}s) schedule future events, and each iteration only the
+ * agents with events due are touched, rather than stepping every agent every
+ * iteration. Set on a scape via
+ * {@link MicroSimScape#setEventScheduler(EventScheduler)}.
+ * <p>
+ * Time is measured in iterations, eg: years. Iteration {@code i} handles the
+ * events with times in {@code (i-1, i]}, and the scape listeners (eg: stat
+ * collectors and {@link org.jamsim.ascape.r.ScapeRListener}) then see the
+ * state at the end of the iteration, so outputs are still per iteration.
+ * </p>
+ * <p>
+ * Events are held in a 4-ary heap of parallel primitive arrays, so scheduling
+ * and removing an event does not allocate. Events due at the same time are
+ * handled in the order they were scheduled, so runs are reproducible. Events
+ * for a {@link MicroSimCell} that has been deactivated (see
+ * {@link MicroSimCell#deactivate()}) are discarded, ie: deactivating an agent
+ * cancels its pending events.
+ * </p>
+ * <p>
+ * Not thread-safe. Events are handled on the thread iterating the scape.
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class EventScheduler {
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * Number of children of each heap node. A wider heap is shallower, and
+	 * the children of a node are adjacent in each array.
+	 */
+	private static final int ARITY = 4;
+
+	private double[] times;
+
+	/**
+	 * Order in which each event was scheduled. Breaks ties between events
+	 * due at the same time.
+	 */
+	private long[] seqs;
+
+	private EventHandler[] handlers;
+
+	private int[] types;
+
+	private int size = 0;
+
+	private long nextSeq = 0;
+
+	private double now = 0;
+
+	/**
+	 * Construct an empty scheduler.
+	 */
+	public EventScheduler() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Construct an empty scheduler with space for {@code initialCapacity}
+	 * pending events, eg: the number of agents.
+	 *
+	 * @param initialCapacity
+	 *            initial capacity
+	 */
+	public EventScheduler(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 1);
+		times = new double[capacity];
+		seqs = new long[capacity];
+		handlers = new EventHandler[capacity];
+		types = new int[capacity];
+	}
+
+	/**
+	 * Current time, ie: the time of the event being handled, or the end of
+	 * the last iteration processed.
+	 *
+	 * @return current time
+	 */
+	public double getTime() {
+		return now;
+	}
+
+	/**
+	 * Number of pending events.
+	 *
+	 * @return number of pending events
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Whether there are no pending events.
+	 *
+	 * @return {@code true} if there are no pending events
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Time of the next pending event.
+	 *
+	 * @return time of the next event, or {@link Double#POSITIVE_INFINITY} if
+	 *         there are no pending events
+	 */
+	public double getNextTime() {
+		return size == 0 ? Double.POSITIVE_INFINITY : times[0];
+	}
+
+	/**
+	 * Remove all pending events and set the current time, eg: at the start
+	 * of a run.
+	 *
+	 * @param startTime
+	 *            current time
+	 */
+	public void clear(double startTime) {
+		Arrays.fill(handlers, 0, size, null);
+		size = 0;
+		nextSeq = 0;
+		now = startTime;
+	}
+
+	/**
+	 * Schedule an event.
+	 *
+	 * @param handler
+	 *            agent that handles the event
+	 * @param eventType
+	 *            model defined event type, passed back to
+	 *            {@link EventHandler#handleEvent(int, double)}
+	 * @param time
+	 *            time the event is due, in iterations
+	 * @throws IllegalArgumentException
+	 *             if {@code time} is before the current time, or is NaN
+	 */
+	public void schedule(EventHandler handler, int eventType, double time) {
+		if (!(time >= now)) {
+			throw new IllegalArgumentException("Event time " + time
+					+ " is before the current time " + now);
+		}
+
+		if (size == times.length) {
+			grow();
+		}
+
+		siftUp(size++, time, nextSeq++, handler, eventType);
+	}
+
+	/**
+	 * Handle, in time order, every event due at or before {@code endTime},
+	 * including events scheduled while handling. Then advances the current
+	 * time to {@code endTime}.
+	 *
+	 * @param endTime
+	 *            time to process up to, eg: the current iteration
+	 * @return number of events handled
+	 * @throws IllegalArgumentException
+	 *             if {@code endTime} is before the current time
+	 */
+	public int processUntil(double endTime) {
+		if (endTime < now) {
+			throw new IllegalArgumentException("End time " + endTime
+					+ " is before the current time " + now);
+		}
+
+		int handled = 0;
+
+		while (size > 0 && times[0] <= endTime) {
+			double time = times[0];
+			EventHandler handler = handlers[0];
+			int eventType = types[0];
+
+			removeFirst();
+			now = time;
+
+			if (isActive(handler)) {
+				handler.handleEvent(eventType, time);
+				handled++;
+			}
+		}
+
+		now = endTime;
+		return handled;
+	}
+
+	private static boolean isActive(EventHandler handler) {
+		if (handler instanceof MicroSimCell<?>) {
+			MicroSimCell<?> cell = (MicroSimCell<?>) handler;
+			return cell.isActive() && !cell.isDelete();
+		}
+		return true;
+	}
+
+	private void removeFirst() {
+		size--;
+		if (size > 0) {
+			siftDown(0, times[size], seqs[size], handlers[size], types[size]);
+		}
+		handlers[size] = null;
+	}
+
+	/**
+	 * Whether event {@code (time, seq)} is due before the event at
+	 * {@code pos}.
+	 */
+	private boolean before(double time, long seq, int pos) {
+		return before(time, seq, times[pos], seqs[pos]);
+	}
+
+	private void siftUp(int pos, double time, long seq, EventHandler handler,
+			int eventType) {
+		while (pos > 0) {
+			int parent = (pos - 1) / ARITY;
+			if (!before(time, seq, parent)) {
+				break;
+			}
+			move(parent, pos);
+			pos = parent;
+		}
+		set(pos, time, seq, handler, eventType);
+	}
+
+	private void siftDown(int pos, double time, long seq,
+			EventHandler handler, int eventType) {
+		while (true) {
+			int first = pos * ARITY + 1;
+			if (first >= size) {
+				break;
+			}
+
+			int min = first;
+			int end = Math.min(first + ARITY, size);
+			for (int child = first + 1; child < end; child++) {
+				if (before(times[child], seqs[child], min)) {					min = child;
+				}
+			}
+
+			if (!before(times[min], seqs[min], time, seq)) {
+				break;
+			}
+			move(min, pos);
+			pos = min;
+		}
+		set(pos, time, seq, handler, eventType);
+	}
+
+	private static boolean before(double time1, long seq1, double time2,
+			long seq2) {
+		return time1 < time2 || (time1 == time2 && seq1 < seq2);
+	}
+
+	private void move(int from, int to) {
+		times[to] = times[from];
+		seqs[to] = seqs[from];
+		handlers[to] = handlers[from];
+		types[to] = types[from];
+	}
+
+	private void set(int pos, double time, long seq, EventHandler handler,
+			int eventType) {
+		times[pos] = time;
+		seqs[pos] = seq;
+		handlers[pos] = handler;
+		types[pos] = eventType;
+	}
+
+	private void grow() {
+		int capacity = times.length + (times.length >> 1) + 1;
+		times = Arrays.copyOf(times, capacity);
+		seqs = Arrays.copyOf(seqs, capacity);
+		handlers = Arrays.copyOf(handlers, capacity);
+		types = Arrays.copyOf(types, capacity);
+	}
+
+	/**
+	 * Write the pending events for a checkpoint. Handlers are written as
+	 * their index in {@code agents}.
+	 *
+	 * @param out
+	 *            output to write to
+	 * @param agents
+	 *            scape agents
+	 * @throws IOException
+	 *             if problem writing, or an event's handler is not in
+	 *             {@code agents}
+	 */
+	void writeState(DataOutput out, Object[] agents) throws IOException {
+		Map<Object, Integer> index =
+				new IdentityHashMap<Object, Integer>(agents.length);
+		for (int i = 0; i < agents.length; i++) {
+			index.put(agents[i], i);
+		}
+
+		out.writeDouble(now);
+		out.writeLong(nextSeq);
+		out.writeInt(size);
+
+		// written in heap order, so can be read back without reordering
+		for (int i = 0; i < size; i++) {
+			Integer agent = index.get(handlers[i]);
+			if (agent == null) {
+				throw new IOException("Event handler " + handlers[i]
+						+ " is not a scape agent");
+			}
+
+			out.writeDouble(times[i]);
+			out.writeLong(seqs[i]);
+			out.writeInt(agent);
+			out.writeInt(types[i]);
+		}
+	}
+
+	/**
+	 * Replace the pending events with those written by
+	 * {@link #writeState(DataOutput, Object[])}.
+	 *
+	 * @param in
+	 *            input to read from
+	 * @param agents
+	 *            scape agents, in the same order as when written
+	 * @throws IOException
+	 *             if problem reading, or an event's handler is not an
+	 *             {@link EventHandler} in {@code agents}
+	 */
+	void readState(DataInput in, Object[] agents) throws IOException {
+		clear(in.readDouble());
+		nextSeq = in.readLong();
+		int numEvents = in.readInt();
+
+		while (times.length < numEvents) {
+			grow();
+		}
+
+		for (int i = 0; i < numEvents; i++) {
+			double time = in.readDouble();
+			long seq = in.readLong();
+			int agent = in.readInt();
+			int eventType = in.readInt();
+
+			if (agent < 0 || agent >= agents.length
+					|| !(agents[agent] instanceof EventHandler)) {
+				throw new IOException("Event handler " + agent
+						+ " is not a scape agent");
+			}
+
+			set(i, time, seq, (EventHandler) agents[agent], eventType);
+			size++;
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package org.jamsim.ascape;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A scape listener whose output at the end of each iteration can be recorded
+ * while the base simulation runs, and replayed into scenario runs branched
+ * from it by a {@link ScenarioBranchController}. Branched runs restore a
+ * checkpoint and skip the iterations before it, so they fire no
+ * {@link org.ascape.model.event.ScapeListener#scapeIterated} for those
+ * iterations. The recorded output of each skipped iteration is replayed
+ * instead, in iteration order, so the run ends with the same per iteration
+ * outputs as if it had simulated every iteration.
+ * <p>
+ * Recordings are written alongside the base simulation checkpoints, ie: in
+ * memory or on disk, so should be compact.
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public interface IterationRecorder {
+
+	/**
+	 * Called at the end of each iteration of the base simulation, to write
+	 * what is needed to replay this iteration's output.
+	 * 
+	 * @param run
+	 *            run number, starting at 1
+	 * @param iteration
+	 *            iteration
+	 * @param out
+	 *            output to write the recording to
+	 * @throws IOException
+	 *             if problem recording
+	 */
+	void recordIteration(int run, int iteration, DataOutput out)
+			throws IOException;
+
+	/**
+	 * Called for each iteration a branched run skips, once the run has been
+	 * initialised and restored from the base simulation, to produce the
+	 * iteration's output from its recording.
+	 * 
+	 * @param run
+	 *            run number, starting at 1
+	 * @param iteration
+	 *            skipped iteration
+	 * @param in
+	 *            input to read the recording written by
+	 *            {@link #recordIteration(int, int, DataOutput)} for the same
+	 *            run and iteration of the base simulation from. Must read
+	 *            the whole recording.
+	 * @throws IOException
+	 *             if problem replaying
+	 */
+	void replayIteration(int run, int iteration, DataInput in)
+			throws IOException;
+
+}
@@ -1,5 +1,8 @@
 package org.jamsim.ascape;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -21,7 +24,15 @@ import org.jamsim.ascape.weights.WeightCalculator;
 public abstract class MicroSimCell<D extends ScapeData> extends Cell
 		implements CMarkedUpRowBean, Observer {
 
-	private static ScapeData data;
+	/**
+	 * The {@link ScapeData} set by {@link #setData(ScapeData)} for cells
+	 * created on the current thread. A {@link ConcurrentRunExecutor} loads
+	 * each run's agents one run at a time on the calling thread, setting the
+	 * run's own data first, so runs do not share globals. Threads started
+	 * after the data is set inherit it.
+	 */
+	private static final ThreadLocal<ScapeData> CURRENT_DATA =
+			new InheritableThreadLocal<ScapeData>();
 
 	/**
 	 * 
@@ -29,24 +40,179 @@ public abstract class MicroSimCell<D extends ScapeData> extends Cell
 	private static final long serialVersionUID = 4987400368886624377L;
 
 	/**
-	 * Get scape data.
+	 * The {@link ScapeData} current when this cell was created.
+	 */
+	private transient ScapeData data;
+
+	/**
+	 * Whether this cell is in its scape's active set. See
+	 * {@link #deactivate()}.
+	 */
+	private boolean active = true;
+
+	/**
+	 * Construct a cell with the {@link ScapeData} most recently set via
+	 * {@link #setData(ScapeData)} on this thread.
+	 */
+	public MicroSimCell() {
+		super();
+		data = CURRENT_DATA.get();
+	}
+
+	/**
+	 * Get scape data. This is the {@link ScapeData} current when this cell was
+	 * created, or if there was none (eg: the prototype agent) the data of the
+	 * {@link MicroSimScape} this cell belongs to.
 	 * 
 	 * @return scape data
 	 */
 	@SuppressWarnings("unchecked")
 	public D getScapeData() {
-		return (D) data;
+		if (data == null && getScape() instanceof MicroSimScape<?>) {
+			return (D) ((MicroSimScape<?>) getScape()).getScapeData();
+		}
+		return (D) (data == null ? CURRENT_DATA.get() : data);
 	}
 
 	/**
 	 * Set the {@link ScapeData} data globals common to all {@link MicroSimCell}
-	 * s.
+	 * s subsequently created on this thread, or on threads it starts.
 	 * 
 	 * @param inData
 	 *            data
 	 */
 	public static void setData(ScapeData inData) {
-		data = inData;
+		CURRENT_DATA.set(inData);
+	}
+
+	/**
+	 * Number of the run this cell is being simulated in, starting at 1, eg: to
+	 * key random number streams by run so runs executed sequentially and
+	 * concurrently draw the same numbers. Set before the cell is initialised
+	 * at the start of each run.
+	 * 
+	 * @return run number, or 0 if this cell is not in a run, eg: while it is
+	 *         being loaded
+	 */
+	protected int getRun() {
+		if (getScape() instanceof MicroSimScape<?>) {
+			return ((MicroSimScape<?>) getScape()).getRun();
+		}
+		if (getScape() instanceof ConcurrentRunExecutor.RunScape) {
+			return ((ConcurrentRunExecutor.RunScape) getScape()).getRun();
+		}
+		return 0;
+	}
+
+	/**
+	 * Remove this cell from its scape's active set for the rest of the run,
+	 * eg: when a person dies. If the scape is iterating active agents only
+	 * (see {@link MicroSimScape#setActiveOnly(boolean)}) this cell will no
+	 * longer be iterated, but it remains a member of the scape. Cells are
+	 * active again at the start of the next run. May be called from
+	 * {@link #iterate()}, including when iterating in parallel.
+	 */
+	public void deactivate() {
+		if (active) {
+			active = false;
+			if (getScape() instanceof MicroSimScape<?>) {
+				((MicroSimScape<?>) getScape()).agentDeactivated();
+			}
+		}
+	}
+
+	/**
+	 * Report that this cell has changed the value of a dataframe column, ie:
+	 * bean property, so it is reassigned to R. Only needed if the scape
+	 * tracks column changes (see
+	 * {@link MicroSimScape#setTrackColumnChanges(boolean)}), in which case
+	 * every setter of a column must call this. Cells don't report changes
+	 * unless the model opts in. May be called from {@link #iterate()},
+	 * including when iterating in parallel.
+	 * 
+	 * @param column
+	 *            column name, ie: bean property name
+	 */
+	protected void columnChanged(String column) {
+		if (getScape() instanceof MicroSimScape<?>) {
+			((MicroSimScape<?>) getScape()).markColumnChanged(column);
+		}
+	}
+
+	/**
+	 * Whether this cell is in its scape's active set.
+	 * 
+	 * @return {@code false} if {@link #deactivate()} has been called this run
+	 */
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Set whether this cell is in its scape's active set, eg: when starting a
+	 * run or restoring a checkpoint. The scape must rebuild its active set
+	 * afterwards.
+	 * 
+	 * @param active
+	 *            active
+	 */
+	void setActive(boolean active) {
+		this.active = active;
+	}
+
+	/**
+	 * Get the {@link EventScheduler} of this cell's scape, for cells that are
+	 * {@link EventHandler}s to schedule their events on.
+	 * 
+	 * @return event scheduler
+	 * @throws IllegalStateException
+	 *             if this cell's scape does not have an event scheduler
+	 */
+	protected EventScheduler getEventScheduler() {
+		EventScheduler scheduler = null;
+		if (getScape() instanceof MicroSimScape<?>) {
+			scheduler = ((MicroSimScape<?>) getScape()).getEventScheduler();
+		}
+
+		if (scheduler == null) {
+			throw new IllegalStateException("Scape " + getScape()
+					+ " has no event scheduler");
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Write the simulation state of this cell for a checkpoint (see
+	 * {@link ScapeCheckpoint}), ie: every field that may have changed since
+	 * the cell was loaded from the base file, including the state of any
+	 * {@link org.jamsim.math.RNG} owned by this cell (see
+	 * {@link ScapeCheckpoint#writeRNG(org.jamsim.math.RNG, DataOutput)}).
+	 * Cells that support checkpoints override this and
+	 * {@link #readState(DataInput)}.
+	 * 
+	 * @param out
+	 *            output to write to
+	 * @throws IOException
+	 *             if problem writing
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		throw new UnsupportedOperationException(getClass().getSimpleName()
+				+ " does not support checkpoints");
+	}
+
+	/**
+	 * Restore the simulation state of this cell written by
+	 * {@link #writeState(DataOutput)}. Called on a cell loaded from the same
+	 * base file and initialised.
+	 * 
+	 * @param in
+	 *            input to read from
+	 * @throws IOException
+	 *             if problem reading
+	 */
+	public void readState(DataInput in) throws IOException {
+		throw new UnsupportedOperationException(getClass().getSimpleName()
+				+ " does not support checkpoints");
 	}
 
 	/**
@@ -3,10 +3,20 @@ package org.jamsim.ascape;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.prefs.Preferences;
 
 import javax.swing.Action;
@@ -21,10 +31,12 @@ import net.casper.io.file.in.CBuildFromFile;
 import org.ascape.model.Agent;
 import org.ascape.model.Scape;
 import org.ascape.model.space.CollectionSpace;
+import org.ascape.model.space.SpatialTemporalException;
 import org.ascape.runtime.swing.DesktopEnvironment;
 import org.ascape.runtime.swing.navigator.PanelViewExisting;
 import org.ascape.runtime.swing.navigator.PanelViewNode;
 import org.ascape.runtime.swing.navigator.PanelViewProvider;
+import org.ascape.util.data.StatCollector;
 import org.ascape.util.swing.AscapeGUIUtil;
 import org.ascape.view.vis.ChartView;
 import org.ascape.view.vis.PanelView;
@@ -35,6 +47,7 @@ import org.jamsim.ascape.navigator.OutputNode;
 import org.jamsim.ascape.navigator.RecordedMicroSimTreeBuilder;
 import org.jamsim.ascape.navigator.SubFolderNode;
 import org.jamsim.ascape.output.ChartProvider;
+import org.jamsim.ascape.output.OutputDatasetFileWriter;
 import org.jamsim.ascape.output.OutputDatasetProvider;
 import org.jamsim.ascape.r.AscapeGD;
 import org.jamsim.ascape.r.RFileInterface;
@@ -67,7 +80,8 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 	 */
 	private static final long serialVersionUID = 5534365905529673862L;
 
-	private RecordedMicroSimTreeBuilder treeBuilder = new RecordedMicroSimTreeBuilder();
+	private RecordedMicroSimTreeBuilder treeBuilder =
+			new RecordedMicroSimTreeBuilder();
 
 	private MicroSimScapeNode scapeNode;
 
@@ -131,6 +145,86 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 	 */
 	private PanelViewProvider createTablePanel;
 
+	/**
+	 * Number of threads used to iterate agents. If 1, agents are iterated one
+	 * after the other by the scape's rules.
+	 */
+	private int iterationThreads = 1;
+
+	private transient ParallelIterator parallelIterator;
+
+	/**
+	 * Iteration of the checkpoint this run was resumed from, added to the
+	 * runner's iteration. 0 if not resumed.
+	 */
+	private int iterationOffset = 0;
+
+	/**
+	 * Number of the current run, starting at 1. Incremented when each run
+	 * starts, see {@link #initialize()}.
+	 */
+	private int run = 0;
+
+	/**
+	 * Stop period of the root scape before it was reduced for a resumed run,
+	 * or -1 if it has not been reduced. Restored when the next run starts.
+	 */
+	private int rootStopPeriod = -1;
+
+	/**
+	 * Whether to iterate, and create per iteration dataframes of, active
+	 * agents only.
+	 */
+	private boolean activeOnly = false;
+
+	/**
+	 * Active agents. See {@link MicroSimCell#deactivate()}.
+	 */
+	private final transient ActiveAgents activeAgents = new ActiveAgents(this);
+
+	/**
+	 * Whether agents report the dataframe columns they change, so only the
+	 * changed columns are reassigned to R. See
+	 * {@link #setTrackColumnChanges(boolean)}.
+	 */
+	private boolean trackColumnChanges = false;
+
+	/**
+	 * Dataframe columns changed since the scape dataframe was last assigned.
+	 * Added to by agents, which may be iterating in parallel.
+	 */
+	private final transient Set<String> changedColumns =
+			Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Whether every column may have changed since the scape dataframe was last
+	 * assigned, eg: at the start of a run.
+	 */
+	private transient volatile boolean allColumnsChanged = true;
+
+	/**
+	 * Dataframe columns set by {@link MicroSimCell#setWeight(WeightCalculator)}
+	 * and so changed when the {@link WeightCalculator} changes.
+	 */
+	private String[] weightColumns = { "weightScenario", "weightBase" };
+
+	/**
+	 * Whether the scape dataframe is only created when R needs it. See
+	 * {@link ScapeRInterface#setLazyDataFrame(boolean)}.
+	 */
+	private boolean lazyDataFrame = false;
+
+	/**
+	 * Handles scheduled events instead of iterating agents, if set.
+	 */
+	private transient EventScheduler eventScheduler;
+
+	/**
+	 * Writers of output datasets added when headless.
+	 */
+	private final List<OutputDatasetFileWriter> fileWriters =
+			new ArrayList<OutputDatasetFileWriter>();
+
 	/**
 	 * Get whether output datasets for this scape should write their results to
 	 * a file.
@@ -236,7 +330,7 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 		// replace them with clones with parameter values of 0
 		// this.setAutoCreate(false);
 
-		setOutputDirectory(prefs.get(OUTPUTDIR_KEY, ""));
+		setOutputDirectory(loader.getLocation(OUTPUTDIR_KEY));
 
 		println("Output directory: " + getOutputDirectory());
 	}
@@ -250,6 +344,564 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 		return prefs;
 	}
 
+	/**
+	 * Number of threads used to iterate agents.
+	 * 
+	 * @return iteration threads
+	 */
+	public int getIterationThreads() {
+		return iterationThreads;
+	}
+
+	/**
+	 * Set the number of threads used to iterate agents. If greater than 1, and
+	 * {@link Scape#ITERATE_RULE} is the scape's only rule, each iteration the
+	 * agents are split into chunks and {@link Agent#iterate()} is called on
+	 * the chunks in parallel, instead of on each agent in turn. The iteration
+	 * does not complete until all agents have been iterated, so scape
+	 * listeners (eg: {@link org.jamsim.ascape.r.ScapeRListener} or stat
+	 * collectors) see the state after all agents have been iterated.
+	 * 
+	 * <p>
+	 * Each agent must be {@link ParallelIterationSafe}, which is checked when
+	 * each run starts, ie: once the agents have been loaded, and fails the run
+	 * with an {@link IllegalStateException} if an agent is not safe, eg:
+	 * because it shares a random number generator with other agents.
+	 * </p>
+	 * 
+	 * @param iterationThreads
+	 *            number of threads, or 1 to iterate agents sequentially
+	 * @throws IllegalStateException
+	 *             if {@code iterationThreads > 1} and the prototype agent's
+	 *             class does not implement {@link ParallelIterationSafe}
+	 */
+	public void setIterationThreads(int iterationThreads) {
+		if (iterationThreads < 1) {
+			throw new IllegalArgumentException("iterationThreads ("
+					+ iterationThreads + ") must be at least 1");
+		}
+
+		// the prototype has no data, so can only be checked by class
+		Agent prototype = getPrototypeAgent();
+		if (iterationThreads > 1
+				&& !(prototype instanceof ParallelIterationSafe)) {
+			throw new IllegalStateException(prototype.getClass()
+					.getSimpleName()
+					+ " is not "
+					+ ParallelIterationSafe.class.getSimpleName());
+		}
+
+		if (parallelIterator != null) {
+			parallelIterator.shutdown();
+			parallelIterator = null;
+		}
+
+		this.iterationThreads = iterationThreads;
+	}
+
+	/**
+	 * Whether only active agents are iterated.
+	 * 
+	 * @return active only
+	 */
+	public boolean isActiveOnly() {
+		return activeOnly;
+	}
+
+	/**
+	 * Set whether to iterate only active agents, ie: those that have not
+	 * called {@link MicroSimCell#deactivate()} this run. Per iteration
+	 * dataframes created by {@link org.jamsim.ascape.r.ScapeRListener} then
+	 * also only contain active agents. Agents remain members of the scape, so
+	 * end of run outputs still see the whole population.
+	 * 
+	 * @param activeOnly
+	 *            active only
+	 */
+	public void setActiveOnly(boolean activeOnly) {
+		this.activeOnly = activeOnly;
+	}
+
+	/**
+	 * Whether agents report the dataframe columns they change.
+	 * 
+	 * @return track column changes
+	 */
+	public boolean isTrackColumnChanges() {
+		return trackColumnChanges;
+	}
+
+	/**
+	 * Set whether agents report the dataframe columns they change, via
+	 * {@link MicroSimCell#columnChanged(String)}. If {@code true}, the scape
+	 * dataframe is updated in R by reassigning only the changed columns, eg:
+	 * just the weight columns when the {@link WeightCalculator} changes, rather
+	 * than the whole population.
+	 * <p>
+	 * Off by default, because models must opt in: the scape only reports the
+	 * {@link #getWeightColumns()} itself, so only set this if every setter of
+	 * a dataframe column in the model's cells calls
+	 * {@link MicroSimCell#columnChanged(String)}, otherwise the dataframe
+	 * keeps stale values. Agents with array properties, such as
+	 * {@link org.jamsim.example.Person}, are always assigned whole, see
+	 * {@link org.jamsim.ascape.r.BeanColumnMarshaller}.
+	 * </p>
+	 * 
+	 * @param trackColumnChanges
+	 *            track column changes
+	 */
+	public void setTrackColumnChanges(boolean trackColumnChanges) {
+		this.trackColumnChanges = trackColumnChanges;
+		markAllColumnsChanged();
+	}
+
+	/**
+	 * Whether the scape dataframe is only created when R needs it.
+	 * 
+	 * @return lazy dataframe
+	 */
+	public boolean isLazyDataFrame() {
+		return lazyDataFrame;
+	}
+
+	/**
+	 * Set whether the scape dataframe is only created when R needs it, rather
+	 * than every time the scape or weights change. See
+	 * {@link ScapeRInterface#setLazyDataFrame(boolean)}. Set before
+	 * {@link #loadR(String, boolean, boolean)} to also defer the initial
+	 * dataframe.
+	 * 
+	 * @param lazyDataFrame
+	 *            lazy dataframe
+	 * @throws RFaceException
+	 *             if problem creating a pending dataframe when switching off
+	 */
+	public void setLazyDataFrame(boolean lazyDataFrame) throws RFaceException {
+		this.lazyDataFrame = lazyDataFrame;
+		if (scapeR != null) {
+			scapeR.setLazyDataFrame(lazyDataFrame);
+		}
+	}
+
+	/**
+	 * Get the dataframe columns set by
+	 * {@link MicroSimCell#setWeight(WeightCalculator)}.
+	 * 
+	 * @return weight columns
+	 */
+	public String[] getWeightColumns() {
+		return weightColumns.clone();
+	}
+
+	/**
+	 * Set the dataframe columns set by
+	 * {@link MicroSimCell#setWeight(WeightCalculator)}, which are marked as
+	 * changed when the {@link WeightCalculator} changes. Defaults to
+	 * {@code weightScenario} and {@code weightBase}.
+	 * 
+	 * @param weightColumns
+	 *            weight columns
+	 */
+	public void setWeightColumns(String... weightColumns) {
+		this.weightColumns = weightColumns.clone();
+	}
+
+	/**
+	 * Mark a dataframe column as changed. Called by
+	 * {@link MicroSimCell#columnChanged(String)}, including when iterating in
+	 * parallel.
+	 * 
+	 * @param column
+	 *            column name, ie: bean property name
+	 */
+	public void markColumnChanged(String column) {
+		changedColumns.add(column);
+	}
+
+	/**
+	 * Mark every dataframe column as changed, eg: after the agents have been
+	 * restored, so the next assignment is of the whole dataframe.
+	 */
+	public void markAllColumnsChanged() {
+		allColumnsChanged = true;
+	}
+
+	/**
+	 * Get and clear the dataframe columns changed since this was last called.
+	 * 
+	 * @return changed columns, or {@code null} if every column may have
+	 *         changed or changes are not tracked
+	 */
+	public Set<String> takeChangedColumns() {
+		Set<String> columns = new HashSet<String>(changedColumns);
+		changedColumns.removeAll(columns);
+
+		if (allColumnsChanged || !trackColumnChanges) {
+			allColumnsChanged = false;
+			return null;
+		}
+		return columns;
+	}
+
+	/**
+	 * Get the event scheduler.
+	 * 
+	 * @return event scheduler, or {@code null} if agents are iterated
+	 */
+	public EventScheduler getEventScheduler() {
+		return eventScheduler;
+	}
+
+	/**
+	 * Set an event scheduler to run this scape as a discrete-event
+	 * simulation. Each iteration the events due by the end of the iteration
+	 * are handled, instead of iterating every agent. Agents schedule their
+	 * first events in {@link Agent#initialize()}, and the scheduler is
+	 * cleared at the start of each run.
+	 * 
+	 * @param eventScheduler
+	 *            event scheduler, or {@code null} to iterate agents
+	 */
+	public void setEventScheduler(EventScheduler eventScheduler) {
+		this.eventScheduler = eventScheduler;
+	}
+
+	/**
+	 * Get the active agents, in scape order. Eg: to calculate a
+	 * {@link org.ascape.util.data.StatCollector} over active agents only via
+	 * {@link org.ascape.util.data.StatCollector#calculateCollection}. The
+	 * returned list is a read only copy, so is unchanged when agents are later
+	 * deactivated.
+	 * 
+	 * @return active agents
+	 */
+	public List<Object> getActiveAgents() {
+		return activeAgents.getList();
+	}
+
+	/**
+	 * Number of active agents.
+	 * 
+	 * @return number of active agents
+	 */
+	public int getActiveCount() {
+		return activeAgents.getCount();
+	}
+
+	/**
+	 * Number of times the members may have changed, eg: agents added, removed
+	 * or reloaded, or their active state restored at the start of a run.
+	 * Changes when members are changed through this scape's collection
+	 * methods, when the active set is rebuilt, or when the number of members
+	 * has changed. Eg: the scape dataframe compares this to tell whether its
+	 * rows are still the members, without comparing every agent.
+	 * 
+	 * @return members modification count
+	 */
+	public int getMembersModCount() {
+		return activeAgents.getMembersModCount();
+	}
+
+	/**
+	 * Number of times agents may have left the active set, ie: the list
+	 * returned by {@link #getActiveAgents()} may have changed. Also changes
+	 * with {@link #getMembersModCount()}.
+	 * 
+	 * @return active set modification count
+	 */
+	public int getActiveModCount() {
+		return activeAgents.getModCount();
+	}
+
+	@Override
+	public boolean add(Object agent) {
+		activeAgents.membersChanged();
+		return super.add(agent);
+	}
+
+	@Override
+	public boolean addAll(Collection agents) {
+		activeAgents.membersChanged();
+		return super.addAll(agents);
+	}
+
+	@Override
+	public boolean remove(Object agent) {
+		activeAgents.membersChanged();
+		return super.remove(agent);
+	}
+
+	@Override
+	public boolean removeAll(Collection agents) {
+		activeAgents.membersChanged();
+		return super.removeAll(agents);
+	}
+
+	@Override
+	public void clear() {
+		activeAgents.membersChanged();
+		super.clear();
+	}
+
+	/**
+	 * Called by {@link MicroSimCell#deactivate()}.
+	 */
+	void agentDeactivated() {
+		activeAgents.agentDeactivated();
+	}
+
+	/**
+	 * Rebuild the active set from the scape members, eg: after agents have
+	 * been added or removed, or their active state restored.
+	 */
+	void rebuildActiveAgents() {
+		activeAgents.membersChanged();
+	}
+
+	/**
+	 * Iterate agents in parallel if {@link #getIterationThreads()} is greater
+	 * than 1, otherwise execute the scape's rules on each agent. If
+	 * {@link #isActiveOnly()}, only active agents are iterated. If there is an
+	 * {@link EventScheduler}, handles the events due instead of iterating,
+	 * then executes the scape's other rules on each agent.
+	 * <p>
+	 * Parallel and active only iteration only apply when
+	 * {@link Scape#ITERATE_RULE} is the scape's only rule. Otherwise the
+	 * scape's rules are executed on every agent in turn.
+	 * </p>
+	 */
+	@Override
+	public void executeOnMembers() {
+		Object[] rules = getRules().getSelection();
+
+		if (eventScheduler != null) {
+			eventScheduler.processUntil(getIteration());
+
+			List<Object> otherRules =
+					new ArrayList<Object>(Arrays.asList(rules));
+			otherRules.remove(ITERATE_RULE);
+			if (!otherRules.isEmpty()) {
+				executeOnMembers(otherRules.toArray());
+			}
+		} else if (rules.length != 1 || rules[0] != ITERATE_RULE) {
+			super.executeOnMembers();
+		} else if (activeOnly) {
+			Object[] agents = activeAgents.getArray();
+			int count = activeAgents.getCount();
+
+			if (iterationThreads > 1) {
+				getParallelIterator().iterate(agents, count);
+			} else {
+				ParallelIterator.iterateSequentially(agents, count);
+			}
+		} else if (iterationThreads > 1) {
+			Object[] agents = toArray();
+			getParallelIterator().iterate(agents, agents.length);
+		} else {
+			super.executeOnMembers();
+		}
+	}
+
+	private ParallelIterator getParallelIterator() {
+		if (parallelIterator == null) {
+			parallelIterator =
+					new ParallelIterator(getName(), iterationThreads);
+		}
+		return parallelIterator;
+	}
+
+	/**
+	 * Start a new run from the first iteration, ie: forget any checkpoint the
+	 * previous run was resumed from. The run number (see {@link #getRun()}) is
+	 * incremented before agents are initialised.
+	 */
+	@Override
+	public void initialize() {
+		run++;
+		iterationOffset = 0;
+		setRootStopPeriod(rootStopPeriod);
+		rootStopPeriod = -1;
+
+		for (Object agent : toArray()) {
+			if (agent instanceof MicroSimCell<?>) {
+				((MicroSimCell<?>) agent).setActive(true);
+			}
+		}
+		rebuildActiveAgents();
+		markAllColumnsChanged();
+
+		if (iterationThreads > 1) {
+			checkParallelIterationSafe();
+		}
+
+		// before agents are initialised, so they can schedule events
+		if (eventScheduler != null) {
+			eventScheduler.clear(getIteration());
+		}
+
+		super.initialize();
+	}
+
+	/**
+	 * Check each agent can be iterated in parallel, as configured with its
+	 * data.
+	 * 
+	 * @throws IllegalStateException
+	 *             if an agent is not {@link ParallelIterationSafe}
+	 */
+	private void checkParallelIterationSafe() {
+		for (Object agent : toArray()) {
+			if (!(agent instanceof ParallelIterationSafe)
+					|| !((ParallelIterationSafe) agent)
+							.isParallelIterationSafe()) {
+				throw new IllegalStateException(agent.getClass()
+						.getSimpleName()
+						+ " is not "
+						+ ParallelIterationSafe.class.getSimpleName()
+						+ " with its data, so cannot be iterated by "
+						+ iterationThreads + " threads");
+			}
+		}
+	}
+
+	/**
+	 * Number of the current run, starting at 1, eg: to key random number
+	 * streams by run. 0 before the first run starts.
+	 * 
+	 * @return run number
+	 */
+	public int getRun() {
+		return run;
+	}
+
+	/**
+	 * Current iteration. If this run was resumed from a checkpoint (see
+	 * {@link #restoreCheckpoint(File)}) this continues on from the iteration
+	 * of the checkpoint.
+	 * 
+	 * @return iteration
+	 */
+	@Override
+	public int getIteration() {
+		return super.getIteration() + iterationOffset;
+	}
+
+	/**
+	 * Calculate stat collectors over the agents of a run executed by a
+	 * {@link ConcurrentRunExecutor}, as this scape does at the end of an
+	 * iteration. While calculating, this scape reports the run's iteration,
+	 * eg: for {@link org.jamsim.ascape.stats.CollectorFunctionPerIteration}s
+	 * created with this scape. This scape is only a template for the runs,
+	 * so is not iterating.
+	 * 
+	 * @param collectors
+	 *            stat collectors
+	 * @param agents
+	 *            the run's agents
+	 * @param iteration
+	 *            the run's iteration
+	 */
+	public void calculateStatCollectors(
+			Collection<? extends StatCollector> collectors,
+			List<? extends MicroSimCell<?>> agents, int iteration) {
+		int offset = iterationOffset;
+		iterationOffset = iteration - super.getIteration();
+		try {
+			for (StatCollector collector : collectors) {
+				collector.calculateCollection(agents);
+			}
+		} finally {
+			iterationOffset = offset;
+		}
+	}
+
+	/**
+	 * Write a checkpoint of the agents' state at the current iteration. See
+	 * {@link ScapeCheckpoint}.
+	 * 
+	 * @param file
+	 *            checkpoint file
+	 * @throws IOException
+	 *             if problem writing
+	 */
+	public void writeCheckpoint(File file) throws IOException {
+		ScapeCheckpoint.write(this, file);
+	}
+
+	/**
+	 * Write a checkpoint of the agents' state at the current iteration to a
+	 * stream. See {@link ScapeCheckpoint}.
+	 * 
+	 * @param stream
+	 *            stream to write to. Closed once written.
+	 * @throws IOException
+	 *             if problem writing
+	 */
+	public void writeCheckpoint(OutputStream stream) throws IOException {
+		ScapeCheckpoint.write(this, stream);
+	}
+
+	/**
+	 * Restore the agents' state from a checkpoint and continue the current run
+	 * from the checkpoint's iteration, ie: the next iteration will be the one
+	 * after the checkpoint. The root scape's stop period is reduced for the
+	 * rest of the run so the run still ends at the same iteration. Call once
+	 * the agents have been initialised, eg: from
+	 * {@link org.ascape.model.event.ScapeListener#scapeInitialized}.
+	 * 
+	 * @param file
+	 *            checkpoint file written by {@link #writeCheckpoint(File)}
+	 * @return iteration the checkpoint was written at
+	 * @throws IOException
+	 *             if problem reading, or the checkpoint does not match this
+	 *             scape
+	 */
+	public int restoreCheckpoint(File file) throws IOException {
+		return resumeAt(ScapeCheckpoint.read(this, file));
+	}
+
+	/**
+	 * Restore the agents' state from a checkpoint stream and continue the
+	 * current run from the checkpoint's iteration. See
+	 * {@link #restoreCheckpoint(File)}.
+	 * 
+	 * @param stream
+	 *            stream written by {@link #writeCheckpoint(OutputStream)}.
+	 *            Closed once read.
+	 * @param source
+	 *            description of the stream, used in error messages
+	 * @return iteration the checkpoint was written at
+	 * @throws IOException
+	 *             if problem reading, or the checkpoint does not match this
+	 *             scape
+	 */
+	public int restoreCheckpoint(InputStream stream, String source)
+			throws IOException {
+		return resumeAt(ScapeCheckpoint.read(this, stream, source));
+	}
+
+	private int resumeAt(int iteration) {
+		if (rootStopPeriod == -1) {
+			rootStopPeriod = getRoot().getStopPeriod();
+		}
+
+		iterationOffset = iteration - super.getIteration();
+		setRootStopPeriod(rootStopPeriod - iterationOffset);
+		return iteration;
+	}
+
+	private void setRootStopPeriod(int stopPeriod) {
+		if (stopPeriod == -1 || getRoot().getStopPeriod() == stopPeriod) {
+			return;
+		}
+
+		try {
+			getRoot().setStopPeriod(stopPeriod);
+		} catch (SpatialTemporalException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Set the Navigator Tree Builder here. At this point the SwingEnvironment
 	 * exists. We can't do this in {@link #createGraphicViews()} because at that
@@ -263,7 +915,9 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 	 */
 	@Override
 	public void createScape() {
-		AscapeGUIUtil.setNavigatorTreeBuilder(treeBuilder);
+		if (!loader.isHeadless()) {
+			AscapeGUIUtil.setNavigatorTreeBuilder(treeBuilder);
+		}
 	}
 
 	@Override
@@ -289,9 +943,15 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 	 */
 	public void setGlobalSubgroupFilterExpression(String subgroupExpression) {
 		try {
-			String rCmd = StringUtil.functionCall("setGlobalSubgroupFilterExpression", StringUtil.doublequote(subgroupExpression));
+			String rCmd =
+					StringUtil.functionCall(
+							"setGlobalSubgroupFilterExpression",
+							StringUtil.doublequote(subgroupExpression));
 			System.out.println(rCmd);
 			scapeR.eval(rCmd);
+
+			// outputs are filtered by the subgroup
+			scapeR.invalidateOutputCache();
 			} catch (RFaceException e) {
 				e.printStackTrace();
 		}
@@ -341,7 +1001,8 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 	/**
 	 * Add a {@link OutputDatasetProvider} which provides nodes at the end of
 	 * runs/simulation under a particular node group under the output tables
-	 * node.
+	 * node. When headless, the results are instead written to the output
+	 * directory by a {@link OutputDatasetFileWriter}.
 	 * 
 	 * @param provider
 	 *            provider
@@ -352,6 +1013,14 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 	public void addOutputDataset(OutputDatasetProvider provider,
 			String nodeGroupName) {
 
+		if (loader.isHeadless()) {
+			OutputDatasetFileWriter writer =
+					new OutputDatasetFileWriter(this, provider);
+			fileWriters.add(writer);
+			addView(writer);
+			return;
+		}
+
 		OutputDatasetNodeProvider datasetNode = new OutputDatasetNodeProvider(
 				this, provider);
 
@@ -360,6 +1029,15 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 
 	}
 
+	/**
+	 * Get the writers of the output datasets added when headless.
+	 * 
+	 * @return output dataset file writers
+	 */
+	public List<OutputDatasetFileWriter> getOutputDatasetFileWriters() {
+		return fileWriters;
+	}
+
 	/**
 	 * Setup a scape listener that adds provider as a node under "Output tables"
 	 * at the end of all runs.
@@ -390,7 +1068,8 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 	 * @param createTablesPanel
 	 * 			  table builder panel provider
 	 */
-	public void setCreateTableOptionsPanelView(PanelViewProvider createTablesPanel){
+	public void setCreateTableOptionsPanelView(
+			PanelViewProvider createTablesPanel) {
 		this.createTablePanel = createTablesPanel;
 	}
 
@@ -443,19 +1122,28 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 			throw new RuntimeException(e);
 		}
 
-		// Save weight calculator name to prefs
-		prefs.put(WeightCalculator.WCALC_KEY, wcalc.getName());
+		// Save weight calculator name to prefs, which are not used when
+		// headless
+		if (!loader.isHeadless()) {
+			prefs.put(WeightCalculator.WCALC_KEY, wcalc.getName());
+		}
 	}
 
 	/**
 	 * Called after weights have changed (and after all children have been
-	 * reweighted). Here we update the scape dataframe in R.
+	 * reweighted). Here we update the scape dataframe in R. If
+	 * {@link #isTrackColumnChanges()}, only the weight columns, and any other
+	 * changed columns, are reassigned.
 	 * 
 	 */
 	@Override
 	public void update(Observable o, Object arg) {
+		for (String column : weightColumns) {
+			markColumnChanged(column);
+		}
+
 		try {
-			scapeR.assignScapeDataFrame(0);
+			scapeR.assignScapeDataFrameChanges(0, false);
 		} catch (RFaceException e) {
 			throw new RuntimeException(e);
 		}
@@ -472,7 +1160,8 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 				"Scenario Builder", "Scenario Builder");
 		action.putValue(Action.SMALL_ICON,
 				DesktopEnvironment.getIcon("Scales"));
-		action.putValue(Action.ACCELERATOR_KEY,KeyStroke.getKeyStroke(KeyEvent.VK_E, ActionEvent.CTRL_MASK));
+		action.putValue(Action.ACCELERATOR_KEY,
+				KeyStroke.getKeyStroke(KeyEvent.VK_E, ActionEvent.CTRL_MASK));
 		
 		((RootScape)this.getRoot()).addToolsMenuAction(action);
 	}
@@ -489,11 +1178,13 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 		PanelViewAction tbAction = new PanelViewAction(provider,
 				"Table Builder", "Table Builder");
 		
-		//createTableAction.putValue(Action.SMALL_ICON, createImageIcon("tableicon.gif", "a table icon"));
+		// createTableAction.putValue(Action.SMALL_ICON,
+		// createImageIcon("tableicon.gif", "a table icon"));
 		
 		tbAction.putValue(Action.SMALL_ICON,
 				DesktopEnvironment.getIcon("Sheet"));
-		tbAction.putValue(Action.ACCELERATOR_KEY,KeyStroke.getKeyStroke(KeyEvent.VK_T, ActionEvent.CTRL_MASK));
+		tbAction.putValue(Action.ACCELERATOR_KEY,
+				KeyStroke.getKeyStroke(KeyEvent.VK_T, ActionEvent.CTRL_MASK));
 		
 		((RootScape)this.getRoot()).addToolsMenuAction(tbAction);
 
@@ -554,7 +1245,7 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 		setScapeData(scapeData);
 		MicroSimCell.setData(scapeData);
 
-		loadBasefile(prefs.get(BASEFILE_KEY, ""));
+		loadBasefile(loader.getLocation(BASEFILE_KEY));
 	}
 
 	/**
@@ -598,6 +1289,10 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 		// if the new base file doesn't exist then show a file chooser
 		// dialog for the user to select one
 		if (!newBaseFile.exists()) {
+			if (loader.isHeadless()) {
+				throw new FileNotFoundException("Base file [" + bfileName
+						+ "] does not exist");
+			}
 			newBaseFile = loader.showOpenDialog("Select base file to load",
 					null, CBuildFromFile.FileTypeFactories.getFilter());
 		}
@@ -624,7 +1319,7 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 			println("Done. " + size() + " " + getName() + " created.");
 
 			// save the base file to the prefs
-			prefs.put(BASEFILE_KEY, basefile.getPath());
+			loader.putLocation(BASEFILE_KEY, basefile.getPath());
 		}
 
 	}
@@ -676,13 +1371,23 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 		// strOutputDir will be null when editing the base file text area in the
 		// model parameters, before enter is pressed
 		// strOutputDir will be the empty string "" when there are no saved
-		// preferences
+		// preferences, or when headless without an output directory setting,
+		// in which case the working directory is used
 		if (strOutputDir != null) {
-			File fOutputDir = new File(strOutputDir);
+			File fOutputDir =
+					strOutputDir.length() == 0 && loader.isHeadless()
+							? new File(System.getProperty("user.dir"))
+							: new File(strOutputDir);
 
 			// if the directory doesn't exist then show a file chooser
-			// dialog for the user to select one
-			if (!fOutputDir.exists()) {
+			// dialog for the user to select one, or if headless create it
+			if (!fOutputDir.exists() && loader.isHeadless()) {
+				if (!fOutputDir.mkdirs()) {
+					throw new IllegalArgumentException(
+							"Cannot create output directory [" + strOutputDir
+									+ "]");
+				}
+			} else if (!fOutputDir.exists()) {
 				fOutputDir = loader.showOpenDialogForDirectories(
 						"Select output directory", null);
 			}
@@ -691,7 +1396,7 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 				this.outputDirectory = fOutputDir;
 
 				// save the base file to the prefs
-				prefs.put(OUTPUTDIR_KEY, fOutputDir.getPath());
+				loader.putLocation(OUTPUTDIR_KEY, fOutputDir.getPath());
 			}
 		}
 	}
@@ -742,8 +1447,8 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 	 *             if problem looking up {@code startUpFilePrefsKey} or
 	 *             initialising R
 	 */
-	public ScapeRInterface loadR(String dataFrameSymbol, boolean keepAllRunDFs, boolean showRMenu)
-			throws IOException {
+	public ScapeRInterface loadR(String dataFrameSymbol,
+			boolean keepAllRunDFs, boolean showRMenu) throws IOException {
 
 		// load R
 
@@ -767,6 +1472,7 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 		// create R scape interface
 		scapeR = new ScapeRInterface(rLoader, this, dataFrameSymbol,
 				keepAllRunDFs);
+		scapeR.setLazyDataFrame(lazyDataFrame);
 
 		rLoader.ascapeStart();
 
@@ -779,7 +1485,9 @@ public class MicroSimScape<D extends ScapeData> extends Scape implements
 		}
 
 		// create R menu with R file editing functions
-		RFileInterface.getInstance(this, scapeR, loader, showRMenu);
+		if (!loader.isHeadless()) {
+			RFileInterface.getInstance(this, scapeR, loader, showRMenu);
+		}
 
 		return scapeR;
 	}
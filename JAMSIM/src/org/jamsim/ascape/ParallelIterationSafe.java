@@ -0,0 +1,30 @@
+package org.jamsim.ascape;
+
+/**
+ * Agents that can be iterated at the same time as other agents of their
+ * scape, ie: {@link org.ascape.model.Agent#iterate()} only changes the agent's
+ * own state and only reads shared state such as {@link ScapeData} tables.
+ * Required by {@link MicroSimScape#setIterationThreads(int)}, which checks
+ * each agent of the scape when a run starts.
+ * <p>
+ * Any {@link org.jamsim.math.RNG} the agent draws from must be its own. A
+ * generator shared between agents may be thread safe, but the order of draws,
+ * and so the results, would then depend on thread scheduling.
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public interface ParallelIterationSafe {
+
+	/**
+	 * Whether this agent, as currently configured, can be iterated in
+	 * parallel and give the same results as when iterated sequentially, eg:
+	 * {@code false} if it draws from a random number generator shared with
+	 * other agents.
+	 * 
+	 * @return {@code true} if safe to iterate in parallel
+	 */
+	boolean isParallelIterationSafe();
+
+}
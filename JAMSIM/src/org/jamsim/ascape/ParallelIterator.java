@@ -0,0 +1,144 @@
+package org.jamsim.ascape;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.ascape.model.Agent;
+
+/**
+ * Iterates the agents of a {@link MicroSimScape} on a pool of threads, for
+ * {@link MicroSimScape#setIterationThreads(int)}. The agents are split into
+ * chunks, and {@link Agent#iterate()} is called on the chunks in parallel.
+ * The pool's threads are daemon threads, started when first needed.
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+final class ParallelIterator {
+
+	/**
+	 * Number of chunks per thread the agents are split into. More chunks than
+	 * threads evens out the load when some agents take longer to iterate than
+	 * others.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final String name;
+
+	private final int threads;
+
+	private ExecutorService pool;
+
+	/**
+	 * Construct a {@link ParallelIterator}.
+	 *
+	 * @param name
+	 *            name of the scape, used to name the threads
+	 * @param threads
+	 *            number of threads
+	 */
+	ParallelIterator(String name, int threads) {
+		this.name = name;
+		this.threads = threads;
+	}
+
+	/**
+	 * Iterate agents on the pool. Returns once all agents are iterated.
+	 *
+	 * @param agents
+	 *            agents to iterate
+	 * @param length
+	 *            number of agents to iterate
+	 */
+	void iterate(Object[] agents, int length) {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, name + " iteration");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+		int chunks = Math.min(length, threads * CHUNKS_PER_THREAD);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+
+		for (int i = 0; i < chunks; i++) {
+			tasks.add(new IterateChunk(agents, (int) ((long) i * length
+					/ chunks), (int) ((long) (i + 1) * length / chunks)));
+		}
+
+		try {
+			for (Future<Object> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Iterate agents one after the other on the calling thread.
+	 *
+	 * @param agents
+	 *            agents to iterate
+	 * @param length
+	 *            number of agents to iterate
+	 */
+	static void iterateSequentially(Object[] agents, int length) {
+		new IterateChunk(agents, 0, length).call();
+	}
+
+	/**
+	 * Stop the pool's threads.
+	 */
+	void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Iterates a range of agents.
+	 */
+	private static class IterateChunk implements Callable<Object> {
+
+		private final Object[] agents;
+		private final int from;
+		private final int to;
+
+		public IterateChunk(Object[] agents, int from, int to) {
+			this.agents = agents;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Object call() {
+			for (int i = from; i < to; i++) {
+				Agent agent = (Agent) agents[i];
+				if (!agent.isDelete()) {
+					agent.iterate();
+				}
+			}
+			return null;
+		}
+	}
+
+}
@@ -2,6 +2,7 @@ package org.jamsim.ascape;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Observer;
 import java.util.prefs.Preferences;
@@ -18,6 +19,7 @@ import org.ascape.model.space.ListSpace;
 import org.ascape.model.space.SpatialTemporalException;
 import org.ascape.util.swing.AscapeGUIUtil;
 import org.jamsim.ascape.output.OutputDatasetDefs;
+import org.jamsim.ascape.output.OutputDatasetFileWriter;
 import org.jamsim.ascape.r.ScapeRInterface;
 import org.jamsim.ascape.r.ScapeRListener;
 import org.jamsim.ascape.ui.ToolsMenu;
@@ -31,6 +33,7 @@ import org.jamsim.io.FileLoader;
 import org.jamsim.shared.InvalidDataException;
 import org.omancode.r.RFaceException;
 import org.omancode.util.io.Output;
+import org.omancode.util.io.OutputToPrintStream;
 
 /**
  * Root scape that initialises and loads agents into a base microsimulation
@@ -60,7 +63,16 @@ public class RootScape<D extends ScapeData> extends Scape {
 
 	private final MutableInt numberRuns = new MutableInt(2);
 
-	private final int numIterations;
+	private int numIterations;
+
+	private ScenarioBranchController branchController;
+
+	/**
+	 * Listener added by
+	 * {@link #addScapeRListener(String, String, String, String, String)}, or
+	 * {@code null} if none.
+	 */
+	private ScapeRListener scapeRListener;
 
 	/**
 	 * Initialise the log here even though we don't use it (commons-beanutils
@@ -97,8 +109,15 @@ public class RootScape<D extends ScapeData> extends Scape {
 		// don't restart automatically when reached end of iterations
 		setAutoRestart(false);
 
-		// don't start model when ascape starts
-		setStartOnOpen(false);
+		// don't start model when ascape starts, unless headless in which
+		// case there is nobody to press start
+		setStartOnOpen(RunAscape.isHeadless());
+
+		if (RunAscape.isHeadless()) {
+			BatchSettings batch = RunAscape.getBatchSettings();
+			numIterations = batch.getNumberIterations(numIterations);
+			numberRuns.setValue(batch.getNumberRuns(numberRuns.intValue()));
+		}
 
 		// specify iterations
 		try {
@@ -107,6 +126,16 @@ public class RootScape<D extends ScapeData> extends Scape {
 			throw new RuntimeException(e.getMessage(), e);
 		}
 
+		if (RunAscape.isHeadless()) {
+			// no console view, and file locations come from the batch
+			// settings instead of the prefs
+			consoleOutput = new OutputToPrintStream();
+			loader =
+					new FileLoader(this.getClass(), consoleOutput, RunAscape
+							.getBatchSettings().getFileLocations());
+			return;
+		}
+
 		// set up console output
 		consoleOutput = new ConsoleOutput(this.getRunner().getEnvironment()
 				.getConsole());
@@ -160,12 +189,20 @@ public class RootScape<D extends ScapeData> extends Scape {
 		// method on each agent doesn't get called
 		msscape.addRule(ITERATE_RULE);
 
+		if (RunAscape.isHeadless()) {
+			msscape.setIterationThreads(RunAscape.getBatchSettings()
+					.getNumberIterationThreads(1));
+			msscape.setActiveOnly(RunAscape.getBatchSettings().isActiveOnly(
+					false));
+		}
+
 		return msscape;
 	}
 
 	/**
 	 * Setup a panel view containing a set of weight calculators, and set the
-	 * weight calculator to that specified in the preferences.
+	 * weight calculator to that specified in the preferences, or when
+	 * headless in the {@link BatchSettings}.
 	 * 
 	 * @param wcalcsvarmaps
 	 *            map of weight calculators
@@ -173,7 +210,7 @@ public class RootScape<D extends ScapeData> extends Scape {
 	public void setupWeightCalculators(
 			Map<String, Map<String, WeightCalculator>> wcalcsvarmaps,
 			Map subgroupsToOptions) {
-		if (wcalcsvarmaps != null) {
+		if (wcalcsvarmaps != null && !loader.isHeadless()) {
 			ScenarioBuilder wcalcPanel = new ScenarioBuilder(wcalcsvarmaps,
 					subgroupsToOptions, msscape);
 
@@ -186,8 +223,11 @@ public class RootScape<D extends ScapeData> extends Scape {
 				}
 			}
 		}
-		WeightCalculator currentCalc = selectWeightCalculatorFromPrefs(
-				wcalcsvarmaps, loader.getPrefs());
+		WeightCalculator currentCalc =
+				RunAscape.isHeadless() ? selectWeightCalculatorFromBatch(
+						wcalcsvarmaps, RunAscape.getBatchSettings())
+						: selectWeightCalculatorFromPrefs(wcalcsvarmaps,
+								loader.getPrefs());
 		try {
 			msscape.setWeightCalculator(currentCalc);
 		} catch (InvalidDataException e) {
@@ -216,12 +256,46 @@ public class RootScape<D extends ScapeData> extends Scape {
 			Map<String, Map<String, WeightCalculator>> wcalcsvarmaps,
 			Preferences prefs) {
 
+		return selectWeightCalculator(wcalcsvarmaps, prefs.get(
+				WeightCalculator.WCALC_KEY, ""));
+	}
+
+	/**
+	 * Select weight calculator specified in the batch settings from the
+	 * supplied map of weight calculators. Unlike the preferences, a name that
+	 * is not one of the weight calculators is an error.
+	 * 
+	 * @param wcalcsvarmaps
+	 *            map of weight calculators
+	 * @param settings
+	 *            batch settings
+	 * @return current weight calculator, or the first weight calculator if
+	 *         the batch settings don't specify one
+	 */
+	public static WeightCalculator selectWeightCalculatorFromBatch(
+			Map<String, Map<String, WeightCalculator>> wcalcsvarmaps,
+			BatchSettings settings) {
+		String wcalcName = settings.getWeightCalculatorName();
+
+		if (wcalcName != null && wcalcsvarmaps != null
+				&& wcalcsvarmaps.get(wcalcName) == null) {
+			throw new IllegalArgumentException("Batch parameter \""
+					+ BatchSettings.WEIGHT_CALCULATOR_KEY + "\" is not one of "
+					+ wcalcsvarmaps.keySet() + ": " + wcalcName);
+		}
+
+		return selectWeightCalculator(wcalcsvarmaps, wcalcName == null ? ""
+				: wcalcName);
+	}
+
+	private static WeightCalculator selectWeightCalculator(
+			Map<String, Map<String, WeightCalculator>> wcalcsvarmaps,
+			String wcalcName) {
+
 		if (wcalcsvarmaps == null || wcalcsvarmaps.isEmpty()) {
 			throw new IllegalStateException("No weight calculators defined.");
 		}
 
-		String wcalcName = prefs.get(WeightCalculator.WCALC_KEY, "");
-
 		WeightCalculator wcalc;
 
 		if (wcalcName.equals("") ||  wcalcsvarmaps.get(wcalcName) == null) {
@@ -298,14 +372,23 @@ public class RootScape<D extends ScapeData> extends Scape {
 	 * @param rSimEndCommand
 	 *            R command to run at the end of the simulation (ie: end of all
 	 *            runs), or {@code null}.
+	 * @throws IllegalStateException
+	 *             if scenario branching has already been enabled
 	 */
 	public void addScapeRListener(String rIterationEndCommand,
 			String rSimBeginCommand, String rRunBeginCommand,
 			String rRunEndCommand, String rSimEndCommand) {
+		if (branchController != null) {
+			throw new IllegalStateException("Add the scape R listener "
+					+ "before enabling scenario branching");
+		}
+
 		try {
-			msscape.addView(new ScapeRListener(scapeR, rIterationEndCommand,
-					rSimBeginCommand, rRunBeginCommand, rRunEndCommand,
-					rSimEndCommand));
+			scapeRListener =
+					new ScapeRListener(scapeR, rIterationEndCommand,
+							rSimBeginCommand, rRunBeginCommand,
+							rRunEndCommand, rSimEndCommand);
+			msscape.addView(scapeRListener);
 		} catch (RFaceException e) {
 			throw new RuntimeException(e);
 		}
@@ -357,6 +440,255 @@ public class RootScape<D extends ScapeData> extends Scape {
 		}
 	}
 
+	/**
+	 * When headless, {@link #createGraphicViews()} is never called so add
+	 * listeners via {@link #createBatchViews()}, a {@link CheckpointListener}
+	 * if the batch settings specify checkpoints, and then the multi run
+	 * controller. If the batch settings specify more than one thread and
+	 * {@link #createRunFactory()} is implemented, runs are executed
+	 * concurrently by a {@link ConcurrentRunController} instead, unless the
+	 * scape is set up to do something concurrent runs don't (see
+	 * {@link #getConcurrentRunsUnsupportedReason()}), in which case they are
+	 * executed sequentially so the results are the same.
+	 */
+	@Override
+	public void createNonGraphicViews() {
+		super.createNonGraphicViews();
+
+		if (RunAscape.isHeadless()) {
+			createBatchViews();
+
+			int numThreads = RunAscape.getBatchSettings().getNumberThreads(1);
+			RunFactory<D> factory = numThreads > 1 ? createRunFactory() : null;
+
+			if (factory != null) {
+				String reason = getConcurrentRunsUnsupportedReason();
+				if (reason != null) {
+					consoleOutput.println("Executing runs sequentially, "
+							+ "because " + reason);
+					factory = null;
+				}
+			}
+
+			// add multi run controller. this must be added AFTER any output
+			// datasets/nodes. Closes the runner after the last run.
+			if (factory == null) {
+				BatchSettings batch = RunAscape.getBatchSettings();
+				int[] checkpoints = batch.getCheckpointIterations();
+				File resumeFrom = batch.getResumeCheckpoint();
+
+				if (checkpoints.length > 0 || resumeFrom != null) {
+					addCheckpointListener(checkpoints, resumeFrom);
+				}
+
+				msscape.addView(new MultipleRunController(numberRuns, true));
+			} else {
+				msscape.addView(new ConcurrentRunController(
+						createConcurrentRunExecutor(factory, numThreads),
+						numberRuns));
+			}
+		}
+	}
+
+	/**
+	 * Why runs can't be executed concurrently, if the base scape is set up to
+	 * do something during iterations, which a {@link ConcurrentRunExecutor}
+	 * does not report, ie: an R iteration end command, or events, or to
+	 * iterate its agents other than by calling {@link Agent#iterate()} on
+	 * one thread, or if checkpoints are to be written or resumed from. R run
+	 * and simulation commands, stat collectors, output datasets, the weight
+	 * calculator and iterating active agents only are supported.
+	 * 
+	 * @return reason, or {@code null} if runs can be executed concurrently
+	 */
+	protected String getConcurrentRunsUnsupportedReason() {
+		if (scapeRListener != null && scapeRListener.hasIterationCommand()) {
+			return "the scape R listener has an iteration end command";
+		}
+
+		if (msscape.getEventScheduler() != null) {
+			return "the scape has an event scheduler";
+		}
+
+		Object[] rules = msscape.getRules().getSelection();
+		if (rules.length != 1 || rules[0] != ITERATE_RULE) {
+			return "the scape has rules other than the iterate rule";
+		}
+
+		if (msscape.getIterationThreads() > 1) {
+			return "the scape iterates agents on more than one thread";
+		}
+
+		if (RunAscape.isHeadless()) {
+			BatchSettings batch = RunAscape.getBatchSettings();
+			if (batch.getCheckpointIterations().length > 0
+					|| batch.getResumeCheckpoint() != null) {
+				return "the batch settings write or resume from checkpoints";
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Write checkpoints of the base scape at the end of the given iterations,
+	 * and/or resume each run from a checkpoint. Checkpoints are not written or
+	 * restored by concurrent runs, so batch settings that specify checkpoints
+	 * execute runs sequentially (see
+	 * {@link #getConcurrentRunsUnsupportedReason()}).
+	 * 
+	 * @param checkpointIterations
+	 *            iterations at the end of which a checkpoint is written, or an
+	 *            empty array for none
+	 * @param resumeFrom
+	 *            checkpoint to resume each run from, or {@code null} to start
+	 *            each run from the first iteration
+	 */
+	public void addCheckpointListener(int[] checkpointIterations,
+			File resumeFrom) {
+		msscape.addView(new CheckpointListener(msscape, checkpointIterations,
+				resumeFrom));
+	}
+
+	/**
+	 * Branch scenario runs started from the {@link ScenarioBuilder} from
+	 * checkpoints of the base simulation, instead of simulating every
+	 * iteration again. See {@link ScenarioBranchController}. The scape R
+	 * listener, if any, replays its iteration end command for the iterations
+	 * a branched run skips, so call after
+	 * {@link #addScapeRListener(String, String, String, String, String)}.
+	 * 
+	 * @param checkpointInterval
+	 *            number of iterations between base simulation checkpoints
+	 * @param directory
+	 *            directory to write base simulation checkpoints to, or
+	 *            {@code null} to keep them in memory
+	 * @throws UnsupportedOperationException
+	 *             if the scape data RNG is not a
+	 *             {@link org.jamsim.math.RestorableRNG}, eg: a model run
+	 *             without a seed that shares a
+	 *             {@link org.jamsim.math.ColtRNG}
+	 */
+	public void enableScenarioBranching(int checkpointInterval,
+			File directory) {
+		branchController =
+				new ScenarioBranchController(msscape, checkpointInterval,
+						directory);
+		msscape.addView(branchController);
+
+		if (scapeRListener != null) {
+			branchController.addIterationRecorder(scapeRListener);
+		}
+	}
+
+	/**
+	 * Get the scenario branch controller.
+	 * 
+	 * @return scenario branch controller, or {@code null} if scenario
+	 *         branching is not enabled
+	 */
+	public ScenarioBranchController getScenarioBranchController() {
+		return branchController;
+	}
+
+	/**
+	 * Create the {@link RunFactory} used when runs are executed concurrently.
+	 * Subclasses that support concurrent runs override this to return a
+	 * factory that creates a new {@link ScapeData} for each run. For the
+	 * results to be the same as sequential runs, agents must draw from the
+	 * same random number streams in both, eg: streams keyed by
+	 * {@link MicroSimCell#getRun()}, and must not depend on scape listeners
+	 * other than the scape R listener and output datasets.
+	 * 
+	 * @return run factory, or {@code null} if concurrent runs are not
+	 *         supported
+	 */
+	protected RunFactory<D> createRunFactory() {
+		return null;
+	}
+
+	/**
+	 * Create a {@link ConcurrentRunExecutor} that loads each run's agents from
+	 * the base scape's base file. Each completed run is assigned to the run's
+	 * dataframe in R (if R is loaded), then passed to the scape R listener (if
+	 * any) and the output datasets added when headless.
+	 * 
+	 * @param factory
+	 *            creates the {@link ScapeData} for each run
+	 * @param numThreads
+	 *            number of runs executed at the same time
+	 * @return executor
+	 */
+	public ConcurrentRunExecutor<D> createConcurrentRunExecutor(
+			RunFactory<D> factory, int numThreads) {
+		ConcurrentRunExecutor<D> executor =
+				new ConcurrentRunExecutor<D>(factory, new File(msscape
+						.getBasefile()), numIterations, numThreads,
+						consoleOutput);
+
+		if (msscape.getWeightCalculator() != null) {
+			executor.setWeightCalculator(msscape.getWeightCalculator());
+		}
+		executor.setActiveOnly(msscape.isActiveOnly());
+
+		if (scapeR != null) {
+			executor.addRunListener(new RunListener() {
+				@Override
+				public Object runInitialized(int run,
+						List<? extends MicroSimCell<?>> agents) {
+					return null;
+				}
+
+				@Override
+				public void runStarted(int run, Object initialState)
+						throws IOException {
+					// so a deferred dataframe of the template scape doesn't
+					// replace the run's dataframe
+					scapeR.materializeScapeDataFrame();
+				}
+
+				@Override
+				public void runCompleted(int run,
+						List<? extends MicroSimCell<?>> agents)
+						throws IOException {
+					scapeR.assignDataFrame(scapeR.getScapeDFRunName(run),
+							agents, msscape.getPrototypeAgent().getClass()
+									.getSuperclass());
+					scapeR.snapshotScapeDataFrame(run);
+				}
+
+				@Override
+				public void allRunsCompleted(int runs) {
+					// nothing to do
+				}
+			});
+		}
+
+		// after the dataframe is assigned, and before the output datasets so
+		// the simulation end command follows their multi-run results
+		if (scapeRListener != null) {
+			executor.addRunListener(scapeRListener);
+		}
+
+		for (OutputDatasetFileWriter writer : msscape
+				.getOutputDatasetFileWriters()) {
+			executor.addRunListener(writer);
+		}
+
+		return executor;
+	}
+
+	/**
+	 * Add listeners required when running headless, eg:
+	 * {@link #addScapeRListener(String, String, String, String, String)}.
+	 * Called instead of {@link #createGraphicViews()} when headless. Output
+	 * datasets added via {@link #addOutputDatasets(OutputDatasetDefs)} are
+	 * written to the output directory.
+	 */
+	protected void createBatchViews() {
+		// subclasses override to add listeners
+	}
+
 	/**
 	 * Add a {@link ScapeRCommand} to the Analysis menu.
 	 * 
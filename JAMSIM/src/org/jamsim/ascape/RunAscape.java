@@ -1,5 +1,7 @@
 package org.jamsim.ascape;
 
+import java.io.IOException;
+
 import org.ascape.model.Scape;
 
 /**
@@ -10,6 +12,12 @@ import org.ascape.model.Scape;
  */
 public final class RunAscape {
 
+	/**
+	 * Settings of the current headless run, or {@code null} if running with
+	 * the Swing GUI.
+	 */
+	private static BatchSettings batchSettings;
+
 	private RunAscape() {
 		// no instantiation
 	}
@@ -28,6 +36,68 @@ public final class RunAscape {
 	 */
 	public static void start(Class<? extends Scape> scapeClass) {
 
+		printSysInfo();
+
+		String[] ascapeArgs = { scapeClass.getName() };
+
+		org.ascape.runtime.swing.SwingRunner.main(ascapeArgs);
+	}
+
+	/**
+	 * Start the supplied scape without a GUI via
+	 * org.ascape.runtime.NonGraphicRunner. Run parameters and file locations
+	 * are taken from {@code args} (see {@link BatchSettings#fromArgs(String[])}
+	 * ) instead of the preferences and file choosers. The scape starts when
+	 * opened and the runner closes after the last run.
+	 * 
+	 * @param scapeClass
+	 *            the scape to start
+	 * @param args
+	 *            properties files and/or {@code key=value} run parameters
+	 * @throws IOException
+	 *             if problem reading a properties file
+	 */
+	public static void startHeadless(Class<? extends Scape> scapeClass,
+			String[] args) throws IOException {
+
+		batchSettings = BatchSettings.fromArgs(args);
+		System.setProperty("java.awt.headless", "true");
+
+		printSysInfo();
+		System.out.format("%s=%s%n", "batch", batchSettings);
+
+		String[] ascapeArgs = { scapeClass.getName() };
+
+		org.ascape.runtime.NonGraphicRunner.main(ascapeArgs);
+	}
+
+	/**
+	 * Whether the scape was started by
+	 * {@link #startHeadless(Class, String[])}, ie: there is no Swing GUI.
+	 * 
+	 * @return {@code true} if running headless
+	 */
+	public static boolean isHeadless() {
+		return batchSettings != null;
+	}
+
+	/**
+	 * Get the settings of the current headless run.
+	 * 
+	 * @return batch settings
+	 */
+	public static BatchSettings getBatchSettings() {
+		if (batchSettings == null) {
+			throw new IllegalStateException("Not running headless.");
+		}
+		return batchSettings;
+	}
+
+	/**
+	 * If the system property {@code sysInfo} is set output basic system
+	 * environment info.
+	 */
+	private static void printSysInfo() {
 		if (System.getProperty("sysInfo") != null) {
 
 			// output diagnosis information
@@ -44,10 +114,6 @@ public final class RunAscape {
 			System.out.format("%s=%s%n", "user.dir",
 					System.getProperty("user.dir"));
 		}
-
-		String[] ascapeArgs = { scapeClass.getName() };
-
-		org.ascape.runtime.swing.SwingRunner.main(ascapeArgs);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package org.jamsim.ascape;
+
+import java.io.IOException;
+
+/**
+ * Creates the {@link ScapeData} for a single independent run executed by a
+ * {@link ConcurrentRunExecutor}. Each run must get its own {@link ScapeData}
+ * with its own {@link org.jamsim.math.RNG} stream, so that runs executing at
+ * the same time share no mutable state.
+ * 
+ * @param <D>
+ *            a scape data class that defines data external to the scape for use
+ *            by agents, and for loading agents.
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public interface RunFactory<D extends ScapeData> {
+
+	/**
+	 * Create the {@link ScapeData} for {@code run}. Called on the thread that
+	 * calls {@link ConcurrentRunExecutor#execute(int)}, one run at a time, so
+	 * implementations need not be thread-safe.
+	 * 
+	 * @param run
+	 *            run number, starting at 1
+	 * @return scape data for the run
+	 * @throws IOException
+	 *             if problem loading data
+	 */
+	D createScapeData(int run) throws IOException;
+
+}
@@ -0,0 +1,78 @@
+package org.jamsim.ascape;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the events of runs executed by a {@link ConcurrentRunExecutor}.
+ * Apart from {@link #runInitialized(int, List)}, methods are called on the
+ * thread that calls {@link ConcurrentRunExecutor#execute(int)}, in run order,
+ * regardless of the order in which runs finish. For each run every listener's
+ * {@link #runStarted(int, Object)} is called, then every listener's
+ * {@link #runCompleted(int, List)}, so the listeners see the same sequence of
+ * events as scape listeners of a sequential simulation.
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public interface RunListener {
+
+	/**
+	 * Called on the worker thread executing the run, once the run's agents
+	 * have been initialised and before they are iterated, eg: to capture the
+	 * agents' initial state. Must not change the agents, or anything shared
+	 * with other runs.
+	 * 
+	 * @param run
+	 *            run number, starting at 1
+	 * @param agents
+	 *            the run's agents at the start of the run
+	 * @return state passed to {@link #runStarted(int, Object)}, or
+	 *         {@code null}
+	 * @throws IOException
+	 *             if problem capturing the state
+	 */
+	Object runInitialized(int run, List<? extends MicroSimCell<?>> agents)
+			throws IOException;
+
+	/**
+	 * Called when a run has finished and all earlier runs have been reported,
+	 * before {@link #runCompleted(int, List)}.
+	 * 
+	 * @param run
+	 *            run number, starting at 1
+	 * @param initialState
+	 *            state returned by {@link #runInitialized(int, List)}
+	 * @throws IOException
+	 *             if problem processing the state
+	 */
+	void runStarted(int run, Object initialState) throws IOException;
+
+	/**
+	 * Called when a run has finished and all earlier runs have been reported.
+	 * 
+	 * @param run
+	 *            run number, starting at 1
+	 * @param agents
+	 *            the run's agents at the end of the run
+	 * @throws IOException
+	 *             if problem processing results
+	 */
+	void runCompleted(int run, List<? extends MicroSimCell<?>> agents)
+			throws IOException;
+
+	/**
+	 * Called after the last run has been reported. Listeners are called in
+	 * the reverse of the order they were added, so a listener added before
+	 * the output datasets, eg: one that executes the R simulation end
+	 * command, follows their multi-run results as it would in a sequential
+	 * simulation.
+	 * 
+	 * @param numberRuns
+	 *            number of runs completed
+	 * @throws IOException
+	 *             if problem processing results
+	 */
+	void allRunsCompleted(int numberRuns) throws IOException;
+
+}
@@ -0,0 +1,333 @@
+package org.jamsim.ascape;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import org.jamsim.ascape.columnar.AgentTable;
+import org.jamsim.ascape.columnar.ColumnarMicroSimScape;
+import org.jamsim.math.RNG;
+import org.jamsim.math.RestorableRNG;
+
+/**
+ * Reads and writes checkpoints of a {@link MicroSimScape}, ie: a compact binary
+ * file of the state of every agent and every {@link RNG} at the end of an
+ * iteration. A run can then be resumed from the checkpoint instead of being
+ * simulated again from the first iteration.
+ * <p>
+ * The state of each agent is written by
+ * {@link MicroSimCell#writeState(DataOutput)}. A checkpoint is restored into
+ * agents loaded from the same base file, in the same order, so attributes
+ * that do not change during the simulation need not be written. Whether each
+ * agent is active (see {@link MicroSimCell#deactivate()}) is also saved, as
+ * are the pending events of the scape's {@link EventScheduler}, if any. The
+ * agents of a {@link ColumnarMicroSimScape} are rows of its
+ * {@link AgentTable} rather than members, so every row is written instead
+ * (see {@link AgentTable#writeState(DataOutput)}).
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public final class ScapeCheckpoint {
+
+	/**
+	 * Identifies a checkpoint file.
+	 */
+	private static final int MAGIC = 0x4A4D4350;
+
+	private static final int VERSION = 4;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private ScapeCheckpoint() {
+		// no instantiation
+	}
+
+	/**
+	 * Write a checkpoint of {@code scape} at its current iteration.
+	 * 
+	 * @param scape
+	 *            scape
+	 * @param file
+	 *            checkpoint file to write
+	 * @throws IOException
+	 *             if problem writing
+	 */
+	public static void write(MicroSimScape<?> scape, File file)
+			throws IOException {
+		write(scape, new FileOutputStream(file));
+	}
+
+	/**
+	 * Write a checkpoint of {@code scape} at its current iteration to a
+	 * stream, eg: a {@link java.io.ByteArrayOutputStream} to keep the
+	 * checkpoint in memory. Closes the stream.
+	 * 
+	 * @param scape
+	 *            scape
+	 * @param stream
+	 *            stream to write to
+	 * @throws IOException
+	 *             if problem writing
+	 */
+	public static void write(MicroSimScape<?> scape, OutputStream stream)
+			throws IOException {
+		Object[] agents = scape.toArray();
+
+		DataOutputStream out =
+				new DataOutputStream(new BufferedOutputStream(stream,
+						BUFFER_SIZE));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(scape.getIteration());
+			out.writeUTF(getAgentClassName(scape));
+
+			RNG rng = getDataRNG(scape);
+			out.writeBoolean(rng != null);
+			if (rng != null) {
+				writeRNG(rng, out);
+			}
+
+			out.writeInt(agents.length);
+			for (Object agent : agents) {
+				MicroSimCell<?> cell = (MicroSimCell<?>) agent;
+				out.writeBoolean(cell.isActive());
+				cell.writeState(out);
+			}
+
+			AgentTable table = getAgentTable(scape);
+			out.writeBoolean(table != null);
+			if (table != null) {
+				table.writeState(out);
+			}
+
+			EventScheduler scheduler = scape.getEventScheduler();
+			out.writeBoolean(scheduler != null);
+			if (scheduler != null) {
+				scheduler.writeState(out, agents);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Restore a checkpoint written by {@link #write(MicroSimScape, File)} into
+	 * the agents of {@code scape}. The scape must hold the same number of
+	 * agents, of the same class, as when the checkpoint was written.
+	 * 
+	 * @param scape
+	 *            scape
+	 * @param file
+	 *            checkpoint file to read
+	 * @return iteration the checkpoint was written at
+	 * @throws IOException
+	 *             if problem reading, or the checkpoint does not match the
+	 *             scape
+	 */
+	public static int read(MicroSimScape<?> scape, File file)
+			throws IOException {
+		if (!file.exists()) {
+			throw new FileNotFoundException("Checkpoint " + file.getPath()
+					+ " does not exist");
+		}
+
+		return read(scape, new FileInputStream(file), file.getPath());
+	}
+
+	/**
+	 * Restore a checkpoint written by
+	 * {@link #write(MicroSimScape, OutputStream)} into the agents of
+	 * {@code scape}. Closes the stream.
+	 * 
+	 * @param scape
+	 *            scape
+	 * @param stream
+	 *            stream to read from
+	 * @param source
+	 *            description of the stream, used in error messages
+	 * @return iteration the checkpoint was written at
+	 * @throws IOException
+	 *             if problem reading, or the checkpoint does not match the
+	 *             scape
+	 */
+	public static int read(MicroSimScape<?> scape, InputStream stream,
+			String source) throws IOException {
+		Object[] agents = scape.toArray();
+
+		DataInputStream in =
+				new DataInputStream(new BufferedInputStream(stream,
+						BUFFER_SIZE));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(source + " is not a checkpoint");
+			}
+
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Checkpoint " + source
+						+ " is version " + version + ", expected " + VERSION);
+			}
+
+			int iteration = in.readInt();
+
+			String agentClassName = in.readUTF();
+			if (!agentClassName.equals(getAgentClassName(scape))) {
+				throw new IOException("Checkpoint " + source
+						+ " is of " + agentClassName + " agents, not "
+						+ getAgentClassName(scape));
+			}
+
+			RNG rng = getDataRNG(scape);
+			if (in.readBoolean() != (rng != null)) {
+				throw new IOException("Checkpoint " + source
+						+ " does not match the scape data RNG");
+			}
+			if (rng != null) {
+				readRNG(rng, in);
+			}
+
+			int numAgents = in.readInt();
+			if (numAgents != agents.length) {
+				throw new IOException("Checkpoint " + source
+						+ " has " + numAgents + " agents, scape has "
+						+ agents.length);
+			}
+
+			for (Object agent : agents) {
+				MicroSimCell<?> cell = (MicroSimCell<?>) agent;
+				cell.setActive(in.readBoolean());
+				cell.readState(in);
+			}
+
+			AgentTable table = getAgentTable(scape);
+			if (in.readBoolean() != (table != null)) {
+				throw new IOException("Checkpoint " + source
+						+ " does not match the scape agent table");
+			}
+			if (table != null) {
+				table.readState(in);
+			}
+
+			scape.rebuildActiveAgents();
+			scape.markAllColumnsChanged();
+
+			EventScheduler scheduler = scape.getEventScheduler();
+			if (in.readBoolean() != (scheduler != null)) {
+				throw new IOException("Checkpoint " + source
+						+ " does not match the scape event scheduler");
+			}
+			if (scheduler != null) {
+				scheduler.readState(in, agents);
+			}
+
+			return iteration;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Check checkpoints of {@code scape} can be written, ie: its data
+	 * {@link RNG} (if any) is a {@link RestorableRNG}. Once a run has
+	 * initialised the agents, the state of the first agent is also written
+	 * (and discarded) to check agents support checkpoints and their
+	 * {@link RNG}s are restorable.
+	 * 
+	 * @param scape
+	 *            scape
+	 * @throws UnsupportedOperationException
+	 *             if checkpoints of {@code scape} can't be written
+	 */
+	public static void checkSupported(MicroSimScape<?> scape) {
+		RNG rng = getDataRNG(scape);
+		if (rng != null) {
+			asRestorable(rng);
+		}
+
+		Iterator<?> members = scape.iterator();
+		if (scape.getRun() == 0 || !members.hasNext()) {
+			return;
+		}
+
+		try {
+			((MicroSimCell<?>) members.next()).writeState(
+					new DataOutputStream(new ByteArrayOutputStream()));
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Write the state of a {@link RNG}. For use by
+	 * {@link MicroSimCell#writeState(DataOutput)}.
+	 * 
+	 * @param rng
+	 *            random number generator
+	 * @param out
+	 *            output to write to
+	 * @throws IOException
+	 *             if problem writing
+	 * @throws UnsupportedOperationException
+	 *             if {@code rng} is not a {@link RestorableRNG}
+	 */
+	public static void writeRNG(RNG rng, DataOutput out) throws IOException {
+		asRestorable(rng).writeState(out);
+	}
+
+	/**
+	 * Restore the state of a {@link RNG}. For use by
+	 * {@link MicroSimCell#readState(DataInput)}.
+	 * 
+	 * @param rng
+	 *            random number generator
+	 * @param in
+	 *            input to read from
+	 * @throws IOException
+	 *             if problem reading
+	 * @throws UnsupportedOperationException
+	 *             if {@code rng} is not a {@link RestorableRNG}
+	 */
+	public static void readRNG(RNG rng, DataInput in) throws IOException {
+		asRestorable(rng).readState(in);
+	}
+
+	private static RestorableRNG asRestorable(RNG rng) {
+		if (!(rng instanceof RestorableRNG)) {
+			throw new UnsupportedOperationException(rng.getClass()
+					.getSimpleName()
+					+ " state cannot be saved, use a "
+					+ RestorableRNG.class.getSimpleName());
+		}
+		return (RestorableRNG) rng;
+	}
+
+	private static RNG getDataRNG(MicroSimScape<?> scape) {
+		ScapeData data = scape.getScapeData();
+		return data == null ? null : data.getRNG();
+	}
+
+	private static AgentTable getAgentTable(MicroSimScape<?> scape) {
+		return scape instanceof ColumnarMicroSimScape<?>
+				? ((ColumnarMicroSimScape<?>) scape).getTable() : null;
+	}
+
+	private static String getAgentClassName(MicroSimScape<?> scape) {
+		return scape.getPrototypeAgent().getClass().getName();
+	}
+
+}
@@ -0,0 +1,487 @@
+package org.jamsim.ascape;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.ascape.model.event.DefaultScapeListener;
+import org.ascape.model.event.ScapeEvent;
+import org.jamsim.ascape.weights.ScenarioAdjustment;
+import org.jamsim.ascape.weights.WeightCalculator;
+
+/**
+ * Branches scenario runs from checkpoints of the base simulation, so that a
+ * scenario only simulates the iterations its adjustments change.
+ * <p>
+ * While the base simulation runs (ie: a simulation with no adjustments) a
+ * checkpoint of each run is taken every {@code checkpointInterval}
+ * iterations. Checkpoints are kept in memory, or if a directory is supplied,
+ * on disk. A scenario run then restores the checkpoint of the same run taken
+ * at or before the iteration preceding its first adjusted iteration, and
+ * simulates only the remaining iterations. Checkpoints are never modified, so
+ * every scenario shares the same base simulation prefix.
+ * </p>
+ * <p>
+ * A branched run fires no iteration events for the iterations it skips. The
+ * per iteration output of {@link IterationRecorder}s added with
+ * {@link #addIterationRecorder(IterationRecorder)}, eg: the scape R
+ * listener's iteration end command, is recorded every iteration of the base
+ * simulation and replayed for the skipped iterations instead. The recordings
+ * of the iterations up to each checkpoint are kept with the checkpoint, in
+ * memory or on disk. Recordings after a run's last checkpoint are never
+ * replayed, so are discarded when the run stops. Other scape
+ * listeners, eg: charts of stat collectors, only see the iterations the
+ * branched run simulates.
+ * </p>
+ * <p>
+ * Before each simulation is started call
+ * {@link #setFirstAdjustedIteration(int)}, eg: with
+ * {@link #getFirstAdjustedIteration(Collection)} of the scenario's
+ * {@link WeightCalculator}s. Until then runs are neither recorded nor
+ * branched. Scenarios with a
+ * {@link org.jamsim.ascape.weights.CategoricalVarAdjustment} change the
+ * first iteration, so always simulate every iteration.
+ * </p>
+ * <p>
+ * Checkpoints need the scape data and agent {@link org.jamsim.math.RNG}s to
+ * be {@link org.jamsim.math.RestorableRNG}s. The data RNG is checked on
+ * construction, and the agents when the base simulation starts, rather than
+ * at its first checkpoint (see
+ * {@link ScapeCheckpoint#checkSupported(MicroSimScape)}).
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class ScenarioBranchController extends DefaultScapeListener {
+
+	private static final long serialVersionUID = 3349658064478520245L;
+
+	private final MicroSimScape<?> msscape;
+
+	private final int checkpointInterval;
+
+	private final File directory;
+
+	/**
+	 * Base simulation checkpoints, keyed by run then iteration.
+	 */
+	private final Map<Integer, TreeMap<Integer, Checkpoint>> baseline =
+			new HashMap<Integer, TreeMap<Integer, Checkpoint>>();
+
+	private final List<IterationRecorder> recorders =
+			new ArrayList<IterationRecorder>();
+
+	/**
+	 * Base simulation recordings of the {@link #recorders}, keyed by run then
+	 * the iteration of the checkpoint they precede. Each holds the recordings
+	 * of the iterations after the previous checkpoint, up to and including
+	 * the checkpoint's iteration.
+	 */
+	private final Map<Integer, TreeMap<Integer, Checkpoint>> recordings =
+			new HashMap<Integer, TreeMap<Integer, Checkpoint>>();
+
+	/**
+	 * Recordings of the current base run since its last checkpoint, or
+	 * {@code null} if none.
+	 */
+	private Checkpoint pending;
+
+	private DataOutputStream pendingOut;
+
+	/**
+	 * Whether the current simulation is the base simulation.
+	 */
+	private boolean recording = false;
+
+	/**
+	 * Last iteration of the base simulation that the current simulation
+	 * shares, or 0 if not branching.
+	 */
+	private int branchIteration = 0;
+
+	private int runNumber = 0;
+
+	/**
+	 * Construct {@link ScenarioBranchController}.
+	 * 
+	 * @param scape
+	 *            microsim scape
+	 * @param checkpointInterval
+	 *            number of iterations between base simulation checkpoints
+	 * @param directory
+	 *            directory to write base simulation checkpoints to, or
+	 *            {@code null} to keep them in memory
+	 * @throws UnsupportedOperationException
+	 *             if the scape data RNG is not restorable, so checkpoints of
+	 *             the base simulation can't be written
+	 */
+	public ScenarioBranchController(MicroSimScape<?> scape,
+			int checkpointInterval, File directory) {
+		super("Scenario Branching");
+		if (checkpointInterval < 1) {
+			throw new IllegalArgumentException("checkpointInterval ("
+					+ checkpointInterval + ") must be at least 1");
+		}
+		checkSupported(scape);
+		this.msscape = scape;
+		this.checkpointInterval = checkpointInterval;
+		this.directory = directory;
+	}
+
+	/**
+	 * Record the per iteration output of {@code recorder} during the base
+	 * simulation, and replay it for the iterations branched runs skip. Add
+	 * before the next base simulation, and after {@code recorder} has been
+	 * added to the scape, so a branched run replays once {@code recorder} has
+	 * seen the run initialised.
+	 * 
+	 * @param recorder
+	 *            iteration recorder
+	 */
+	public void addIterationRecorder(IterationRecorder recorder) {
+		recorders.add(recorder);
+	}
+
+	/**
+	 * Get the first iteration changed by a set of weight calculators. Weight
+	 * calculators that are not {@link ScenarioAdjustment}s are assumed to
+	 * change the first iteration.
+	 * 
+	 * @param wcalcs
+	 *            weight calculators of the scenario
+	 * @return first adjusted iteration, or
+	 *         {@link ScenarioAdjustment#NOT_ADJUSTED} if none are adjusted
+	 */
+	public static int getFirstAdjustedIteration(
+			Collection<? extends WeightCalculator> wcalcs) {
+		int first = ScenarioAdjustment.NOT_ADJUSTED;
+
+		for (WeightCalculator wcalc : wcalcs) {
+			if (wcalc instanceof ScenarioAdjustment) {
+				first =
+						Math.min(first, ((ScenarioAdjustment) wcalc)
+								.getFirstAdjustedIteration());
+			} else {
+				first = 1;
+			}
+		}
+
+		return first;
+	}
+
+	/**
+	 * Set the first iteration the next simulation changes. If
+	 * {@link ScenarioAdjustment#NOT_ADJUSTED} the next simulation is the base
+	 * simulation, and replaces any existing checkpoints. Otherwise runs
+	 * branch from the base simulation at the latest checkpoint before
+	 * {@code firstAdjustedIteration}.
+	 * 
+	 * @param firstAdjustedIteration
+	 *            first adjusted iteration
+	 */
+	public void setFirstAdjustedIteration(int firstAdjustedIteration) {
+		runNumber = 0;
+
+		if (firstAdjustedIteration == ScenarioAdjustment.NOT_ADJUSTED) {
+			baseline.clear();
+			recordings.clear();
+			discardPending();
+			recording = true;
+			branchIteration = 0;
+		} else {
+			recording = false;
+			branchIteration = firstAdjustedIteration - 1;
+		}
+	}
+
+	/**
+	 * Branch the run from the base simulation, if there is a checkpoint to
+	 * branch from, and replay the recorded output of the iterations skipped.
+	 * 
+	 * @param scapeEvent
+	 *            scape event
+	 */
+	@Override
+	public void scapeInitialized(ScapeEvent scapeEvent) {
+		runNumber++;
+
+		if (recording) {
+			checkSupported(msscape);
+			discardPending();
+		}
+
+		if (branchIteration < 1) {
+			return;
+		}
+
+		TreeMap<Integer, Checkpoint> runCheckpoints = baseline.get(runNumber);
+		if (runCheckpoints == null) {
+			return;
+		}
+
+		Map.Entry<Integer, Checkpoint> entry =
+				runCheckpoints.floorEntry(branchIteration);
+		if (entry == null) {
+			return;
+		}
+
+		try {
+			msscape.restoreCheckpoint(entry.getValue().open(),
+					"base simulation run " + runNumber + " iteration "
+							+ entry.getKey());
+			replay(entry.getKey());
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+
+		System.out.println("Branched run " + runNumber
+				+ " from the base simulation at iteration " + entry.getKey());
+	}
+
+	/**
+	 * Replay the recorded output of the current run's iterations up to and
+	 * including {@code lastIteration}.
+	 * 
+	 * @param lastIteration
+	 *            last skipped iteration
+	 * @throws IOException
+	 *             if problem replaying
+	 */
+	private void replay(int lastIteration) throws IOException {
+		TreeMap<Integer, Checkpoint> runRecordings = recordings.get(runNumber);
+		if (runRecordings == null) {
+			return;
+		}
+
+		for (Map.Entry<Integer, Checkpoint> entry : runRecordings.headMap(
+				lastIteration, true).entrySet()) {
+			DataInputStream in =
+					new DataInputStream(new BufferedInputStream(entry
+							.getValue().open()));
+			try {
+				int iteration;
+				do {
+					iteration = in.readInt();
+					for (IterationRecorder recorder : recorders) {
+						recorder.replayIteration(runNumber, iteration, in);
+					}
+				} while (iteration < entry.getKey());
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Record the output of the base simulation every iteration, and take a
+	 * checkpoint every {@code checkpointInterval} iterations.
+	 * 
+	 * @param scapeEvent
+	 *            scape event
+	 */
+	@Override
+	public void scapeIterated(ScapeEvent scapeEvent) {
+		int iteration = msscape.getIteration();
+
+		if (!recording) {
+			return;
+		}
+
+		try {
+			record(iteration);
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+
+		if (iteration % checkpointInterval != 0) {
+			return;
+		}
+
+		TreeMap<Integer, Checkpoint> runCheckpoints = baseline.get(runNumber);
+		if (runCheckpoints == null) {
+			runCheckpoints = new TreeMap<Integer, Checkpoint>();
+			baseline.put(runNumber, runCheckpoints);
+		}
+
+		try {
+			Checkpoint checkpoint = newCheckpoint(iteration, ".checkpoint");
+			msscape.writeCheckpoint(checkpoint.create());
+			runCheckpoints.put(iteration, checkpoint);
+
+			keepPending(iteration);
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Discard the recordings after the last checkpoint of the run, which are
+	 * never replayed.
+	 * 
+	 * @param scapeEvent
+	 *            scape event
+	 */
+	@Override
+	public void scapeStopped(ScapeEvent scapeEvent) {
+		discardPending();
+	}
+
+	private static void checkSupported(MicroSimScape<?> scape) {
+		try {
+			ScapeCheckpoint.checkSupported(scape);
+		} catch (UnsupportedOperationException e) {
+			throw new UnsupportedOperationException(
+					"Scenario branching needs checkpoints of the base "
+							+ "simulation: " + e.getMessage(), e);
+		}
+	}
+
+	private void record(int iteration) throws IOException {
+		if (recorders.isEmpty()) {
+			return;
+		}
+
+		if (pending == null) {
+			pending = newCheckpoint(iteration, ".recording");
+			pendingOut =
+					new DataOutputStream(new BufferedOutputStream(pending
+							.create()));
+		}
+
+		pendingOut.writeInt(iteration);
+		for (IterationRecorder recorder : recorders) {
+			recorder.recordIteration(runNumber, iteration, pendingOut);
+		}
+	}
+
+	/**
+	 * Keep the recordings since the last checkpoint with the checkpoint at
+	 * {@code iteration}.
+	 */
+	private void keepPending(int iteration) throws IOException {
+		if (pending == null) {
+			return;
+		}
+
+		pendingOut.close();
+
+		TreeMap<Integer, Checkpoint> runRecordings = recordings.get(runNumber);
+		if (runRecordings == null) {
+			runRecordings = new TreeMap<Integer, Checkpoint>();
+			recordings.put(runNumber, runRecordings);
+		}
+		runRecordings.put(iteration, pending);
+
+		pending = null;
+		pendingOut = null;
+	}
+
+	private void discardPending() {
+		if (pending == null) {
+			return;
+		}
+
+		try {
+			pendingOut.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		} finally {
+			pending.delete();
+			pending = null;
+			pendingOut = null;
+		}
+	}
+
+	/**
+	 * Create a checkpoint, or the recordings preceding it, of the current
+	 * base run at {@code iteration}.
+	 */
+	private Checkpoint newCheckpoint(int iteration, String suffix) {
+		if (directory == null) {
+			return new MemoryCheckpoint();
+		}
+
+		return new FileCheckpoint(new File(directory, msscape.getName()
+				+ " base run " + runNumber + " iteration " + iteration
+				+ suffix));
+	}
+
+	/**
+	 * A base simulation checkpoint, or recordings.
+	 */
+	private interface Checkpoint {
+
+		OutputStream create() throws IOException;
+
+		InputStream open() throws IOException;
+
+		void delete();
+	}
+
+	/**
+	 * Checkpoint held in memory.
+	 */
+	private static class MemoryCheckpoint implements Checkpoint {
+
+		private final ByteArrayOutputStream bytes =
+				new ByteArrayOutputStream();
+
+		@Override
+		public OutputStream create() {
+			return bytes;
+		}
+
+		@Override
+		public InputStream open() {
+			return new ByteArrayInputStream(bytes.toByteArray());
+		}
+
+		@Override
+		public void delete() {
+			// released with this checkpoint
+		}
+	}
+
+	/**
+	 * Checkpoint written to a file.
+	 */
+	private static class FileCheckpoint implements Checkpoint {
+
+		private final File file;
+
+		public FileCheckpoint(File file) {
+			this.file = file;
+		}
+
+		@Override
+		public OutputStream create() throws IOException {
+			return new FileOutputStream(file);
+		}
+
+		@Override
+		public InputStream open() throws IOException {
+			return new FileInputStream(file);
+		}
+
+		@Override
+		public void delete() {
+			file.delete();
+		}
+	}
+}
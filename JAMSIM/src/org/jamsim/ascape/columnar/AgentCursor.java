@@ -0,0 +1,210 @@
+package org.jamsim.ascape.columnar;
+
+import org.ascape.model.Scape;
+
+/**
+ * Flyweight view of a single row (agent) of an {@link AgentTable}. A single
+ * cursor is moved over every row, so model code can still be written per
+ * agent, eg:
+ *
+ * <pre>
+ * public class PersonCursor extends AgentCursor {
+ * 	private final int age;
+ *
+ * 	public PersonCursor(AgentTable table) {
+ * 		super(table);
+ * 		age = table.getColumnIndex(&quot;age&quot;);
+ * 	}
+ *
+ * 	public int getAge() {
+ * 		return getInt(age);
+ * 	}
+ *
+ * 	public void iterate() {
+ * 		setInt(age, getAge() + 1);
+ * 	}
+ * }
+ * </pre>
+ *
+ * Cursors hold no agent state, so must not be kept as a reference to an
+ * agent.
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public abstract class AgentCursor {
+
+	/**
+	 * Table this cursor moves over.
+	 */
+	protected final AgentTable table;
+
+	private int row;
+
+	private Scape scape;
+
+	/**
+	 * Construct cursor over {@code table}.
+	 *
+	 * @param table
+	 *            agent table
+	 */
+	public AgentCursor(AgentTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * Get the table this cursor moves over.
+	 *
+	 * @return agent table
+	 */
+	public AgentTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Move to {@code row}.
+	 *
+	 * @param row
+	 *            row index
+	 * @return this cursor
+	 */
+	public AgentCursor moveTo(int row) {
+		this.row = row;
+		return this;
+	}
+
+	/**
+	 * Get the current row.
+	 *
+	 * @return row index
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * Set the scape whose iteration is returned by {@link #getIteration()}.
+	 *
+	 * @param scape
+	 *            scape
+	 */
+	void setScape(Scape scape) {
+		this.scape = scape;
+	}
+
+	/**
+	 * Current iteration of the scape.
+	 *
+	 * @return iteration
+	 */
+	protected int getIteration() {
+		return scape.getIteration();
+	}
+
+	/**
+	 * Called on each row at the beginning of each run. Does nothing by
+	 * default.
+	 */
+	public void initialize() {
+		// nothing
+	}
+
+	/**
+	 * Performs simulation on the current row each iteration.
+	 */
+	public abstract void iterate();
+
+	/**
+	 * Get an int value of the current row.
+	 *
+	 * @param col
+	 *            column index
+	 * @return value
+	 */
+	protected int getInt(int col) {
+		return table.getInt(col, row);
+	}
+
+	/**
+	 * Set an int value of the current row.
+	 *
+	 * @param col
+	 *            column index
+	 * @param value
+	 *            value
+	 */
+	protected void setInt(int col, int value) {
+		table.setInt(col, row, value);
+	}
+
+	/**
+	 * Get a double value of the current row.
+	 *
+	 * @param col
+	 *            column index
+	 * @return value
+	 */
+	protected double getDouble(int col) {
+		return table.getDouble(col, row);
+	}
+
+	/**
+	 * Set a double value of the current row.
+	 *
+	 * @param col
+	 *            column index
+	 * @param value
+	 *            value
+	 */
+	protected void setDouble(int col, double value) {
+		table.setDouble(col, row, value);
+	}
+
+	/**
+	 * Get a boolean value of the current row.
+	 *
+	 * @param col
+	 *            column index
+	 * @return value
+	 */
+	protected boolean getBoolean(int col) {
+		return table.getBoolean(col, row);
+	}
+
+	/**
+	 * Set a boolean value of the current row.
+	 *
+	 * @param col
+	 *            column index
+	 * @param value
+	 *            value
+	 */
+	protected void setBoolean(int col, boolean value) {
+		table.setBoolean(col, row, value);
+	}
+
+	/**
+	 * Get a char value of the current row.
+	 *
+	 * @param col
+	 *            column index
+	 * @return value
+	 */
+	protected char getChar(int col) {
+		return table.getChar(col, row);
+	}
+
+	/**
+	 * Set a char value of the current row.
+	 *
+	 * @param col
+	 *            column index
+	 * @param value
+	 *            value
+	 */
+	protected void setChar(int col, char value) {
+		table.setChar(col, row, value);
+	}
+
+}
@@ -0,0 +1,654 @@
+package org.jamsim.ascape.columnar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.casper.data.model.CDataGridException;
+import net.casper.data.model.CDataRowSet;
+
+import org.jamsim.ascape.DataDictionary;
+import org.jamsim.shared.Constants;
+
+/**
+ * Columnar store of agents, ie: one primitive array per agent variable and one
+ * row per agent. An alternative to one {@link org.jamsim.ascape.MicroSimCell}
+ * object per agent that avoids per object headers and pointer chasing when
+ * there are millions of agents. Rows are read and written via an
+ * {@link AgentCursor}, or a whole column at a time via the column getters.
+ * <p>
+ * Column arrays are replaced when the table grows, so column arrays returned
+ * by {@link #getIntColumn(int)} etc. should not be held across calls to
+ * {@link #addRow()} or {@link #addRows(CDataRowSet)}. Only the first
+ * {@link #size()} elements of a column array are rows.
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class AgentTable {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Value of a missing char, ie: {@code NA} in R.
+	 */
+	public static final char MISSING_VALUE_CHAR = '\0';
+
+	private final String[] names;
+
+	private final ColumnType[] types;
+
+	private final Map<String, Integer> columnIndices;
+
+	/**
+	 * Column arrays, ie: {@code int[]}, {@code double[]}, {@code boolean[]}
+	 * or {@code char[]}.
+	 */
+	private final Object[] columns;
+
+	private int size = 0;
+
+	private int capacity;
+
+	/**
+	 * Construct an empty table with the variables in {@code dict} that have a
+	 * column type, in dictionary order.
+	 *
+	 * @param dict
+	 *            data dictionary
+	 * @param columnTypes
+	 *            column types keyed by variable name
+	 * @param initialCapacity
+	 *            number of rows to allocate space for
+	 * @throws IllegalArgumentException
+	 *             if {@code columnTypes} contains a variable not in
+	 *             {@code dict}
+	 */
+	public AgentTable(DataDictionary dict, Map<String, ColumnType> columnTypes,
+			int initialCapacity) {
+		this(dictionaryOrder(dict, columnTypes), initialCapacity);
+	}
+
+	/**
+	 * Construct an empty table.
+	 *
+	 * @param columnTypes
+	 *            column types keyed by column name, in column order
+	 * @param initialCapacity
+	 *            number of rows to allocate space for
+	 */
+	public AgentTable(Map<String, ColumnType> columnTypes, int initialCapacity) {
+		int numColumns = columnTypes.size();
+		names = new String[numColumns];
+		types = new ColumnType[numColumns];
+		columns = new Object[numColumns];
+		columnIndices = new HashMap<String, Integer>(numColumns * 2);
+		capacity = Math.max(initialCapacity, DEFAULT_CAPACITY);
+
+		int col = 0;
+		for (Map.Entry<String, ColumnType> entry : columnTypes.entrySet()) {
+			names[col] = entry.getKey();
+			types[col] = entry.getValue();
+			columns[col] = newColumn(types[col], capacity);
+			columnIndices.put(names[col], col);
+			col++;
+		}
+	}
+
+	private static Map<String, ColumnType> dictionaryOrder(
+			DataDictionary dict, Map<String, ColumnType> columnTypes) {
+		Map<String, String> variables = dict.getMap();
+
+		for (String name : columnTypes.keySet()) {
+			if (!variables.containsKey(name)) {
+				throw new IllegalArgumentException(name
+						+ " not in data dictionary");
+			}
+		}
+
+		Map<String, ColumnType> ordered =
+				new LinkedHashMap<String, ColumnType>();
+		for (String name : variables.keySet()) {
+			ColumnType type = columnTypes.get(name);
+			if (type != null) {
+				ordered.put(name, type);
+			}
+		}
+		return ordered;
+	}
+
+	private static Object newColumn(ColumnType type, int length) {
+		switch (type) {
+		case INT:
+			return new int[length];
+		case DOUBLE:
+			return new double[length];
+		case CHAR:
+			return new char[length];
+		default:
+			return new boolean[length];
+		}
+	}
+
+	private static Object copyColumn(ColumnType type, Object column,
+			int length) {
+		switch (type) {
+		case INT:
+			return Arrays.copyOf((int[]) column, length);
+		case DOUBLE:
+			return Arrays.copyOf((double[]) column, length);
+		case CHAR:
+			return Arrays.copyOf((char[]) column, length);
+		default:
+			return Arrays.copyOf((boolean[]) column, length);
+		}
+	}
+
+	/**
+	 * Number of rows, ie: agents.
+	 *
+	 * @return number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Number of columns.
+	 *
+	 * @return number of columns
+	 */
+	public int getColumnCount() {
+		return names.length;
+	}
+
+	/**
+	 * Column names, in column order.
+	 *
+	 * @return column names
+	 */
+	public String[] getColumnNames() {
+		return names.clone();
+	}
+
+	/**
+	 * Column name.
+	 *
+	 * @param col
+	 *            column index
+	 * @return column name
+	 */
+	public String getColumnName(int col) {
+		return names[col];
+	}
+
+	/**
+	 * Column type.
+	 *
+	 * @param col
+	 *            column index
+	 * @return column type
+	 */
+	public ColumnType getColumnType(int col) {
+		return types[col];
+	}
+
+	/**
+	 * Get the index of a column. Look this up once, eg: when constructing an
+	 * {@link AgentCursor}, rather than on every access.
+	 *
+	 * @param name
+	 *            column name
+	 * @return column index
+	 * @throws IllegalArgumentException
+	 *             if there is no column {@code name}
+	 */
+	public int getColumnIndex(String name) {
+		Integer col = columnIndices.get(name);
+		if (col == null) {
+			throw new IllegalArgumentException("No column named " + name);
+		}
+		return col;
+	}
+
+	/**
+	 * Add a row with default values (0, 0.0, {@code false} or
+	 * {@link #MISSING_VALUE_CHAR}).
+	 *
+	 * @return index of the new row
+	 */
+	public int addRow() {
+		ensureCapacity(size + 1);
+		return size++;
+	}
+
+	/**
+	 * Add a row for each row in {@code rows}. Values are copied into the
+	 * columns with the same name. Columns not in {@code rows} get default
+	 * values, and {@code null} values become
+	 * {@link Constants#MISSING_VALUE_INTEGER},
+	 * {@link Constants#MISSING_VALUE_DOUBLE}, {@code false} or
+	 * {@link #MISSING_VALUE_CHAR}. Int, double and boolean columns take
+	 * numbers, boolean columns also take booleans, and char columns take
+	 * characters or single character strings.
+	 *
+	 * @param rows
+	 *            casper rows, eg: from a base file
+	 * @throws CDataGridException
+	 *             if problem reading rows, or a value cannot be converted to
+	 *             its column type. Rows added before the value stay added.
+	 */
+	public void addRows(CDataRowSet rows) throws CDataGridException {
+		String[] rowsColumnNames = rows.getMetaDefinition().getColumnNames();
+		int[] target = new int[rowsColumnNames.length];
+
+		for (int i = 0; i < rowsColumnNames.length; i++) {
+			Integer col = columnIndices.get(rowsColumnNames[i]);
+			target[i] = col == null ? -1 : col;
+		}
+
+		ensureCapacity(size + rows.getNumberRows());
+		rows.reset();
+
+		while (rows.next()) {
+			int row = addRow();
+
+			for (int i = 0; i < target.length; i++) {
+				if (target[i] != -1) {
+					setValue(target[i], row, rows.getObject(i));
+				}
+			}
+		}
+	}
+
+	private void setValue(int col, int row, Object value)
+			throws CDataGridException {
+		switch (types[col]) {
+		case INT:
+			((int[]) columns[col])[row] =
+					value == null ? Constants.MISSING_VALUE_INTEGER
+							: toNumber(col, row, value).intValue();
+			break;
+		case DOUBLE:
+			((double[]) columns[col])[row] =
+					value == null ? Constants.MISSING_VALUE_DOUBLE
+							: toNumber(col, row, value).doubleValue();
+			break;
+		case CHAR:
+			((char[]) columns[col])[row] = toChar(col, row, value);
+			break;
+		default:
+			((boolean[]) columns[col])[row] =
+					value instanceof Boolean ? (Boolean) value
+							: value != null
+									&& toNumber(col, row, value).intValue() != 0;
+		}
+	}
+
+	private Number toNumber(int col, int row, Object value)
+			throws CDataGridException {
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+		throw invalidValue(col, row, value);
+	}
+
+	private char toChar(int col, int row, Object value)
+			throws CDataGridException {
+		if (value == null) {
+			return MISSING_VALUE_CHAR;
+		}
+		if (value instanceof Character) {
+			return (Character) value;
+		}
+		if (value instanceof String && ((String) value).length() == 1) {
+			return ((String) value).charAt(0);
+		}
+		throw invalidValue(col, row, value);
+	}
+
+	private CDataGridException invalidValue(int col, int row, Object value) {
+		return new CDataGridException("Row " + row + " column " + names[col]
+				+ ": cannot convert " + value.getClass().getSimpleName()
+				+ " value \"" + value + "\" to " + types[col]);
+	}
+
+	/**
+	 * Get a value as an object, eg: for output.
+	 *
+	 * @param col
+	 *            column index
+	 * @param row
+	 *            row index
+	 * @return boxed value
+	 */
+	public Object getValue(int col, int row) {
+		switch (types[col]) {
+		case INT:
+			return ((int[]) columns[col])[row];
+		case DOUBLE:
+			return ((double[]) columns[col])[row];
+		case CHAR:
+			char value = ((char[]) columns[col])[row];
+			return value == MISSING_VALUE_CHAR ? null : value;
+		default:
+			return ((boolean[]) columns[col])[row];
+		}
+	}
+
+	private void ensureCapacity(int minCapacity) {
+		if (minCapacity <= capacity) {
+			return;
+		}
+
+		capacity = Math.max(minCapacity, capacity + (capacity >> 1));
+
+		for (int col = 0; col < columns.length; col++) {
+			columns[col] = copyColumn(types[col], columns[col], capacity);
+		}
+	}
+
+	/**
+	 * Get the array backing an int column. Only the first {@link #size()}
+	 * elements are rows.
+	 *
+	 * @param col
+	 *            column index
+	 * @return column array
+	 */
+	public int[] getIntColumn(int col) {
+		checkType(col, ColumnType.INT);
+		return (int[]) columns[col];
+	}
+
+	/**
+	 * Get the array backing a double column. Only the first {@link #size()}
+	 * elements are rows.
+	 *
+	 * @param col
+	 *            column index
+	 * @return column array
+	 */
+	public double[] getDoubleColumn(int col) {
+		checkType(col, ColumnType.DOUBLE);
+		return (double[]) columns[col];
+	}
+
+	/**
+	 * Get the array backing a boolean column. Only the first {@link #size()}
+	 * elements are rows.
+	 *
+	 * @param col
+	 *            column index
+	 * @return column array
+	 */
+	public boolean[] getBooleanColumn(int col) {
+		checkType(col, ColumnType.BOOLEAN);
+		return (boolean[]) columns[col];
+	}
+
+	/**
+	 * Get the array backing a char column. Only the first {@link #size()}
+	 * elements are rows.
+	 *
+	 * @param col
+	 *            column index
+	 * @return column array
+	 */
+	public char[] getCharColumn(int col) {
+		checkType(col, ColumnType.CHAR);
+		return (char[]) columns[col];
+	}
+
+	private void checkType(int col, ColumnType type) {
+		if (types[col] != type) {
+			throw new IllegalArgumentException("Column " + names[col]
+					+ " is " + types[col] + " not " + type);
+		}
+	}
+
+	/**
+	 * Get an int value.
+	 *
+	 * @param col
+	 *            column index
+	 * @param row
+	 *            row index
+	 * @return value
+	 */
+	public int getInt(int col, int row) {
+		return ((int[]) columns[col])[row];
+	}
+
+	/**
+	 * Set an int value.
+	 *
+	 * @param col
+	 *            column index
+	 * @param row
+	 *            row index
+	 * @param value
+	 *            value
+	 */
+	public void setInt(int col, int row, int value) {
+		((int[]) columns[col])[row] = value;
+	}
+
+	/**
+	 * Get a double value.
+	 *
+	 * @param col
+	 *            column index
+	 * @param row
+	 *            row index
+	 * @return value
+	 */
+	public double getDouble(int col, int row) {
+		return ((double[]) columns[col])[row];
+	}
+
+	/**
+	 * Set a double value.
+	 *
+	 * @param col
+	 *            column index
+	 * @param row
+	 *            row index
+	 * @param value
+	 *            value
+	 */
+	public void setDouble(int col, int row, double value) {
+		((double[]) columns[col])[row] = value;
+	}
+
+	/**
+	 * Get a boolean value.
+	 *
+	 * @param col
+	 *            column index
+	 * @param row
+	 *            row index
+	 * @return value
+	 */
+	public boolean getBoolean(int col, int row) {
+		return ((boolean[]) columns[col])[row];
+	}
+
+	/**
+	 * Set a boolean value.
+	 *
+	 * @param col
+	 *            column index
+	 * @param row
+	 *            row index
+	 * @param value
+	 *            value
+	 */
+	public void setBoolean(int col, int row, boolean value) {
+		((boolean[]) columns[col])[row] = value;
+	}
+
+	/**
+	 * Get a char value.
+	 *
+	 * @param col
+	 *            column index
+	 * @param row
+	 *            row index
+	 * @return value
+	 */
+	public char getChar(int col, int row) {
+		return ((char[]) columns[col])[row];
+	}
+
+	/**
+	 * Set a char value.
+	 *
+	 * @param col
+	 *            column index
+	 * @param row
+	 *            row index
+	 * @param value
+	 *            value
+	 */
+	public void setChar(int col, int row, char value) {
+		((char[]) columns[col])[row] = value;
+	}
+
+	/**
+	 * Write every row, eg: for a checkpoint (see
+	 * {@link org.jamsim.ascape.ScapeCheckpoint}). Each column's name and type
+	 * are written, then its values.
+	 *
+	 * @param out
+	 *            output to write to
+	 * @throws IOException
+	 *             if problem writing
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(columns.length);
+
+		for (int col = 0; col < columns.length; col++) {
+			out.writeUTF(names[col]);
+			out.writeUTF(types[col].name());
+
+			switch (types[col]) {
+			case INT:
+				int[] ints = (int[]) columns[col];
+				for (int row = 0; row < size; row++) {
+					out.writeInt(ints[row]);
+				}
+				break;
+			case DOUBLE:
+				double[] doubles = (double[]) columns[col];
+				for (int row = 0; row < size; row++) {
+					out.writeDouble(doubles[row]);
+				}
+				break;
+			case CHAR:
+				char[] chars = (char[]) columns[col];
+				for (int row = 0; row < size; row++) {
+					out.writeChar(chars[row]);
+				}
+				break;
+			default:
+				boolean[] booleans = (boolean[]) columns[col];
+				for (int row = 0; row < size; row++) {
+					out.writeBoolean(booleans[row]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replace every row with the rows written by
+	 * {@link #writeState(DataOutput)}. The rows must have been written by a
+	 * table with the same columns, in the same order.
+	 *
+	 * @param in
+	 *            input to read from
+	 * @throws IOException
+	 *             if problem reading, or the columns written are not the
+	 *             columns of this table
+	 */
+	public void readState(DataInput in) throws IOException {
+		int rows = in.readInt();
+		int numColumns = in.readInt();
+
+		if (numColumns != columns.length) {
+			throw new IOException(numColumns + " columns written, table has "
+					+ columns.length);
+		}
+
+		ensureCapacity(rows);
+
+		for (int col = 0; col < columns.length; col++) {
+			String name = in.readUTF();
+			String type = in.readUTF();
+
+			if (!name.equals(names[col]) || !type.equals(types[col].name())) {
+				throw new IOException("Column " + col + " written is " + type
+						+ " " + name + ", table has " + types[col] + " "
+						+ names[col]);
+			}
+
+			switch (types[col]) {
+			case INT:
+				int[] ints = (int[]) columns[col];
+				for (int row = 0; row < rows; row++) {
+					ints[row] = in.readInt();
+				}
+				break;
+			case DOUBLE:
+				double[] doubles = (double[]) columns[col];
+				for (int row = 0; row < rows; row++) {
+					doubles[row] = in.readDouble();
+				}
+				break;
+			case CHAR:
+				char[] chars = (char[]) columns[col];
+				for (int row = 0; row < rows; row++) {
+					chars[row] = in.readChar();
+				}
+				break;
+			default:
+				boolean[] booleans = (boolean[]) columns[col];
+				for (int row = 0; row < rows; row++) {
+					booleans[row] = in.readBoolean();
+				}
+			}
+
+			// rows after the last written are added again with defaults
+			clearColumn(col, rows, size);
+		}
+
+		size = rows;
+	}
+
+	private void clearColumn(int col, int from, int to) {
+		if (from >= to) {
+			return;
+		}
+
+		switch (types[col]) {
+		case INT:
+			Arrays.fill((int[]) columns[col], from, to, 0);
+			break;
+		case DOUBLE:
+			Arrays.fill((double[]) columns[col], from, to, 0);
+			break;
+		case CHAR:
+			Arrays.fill((char[]) columns[col], from, to, MISSING_VALUE_CHAR);
+			break;
+		default:
+			Arrays.fill((boolean[]) columns[col], from, to, false);
+		}
+	}
+
+}
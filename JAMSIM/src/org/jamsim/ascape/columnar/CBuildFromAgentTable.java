@@ -0,0 +1,90 @@
+package org.jamsim.ascape.columnar;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.casper.data.model.CBuilder;
+
+/**
+ * Create a casper dataset from an {@link AgentTable}.
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class CBuildFromAgentTable implements CBuilder {
+
+	private final String name;
+	private final AgentTable table;
+	private int currentRow;
+
+	/**
+	 * Construct from an agent table.
+	 * 
+	 * @param name
+	 *            name
+	 * @param table
+	 *            agent table
+	 */
+	public CBuildFromAgentTable(String name, AgentTable table) {
+		this.name = name;
+		this.table = table;
+	}
+
+	@Override
+	public void close() {
+		// nothing
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return table.getColumnNames();
+	}
+
+	@Override
+	public Class[] getColumnTypes() {
+		Class<?>[] columnTypes = new Class<?>[table.getColumnCount()];
+
+		for (int col = 0; col < columnTypes.length; col++) {
+			columnTypes[col] = table.getColumnType(col).getBoxedType();
+		}
+
+		return columnTypes;
+	}
+
+	@Override
+	public Map getConcreteMap() {
+		return new LinkedHashMap();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String[] getPrimaryKeyColumns() {
+		return null;
+	}
+
+	@Override
+	public void open() throws IOException {
+		currentRow = 0;
+	}
+
+	@Override
+	public Object[] readRow() throws IOException {
+		if (currentRow == table.size()) {
+			return null;
+		}
+
+		Object[] row = new Object[table.getColumnCount()];
+		for (int col = 0; col < row.length; col++) {
+			row[col] = table.getValue(col, currentRow);
+		}
+		currentRow++;
+
+		return row;
+	}
+
+}
@@ -0,0 +1,48 @@
+package org.jamsim.ascape.columnar;
+
+/**
+ * Type of an {@link AgentTable} column, which determines the primitive array
+ * used to store it.
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public enum ColumnType {
+
+	/**
+	 * Stored in an {@code int[]}.
+	 */
+	INT(Integer.class),
+
+	/**
+	 * Stored in a {@code double[]}.
+	 */
+	DOUBLE(Double.class),
+
+	/**
+	 * Stored in a {@code boolean[]}.
+	 */
+	BOOLEAN(Boolean.class),
+
+	/**
+	 * Stored in a {@code char[]}, eg: a sex code. Becomes a character vector
+	 * in R.
+	 */
+	CHAR(Character.class);
+
+	private final Class<?> boxedType;
+
+	private ColumnType(Class<?> boxedType) {
+		this.boxedType = boxedType;
+	}
+
+	/**
+	 * The boxed type of values in this column, eg: {@link Integer} for
+	 * {@link #INT}.
+	 * 
+	 * @return boxed type
+	 */
+	public Class<?> getBoxedType() {
+		return boxedType;
+	}
+}
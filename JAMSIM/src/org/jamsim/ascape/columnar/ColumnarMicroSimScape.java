@@ -0,0 +1,110 @@
+package org.jamsim.ascape.columnar;
+
+import net.casper.data.model.CDataCacheContainer;
+import net.casper.data.model.CDataGridException;
+
+import org.ascape.model.Cell;
+import org.ascape.model.space.ListSpace;
+import org.jamsim.ascape.MicroSimScape;
+import org.jamsim.ascape.ScapeData;
+import org.jamsim.io.FileLoader;
+
+/**
+ * A {@link MicroSimScape} whose agents are rows of an {@link AgentTable}
+ * rather than {@link org.jamsim.ascape.MicroSimCell} members. Each iteration
+ * an {@link AgentCursor} is moved over every row and iterated. The scape itself
+ * has no members.
+ * <p>
+ * Rows are loaded via {@link #loadRows(CDataCacheContainer)}, eg: from a base
+ * file loaded with {@link FileLoader#loadDataset}. R dataframes and output
+ * datasets are created directly from the table's columns.
+ * </p>
+ * 
+ * @param <D>
+ *            a scape data class that defines data external to the scape for use
+ *            by agents.
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class ColumnarMicroSimScape<D extends ScapeData> extends
+		MicroSimScape<D> {
+
+	private static final long serialVersionUID = -2990468826618340625L;
+
+	private final AgentTable table;
+
+	private final AgentCursor cursor;
+
+	/**
+	 * Construct {@link ColumnarMicroSimScape}.
+	 * 
+	 * @param name
+	 *            name of the scape. This will be the name of the dataframe if &
+	 *            when created in R.
+	 * @param cursor
+	 *            cursor that iterates each row of its table
+	 * @param loader
+	 *            file loader object which provides preferences, an select file
+	 *            dialog, and output services
+	 */
+	public ColumnarMicroSimScape(String name, AgentCursor cursor,
+			FileLoader loader) {
+		super(new ListSpace(), name, new Cell(), loader);
+		this.table = cursor.getTable();
+		this.cursor = cursor;
+		cursor.setScape(this);
+	}
+
+	/**
+	 * Get the agent table.
+	 * 
+	 * @return agent table
+	 */
+	public AgentTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Add a row to the agent table for each row of {@code container}. See
+	 * {@link AgentTable#addRows(net.casper.data.model.CDataRowSet)}.
+	 * 
+	 * @param container
+	 *            dataset, eg: a base file
+	 * @throws CDataGridException
+	 *             if problem reading the dataset
+	 */
+	public void loadRows(CDataCacheContainer container)
+			throws CDataGridException {
+		table.addRows(container.getAll());
+	}
+
+	/**
+	 * Initialise each row at the beginning of the run.
+	 */
+	@Override
+	public void initialize() {
+		super.initialize();
+
+		int rows = table.size();
+		for (int row = 0; row < rows; row++) {
+			cursor.moveTo(row).initialize();
+		}
+	}
+
+	/**
+	 * Iterate each row.
+	 */
+	@Override
+	public void executeOnMembers() {
+		int rows = table.size();
+		for (int row = 0; row < rows; row++) {
+			cursor.moveTo(row).iterate();
+		}
+	}
+
+	@Override
+	public CDataCacheContainer getDataSetOfAgents() throws CDataGridException {
+		return new CDataCacheContainer(new CBuildFromAgentTable(name, table));
+	}
+
+}
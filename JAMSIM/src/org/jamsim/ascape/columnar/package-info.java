@@ -0,0 +1,8 @@
+/**
+ * Columnar (structure of arrays) agent storage. Agent variables are held in
+ * one primitive array per variable and accessed through flyweight cursors.
+ *
+ * @author Oliver Mannion
+ *
+ */
+package org.jamsim.ascape.columnar;
\ No newline at end of file
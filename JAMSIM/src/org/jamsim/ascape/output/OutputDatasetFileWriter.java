@@ -0,0 +1,243 @@
+package org.jamsim.ascape.output;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import net.casper.data.model.CDataCacheContainer;
+import net.casper.data.model.CDataGridException;
+
+import org.ascape.model.event.DefaultScapeListener;
+import org.ascape.model.event.ScapeEvent;
+import org.ascape.util.data.StatCollector;
+import org.jamsim.ascape.MicroSimCell;
+import org.jamsim.ascape.MicroSimScape;
+import org.jamsim.ascape.RunListener;
+import org.jamsim.ascape.r.RExecutor;
+import org.jamsim.ascape.r.ScapeRInterface;
+
+/**
+ * A {@link org.ascape.model.event.ScapeListener} that writes the results of an
+ * {@link OutputDatasetProvider} to CSV files in the scape's output directory.
+ * Used instead of {@link org.jamsim.ascape.navigator.OutputNode} when running
+ * headless, ie: when there is no Navigator to display results in.
+ * <p>
+ * Results are written at the end of each run, and if the
+ * {@link OutputDatasetProvider} is a {@link MultiRunOutputDatasetProvider} then
+ * also at the end of the simulation. Any {@link StatCollector}s provided are
+ * added to the scape. Charts are ignored.
+ * </p>
+ * <p>
+ * Also a {@link RunListener} so the same results can be written for runs
+ * executed by a {@link org.jamsim.ascape.ConcurrentRunExecutor}. The stat
+ * collectors of these runs are calculated over each run's agents at the end
+ * of the run, in run order.
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class OutputDatasetFileWriter extends DefaultScapeListener implements
+		RunListener {
+
+	private static final long serialVersionUID = 2236584123170843317L;
+
+	private final MicroSimScape<?> msscape;
+
+	private final OutputDatasetProvider outDataset;
+
+	/**
+	 * Stat collectors provided by the output dataset, or {@code null} if
+	 * none.
+	 */
+	private final Collection<? extends StatCollector> statCollectors;
+
+	private int runNumber = 0;
+
+	private boolean scapeClosed = false;
+
+	/**
+	 * Results of {@link ROutput}s waiting to be written.
+	 */
+	private final List<Future<?>> pendingWrites = new ArrayList<Future<?>>();
+
+	/**
+	 * Connect {@code outDataset} to the scape. If the
+	 * {@link OutputDatasetProvider} is a {@link MultiRunOutputDatasetProvider}
+	 * and R has been loaded it will be wrapped in a
+	 * {@link MeansOnMultiRunDataset}.
+	 *
+	 * @param scape
+	 *            microsim scape
+	 * @param outDataset
+	 *            output dataset provider
+	 */
+	public OutputDatasetFileWriter(MicroSimScape<?> scape,
+			OutputDatasetProvider outDataset) {
+		super(outDataset.getName());
+		this.msscape = scape;
+		this.statCollectors =
+				outDataset instanceof StatCollectorProvider
+						? ((StatCollectorProvider) outDataset)
+								.getStatCollectors() : null;
+
+		if (statCollectors != null) {
+			for (StatCollector sc : statCollectors) {
+				msscape.addStatCollector(sc);
+			}
+		}
+
+		if (outDataset instanceof MultiRunOutputDatasetProvider
+				&& msscape.getScapeRInterface() != null) {
+			this.outDataset =
+					new MeansOnMultiRunDataset(msscape.getScapeRInterface(),
+							(MultiRunOutputDatasetProvider) outDataset);
+		} else {
+			this.outDataset = outDataset;
+		}
+	}
+
+	@Override
+	public void scapeStopped(ScapeEvent scapeEvent) {
+		runNumber++;
+
+		try {
+			writeRun(runNumber);
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void scapeClosing(ScapeEvent scapeEvent) {
+
+		// scapeClosing gets called twice when the scape closes
+		if (runNumber > 0 && !scapeClosed) {
+			scapeClosed = true;
+
+			try {
+				writeAllRuns();
+			} catch (IOException e) {
+				throw new RuntimeException(e.getMessage(), e);
+			}
+		}
+	}
+
+	@Override
+	public Object runInitialized(int run,
+			List<? extends MicroSimCell<?>> agents) {
+		return null;
+	}
+
+	@Override
+	public void runStarted(int run, Object initialState) {
+		// nothing to do
+	}
+
+	/**
+	 * Calculate the stat collectors, if any, over the run's agents, then write
+	 * the results of the run.
+	 */
+	@Override
+	public void runCompleted(int run, List<? extends MicroSimCell<?>> agents)
+			throws IOException {
+		if (statCollectors != null && !agents.isEmpty()) {
+			msscape.calculateStatCollectors(statCollectors, agents, agents
+					.get(0).getIteration());
+		}
+		writeRun(run);
+	}
+
+	@Override
+	public void allRunsCompleted(int numberRuns) throws IOException {
+		writeAllRuns();
+	}
+
+	/**
+	 * Write the results of run {@code run}, if any. The results of an
+	 * {@link ROutput} are written once R has evaluated them, which if R is
+	 * asynchronous (see {@link ScapeRInterface#setAsync(boolean)}) is after
+	 * this returns. Write errors are then thrown by {@link #writeAllRuns()}.
+	 * 
+	 * @param run
+	 *            run number
+	 * @throws IOException
+	 *             if problem creating or writing the dataset
+	 */
+	public void writeRun(final int run) throws IOException {
+		try {
+			if (outDataset instanceof ROutput) {
+				final Future<CDataCacheContainer> results =
+						((ROutput) outDataset).getOutputDatasetAsync(run);
+
+				pendingWrites.add(msscape.getScapeRInterface().submit(run,
+						new Callable<Object>() {
+							@Override
+							public Object call() throws Exception {
+								writeRun(run, results.get());
+								return null;
+							}
+						}));
+			} else {
+				writeRun(run, outDataset.getOutputDataset(run));
+			}
+
+		} catch (CDataGridException e) {
+			throw new OutputException(e.getMessage(), e);
+		}
+	}
+
+	private void writeRun(int run, CDataCacheContainer results)
+			throws IOException {
+		if (results != null) {
+			writeCSV(outDataset.getName() + " (Run " + run + ")", results);
+		}
+	}
+
+	/**
+	 * Wait for results submitted by {@link #writeRun(int)} to be written.
+	 */
+	private void awaitWrites() {
+		for (Future<?> write : pendingWrites) {
+			RExecutor.await(write);
+		}
+		pendingWrites.clear();
+	}
+
+	/**
+	 * Write the multi-run results, if the {@link OutputDatasetProvider} is a
+	 * {@link MultiRunOutputDatasetProvider}, once the results of each run have
+	 * been written.
+	 * 
+	 * @throws IOException
+	 *             if problem creating or writing the dataset
+	 */
+	public void writeAllRuns() throws IOException {
+		awaitWrites();
+
+		if (!(outDataset instanceof MultiRunOutputDatasetProvider)) {
+			return;
+		}
+
+		try {
+			CDataCacheContainer allRuns =
+					((MultiRunOutputDatasetProvider) outDataset)
+							.getMultiRunDataset();
+
+			writeCSV(allRuns.getCacheName(), allRuns);
+
+		} catch (CDataGridException e) {
+			throw new OutputException(e.getMessage(), e);
+		}
+	}
+
+	private void writeCSV(String fileName, CDataCacheContainer container)
+			throws IOException {
+		SaveableDataset.saveToCSV(msscape.getOutputDirectory(), fileName,
+				container, true);
+	}
+
+}
@@ -19,6 +19,20 @@ public class REXPDatasetProvider implements OutputDatasetProvider {
 	private final String name;
 	private final CDataCacheContainer container;
 
+	/**
+	 * Provide a dataset already converted from an {@link REXP}, eg: by
+	 * {@link org.jamsim.ascape.r.ScapeRInterface#parseEvalTryCached(String, String)}.
+	 * 
+	 * @param name
+	 *            dataset name
+	 * @param container
+	 *            dataset
+	 */
+	public REXPDatasetProvider(String name, CDataCacheContainer container) {
+		this.name = name;
+		this.container = container;
+	}
+
 	/**
 	 * Master {@link REXPDatasetProvider} constructor.
 	 * 
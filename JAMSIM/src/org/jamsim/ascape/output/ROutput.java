@@ -1,12 +1,14 @@
 package org.jamsim.ascape.output;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import net.casper.data.model.CDataCacheContainer;
 import net.casper.data.model.CDataGridException;
 
 import org.jamsim.ascape.r.ScapeRInterface;
 import org.omancode.r.RFaceException;
-import org.omancode.r.types.CBuildFromREXP;
-import org.rosuda.REngine.REXP;
 
 /**
  * A single run output dataset produced by running commands on the scape
@@ -50,21 +52,62 @@ public class ROutput implements OutputDatasetProvider {
 	@Override
 	public CDataCacheContainer getOutputDataset(int run)
 			throws CDataGridException {
-
-		REXP rexp;
-		// where the string "DATAFRAME" appears,
-		// substitute with {@code dataFrameName + run number}.
-		String cmd = scapeR.rcmdReplace(rCommand, run);
-
 		try {
+			return getOutputDatasetAsync(run).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CDataGridException(e.getMessage(), e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CDataGridException) {
+				throw (CDataGridException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw (Error) cause;
+		}
+	}
 
-			System.out.println("Routput: " + cmd);
-			rexp = scapeR.parseEvalTry(cmd);
-			return new CDataCacheContainer(new CBuildFromREXP(rexp, name));
+	/**
+	 * Submit the R command for a run, after the run's other R tasks (see
+	 * {@link ScapeRInterface#submitCommand(int, String, Callable)}). If R is
+	 * asynchronous and the command reads the run's dataframe snapshot,
+	 * returns while R evaluates the command.
+	 * 
+	 * @param run
+	 *            run number
+	 * @return future output dataset
+	 * @throws CDataGridException
+	 *             if problem creating the scape dataframe or its snapshot
+	 */
+	public Future<CDataCacheContainer> getOutputDatasetAsync(int run)
+			throws CDataGridException {
+		final String cmd;
+		try {
+			scapeR.materializeScapeDataFrame();
 
+			// where the string "DATAFRAME" appears,
+			// substitute with the run's dataframe snapshot.
+			cmd = scapeR.rcmdReplaceSnapshot(rCommand, run);
 		} catch (RFaceException e) {
-			throw new CDataGridException(cmd + ": " + e.getMessage(), e);
-		} 
+			throw new CDataGridException(e.getMessage(), e);
+		}
+
+		return scapeR.submitCommand(run, rCommand,
+				new Callable<CDataCacheContainer>() {
+					@Override
+					public CDataCacheContainer call()
+							throws CDataGridException {
+						try {
+							System.out.println("Routput: " + cmd);
+							return scapeR.parseEvalTryCached(cmd, name);
+						} catch (RFaceException e) {
+							throw new CDataGridException(cmd + ": "
+									+ e.getMessage(), e);
+						}
+					}
+				});
 	}
 
 }
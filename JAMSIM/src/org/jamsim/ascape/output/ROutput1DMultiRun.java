@@ -1,5 +1,6 @@
 package org.jamsim.ascape.output;
 
+import org.jamsim.ascape.r.RExecutor;
 import org.jamsim.ascape.r.ScapeRInterface;
 import org.omancode.r.RFaceException;
 import org.omancode.r.types.REXPAttr;
@@ -118,11 +119,14 @@ public class ROutput1DMultiRun extends Abstract1DMultiRunOutputDataset {
 		try {
 			// where the data frame symbol appears,
 			// substitute with {@code dataFrameName + run number}.
-			cmd = scapeR.rcmdReplace(rCommand, run);
+			cmd = scapeR.rcmdReplaceSnapshot(rCommand, run);
 
 			// System.out.println("Debug R:" + cmd);
 
-			REXP rexp = scapeR.parseEvalTry(cmd);
+			// evaluated after the run's other R tasks
+			scapeR.materializeScapeDataFrame();
+			REXP rexp =
+					RExecutor.await(scapeR.parseEvalTryAsync(rCommand, run));
 
 			// r command must return a REXPDouble
 			if (!(rexp instanceof REXPDouble)) {
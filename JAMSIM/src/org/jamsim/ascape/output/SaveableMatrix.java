@@ -0,0 +1,160 @@
+package org.jamsim.ascape.output;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.jamsim.matrix.IndexedDenseDoubleMatrix2D;
+import org.omancode.util.io.FileUtil;
+
+/**
+ * A {@link Saveable} {@link IndexedDenseDoubleMatrix2D}. Written column by
+ * column from the matrix, ie: without creating a casper dataset first.
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class SaveableMatrix implements Saveable {
+
+	private final IndexedDenseDoubleMatrix2D matrix;
+	private final String fileName;
+	private final boolean cleanDatedFilename;
+
+	/**
+	 * Construct {@link SaveableMatrix} with cleaned and dated filename.
+	 *
+	 * @param fileName
+	 *            file name, without path. Cleaned and dated. See
+	 *            {@link SaveableDataset#cleanDatedCSVName(String)}
+	 * @param matrix
+	 *            matrix
+	 */
+	public SaveableMatrix(String fileName, IndexedDenseDoubleMatrix2D matrix) {
+		this(fileName, matrix, true);
+	}
+
+	/**
+	 * Construct {@link SaveableMatrix}.
+	 *
+	 * @param fileName
+	 *            file name, without path
+	 * @param matrix
+	 *            matrix
+	 * @param cleanDatedFilename
+	 *            clean and date the filename at the time of saving.
+	 */
+	public SaveableMatrix(String fileName, IndexedDenseDoubleMatrix2D matrix,
+			boolean cleanDatedFilename) {
+		this.fileName = fileName;
+		this.matrix = matrix;
+		this.cleanDatedFilename = cleanDatedFilename;
+	}
+
+	@Override
+	public void saveToCSV(String directory) throws IOException {
+		saveToCSV(directory, fileName, matrix, cleanDatedFilename);
+	}
+
+	/**
+	 * Save a matrix, ie: its index columns followed by its matrix columns, to
+	 * a file.
+	 *
+	 * @param directory
+	 *            location of file to save
+	 * @param fileName
+	 *            file name, without path
+	 * @param matrix
+	 *            matrix
+	 * @param cleanDatedFilename
+	 *            clean and date the filename at the time of saving. See
+	 *            {@link SaveableDataset#cleanDatedCSVName(String)}.
+	 * @throws IOException
+	 *             if problem saving file
+	 */
+	public static void saveToCSV(String directory, String fileName,
+			IndexedDenseDoubleMatrix2D matrix, boolean cleanDatedFilename)
+			throws IOException {
+		String cleanedName =
+				cleanDatedFilename ? SaveableDataset
+						.cleanDatedCSVName(fileName) : fileName;
+
+		String fullFileName =
+				FileUtil.addTrailingSlash(directory) + cleanedName;
+
+		// make any non-existent directories in the file path
+		FileUtil.mkdirs(fullFileName);
+
+		Writer out = new BufferedWriter(new FileWriter(fullFileName));
+		try {
+			writeCSV(out, matrix);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write a matrix as CSV, ie: a header row of column names followed by a
+	 * row for each matrix row.
+	 *
+	 * @param out
+	 *            writer
+	 * @param matrix
+	 *            matrix
+	 * @throws IOException
+	 *             if problem writing
+	 */
+	public static void writeCSV(Writer out, IndexedDenseDoubleMatrix2D matrix)
+			throws IOException {
+		String[] columnNames = matrix.getAllColumnNames();
+		int numIndexColumns = matrix.getIndexColumnNames().length;
+		int numMatrixColumns = columnNames.length - numIndexColumns;
+
+		Object[][] indexColumns = new Object[numIndexColumns][];
+		for (int col = 0; col < numIndexColumns; col++) {
+			indexColumns[col] = matrix.getIndexColumn(col);
+		}
+
+		double[][] matrixColumns = new double[numMatrixColumns][];
+		for (int col = 0; col < numMatrixColumns; col++) {
+			matrixColumns[col] = matrix.getMatrixColumn(col);
+		}
+
+		for (int col = 0; col < columnNames.length; col++) {
+			if (col > 0) {
+				out.write(',');
+			}
+			out.write(quote(columnNames[col]));
+		}
+		out.write('\n');
+
+		for (int row = 0; row < matrix.rows(); row++) {
+			for (int col = 0; col < numIndexColumns; col++) {
+				if (col > 0) {
+					out.write(',');
+				}
+				Object value = indexColumns[col][row];
+				out.write(value == null ? "" : quote(value.toString()));
+			}
+			for (int col = 0; col < numMatrixColumns; col++) {
+				if (col > 0 || numIndexColumns > 0) {
+					out.write(',');
+				}
+				out.write(Double.toString(matrixColumns[col][row]));
+			}
+			out.write('\n');
+		}
+	}
+
+	/**
+	 * Quote a value if it contains a comma, quote or line break.
+	 */
+	private static String quote(String value) {
+		if (value.indexOf(',') == -1 && value.indexOf('"') == -1
+				&& value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+}
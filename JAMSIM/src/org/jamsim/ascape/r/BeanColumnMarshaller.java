@@ -0,0 +1,301 @@
+package org.jamsim.ascape.r;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.omancode.r.RFaceException;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPInteger;
+import org.rosuda.REngine.REXPLogical;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.RList;
+
+/**
+ * Converts a collection of beans, eg: agents, into the columns of an R
+ * dataframe. Getters are resolved once, when the marshaller is created, and
+ * each property is written straight into a primitive {@code double[]},
+ * {@code int[]}, {@code byte[]} (logical) or {@code String[]} column, rather
+ * than introspecting and building a boxed row per bean.
+ * <p>
+ * Columns are created for the primitive properties defined by the subclasses
+ * of the stop class, in introspection order, as
+ * {@link org.omancode.r.types.RVectorList} does. {@code char} properties
+ * become character vectors. Beans with array properties are not supported,
+ * see {@link #create(Class, Class)}.
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class BeanColumnMarshaller {
+
+	/**
+	 * Kinds of R vector.
+	 */
+	private enum Kind {
+		DOUBLE, INTEGER, LOGICAL, STRING
+	}
+
+	private final Class<?> beanClass;
+
+	private final String[] names;
+
+	private final Method[] getters;
+
+	private final Kind[] kinds;
+
+	private BeanColumnMarshaller(Class<?> beanClass, List<String> names,
+			List<Method> getters, List<Kind> kinds) {
+		this.beanClass = beanClass;
+		this.names = names.toArray(new String[names.size()]);
+		this.getters = getters.toArray(new Method[getters.size()]);
+		this.kinds = kinds.toArray(new Kind[kinds.size()]);
+	}
+
+	/**
+	 * Create a marshaller for {@code beanClass}.
+	 *
+	 * @param beanClass
+	 *            class of the beans to convert
+	 * @param stopClass
+	 *            Columns are created for all getter methods that are defined
+	 *            by {@code stopClass}'s subclasses.
+	 * @return marshaller, or {@code null} if {@code beanClass} has an array
+	 *         property and so must be converted by
+	 *         {@link org.omancode.r.types.RVectorList}
+	 * @throws IntrospectionException
+	 *             if {@code beanClass} cannot be introspected
+	 */
+	public static BeanColumnMarshaller create(Class<?> beanClass,
+			Class<?> stopClass) throws IntrospectionException {
+		BeanInfo info = Introspector.getBeanInfo(beanClass, stopClass);
+
+		List<String> names = new ArrayList<String>();
+		List<Method> getters = new ArrayList<Method>();
+		List<Kind> kinds = new ArrayList<Kind>();
+
+		for (PropertyDescriptor prop : info.getPropertyDescriptors()) {
+			Method getter = prop.getReadMethod();
+			Class<?> type = prop.getPropertyType();
+
+			if (getter == null || type == null) {
+				continue;
+			}
+
+			if (type.isArray()) {
+				return null;
+			}
+
+			Kind kind = kindOf(type);
+			if (kind != null) {
+				getter.setAccessible(true);
+				names.add(prop.getName());
+				getters.add(getter);
+				kinds.add(kind);
+			}
+		}
+
+		return new BeanColumnMarshaller(beanClass, names, getters, kinds);
+	}
+
+	/**
+	 * R vector kind of a property type.
+	 *
+	 * @return kind, or {@code null} if not a primitive type
+	 */
+	private static Kind kindOf(Class<?> type) {
+		if (type == double.class || type == float.class
+				|| type == long.class) {
+			return Kind.DOUBLE;
+		}
+		if (type == int.class || type == short.class || type == byte.class) {
+			return Kind.INTEGER;
+		}
+		if (type == boolean.class) {
+			return Kind.LOGICAL;
+		}
+		if (type == char.class) {
+			return Kind.STRING;
+		}
+		return null;
+	}
+
+	/**
+	 * Class of beans this marshaller converts.
+	 *
+	 * @return bean class
+	 */
+	public Class<?> getBeanClass() {
+		return beanClass;
+	}
+
+	/**
+	 * Column names, ie: property names.
+	 *
+	 * @return column names
+	 */
+	public String[] getColumnNames() {
+		return names.clone();
+	}
+
+	/**
+	 * Whether there is a column for each of {@code columns}.
+	 *
+	 * @param columns
+	 *            column names
+	 * @return {@code true} if every column is converted by this marshaller
+	 */
+	public boolean hasColumns(Collection<String> columns) {
+		return columnIndexes(columns) != null;
+	}
+
+	/**
+	 * Position of each column in {@link #names}.
+	 *
+	 * @return positions, or {@code null} if a column does not exist
+	 */
+	private int[] columnIndexes(Collection<String> columns) {
+		List<String> all = Arrays.asList(names);
+		int[] selected = new int[columns.size()];
+		int i = 0;
+		for (String column : columns) {
+			selected[i] = all.indexOf(column);
+			if (selected[i++] == -1) {
+				return null;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Convert beans into dataframe columns.
+	 *
+	 * @param beans
+	 *            beans, all instances of {@link #getBeanClass()}
+	 * @return list of columns, one element per bean in each column
+	 * @throws RFaceException
+	 *             if a getter fails
+	 */
+	public RList marshal(Collection<?> beans) throws RFaceException {
+		int[] selected = new int[names.length];
+		for (int i = 0; i < selected.length; i++) {
+			selected[i] = i;
+		}
+		return marshal(beans, selected);
+	}
+
+	/**
+	 * Convert beans into some of the dataframe columns, eg: the columns that
+	 * have changed since the dataframe was created.
+	 *
+	 * @param beans
+	 *            beans, all instances of {@link #getBeanClass()}
+	 * @param columns
+	 *            names of the columns to create
+	 * @return list of columns, one element per bean in each column
+	 * @throws RFaceException
+	 *             if a getter fails
+	 * @throws IllegalArgumentException
+	 *             if a column does not exist, see
+	 *             {@link #hasColumns(Collection)}
+	 */
+	public RList marshal(Collection<?> beans, Collection<String> columns)
+			throws RFaceException {
+		int[] selected = columnIndexes(columns);
+		if (selected == null) {
+			throw new IllegalArgumentException("Columns " + columns
+					+ " not all in " + Arrays.toString(names));
+		}
+		return marshal(beans, selected);
+	}
+
+	private RList marshal(Collection<?> beans, int[] selected)
+			throws RFaceException {
+		int rows = beans.size();
+		Object[] columns = new Object[selected.length];
+		Method[] selectedGetters = new Method[selected.length];
+		Kind[] selectedKinds = new Kind[selected.length];
+		String[] selectedNames = new String[selected.length];
+
+		for (int col = 0; col < columns.length; col++) {
+			selectedGetters[col] = getters[selected[col]];
+			selectedKinds[col] = kinds[selected[col]];
+			selectedNames[col] = names[selected[col]];
+
+			switch (selectedKinds[col]) {
+			case DOUBLE:
+				columns[col] = new double[rows];
+				break;
+			case INTEGER:
+				columns[col] = new int[rows];
+				break;
+			case LOGICAL:
+				columns[col] = new byte[rows];
+				break;
+			default:
+				columns[col] = new String[rows];
+			}
+		}
+
+		try {
+			int row = 0;
+			for (Object bean : beans) {
+				for (int col = 0; col < columns.length; col++) {
+					Object value = selectedGetters[col].invoke(bean);
+
+					switch (selectedKinds[col]) {
+					case DOUBLE:
+						((double[]) columns[col])[row] =
+								((Number) value).doubleValue();
+						break;
+					case INTEGER:
+						((int[]) columns[col])[row] =
+								((Number) value).intValue();
+						break;
+					case LOGICAL:
+						((byte[]) columns[col])[row] =
+								((Boolean) value) ? REXPLogical.TRUE
+										: REXPLogical.FALSE;
+						break;
+					default:
+						((String[]) columns[col])[row] = value.toString();
+					}
+				}
+				row++;
+			}
+		} catch (IllegalAccessException e) {
+			throw new RFaceException(e.getMessage(), e);
+		} catch (InvocationTargetException e) {
+			throw new RFaceException(e.getCause().getMessage(), e.getCause());
+		}
+
+		REXP[] vectors = new REXP[columns.length];
+		for (int col = 0; col < columns.length; col++) {
+			switch (selectedKinds[col]) {
+			case DOUBLE:
+				vectors[col] = new REXPDouble((double[]) columns[col]);
+				break;
+			case INTEGER:
+				vectors[col] = new REXPInteger((int[]) columns[col]);
+				break;
+			case LOGICAL:
+				vectors[col] = new REXPLogical((byte[]) columns[col]);
+				break;
+			default:
+				vectors[col] = new REXPString((String[]) columns[col]);
+			}
+		}
+
+		return new RList(vectors, selectedNames);
+	}
+
+}
@@ -0,0 +1,194 @@
+package org.jamsim.ascape.r;
+
+import java.util.Collection;
+import java.util.Set;
+
+import org.omancode.r.RFaceException;
+import org.rosuda.REngine.RList;
+
+/**
+ * A scape dataframe assigned to R by a {@link BeanColumnMarshaller}, and the
+ * agents that are its rows. Decides whether the dataframe can be updated by
+ * reassigning only its changed columns, and which rows to remove when agents
+ * leave the active set, so {@link ScapeRInterface} need not reassign the
+ * whole population.
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public final class MarshalledDataFrame {
+
+	private final String name;
+
+	private final BeanColumnMarshaller marshaller;
+
+	private final int membersModCount;
+
+	/**
+	 * Agents that are the dataframe's rows, if it contains active agents
+	 * only, otherwise {@code null}.
+	 */
+	private Object[] rows;
+
+	private int activeModCount;
+
+	/**
+	 * Construct a {@link MarshalledDataFrame} of all the scape's members.
+	 * 
+	 * @param name
+	 *            dataframe name
+	 * @param marshaller
+	 *            marshaller that created the dataframe
+	 * @param membersModCount
+	 *            {@link org.jamsim.ascape.MicroSimScape#getMembersModCount()}
+	 *            when the dataframe was created
+	 */
+	public MarshalledDataFrame(String name, BeanColumnMarshaller marshaller,
+			int membersModCount) {
+		this(name, marshaller, membersModCount, null, 0);
+	}
+
+	/**
+	 * Construct a {@link MarshalledDataFrame} of the scape's active agents.
+	 * 
+	 * @param name
+	 *            dataframe name
+	 * @param marshaller
+	 *            marshaller that created the dataframe
+	 * @param membersModCount
+	 *            {@link org.jamsim.ascape.MicroSimScape#getMembersModCount()}
+	 *            when the dataframe was created
+	 * @param rows
+	 *            active agents, in scape order, ie: the dataframe's rows
+	 * @param activeModCount
+	 *            {@link org.jamsim.ascape.MicroSimScape#getActiveModCount()}
+	 *            when the dataframe was created
+	 */
+	public MarshalledDataFrame(String name, BeanColumnMarshaller marshaller,
+			int membersModCount, Object[] rows, int activeModCount) {
+		this.name = name;
+		this.marshaller = marshaller;
+		this.membersModCount = membersModCount;
+		this.rows = rows;
+		this.activeModCount = activeModCount;
+	}
+
+	/**
+	 * Get the dataframe name.
+	 * 
+	 * @return dataframe name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Whether the dataframe contains active agents only.
+	 * 
+	 * @return active only
+	 */
+	public boolean isActiveOnly() {
+		return rows != null;
+	}
+
+	/**
+	 * Whether dataframe {@code dataframeName} can be brought up to date by
+	 * reassigning only {@code columns}. It can't if it is not this dataframe,
+	 * every column may have changed, a column is not created by the
+	 * marshaller, or the rows are no longer the agents because the scape's
+	 * members have changed.
+	 * 
+	 * @param dataframeName
+	 *            dataframe to update
+	 * @param columns
+	 *            changed columns, or {@code null} if every column may have
+	 *            changed, see
+	 *            {@link org.jamsim.ascape.MicroSimScape#takeChangedColumns()}
+	 * @param activeOnly
+	 *            whether the updated dataframe contains active agents only
+	 * @param currentMembersModCount
+	 *            current
+	 *            {@link org.jamsim.ascape.MicroSimScape#getMembersModCount()}
+	 * @return {@code true} if the columns can be reassigned
+	 */
+	public boolean canUpdate(String dataframeName, Set<String> columns,
+			boolean activeOnly, int currentMembersModCount) {
+		return columns != null && name.equals(dataframeName)
+				&& marshaller.hasColumns(columns)
+				&& activeOnly == isActiveOnly()
+				&& currentMembersModCount == membersModCount;
+	}
+
+	/**
+	 * Whether agents may have left the active set since the rows were last
+	 * updated.
+	 * 
+	 * @param currentActiveModCount
+	 *            current
+	 *            {@link org.jamsim.ascape.MicroSimScape#getActiveModCount()}
+	 * @return {@code true} if rows may need removing
+	 */
+	public boolean isActiveChanged(int currentActiveModCount) {
+		return isActiveOnly() && currentActiveModCount != activeModCount;
+	}
+
+	/**
+	 * Convert the agents into the changed columns.
+	 * 
+	 * @param agents
+	 *            agents, ie: the dataframe's rows
+	 * @param columns
+	 *            changed columns
+	 * @return list of columns, to assign into the dataframe
+	 * @throws RFaceException
+	 *             if a getter fails
+	 */
+	public RList marshalColumns(Collection<?> agents, Set<String> columns)
+			throws RFaceException {
+		return marshaller.marshal(agents, columns);
+	}
+
+	/**
+	 * Remove the rows of agents that have left the active set. While the
+	 * members are unchanged the active set only shrinks, so the active agents
+	 * are the rows less those removed. The rows become {@code active}.
+	 * 
+	 * @param active
+	 *            active agents, in scape order
+	 * @param currentActiveModCount
+	 *            current
+	 *            {@link org.jamsim.ascape.MicroSimScape#getActiveModCount()}
+	 * @return R row numbers, starting at 1, of the rows to remove, or
+	 *         {@code null} if the active agents are not a subsequence of the
+	 *         rows, so the dataframe must be reassigned
+	 */
+	public int[] dropInactiveRows(Object[] active, int currentActiveModCount) {
+		if (!isActiveOnly() || active.length > rows.length) {
+			return null;
+		}
+
+		int[] dropped = new int[rows.length - active.length];
+		int kept = 0;
+		int numDropped = 0;
+
+		for (int row = 0; row < rows.length; row++) {
+			if (kept < active.length && rows[row] == active[kept]) {
+				kept++;
+			} else if (numDropped < dropped.length) {
+				// R row numbers start at 1
+				dropped[numDropped++] = row + 1;
+			} else {
+				return null;
+			}
+		}
+
+		if (kept != active.length) {
+			return null;
+		}
+
+		rows = active;
+		activeModCount = currentActiveModCount;
+		return dropped;
+	}
+
+}
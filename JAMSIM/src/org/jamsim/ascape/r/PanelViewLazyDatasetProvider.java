@@ -20,7 +20,6 @@ import org.jamsim.ascape.output.Saveable;
 import org.jamsim.ascape.output.SaveableDataset;
 import org.jamsim.ascape.ui.UIUtil;
 import org.omancode.r.RFaceException;
-import org.rosuda.REngine.REXP;
 
 
 /**
@@ -39,7 +38,6 @@ public class PanelViewLazyDatasetProvider implements PanelViewProvider, Saveable
 	private String nodeName;
 	private PanelView pv;
 	
-	private REXP rexp;
 	private REXPDatasetProvider dsProvider;
 
 	/**
@@ -127,8 +125,8 @@ public class PanelViewLazyDatasetProvider implements PanelViewProvider, Saveable
 		}
 		
 		try{
-			rexp = rInterface.parseEvalTry(rPlotCmd);
-			dsProvider = new REXPDatasetProvider(nodeName, rexp);
+			dsProvider = new REXPDatasetProvider(nodeName,
+					rInterface.parseEvalTryCached(rPlotCmd, nodeName));
 		}catch(RFaceException e){
 			System.out.println(e.getMessage());
 		}
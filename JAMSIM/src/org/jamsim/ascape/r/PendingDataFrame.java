@@ -0,0 +1,146 @@
+package org.jamsim.ascape.r;
+
+import java.util.regex.Pattern;
+
+/**
+ * A scape dataframe whose creation has been deferred until R needs it, see
+ * {@link ScapeRInterface#setLazyDataFrame(boolean)}. Repeated deferrals of
+ * the same run's dataframe are merged, so it is assigned once when
+ * materialized.
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public final class PendingDataFrame {
+
+	/**
+	 * Characters that, in addition to letters and digits, make up an R
+	 * identifier.
+	 */
+	private static final String IDENTIFIER_CHARS = "\\w.";
+
+	private boolean pending = false;
+
+	private int run;
+
+	private boolean activeOnly;
+
+	private boolean all;
+
+	/**
+	 * Whether a deferred scape dataframe is waiting to be created.
+	 * 
+	 * @return pending
+	 */
+	public boolean isPending() {
+		return pending;
+	}
+
+	/**
+	 * Run number of the pending scape dataframe.
+	 * 
+	 * @return run number
+	 */
+	public int getRun() {
+		return run;
+	}
+
+	/**
+	 * Whether the pending scape dataframe only includes active agents.
+	 * 
+	 * @return active only
+	 */
+	public boolean isActiveOnly() {
+		return activeOnly;
+	}
+
+	/**
+	 * Whether the whole pending scape dataframe must be assigned, rather than
+	 * just its changed columns.
+	 * 
+	 * @return assign the whole dataframe
+	 */
+	public boolean isAll() {
+		return all;
+	}
+
+	/**
+	 * Whether a dataframe is pending for a run other than {@code runNumber},
+	 * and so must be materialized before deferring {@code runNumber}'s.
+	 * 
+	 * @param runNumber
+	 *            run number
+	 * @return {@code true} if pending for another run
+	 */
+	public boolean isPendingOtherRun(int runNumber) {
+		return pending && run != runNumber;
+	}
+
+	/**
+	 * Defer the scape dataframe of {@code runNumber}. If it is already
+	 * pending, the whole dataframe is assigned if either deferral needs it,
+	 * or if the deferrals differ in {@code activeOnly}.
+	 * 
+	 * @param runNumber
+	 *            run number
+	 * @param deferActiveOnly
+	 *            whether the dataframe only includes active agents
+	 * @param deferAll
+	 *            whether the whole dataframe must be assigned, rather than
+	 *            just its changed columns
+	 */
+	public void defer(int runNumber, boolean deferActiveOnly, boolean deferAll) {
+		boolean merge = pending && run == runNumber;
+		all =
+				merge ? all || deferAll || activeOnly != deferActiveOnly
+						: deferAll;
+		run = runNumber;
+		activeOnly = deferActiveOnly;
+		pending = true;
+	}
+
+	/**
+	 * Clear the pending dataframe, before materializing it.
+	 * 
+	 * @return {@code true} if a dataframe was pending
+	 */
+	public boolean take() {
+		boolean wasPending = pending;
+		pending = false;
+		return wasPending;
+	}
+
+	/**
+	 * Whether the pending dataframe is referenced by {@code expr}.
+	 * 
+	 * @param expr
+	 *            R expression
+	 * @param dataframeName
+	 *            name of the pending dataframe, ie:
+	 *            {@link ScapeRInterface#getScapeDFRunName(int)} of
+	 *            {@link #getRun()}
+	 * @return {@code true} if pending and {@code expr} mentions it
+	 */
+	public boolean isReferencedBy(String expr, String dataframeName) {
+		return pending && mentions(expr, dataframeName);
+	}
+
+	/**
+	 * Whether {@code expr} mentions the R identifier {@code name}. Because
+	 * {@code .} and {@code _} are part of R names, {@code people} is not
+	 * mentioned by eg: {@code people.run1} or {@code my_people}.
+	 * 
+	 * @param expr
+	 *            R expression
+	 * @param name
+	 *            R identifier
+	 * @return {@code true} if {@code expr} contains {@code name} as a whole
+	 *         identifier
+	 */
+	public static boolean mentions(String expr, String name) {
+		return Pattern.compile(
+				"(?<![" + IDENTIFIER_CHARS + "])" + Pattern.quote(name) + "(?!["
+						+ IDENTIFIER_CHARS + "])").matcher(expr).find();
+	}
+
+}
@@ -0,0 +1,191 @@
+package org.jamsim.ascape.r;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates R tasks on a single dedicated thread, so the simulation can carry
+ * on, eg: with the next run, while R computes the previous run's outputs.
+ * <p>
+ * Tasks are executed one at a time in the order they are submitted, so the
+ * tasks of a run are executed in order, and before the tasks of any run
+ * submitted later. The queue of waiting tasks is bounded; when it is full
+ * {@link #submit(int, Callable)} blocks until a task completes, so the
+ * simulation can't get more than a queue's worth ahead of R.
+ * </p>
+ * <p>
+ * Tasks should only read the dataframe snapshot of their run (see
+ * {@link ScapeRInterface#snapshotScapeDataFrame(int)}) and R objects of their
+ * own, because the simulation may replace the scape dataframe while they
+ * wait. {@link ScapeRInterface#submitCommand(int, String, Callable)} executes
+ * commands that don't read the snapshot immediately instead.
+ * </p>
+ * <p>
+ * The executor's thread is not the only thread that uses R. The R engine is
+ * created by {@link RLoader}, and synchronous {@link ScapeRInterface} calls
+ * are evaluated on the calling thread. Tasks must therefore only use R
+ * through {@link ScapeRInterface}. Its methods are synchronized, so tasks and
+ * synchronous calls never use R at the same time.
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class RExecutor {
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Last task submitted for each run that has not been awaited.
+	 */
+	private final Map<Integer, Future<?>> lastTasks =
+			new HashMap<Integer, Future<?>>();
+
+	private volatile Thread executorThread;
+
+	/**
+	 * Create an executor with its thread.
+	 *
+	 * @param capacity
+	 *            number of tasks that can wait to be executed before
+	 *            {@link #submit(int, Callable)} blocks
+	 */
+	public RExecutor(int capacity) {
+		executor =
+				new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+						new ArrayBlockingQueue<Runnable>(capacity),
+						new ThreadFactory() {
+							@Override
+							public Thread newThread(Runnable r) {
+								Thread t = new Thread(r, "R executor");
+								t.setDaemon(true);
+								executorThread = t;
+								return t;
+							}
+						}, new RejectedExecutionHandler() {
+							@Override
+							public void rejectedExecution(Runnable r,
+									ThreadPoolExecutor e) {
+								if (e.isShutdown()) {
+									throw new RejectedExecutionException(
+											"R executor has been shut down");
+								}
+								try {
+									// wait for room in the queue
+									e.getQueue().put(r);
+								} catch (InterruptedException ie) {
+									Thread.currentThread().interrupt();
+									throw new RejectedExecutionException(ie);
+								}
+							}
+						});
+	}
+
+	/**
+	 * Submit a task for a run. Blocks if the queue is full.
+	 *
+	 * @param <T>
+	 *            type of result
+	 * @param run
+	 *            run number the task belongs to
+	 * @param task
+	 *            task
+	 * @return future result of the task
+	 */
+	public <T> Future<T> submit(int run, Callable<T> task) {
+		Future<T> future = executor.submit(task);
+		synchronized (lastTasks) {
+			lastTasks.put(run, future);
+		}
+		return future;
+	}
+
+	/**
+	 * Whether the current thread is this executor's thread, ie: is executing a
+	 * task.
+	 *
+	 * @return {@code true} if called from a task
+	 */
+	public boolean isExecutorThread() {
+		return Thread.currentThread() == executorThread;
+	}
+
+	/**
+	 * Wait for the tasks submitted for a run to complete.
+	 *
+	 * @param run
+	 *            run number
+	 * @throws RuntimeException
+	 *             if the run's last task failed
+	 */
+	public void awaitRun(int run) {
+		Future<?> last;
+		synchronized (lastTasks) {
+			last = lastTasks.remove(run);
+		}
+		if (last != null) {
+			await(last);
+		}
+	}
+
+	/**
+	 * Wait for all submitted tasks to complete.
+	 *
+	 * @throws RuntimeException
+	 *             if the last task of a run failed
+	 */
+	public void awaitAll() {
+		Future<?>[] last;
+		synchronized (lastTasks) {
+			last = lastTasks.values().toArray(new Future<?>[lastTasks.size()]);
+			lastTasks.clear();
+		}
+		for (Future<?> future : last) {
+			await(future);
+		}
+	}
+
+	/**
+	 * Get the result of a task, waiting for it to complete if necessary.
+	 *
+	 * @param <T>
+	 *            type of result
+	 * @param future
+	 *            future returned by {@link #submit(int, Callable)}
+	 * @return result
+	 * @throws RuntimeException
+	 *             if the task failed, or the wait was interrupted
+	 */
+	public static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Complete the submitted tasks and stop the thread.
+	 */
+	public void shutdown() {
+		awaitAll();
+		executor.shutdown();
+	}
+
+}
@@ -3,6 +3,8 @@ package org.jamsim.ascape.r;
 import java.awt.Component;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.JTabbedPane;
 import javax.swing.SwingUtilities;
@@ -13,6 +15,7 @@ import org.ascape.util.swing.AscapeGUIUtil;
 import org.omancode.r.RFace;
 import org.omancode.r.RUtil;
 import org.omancode.r.ui.RSwingConsole;
+import org.rosuda.JRI.Rengine;
 
 /**
  * Create an {@link RSwingConsole}, load and initialise R, and add the console
@@ -51,6 +54,13 @@ public enum RLoader {
 	 */
 	private final RSwingConsole rConsole;
 
+	/**
+	 * Run before R evaluates input entered at the console. See
+	 * {@link #addConsoleInputListener(Runnable)}.
+	 */
+	private final List<Runnable> consoleInputListeners =
+			new CopyOnWriteArrayList<Runnable>();
+
 	/**
 	 * Load and initialise R without a startup file and adds the R console to
 	 * the Ascape GUI.
@@ -63,7 +73,21 @@ public enum RLoader {
 		System.out.print("Starting R....");
 
 		// create console but don't show the prompt
-		rConsole = new RSwingConsole(false);
+		rConsole = new RSwingConsole(false) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String rReadConsole(Rengine re, String prompt,
+					int addToHistory) {
+				String input = super.rReadConsole(re, prompt, addToHistory);
+				if (input != null) {
+					for (Runnable listener : consoleInputListeners) {
+						listener.run();
+					}
+				}
+				return input;
+			}
+		};
 
 		// load R (if not already loaded)
 		try {
@@ -151,6 +175,19 @@ public enum RLoader {
 		return rConsole;
 	}
 
+	/**
+	 * Add a listener that is run each time the user enters input at the R
+	 * console, after the input is read and before R evaluates it. Listeners
+	 * are run on the R thread, and may evaluate R expressions, eg: to bring
+	 * data the input may read up to date.
+	 * 
+	 * @param listener
+	 *            listener
+	 */
+	public void addConsoleInputListener(Runnable listener) {
+		consoleInputListeners.add(listener);
+	}
+
 	/**
 	 * Initialises the (already loaded) R environment. Loads required packages
 	 * and support functions and sets options.
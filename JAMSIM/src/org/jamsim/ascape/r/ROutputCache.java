@@ -0,0 +1,237 @@
+package org.jamsim.ascape.r;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPMismatchException;
+
+/**
+ * Least recently used cache of the results of evaluating R expressions that
+ * produce datasets, eg: table builder queries and R outputs. Results are
+ * keyed by expression, dataset name and the cache's data version, which is
+ * changed by {@link #invalidate()} whenever R data the expression may read
+ * changes, so a result is only reused while its inputs are unchanged (see
+ * {@link ScapeRInterface#invalidateOutputCache()}).
+ * <p>
+ * The cache is bounded by the estimated size of its results, see
+ * {@link #estimateSize(REXP)}. Cached results are shared, so callers convert
+ * them to a new dataset each time rather than modify them (see
+ * {@link ScapeRInterface#parseEvalTryCached(String, String)}).
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class ROutputCache {
+
+	/**
+	 * Estimated bytes per value of a result, ie: the boxed value and its
+	 * reference in the dataset converted from it.
+	 */
+	private static final int BYTES_PER_VALUE = 24;
+
+	/**
+	 * Cached results, least recently used first.
+	 */
+	private final LinkedHashMap<String, REXP> results =
+			new LinkedHashMap<String, REXP>(16, 0.75f, true);
+
+	private final Map<String, Long> sizes = new HashMap<String, Long>();
+
+	private final long maxSize;
+
+	private long size = 0;
+
+	private long version = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private long evictions = 0;
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxSize
+	 *            maximum estimated size of the cached results, in bytes
+	 */
+	public ROutputCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Cache key of an expression's result.
+	 *
+	 * @param expr
+	 *            expression, with any dataframe symbol replaced
+	 * @param name
+	 *            dataset name
+	 * @param dataVersion
+	 *            version of the R data the expression reads
+	 * @return key
+	 */
+	public static String key(String expr, String name, long dataVersion) {
+		return dataVersion + "\u0000" + name + "\u0000" + expr;
+	}
+
+	/**
+	 * Get a cached result, counting a hit or a miss.
+	 *
+	 * @param key
+	 *            key, see {@link #key(String, String, long)}
+	 * @return result, or {@code null} if not cached
+	 */
+	public synchronized REXP get(String key) {
+		REXP result = results.get(key);
+		if (result == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	/**
+	 * Cache a result, evicting the least recently used results until the
+	 * cache is within its maximum size. Results larger than the maximum size
+	 * are not cached.
+	 *
+	 * @param key
+	 *            key, see {@link #key(String, String, long)}
+	 * @param result
+	 *            result
+	 */
+	public synchronized void put(String key, REXP result) {
+		long resultSize = estimateSize(result);
+		if (resultSize > maxSize) {
+			return;
+		}
+
+		remove(key);
+		results.put(key, result);
+		sizes.put(key, resultSize);
+		size += resultSize;
+
+		Iterator<String> eldest = results.keySet().iterator();
+		while (size > maxSize) {
+			String evict = eldest.next();
+			eldest.remove();
+			size -= sizes.remove(evict);
+			evictions++;
+		}
+	}
+
+	private void remove(String key) {
+		if (results.remove(key) != null) {
+			size -= sizes.remove(key);
+		}
+	}
+
+	/**
+	 * Estimated size of a result in bytes, from its number of values, eg:
+	 * the number of rows times the number of columns of a dataframe.
+	 *
+	 * @param result
+	 *            result
+	 * @return estimated size
+	 */
+	public static long estimateSize(REXP result) {
+		try {
+			if (result.isList()) {
+				long listSize = 0;
+				for (Object element : result.asList()) {
+					listSize += estimateSize((REXP) element);
+				}
+				return listSize;
+			}
+			return (long) result.length() * BYTES_PER_VALUE;
+		} catch (REXPMismatchException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Current data version, to key results evaluated now.
+	 *
+	 * @return data version
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Change the data version, because R data has changed. Cached results
+	 * were keyed by an older version, so can't be found again, and are
+	 * removed to free their space.
+	 */
+	public synchronized void invalidate() {
+		version++;
+		clear();
+	}
+
+	/**
+	 * Remove all results. Counters are kept.
+	 */
+	public synchronized void clear() {
+		results.clear();
+		sizes.clear();
+		size = 0;
+	}
+
+	/**
+	 * Number of {@link #get(String)}s that found a result.
+	 *
+	 * @return hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Number of {@link #get(String)}s that didn't find a result.
+	 *
+	 * @return misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Number of results evicted to keep within the maximum size.
+	 *
+	 * @return evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Estimated size of the cached results in bytes.
+	 *
+	 * @return size
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Number of cached results.
+	 *
+	 * @return number of results
+	 */
+	public synchronized int getCount() {
+		return results.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "hits=" + hits + ", misses=" + misses + ", evictions="
+				+ evictions + ", results=" + results.size() + ", size="
+				+ size;
+	}
+
+}
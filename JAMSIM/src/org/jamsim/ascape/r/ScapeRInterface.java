@@ -4,8 +4,13 @@ import java.beans.IntrospectionException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import net.casper.data.model.CDataCacheContainer;
 import net.casper.data.model.CDataGridException;
@@ -14,11 +19,15 @@ import net.casper.data.model.CMarkedUpRowBean;
 import org.apache.commons.lang.ArrayUtils;
 import org.jamsim.ascape.DataDictionary;
 import org.jamsim.ascape.MicroSimScape;
+import org.jamsim.ascape.columnar.AgentTable;
+import org.jamsim.ascape.columnar.ColumnarMicroSimScape;
 import org.jamsim.ascape.navigator.MicroSimScapeNode;
+import org.jamsim.matrix.IndexedDenseDoubleMatrix2D;
 import org.omancode.math.NamedNumber;
 import org.omancode.r.RFace;
 import org.omancode.r.RFaceException;
 import org.omancode.r.RUtil;
+import org.omancode.r.types.CBuildFromREXP;
 import org.omancode.r.types.RDataFrame;
 import org.omancode.r.types.REXPUtil;
 import org.omancode.r.types.RMatrix;
@@ -30,7 +39,10 @@ import org.omancode.util.ExecutionTimer;
 import org.omancode.util.StringUtil;
 import org.rosuda.REngine.REXP;
 import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPInteger;
+import org.rosuda.REngine.REXPLogical;
 import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REXPString;
 import org.rosuda.REngine.RList;
 
 /**
@@ -58,6 +70,29 @@ public class ScapeRInterface {
 	 */
 	private static final String COMMON_R = "Common.r";
 
+	/**
+	 * Temporary R symbol that changed columns are assigned to before being
+	 * copied into the scape dataframe.
+	 */
+	private static final String DELTA_DF_SYMBOL = ".jamsimDelta";
+
+	/**
+	 * Temporary R symbol of the row numbers removed from the scape dataframe.
+	 */
+	private static final String DROP_ROWS_SYMBOL = ".jamsimDropRows";
+
+	/**
+	 * Number of R tasks that can wait to be executed before the simulation
+	 * blocks. See {@link RExecutor}.
+	 */
+	private static final int ASYNC_QUEUE_CAPACITY = 16;
+
+	/**
+	 * Maximum estimated size of the datasets in {@link #outputCache}, in
+	 * bytes.
+	 */
+	private static final long OUTPUT_CACHE_SIZE = 64L * 1024 * 1024;
+
 	/**
 	 * Dataframe replacement symbol.
 	 */
@@ -83,6 +118,59 @@ public class ScapeRInterface {
 
 	private final ExecutionTimer timer = new ExecutionTimer();
 
+	/**
+	 * Marshaller for the most recent class of beans converted by
+	 * {@link #assignDataFrame(String, Collection, Class)}.
+	 */
+	private BeanColumnMarshaller marshaller;
+
+	/**
+	 * Stop class of {@link #marshaller}.
+	 */
+	private Class<?> marshallerStopClass;
+
+	/**
+	 * Scape dataframe last assigned by a {@link BeanColumnMarshaller}, or
+	 * {@code null} if it was not. Changed columns can only be reassigned into
+	 * this dataframe.
+	 */
+	private MarshalledDataFrame marshalled;
+
+	/**
+	 * Whether creating the scape dataframe is deferred until an evaluation
+	 * needs it. See {@link #setLazyDataFrame(boolean)}.
+	 */
+	private boolean lazyDataFrame = false;
+
+	/**
+	 * Deferred scape dataframe waiting to be created.
+	 */
+	private final PendingDataFrame pending = new PendingDataFrame();
+
+	/**
+	 * Executes R tasks asynchronously, or {@code null} if R tasks are executed
+	 * immediately. See {@link #setAsync(boolean)}.
+	 */
+	private volatile RExecutor rExecutor;
+
+	/**
+	 * Run of the last dataframe snapshot, or -1 if none.
+	 */
+	private int snapshotRun = -1;
+
+	/**
+	 * Run the scape dataframe was last assigned for, or -1 if none. See
+	 * {@link #rcmdReplaceSnapshot(String, int)}.
+	 */
+	private int dataFrameRun = -1;
+
+	/**
+	 * Datasets of evaluated R expressions. See
+	 * {@link #parseEvalTryCached(String, String)}.
+	 */
+	private final ROutputCache outputCache =
+			new ROutputCache(OUTPUT_CACHE_SIZE);
+
 	private String baseFileUpdateCmd;
 
 	/**
@@ -137,6 +225,13 @@ public class ScapeRInterface {
 		this.rConsole = rLoader.getRConsole();
 		this.rInterface = rLoader.getRInterface();
 
+		rLoader.addConsoleInputListener(new Runnable() {
+			@Override
+			public void run() {
+				consoleInput();
+			}
+		});
+
 		lastInstance = this;
 	}
 
@@ -149,12 +244,13 @@ public class ScapeRInterface {
 	 * @throws IOException
 	 *             if problem reading or evaluating file
 	 */
-	public void loadRFile(File file) throws IOException {
+	public synchronized void loadRFile(File file) throws IOException {
 		if (file != null) {
 			rInterface.printlnToConsole("Loading " + file.getCanonicalPath());
 
 			// rInterface.parseEvalPrint(RUtil.readRFile(file));
 			rInterface.loadFile(file);
+			invalidateOutputCache();
 		}
 	}
 
@@ -176,7 +272,8 @@ public class ScapeRInterface {
 	 * @throws IOException
 	 *             if problem loading or evaluating the resource.
 	 */
-	private void loadRResource(String resourceName) throws IOException {
+	private synchronized void loadRResource(String resourceName)
+			throws IOException {
 		rInterface.printlnToConsole("Loading resource " + resourceName);
 
 		InputStream ins = getClass().getResourceAsStream(resourceName);
@@ -184,7 +281,7 @@ public class ScapeRInterface {
 			throw new IOException(resourceName + " not found on classpath.");
 		}
 		rInterface.parseEvalPrint(RUtil.readRStream(ins));
-
+		invalidateOutputCache();
 	}
 
 	/**
@@ -196,7 +293,7 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem setting directory
 	 */
-	public void setWd(String dir) throws RFaceException {
+	public synchronized void setWd(String dir) throws RFaceException {
 		rInterface.setWd(dir);
 	}
 
@@ -207,7 +304,7 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem getting directory
 	 */
-	public String getWd() throws RFaceException {
+	public synchronized String getWd() throws RFaceException {
 		return rInterface.getWd();
 	}
 
@@ -232,9 +329,10 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem creating hash
 	 */
-	public void assignHash(String name, Map<String, ?> map)
+	public synchronized void assignHash(String name, Map<String, ?> map)
 			throws RFaceException {
 		rInterface.assignHash(name, map);
+		invalidateOutputCache();
 	}
 
 	/**
@@ -248,8 +346,10 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem assigning
 	 */
-	public void assign(String name, REXP rexp) throws RFaceException {
+	public synchronized void assign(String name, REXP rexp)
+			throws RFaceException {
 		rInterface.assign(name, rexp);
+		invalidateOutputCache();
 	}
 
 	/**
@@ -263,8 +363,10 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem assigning
 	 */
-	public void assign(String x, String value) throws RFaceException {
+	public synchronized void assign(String x, String value)
+			throws RFaceException {
 		rInterface.assign(x, value);
+		invalidateOutputCache();
 	}
 
 	/**
@@ -276,16 +378,72 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem during creation
 	 */
-	@SuppressWarnings("unchecked")
 	public void assignScapeDataFrame(int runNumber) throws RFaceException {
+		assignScapeDataFrame(runNumber, false);
+	}
+
+	/**
+	 * Create a dataframe from the scape. If the scape has no members, silently
+	 * does nothing. If {@link #isLazyDataFrame()}, the dataframe is created
+	 * by {@link #materializeScapeDataFrame()}.
+	 * 
+	 * @param runNumber
+	 *            run number. Used in the naming of the dataframe
+	 * @param activeOnly
+	 *            if {@code true} only include the scape's active agents (see
+	 *            {@link MicroSimScape#getActiveAgents()})
+	 * @throws RFaceException
+	 *             if problem during creation
+	 */
+	public synchronized void assignScapeDataFrame(int runNumber,
+			boolean activeOnly) throws RFaceException {
+		dataFrameRun = runNumber;
+		if (!defer(runNumber, activeOnly, true)) {
+			createScapeDataFrame(runNumber, activeOnly);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void createScapeDataFrame(int runNumber, boolean activeOnly)
+			throws RFaceException {
 		String dataframeName = getScapeDFRunName(runNumber);
 
-		if (msscape.size() > 0) {
+		Collection<?> agents =
+				activeOnly ? msscape.getActiveAgents() : msscape;
+		AgentTable table = null;
+		int numAgents = agents.size();
+
+		if (msscape instanceof ColumnarMicroSimScape) {
+			table = ((ColumnarMicroSimScape<?>) msscape).getTable();
+			numAgents = table.size();
+		}
+
+		if (numAgents > 0) {
 			timer.start();
 
-			assignDataFrame(dataframeName, msscape, msscape
-					.getPrototypeAgent().getClass().getSuperclass());
+			// any changed columns are included
+			msscape.takeChangedColumns();
+			marshalled = null;
+
+			if (table != null) {
+				assignDataFrame(dataframeName, table);
+			} else if (assignBeans(dataframeName,
+					(Collection<? extends CMarkedUpRowBean>) agents, msscape
+							.getPrototypeAgent().getClass().getSuperclass())) {
+				if (activeOnly) {
+					marshalled =
+							new MarshalledDataFrame(dataframeName, marshaller,
+									msscape.getMembersModCount(), agents
+											.toArray(), msscape
+											.getActiveModCount());
+				} else {
+					marshalled =
+							new MarshalledDataFrame(dataframeName, marshaller,
+									msscape.getMembersModCount());
+				}
+			}
 			rInterface.printlnToConsole("Created dataframe " + dataframeName);
+			invalidateOutputCache();
 
 			timer.stop();
 
@@ -298,11 +456,241 @@ public class ScapeRInterface {
 		}
 	}
 
+	/**
+	 * Update the dataframe from the scape by reassigning only the columns
+	 * that have changed since it was created (see
+	 * {@link MicroSimScape#setTrackColumnChanges(boolean)}), and keeping the
+	 * rest. Eg: after a weight change only the weight columns are transferred,
+	 * rather than the whole population. The whole dataframe is assigned, as
+	 * per {@link #assignScapeDataFrame(int, boolean)}, if column changes are
+	 * not tracked, every column may have changed, the scape's members have
+	 * changed since the dataframe was created, or the columns cannot be
+	 * reassigned. If {@code activeOnly}, the rows of agents that have since
+	 * left the active set, eg: died, are removed. If
+	 * {@link #isLazyDataFrame()}, the dataframe is updated by
+	 * {@link #materializeScapeDataFrame()}.
+	 * 
+	 * @param runNumber
+	 *            run number. Used in the naming of the dataframe
+	 * @param activeOnly
+	 *            if {@code true} only include the scape's active agents (see
+	 *            {@link MicroSimScape#getActiveAgents()})
+	 * @throws RFaceException
+	 *             if problem during creation
+	 */
+	public synchronized void assignScapeDataFrameChanges(int runNumber,
+			boolean activeOnly) throws RFaceException {
+		dataFrameRun = runNumber;
+		if (!defer(runNumber, activeOnly, false)) {
+			updateScapeDataFrame(runNumber, activeOnly);
+		}
+	}
+
+	private void updateScapeDataFrame(int runNumber, boolean activeOnly)
+			throws RFaceException {
+		String dataframeName = getScapeDFRunName(runNumber);
+		Set<String> columns = msscape.takeChangedColumns();
+
+		if (marshalled == null
+				|| !marshalled.canUpdate(dataframeName, columns, activeOnly,
+						msscape.getMembersModCount())) {
+			createScapeDataFrame(runNumber, activeOnly);
+			return;
+		}
+
+		Collection<?> agents =
+				activeOnly ? msscape.getActiveAgents() : msscape;
+
+		// in active only mode agents that have left the active set, eg: died,
+		// have their rows removed
+		boolean activeChanged =
+				marshalled.isActiveChanged(msscape.getActiveModCount());
+
+		if (columns.isEmpty() && !activeChanged) {
+			return;
+		}
+
+		timer.start();
+
+		try {
+			if (activeChanged
+					&& !dropInactiveRows(dataframeName, agents.toArray())) {
+				createScapeDataFrame(runNumber, activeOnly);
+				return;
+			}
+
+			if (!columns.isEmpty()) {
+				rInterface.assignDataFrame(DELTA_DF_SYMBOL, marshalled
+						.marshalColumns(agents, columns));
+				rInterface.parseEvalTry(dataframeName + "[names("
+						+ DELTA_DF_SYMBOL + ")] <- " + DELTA_DF_SYMBOL
+						+ "; rm(" + DELTA_DF_SYMBOL + ")");
+			}
+			invalidateOutputCache();
+		} catch (RFaceException e) {
+			// eg: dataframe removed in R
+			createScapeDataFrame(runNumber, activeOnly);
+			return;
+		}
+
+		timer.stop();
+
+		System.out.println("Updated " + columns
+				+ (activeChanged ? " and active rows" : "") + " in dataframe "
+				+ dataframeName + " (" + timer.duration() + " ms)");
+
+		if (runNumber == 0) {
+			baseFileUpdated();
+		}
+	}
+
+	/**
+	 * Remove the rows of agents that have left the active set from the
+	 * dataframe, rather than reassigning the whole dataframe. See
+	 * {@link MarshalledDataFrame#dropInactiveRows(Object[], int)}.
+	 * 
+	 * @param dataframeName
+	 *            dataframe of {@link #marshalled}
+	 * @param active
+	 *            active agents, in scape order
+	 * @return {@code false} if the active agents are not a subsequence of the
+	 *         marshalled agents, so the dataframe must be reassigned
+	 * @throws RFaceException
+	 *             if problem removing the rows
+	 */
+	private boolean dropInactiveRows(String dataframeName, Object[] active)
+			throws RFaceException {
+		int[] dropped =
+				marshalled.dropInactiveRows(active, msscape
+						.getActiveModCount());
+		if (dropped == null) {
+			return false;
+		}
+
+		if (dropped.length > 0) {
+			rInterface.assign(DROP_ROWS_SYMBOL, new REXPInteger(dropped));
+			rInterface.parseEvalTry(dataframeName + " <- " + dataframeName
+					+ "[-" + DROP_ROWS_SYMBOL + ", , drop = FALSE]; rownames("
+					+ dataframeName + ") <- NULL; rm(" + DROP_ROWS_SYMBOL
+					+ ")");
+		}
+
+		return true;
+	}
+
+	/**
+	 * Whether creating the scape dataframe is deferred until an evaluation
+	 * needs it.
+	 * 
+	 * @return lazy dataframe
+	 */
+	public boolean isLazyDataFrame() {
+		return lazyDataFrame;
+	}
+
+	/**
+	 * Set whether to defer creating the scape dataframe until an evaluation
+	 * needs it. If {@code true}, {@link #assignScapeDataFrame(int, boolean)}
+	 * and {@link #assignScapeDataFrameChanges(int, boolean)} only mark the
+	 * dataframe as out of date, so eg: repeated weight changes cost nothing
+	 * until the dataframe is read. It is then created, along with the base
+	 * file update command, before:
+	 * <ul>
+	 * <li>evaluating an expression that mentions the dataframe's name,</li>
+	 * <li>outputs and {@link ScapeRListener} commands, which call
+	 * {@link #materializeScapeDataFrame()}, and</li>
+	 * <li>R evaluates input entered at the R console.</li>
+	 * </ul>
+	 * Expressions that read the dataframe without naming it, eg: R functions
+	 * that refer to it as a global, must call
+	 * {@link #materializeScapeDataFrame()} first. Switching off creates any
+	 * pending dataframe.
+	 * 
+	 * @param lazyDataFrame
+	 *            lazy dataframe
+	 * @throws RFaceException
+	 *             if problem creating the pending dataframe
+	 */
+	public synchronized void setLazyDataFrame(boolean lazyDataFrame)
+			throws RFaceException {
+		this.lazyDataFrame = lazyDataFrame;
+		if (!lazyDataFrame) {
+			materializeScapeDataFrame();
+		}
+	}
+
+	/**
+	 * Mark the scape dataframe as pending instead of creating it, if
+	 * {@link #isLazyDataFrame()}. A dataframe already pending for another run
+	 * is created first, so the base file update command still sees run 0.
+	 * 
+	 * @return {@code true} if deferred
+	 */
+	private boolean defer(int runNumber, boolean activeOnly, boolean all)
+			throws RFaceException {
+		if (!lazyDataFrame) {
+			return false;
+		}
+
+		if (pending.isPendingOtherRun(runNumber)) {
+			materializeScapeDataFrame();
+		}
+
+		pending.defer(runNumber, activeOnly, all);
+		return true;
+	}
+
+	/**
+	 * Create or update the scape dataframe, if it has been deferred by
+	 * {@link #setLazyDataFrame(boolean)}. Call before evaluating R code that
+	 * reads the dataframe.
+	 * 
+	 * @throws RFaceException
+	 *             if problem during creation
+	 */
+	public synchronized void materializeScapeDataFrame()
+			throws RFaceException {
+		// cleared first, because evaluating the base file update command
+		// materializes too
+		if (!pending.take()) {
+			return;
+		}
+
+		if (pending.isAll()) {
+			createScapeDataFrame(pending.getRun(), pending.isActiveOnly());
+		} else {
+			updateScapeDataFrame(pending.getRun(), pending.isActiveOnly());
+		}
+	}
+
+	/**
+	 * Materialize the pending scape dataframe if {@code expr} mentions it as
+	 * a whole R identifier, so eg: a snapshot {@code people.run1} doesn't
+	 * materialize {@code people}.
+	 */
+	private void materializeFor(String expr) throws RFaceException {
+		if (pending.isReferencedBy(expr, getScapeDFRunName(pending.getRun()))) {
+			materializeScapeDataFrame();
+		}
+	}
+
+	/**
+	 * Materialize the pending scape dataframe if {@code expr} mentions it, for
+	 * evaluations that don't throw {@link RFaceException}.
+	 */
+	private void materializeForUnchecked(String expr) {
+		try {
+			materializeFor(expr);
+		} catch (RFaceException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * Execute the base file update command. Call this when you have changed
 	 * variables and after writing the scape to a dataframe.
 	 */
-	public void baseFileUpdated() {
+	public synchronized void baseFileUpdated() {
 		if (baseFileUpdateCmd != null) {
 			parseEvalPrint(baseFileUpdateCmd);
 			System.out.println("Executed " + baseFileUpdateCmd);
@@ -337,6 +725,264 @@ public class ScapeRInterface {
 		return dfName;
 	}
 
+	/**
+	 * Whether R tasks submitted via {@link #submit(int, Callable)} are
+	 * executed asynchronously.
+	 * 
+	 * @return async
+	 */
+	public boolean isAsync() {
+		return rExecutor != null;
+	}
+
+	/**
+	 * Set whether R tasks submitted via {@link #submit(int, Callable)}, eg: run
+	 * end commands and outputs, are executed asynchronously by an
+	 * {@link RExecutor} so the simulation can start the next run while R
+	 * computes the previous run's outputs. Only submitted tasks are moved to
+	 * the executor's thread. The R engine is still created by the
+	 * {@link RLoader}, and synchronous calls, eg:
+	 * {@link #parseEvalTry(String)}, are still evaluated on the calling
+	 * thread. They are synchronized with the executor's tasks, so only one
+	 * thread uses R at a time. Switching off waits for submitted tasks to
+	 * complete.
+	 * 
+	 * @param async
+	 *            async
+	 */
+	public void setAsync(boolean async) {
+		if (async && rExecutor == null) {
+			rExecutor = new RExecutor(ASYNC_QUEUE_CAPACITY);
+		} else if (!async && rExecutor != null) {
+			rExecutor.shutdown();
+			rExecutor = null;
+		}
+	}
+
+	/**
+	 * Submit an R task for a run. Tasks are executed in the order submitted,
+	 * asynchronously if {@link #isAsync()}, otherwise immediately. Tasks
+	 * submitted by a task are executed immediately. Tasks
+	 * should read the run's dataframe by its snapshot name (see
+	 * {@link #snapshotScapeDataFrame(int)}).
+	 * 
+	 * @param <T>
+	 *            type of result
+	 * @param run
+	 *            run number
+	 * @param task
+	 *            task
+	 * @return future result of the task
+	 */
+	public <T> Future<T> submit(int run, Callable<T> task) {
+		RExecutor executor = rExecutor;
+		if (executor != null && !executor.isExecutorThread()) {
+			return executor.submit(run, task);
+		}
+
+		FutureTask<T> future = new FutureTask<T>(task);
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Submit a task that evaluates an R command for a run, as returned by
+	 * {@link #rcmdReplaceSnapshot(String, int)}. The task is submitted as per
+	 * {@link #submit(int, Callable)} if the command reads the run's dataframe
+	 * by the {@link #dataFrameSymbol} and the run's dataframe is still
+	 * available to it, ie: all run dataframes are kept or it is the run of
+	 * the last snapshot. Otherwise the command may read the scape dataframe
+	 * some other way, eg: a global such as the dataframe's name that the next
+	 * run replaces. In that case the task is executed now, once the tasks
+	 * already submitted have completed.
+	 * 
+	 * @param <T>
+	 *            type of result
+	 * @param run
+	 *            run number
+	 * @param rCommand
+	 *            R command the task evaluates, before the
+	 *            {@link #dataFrameSymbol} is replaced
+	 * @param task
+	 *            task
+	 * @return future result of the task
+	 */
+	public <T> Future<T> submitCommand(int run, String rCommand,
+			Callable<T> task) {
+		RExecutor executor = rExecutor;
+		if (executor == null || executor.isExecutorThread()
+				|| (rCommand.contains(dataFrameSymbol) && (keepAllRunDFs
+						|| run == snapshotRun))) {
+			return submit(run, task);
+		}
+
+		executor.awaitAll();
+
+		FutureTask<T> future = new FutureTask<T>(task);
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Wait for the R tasks submitted for a run to complete. Returns
+	 * immediately if not {@link #isAsync()}.
+	 * 
+	 * @param run
+	 *            run number
+	 */
+	public void awaitRun(int run) {
+		RExecutor executor = rExecutor;
+		if (executor != null) {
+			executor.awaitRun(run);
+		}
+	}
+
+	/**
+	 * Wait for all submitted R tasks to complete. Returns immediately if not
+	 * {@link #isAsync()}.
+	 */
+	public void awaitAll() {
+		RExecutor executor = rExecutor;
+		if (executor != null) {
+			executor.awaitAll();
+		}
+	}
+
+	/**
+	 * Hand off the run's dataframe to the run's R tasks. If {@link #isAsync()}
+	 * and the dataframe is replaced by the next run (ie: not keeping all run
+	 * dataframes), the dataframe is copied to the run's snapshot name, which
+	 * R shares with the dataframe until it is changed. The previous snapshot
+	 * is removed once the tasks submitted before now have completed.
+	 * 
+	 * @param run
+	 *            run number
+	 * @return name the run's tasks should read the dataframe by, see
+	 *         {@link #getScapeDFSnapshotName(int)}
+	 * @throws RFaceException
+	 *             if problem copying the dataframe
+	 */
+	public String snapshotScapeDataFrame(int run) throws RFaceException {
+		if (keepAllRunDFs || !isAsync()) {
+			return getScapeDFRunName(run);
+		}
+
+		String snapshotName = getScapeDFRunName(run) + ".run" + run;
+
+		materializeScapeDataFrame();
+		parseEvalTry(snapshotName + " <- " + getScapeDFRunName(run));
+
+		if (snapshotRun != -1 && snapshotRun != run) {
+			final String previous = getScapeDFSnapshotName(snapshotRun);
+			submit(snapshotRun, new Callable<REXP>() {
+				@Override
+				public REXP call() throws RFaceException {
+					return parseEvalTry("rm(" + previous + ")");
+				}
+			});
+		}
+		snapshotRun = run;
+
+		return snapshotName;
+	}
+
+	/**
+	 * Name of the run's dataframe snapshot, ie: the name R tasks submitted
+	 * for the run read the dataframe by. The same as
+	 * {@link #getScapeDFRunName(int)} if not {@link #isAsync()}, keeping all
+	 * run dataframes, or the run has no snapshot.
+	 * 
+	 * @param run
+	 *            run number
+	 * @return snapshot name
+	 */
+	public String getScapeDFSnapshotName(int run) {
+		if (keepAllRunDFs || !isAsync() || run != snapshotRun) {
+			return getScapeDFRunName(run);
+		}
+		return getScapeDFRunName(run) + ".run" + run;
+	}
+
+	/**
+	 * Where the {@link #dataFrameSymbol} appears, substitute with the run's
+	 * dataframe snapshot name returned by {@link #getScapeDFSnapshotName(int)}.
+	 * If {@link #isAsync()} and the scape dataframe is the run's but has not
+	 * been snapshotted yet, eg: an output is evaluated before the run's
+	 * {@link ScapeRListener}, the snapshot is taken first, so commands
+	 * submitted for the run always read the run's dataframe. Use for
+	 * commands submitted via {@link #submitCommand(int, String, Callable)}.
+	 * 
+	 * @param rcmd
+	 *            R command containing text to replace
+	 * @param run
+	 *            run number
+	 * @return R command text with string replaced
+	 * @throws RFaceException
+	 *             if problem taking the snapshot
+	 */
+	public String rcmdReplaceSnapshot(String rcmd, int run)
+			throws RFaceException {
+		if (isAsync() && !keepAllRunDFs && run != snapshotRun
+				&& run == dataFrameRun && rcmd.contains(dataFrameSymbol)) {
+			snapshotScapeDataFrame(run);
+		}
+		return rcmd.replace(dataFrameSymbol, getScapeDFSnapshotName(run));
+	}
+
+	/**
+	 * Submit an R command for a run, where the {@link #dataFrameSymbol} is
+	 * replaced by the run's snapshot name. See
+	 * {@link #submitCommand(int, String, Callable)} and
+	 * {@link #parseEvalTry(String)}.
+	 * 
+	 * @param rCommand
+	 *            R command
+	 * @param run
+	 *            run number
+	 * @return future result of the evaluation
+	 * @throws RFaceException
+	 *             if problem taking the run's snapshot
+	 */
+	public Future<REXP> parseEvalTryAsync(String rCommand, int run)
+			throws RFaceException {
+		final String rcmd = rcmdReplaceSnapshot(rCommand, run);
+		return submitCommand(run, rCommand, new Callable<REXP>() {
+			@Override
+			public REXP call() throws RFaceException {
+				return parseEvalTry(rcmd);
+			}
+		});
+	}
+
+	/**
+	 * Submit an R command for a run, where the {@link #dataFrameSymbol} is
+	 * replaced by the run's snapshot name, printing errors to the console and
+	 * logging when finished. See
+	 * {@link #submitCommand(int, String, Callable)} and
+	 * {@link #parseEvalPrintLogReplace(String, int)}.
+	 * 
+	 * @param rCommand
+	 *            R command
+	 * @param run
+	 *            run number
+	 * @return future result of the evaluation
+	 */
+	public Future<REXP> parseEvalPrintLogReplaceAsync(String rCommand,
+			final int run) {
+		final String rcmd;
+		try {
+			rcmd = rcmdReplaceSnapshot(rCommand, run);
+		} catch (RFaceException e) {
+			throw new RuntimeException(e);
+		}
+		return submitCommand(run, rCommand, new Callable<REXP>() {
+			@Override
+			public REXP call() {
+				return parseEvalPrintLogReplace(rcmd, run);
+			}
+		});
+	}
+
 	/**
 	 * Create a dataframe in R from the given collection. Introspection is used
 	 * to determine the bean properties (i.e.: getter methods) that are exposed,
@@ -345,6 +991,11 @@ public class ScapeRInterface {
 	 * properties are ignored without warning.
 	 * 
 	 * NB: doesn't automatically create factors like read.table does.
+	 * <p>
+	 * Where the beans are all the same class, have no array properties and no
+	 * marked up row, columns are filled by a {@link BeanColumnMarshaller}
+	 * whose getters are resolved once and kept between calls.
+	 * </p>
 	 * 
 	 * @param name
 	 *            the name of the dataframe to create in R.
@@ -358,20 +1009,282 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if Collection cannot be read, or dataframe cannot be created.
 	 */
-	public void assignDataFrame(String name,
+	public synchronized void assignDataFrame(String name,
+			Collection<? extends CMarkedUpRowBean> col, Class<?> stopClass)
+			throws RFaceException {
+		assignBeans(name, col, stopClass);
+	}
+
+	/**
+	 * Create a dataframe in R from the given collection, as per
+	 * {@link #assignDataFrame(String, Collection, Class)}.
+	 * 
+	 * @return {@code true} if the dataframe was created by {@link #marshaller}
+	 */
+	private boolean assignBeans(String name,
 			Collection<? extends CMarkedUpRowBean> col, Class<?> stopClass)
 			throws RFaceException {
 		try {
-			RList rlist =
-					new RVectorList(col, stopClass).addCMarkedUpRow(col)
-							.asRList();
+			RList rlist;
+			BeanColumnMarshaller beanMarshaller = getMarshaller(col, stopClass);
+
+			if (beanMarshaller != null) {
+				rlist = beanMarshaller.marshal(col);
+			} else {
+				rlist =
+						new RVectorList(col, stopClass).addCMarkedUpRow(col)
+								.asRList();
+			}
 
 			rInterface.assignDataFrame(name, rlist);
+			invalidateOutputCache();
+			return beanMarshaller != null;
 		} catch (IntrospectionException e) {
 			throw new RFaceException(e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * Convert the scape's agents into the columns of a dataframe, without
+	 * touching R, to be assigned later by
+	 * {@link #assignDataFrame(String, RList)}. Unlike the other methods this
+	 * is thread-safe, eg: for capturing the agents of a run executed on a
+	 * worker thread by a {@link org.jamsim.ascape.ConcurrentRunExecutor}.
+	 * 
+	 * @param col
+	 *            agents of the scape, or of a run of the scape
+	 * @return dataframe columns
+	 * @throws RFaceException
+	 *             if Collection cannot be read
+	 */
+	public RList marshalDataFrame(Collection<? extends CMarkedUpRowBean> col)
+			throws RFaceException {
+		Class<?> stopClass =
+				msscape.getPrototypeAgent().getClass().getSuperclass();
+		try {
+			Class<?> beanClass = getMarshallableClass(col);
+			BeanColumnMarshaller beanMarshaller =
+					beanClass == null ? null : BeanColumnMarshaller.create(
+							beanClass, stopClass);
+
+			if (beanMarshaller != null) {
+				return beanMarshaller.marshal(col);
+			}
+			return new RVectorList(col, stopClass).addCMarkedUpRow(col)
+					.asRList();
+		} catch (IntrospectionException e) {
+			throw new RFaceException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Create a dataframe in R from columns converted by
+	 * {@link #marshalDataFrame(Collection)}.
+	 * 
+	 * @param name
+	 *            the name of the dataframe to create in R.
+	 * @param columns
+	 *            dataframe columns
+	 * @throws RFaceException
+	 *             if dataframe cannot be created.
+	 */
+	public synchronized void assignDataFrame(String name, RList columns)
+			throws RFaceException {
+		rInterface.assignDataFrame(name, columns);
+		invalidateOutputCache();
+	}
+
+	/**
+	 * Get a marshaller for {@code col}.
+	 * 
+	 * @return marshaller, or {@code null} if {@code col} must be converted by
+	 *         {@link RVectorList}
+	 */
+	private BeanColumnMarshaller getMarshaller(
+			Collection<? extends CMarkedUpRowBean> col, Class<?> stopClass)
+			throws IntrospectionException {
+		Class<?> beanClass = getMarshallableClass(col);
+		if (beanClass == null) {
+			return null;
+		}
+
+		if (marshaller == null || marshaller.getBeanClass() != beanClass
+				|| marshallerStopClass != stopClass) {
+			marshaller = BeanColumnMarshaller.create(beanClass, stopClass);
+			marshallerStopClass = stopClass;
+
+			if (marshaller == null) {
+				return null;
+			}
+		}
+
+		return marshaller;
+	}
+
+	/**
+	 * The class of the beans in {@code col}, if they can be converted by a
+	 * {@link BeanColumnMarshaller}, ie: they are all the same class and have
+	 * no marked up row.
+	 * 
+	 * @return bean class, or {@code null} if {@code col} must be converted by
+	 *         {@link RVectorList}
+	 */
+	private static Class<?> getMarshallableClass(
+			Collection<? extends CMarkedUpRowBean> col) {
+		if (col.isEmpty()) {
+			return null;
+		}
+
+		CMarkedUpRowBean first = col.iterator().next();
+		if (first.getMarkedUpRow() != null) {
+			return null;
+		}
+
+		Class<?> beanClass = first.getClass();
+		for (CMarkedUpRowBean bean : col) {
+			if (bean.getClass() != beanClass) {
+				return null;
+			}
+		}
+		return beanClass;
+	}
+
+	/**
+	 * Create a dataframe in R from the given agent table. Each column is
+	 * copied directly into an R vector, without introspection.
+	 * 
+	 * @param name
+	 *            the name of the dataframe to create in R.
+	 * @param table
+	 *            the agent table to convert.
+	 * @throws RFaceException
+	 *             if dataframe cannot be created.
+	 */
+	public synchronized void assignDataFrame(String name, AgentTable table)
+			throws RFaceException {
+		int rows = table.size();
+		int numColumns = table.getColumnCount();
+		REXP[] columns = new REXP[numColumns];
+
+		for (int col = 0; col < numColumns; col++) {
+			switch (table.getColumnType(col)) {
+			case INT:
+				columns[col] =
+						new REXPInteger(Arrays.copyOf(table.getIntColumn(col),
+								rows));
+				break;
+			case DOUBLE:
+				columns[col] =
+						new REXPDouble(Arrays.copyOf(
+								table.getDoubleColumn(col), rows));
+				break;
+			case CHAR:
+				columns[col] = charVector(table.getCharColumn(col), rows);
+				break;
+			default:
+				columns[col] =
+						new REXPLogical(Arrays.copyOf(table
+								.getBooleanColumn(col), rows));
+			}
+		}
+
+		rInterface.assignDataFrame(name, new RList(columns, table
+				.getColumnNames()));
+		invalidateOutputCache();
+	}
+
+	/**
+	 * Character vector of the first {@code rows} chars of {@code column}, with
+	 * {@link AgentTable#MISSING_VALUE_CHAR} as {@code NA}.
+	 */
+	private static REXPString charVector(char[] column, int rows) {
+		String[] values = new String[rows];
+		for (int row = 0; row < rows; row++) {
+			if (column[row] != AgentTable.MISSING_VALUE_CHAR) {
+				values[row] = String.valueOf(column[row]);
+			}
+		}
+		return new REXPString(values);
+	}
+
+	/**
+	 * Create a dataframe in R from the given indexed matrix, ie: the index
+	 * columns followed by the matrix columns. Each column is copied directly
+	 * into an R vector, without creating a casper dataset first. Index columns
+	 * are narrowed, see {@link IndexedDenseDoubleMatrix2D#getIndexColumn(int)}.
+	 * 
+	 * @param name
+	 *            the name of the dataframe to create in R.
+	 * @param matrix
+	 *            the indexed matrix to convert.
+	 * @throws RFaceException
+	 *             if dataframe cannot be created.
+	 */
+	public synchronized void assignDataFrame(String name,
+			IndexedDenseDoubleMatrix2D matrix)
+			throws RFaceException {
+		String[] indexColumnNames = matrix.getIndexColumnNames();
+		int numIndexColumns = indexColumnNames.length;
+		REXP[] columns =
+				new REXP[numIndexColumns + matrix.getMatrixColumnNames().length];
+
+		for (int col = 0; col < numIndexColumns; col++) {
+			columns[col] =
+					indexColumnToREXP(matrix.getIndexColumn(col), matrix
+							.getIndexColumnType(col));
+		}
+
+		for (int col = numIndexColumns; col < columns.length; col++) {
+			columns[col] =
+					new REXPDouble(matrix.getMatrixColumn(col
+							- numIndexColumns));
+		}
+
+		rInterface.assignDataFrame(name, new RList(columns, matrix
+				.getAllColumnNames()));
+		invalidateOutputCache();
+	}
+
+	private static REXP indexColumnToREXP(Object[] column, Class<?> type) {
+		if (type == Integer.class || type == Short.class
+				|| type == Byte.class) {
+			int[] values = new int[column.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] =
+						column[i] == null ? REXPInteger.NA
+								: ((Number) column[i]).intValue();
+			}
+			return new REXPInteger(values);
+		}
+
+		if (Number.class.isAssignableFrom(type)) {
+			double[] values = new double[column.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] =
+						column[i] == null ? REXPDouble.NA
+								: ((Number) column[i]).doubleValue();
+			}
+			return new REXPDouble(values);
+		}
+
+		if (type == Boolean.class) {
+			byte[] values = new byte[column.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] =
+						column[i] == null ? REXPLogical.NA
+								: ((Boolean) column[i]) ? REXPLogical.TRUE
+										: REXPLogical.FALSE;
+			}
+			return new REXPLogical(values);
+		}
+
+		String[] values = new String[column.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = column[i] == null ? null : column[i].toString();
+		}
+		return new REXPString(values);
+	}
+
 	/**
 	 * Create a dataframe in R from the given casper dataset.
 	 * 
@@ -384,10 +1297,12 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if Collection cannot be read, or dataframe cannot be created.
 	 */
-	public void assignDataFrame(String name, CDataCacheContainer container)
+	public synchronized void assignDataFrame(String name,
+			CDataCacheContainer container)
 			throws RFaceException {
 		rInterface
 				.assignDataFrame(name, new RVectorList(container).asRList());
+		invalidateOutputCache();
 		// msScape.addDataFrameNode(name);
 	}
 
@@ -403,9 +1318,11 @@ public class ScapeRInterface {
 	 *             if Collection cannot be read, or the matrix cannot be
 	 *             created.
 	 */
-	public void assignMatrix(String name, CDataCacheContainer container)
+	public synchronized void assignMatrix(String name,
+			CDataCacheContainer container)
 			throws RFaceException {
 		rInterface.assignMatrix(name, new RVectorList(container).asRList());
+		invalidateOutputCache();
 		// msScape.addDataFrameNode(name);
 	}
 
@@ -420,7 +1337,9 @@ public class ScapeRInterface {
 	 *             if problem during parse or evaluation. Parse errors will
 	 *             simply return the message "parse error".
 	 */
-	public REXP eval(String expr) throws RFaceException {
+	public synchronized REXP eval(String expr) throws RFaceException {
+		materializeFor(expr);
+		invalidateOutputCache();
 		return rInterface.eval(expr);
 	}
 
@@ -433,7 +1352,9 @@ public class ScapeRInterface {
 	 *            expression to evaluate
 	 * @return evaluated result
 	 */
-	public REXP parseEvalPrint(String expr) {
+	public synchronized REXP parseEvalPrint(String expr) {
+		materializeForUnchecked(expr);
+		invalidateOutputCache();
 		return rInterface.parseEvalPrint(expr);
 	}
 
@@ -448,7 +1369,8 @@ public class ScapeRInterface {
 	 *            run number
 	 * @return evaluated result
 	 */
-	public REXP parseEvalPrintLogReplace(String rCommand, int runNumber) {
+	public synchronized REXP parseEvalPrintLogReplace(String rCommand,
+			int runNumber) {
 
 		timer.start();
 
@@ -476,10 +1398,82 @@ public class ScapeRInterface {
 	 *             if there is a parse or evaluation error the error message is
 	 *             returned in the exception. Nothing printed to the console.
 	 */
-	public REXP parseEvalTry(String expr) throws RFaceException {
+	public synchronized REXP parseEvalTry(String expr) throws RFaceException {
+		materializeFor(expr);
+		invalidateOutputCache();
 		return rInterface.parseEvalTry(expr);
 	}
 
+	/**
+	 * Evaluate an expression that returns a dataframe, as per
+	 * {@link #parseEvalTry(String)}, and convert it to a casper dataset. The
+	 * result is cached, and not evaluated again while the expression is
+	 * unchanged and the R data it may read has not changed, ie: until
+	 * {@link #invalidateOutputCache()}. The expression must not change data.
+	 * Each call returns a new dataset converted from the cached result, so
+	 * callers may modify it.
+	 * 
+	 * @param expr
+	 *            expression, with any dataframe symbol replaced, eg: by
+	 *            {@link #rcmdReplace(String, int)}
+	 * @param name
+	 *            dataset name
+	 * @return dataset
+	 * @throws RFaceException
+	 *             if problem during parse or evaluation, or the result cannot
+	 *             be converted to a dataset
+	 */
+	public synchronized CDataCacheContainer parseEvalTryCached(String expr,
+			String name) throws RFaceException {
+		// before the key, because materializing changes the data version
+		materializeFor(expr);
+
+		String key = ROutputCache.key(expr, name, outputCache.getVersion());
+		REXP rexp = outputCache.get(key);
+		boolean cached = rexp != null;
+
+		if (!cached) {
+			rexp = rInterface.parseEvalTry(expr);
+		}
+
+		CDataCacheContainer dataset;
+		try {
+			dataset = new CDataCacheContainer(new CBuildFromREXP(rexp, name));
+		} catch (CDataGridException e) {
+			throw new RFaceException(e.getMessage(), e);
+		}
+
+		// once converted, so results that aren't datasets aren't cached
+		if (!cached) {
+			outputCache.put(key, rexp);
+		}
+
+		return dataset;
+	}
+
+	/**
+	 * Invalidate the results cached by
+	 * {@link #parseEvalTryCached(String, String)}, by changing the data
+	 * version. Called on every assign and every evaluation, other than by
+	 * {@link #parseEvalTryCached(String, String)}, and on input at the R
+	 * console, because any of these may change data. Call after changing data
+	 * in R any other way, eg: directly through {@link RFace}.
+	 */
+	public synchronized void invalidateOutputCache() {
+		outputCache.invalidate();
+	}
+
+	/**
+	 * Get the cache of datasets used by
+	 * {@link #parseEvalTryCached(String, String)}, eg: for its hit and miss
+	 * counters.
+	 * 
+	 * @return output cache
+	 */
+	public ROutputCache getOutputCache() {
+		return outputCache;
+	}
+
 	/**
 	 * Calls {@link RFace#parseEvalTryReturnRMatrix(String)}.
 	 * 
@@ -491,8 +1485,10 @@ public class ScapeRInterface {
 	 *             does not return an expression that can be represented as a
 	 *             {@link RMatrix}.
 	 */
-	public RMatrix parseEvalTryReturnRMatrix(String expr)
+	public synchronized RMatrix parseEvalTryReturnRMatrix(String expr)
 			throws RFaceException {
+		materializeFor(expr);
+		invalidateOutputCache();
 		return rInterface.parseEvalTryReturnRMatrix(expr);
 	}
 
@@ -507,8 +1503,11 @@ public class ScapeRInterface {
 	 *             does not return a {@link REXPDouble} or
 	 *             {@link org.rosuda.REngine.REXPInteger}.
 	 */
-	public NamedNumber[] parseEvalTryReturnNamedNumber(String expr)
+	public synchronized NamedNumber[] parseEvalTryReturnNamedNumber(
+			String expr)
 			throws RFaceException {
+		materializeFor(expr);
+		invalidateOutputCache();
 		return rInterface.parseEvalTryReturnNamedNumber(expr);
 	}
 
@@ -518,7 +1517,8 @@ public class ScapeRInterface {
 	 * @param expr
 	 *            expression. If {@code ""} displays help contents
 	 */
-	public void help(String expr) {
+	public synchronized void help(String expr) {
+		invalidateOutputCache();
 		try {
 			REXP rexp =
 					rInterface
@@ -553,6 +1553,23 @@ public class ScapeRInterface {
 		rConsole.printPrompt();
 	}
 
+	/**
+	 * Called on the R thread when the user has entered input at the R
+	 * console, before R evaluates it. Materializes any pending scape
+	 * dataframe, because the input may read it, and invalidates cached
+	 * datasets, because the input may change data.
+	 */
+	private synchronized void consoleInput() {
+		try {
+			materializeScapeDataFrame();
+		} catch (RFaceException e) {
+			// don't throw into the R console's read loop
+			System.err.println("Could not create scape dataframe: "
+					+ e.getMessage());
+		}
+		invalidateOutputCache();
+	}
+
 	/**
 	 * Evaluate a String expression in R in the global environment. Returns all
 	 * console output produced by this evaluation. Does not return the
@@ -566,7 +1583,10 @@ public class ScapeRInterface {
 	 *             if problem during parse or evaluation. Parse errors will
 	 *             simply return the message "parse error".
 	 */
-	public String evalCaptureOutput(String expr) throws RFaceException {
+	public synchronized String evalCaptureOutput(String expr)
+			throws RFaceException {
+		materializeFor(expr);
+		invalidateOutputCache();
 		return rInterface.evalCaptureOutput(expr);
 	}
 
@@ -578,8 +1598,10 @@ public class ScapeRInterface {
 	 *            expression to evaluate.
 	 * @return REXP result of the evaluation.
 	 */
-	public String[] evalReturnStrings(String expr) {
+	public synchronized String[] evalReturnStrings(String expr) {
 		try {
+			materializeFor(expr);
+			invalidateOutputCache();
 			return rInterface.evalReturnStrings(expr);
 		} catch (RFaceException e) {
 			throw new RuntimeException(e);
@@ -594,8 +1616,10 @@ public class ScapeRInterface {
 	 *            expression to evaluate.
 	 * @return REXP result of the evaluation.
 	 */
-	public String evalReturnString(String expr) {
+	public synchronized String evalReturnString(String expr) {
 		try {
+			materializeFor(expr);
+			invalidateOutputCache();
 			return rInterface.evalReturnString(expr);
 		} catch (RFaceException e) {
 			throw new RuntimeException(e);
@@ -608,7 +1632,7 @@ public class ScapeRInterface {
 	 * @param msg
 	 *            message to print.
 	 */
-	public void printToConsole(String msg) {
+	public synchronized void printToConsole(String msg) {
 		try {
 			rInterface.printToConsole(msg);
 		} catch (RFaceException e) {
@@ -622,7 +1646,7 @@ public class ScapeRInterface {
 	 * @param msg
 	 *            message to print.
 	 */
-	public void printlnToConsole(String msg) {
+	public synchronized void printlnToConsole(String msg) {
 		try {
 			rInterface.printlnToConsole(msg);
 		} catch (RFaceException e) {
@@ -638,7 +1662,9 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem loading package.
 	 */
-	public final void loadPackage(String pack) throws RFaceException {
+	public final synchronized void loadPackage(String pack)
+			throws RFaceException {
+		invalidateOutputCache();
 		rInterface.loadPackage(pack);
 	}
 
@@ -669,8 +1695,9 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem creating dataframe or executing R command
 	 */
-	public CDataCacheContainer meanOfRuns(CDataCacheContainer allRuns,
-			String dfName, String dfDesc) throws RFaceException {
+	public synchronized CDataCacheContainer meanOfRuns(
+			CDataCacheContainer allRuns, String dfName, String dfDesc)
+			throws RFaceException {
 
 		// save multi run dataset to R frame
 		assignDataFrame(dfName, allRuns);
@@ -707,8 +1734,8 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem calling.
 	 */
-	public void updateScenarioWeights(String basefileName, String factorName,
-			double[] props) throws RFaceException {
+	public synchronized void updateScenarioWeights(String basefileName,
+			String factorName, double[] props) throws RFaceException {
 
 		REXPDouble rprops = REXPUtil.toVector(props);
 		rInterface.assign(".desiredProp", rprops);
@@ -728,6 +1755,7 @@ public class ScapeRInterface {
 						"envir = .GlobalEnv");
 
 		parseEvalTry(rcmd);
+		invalidateOutputCache();
 
 		printlnToConsole("Updated scenario weights: " + factorName + " "
 				+ ArrayUtils.toString(props));
@@ -747,8 +1775,8 @@ public class ScapeRInterface {
 	 * @throws RFaceException
 	 *             if problem during interrogation of R environment
 	 */
-	public RObjectTreeBuilder createRObjectTreeBuilder(String[] includeClasses)
-			throws RFaceException {
+	public synchronized RObjectTreeBuilder createRObjectTreeBuilder(
+			String[] includeClasses) throws RFaceException {
 		/*
 		 * return new RObjectTreeBuilder(rInterface);
 		 */
@@ -1,16 +1,51 @@
 package org.jamsim.ascape.r;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import net.casper.data.model.CMarkedUpRowBean;
+
 import org.ascape.model.event.DefaultScapeListener;
 import org.ascape.model.event.ScapeEvent;
+import org.jamsim.ascape.IterationRecorder;
+import org.jamsim.ascape.MicroSimCell;
+import org.jamsim.ascape.MicroSimScape;
+import org.jamsim.ascape.RunListener;
 import org.omancode.r.RFaceException;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPFactor;
+import org.rosuda.REngine.REXPInteger;
+import org.rosuda.REngine.REXPLogical;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.RList;
 
 /**
  * R related operations performed on scape events.
+ * <p>
+ * Also a {@link RunListener} so the same R commands are executed, in the same
+ * order, for runs executed by a
+ * {@link org.jamsim.ascape.ConcurrentRunExecutor}. The run begin command sees
+ * the dataframe of the run's agents captured when they were initialised.
+ * These runs fire no iteration events, so the iteration end command is not
+ * supported.
+ * </p>
+ * <p>
+ * Also an {@link IterationRecorder}, so the iteration end command is executed
+ * for the iterations a branched scenario run skips (see
+ * {@link org.jamsim.ascape.ScenarioBranchController}), on the dataframe of
+ * the same iteration of the base simulation. The dataframe is recorded as its
+ * column vectors, which may be double, integer, factor, logical or character.
+ * </p>
  * 
  * @author Oliver Mannion
  * @version $Revision$
  */
-public class ScapeRListener extends DefaultScapeListener {
+public class ScapeRListener extends DefaultScapeListener implements
+		RunListener, IterationRecorder {
 
 	/**
 	 * Replacement string used to insert the current iteration number into the R
@@ -23,6 +58,12 @@ public class ScapeRListener extends DefaultScapeListener {
 	 */
 	private static final long serialVersionUID = -5105471052036807288L;
 
+	/**
+	 * Types of recorded dataframe columns.
+	 */
+	private static final byte DOUBLE = 0, INTEGER = 1, FACTOR = 2,
+			LOGICAL = 3, STRING = 4;
+
 	private final ScapeRInterface scapeR;
 
 	private final String rIterationEndCmd;
@@ -42,6 +83,13 @@ public class ScapeRListener extends DefaultScapeListener {
 
 	private int runNumber = 0;
 
+	/**
+	 * Whether runs are reported by a
+	 * {@link org.jamsim.ascape.ConcurrentRunExecutor}, which ends the
+	 * simulation instead of the scape closing.
+	 */
+	private boolean concurrentRuns = false;
+
 	/**
 	 * Default constructor.
 	 * 
@@ -78,27 +126,213 @@ public class ScapeRListener extends DefaultScapeListener {
 	}
 
 	/**
-	 * Run iteration end R command, if any.
+	 * Whether any R commands are run on scape events.
+	 * 
+	 * @return {@code true} if there is an iteration, run or simulation
+	 *         command
+	 */
+	public boolean hasCommands() {
+		return rIterationEndCmd != null || rSimBeginCmd != null
+				|| rRunBeginCmd != null || rRunEndCmd != null
+				|| rSimEndCmd != null;
+	}
+
+	/**
+	 * Whether an R command is run at the end of each iteration.
+	 * 
+	 * @return {@code true} if there is an iteration end command
+	 */
+	public boolean hasIterationCommand() {
+		return rIterationEndCmd != null;
+	}
+
+	/**
+	 * Update the scape dataframe and run iteration end R command, if any.
+	 * Only changed columns are reassigned if the scape tracks column changes
+	 * (see
+	 * {@link org.jamsim.ascape.MicroSimScape#setTrackColumnChanges(boolean)}).
 	 */
 	@Override
 	public void scapeIterated(ScapeEvent scapeEvent) {
 
 		if (rIterationEndCmd != null) {
 			try {
-				scapeR.assignScapeDataFrame(runNumber);
+				scapeR.assignScapeDataFrameChanges(runNumber, scapeR
+						.getMsScape().isActiveOnly());
 			} catch (RFaceException e) {
 				e.printStackTrace();
 				throw new RuntimeException(e); // NOPMD
 			}
 
-			// replace the iteration replacement string with the
-			// current iteration number
-			String rCmd =
-					rIterationEndCmd.replace(ITER_REPLACEMENT_STR,
-							Integer.toString(scape.getIteration()));
-			executeRCommand(rCmd);
+			executeIterationCommand(scape.getIteration());
+		}
+
+	}
+
+	private void executeIterationCommand(int iteration) {
+		// replace the iteration replacement string with the
+		// current iteration number
+		String rCmd =
+				rIterationEndCmd.replace(ITER_REPLACEMENT_STR, Integer
+						.toString(iteration));
+		executeRCommand(rCmd);
+	}
+
+	/**
+	 * Record the dataframe the iteration end command, if any, sees this
+	 * iteration.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void recordIteration(int run, int iteration, DataOutput out)
+			throws IOException {
+		if (rIterationEndCmd == null) {
+			return;
+		}
+
+		MicroSimScape<?> msscape = scapeR.getMsScape();
+		Collection<? extends CMarkedUpRowBean> agents =
+				(Collection<? extends CMarkedUpRowBean>) (msscape
+						.isActiveOnly() ? msscape.getActiveAgents() : msscape);
+		writeDataFrame(scapeR.marshalDataFrame(agents), out);
+	}
+
+	/**
+	 * Execute the iteration end command, if any, on the dataframe recorded by
+	 * {@link #recordIteration(int, int, DataOutput)}.
+	 */
+	@Override
+	public void replayIteration(int run, int iteration, DataInput in)
+			throws IOException {
+		if (rIterationEndCmd == null) {
+			return;
+		}
+
+		RList columns = readDataFrame(in);
+
+		// so a deferred dataframe of the restored agents doesn't replace the
+		// recorded dataframe
+		scapeR.materializeScapeDataFrame();
+
+		scapeR.assignDataFrame(scapeR.getScapeDFRunName(run), columns);
+		executeIterationCommand(iteration);
+	}
+
+	private static void writeDataFrame(RList columns, DataOutput out)
+			throws IOException {
+		out.writeInt(columns.size());
+
+		for (int col = 0; col < columns.size(); col++) {
+			String name = columns.keyAt(col);
+			REXP column = columns.at(col);
+			out.writeUTF(name);
+
+			if (column instanceof REXPFactor) {
+				out.writeByte(FACTOR);
+				writeStrings(((REXPFactor) column).asFactor().levels(), out);
+				writeInts(((REXPFactor) column).asIntegers(), out);
+			} else if (column instanceof REXPInteger) {
+				out.writeByte(INTEGER);
+				writeInts(((REXPInteger) column).asIntegers(), out);
+			} else if (column instanceof REXPDouble) {
+				out.writeByte(DOUBLE);
+				double[] values = ((REXPDouble) column).asDoubles();
+				out.writeInt(values.length);
+				for (double value : values) {
+					out.writeDouble(value);
+				}
+			} else if (column instanceof REXPLogical) {
+				out.writeByte(LOGICAL);
+				byte[] values = ((REXPLogical) column).asBytes();
+				out.writeInt(values.length);
+				out.write(values);
+			} else if (column instanceof REXPString) {
+				out.writeByte(STRING);
+				writeStrings(((REXPString) column).asStrings(), out);
+			} else {
+				throw new IOException("Cannot record dataframe column "
+						+ name + " of type "
+						+ column.getClass().getSimpleName());
+			}
+		}
+	}
+
+	private static RList readDataFrame(DataInput in) throws IOException {
+		int numColumns = in.readInt();
+		String[] names = new String[numColumns];
+		REXP[] columns = new REXP[numColumns];
+
+		for (int col = 0; col < numColumns; col++) {
+			names[col] = in.readUTF();
+
+			switch (in.readByte()) {
+			case FACTOR:
+				String[] levels = readStrings(in);
+				columns[col] = new REXPFactor(readInts(in), levels);
+				break;
+			case INTEGER:
+				columns[col] = new REXPInteger(readInts(in));
+				break;
+			case DOUBLE:
+				double[] doubles = new double[in.readInt()];
+				for (int i = 0; i < doubles.length; i++) {
+					doubles[i] = in.readDouble();
+				}
+				columns[col] = new REXPDouble(doubles);
+				break;
+			case LOGICAL:
+				byte[] logicals = new byte[in.readInt()];
+				in.readFully(logicals);
+				columns[col] = new REXPLogical(logicals);
+				break;
+			case STRING:
+				columns[col] = new REXPString(readStrings(in));
+				break;
+			default:
+				throw new IOException("Recorded dataframe column "
+						+ names[col] + " has an unknown type");
+			}
+		}
+
+		return new RList(columns, names);
+	}
+
+	private static void writeInts(int[] values, DataOutput out)
+			throws IOException {
+		out.writeInt(values.length);
+		for (int value : values) {
+			out.writeInt(value);
 		}
+	}
 
+	private static int[] readInts(DataInput in) throws IOException {
+		int[] values = new int[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	/**
+	 * Write strings, including {@code null}s, ie: {@code NA}s.
+	 */
+	private static void writeStrings(String[] values, DataOutput out)
+			throws IOException {
+		out.writeInt(values.length);
+		for (String value : values) {
+			out.writeBoolean(value != null);
+			if (value != null) {
+				out.writeUTF(value);
+			}
+		}
+	}
+
+	private static String[] readStrings(DataInput in) throws IOException {
+		String[] values = new String[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readBoolean() ? in.readUTF() : null;
+		}
+		return values;
 	}
 
 	/**
@@ -110,13 +344,7 @@ public class ScapeRListener extends DefaultScapeListener {
 	 */
 	public void scapeInitialized(ScapeEvent scapeEvent) {
 		runNumber++;
-
-		if (runNumber == 1) {
-			scapeR.printlnToConsole("");
-			if (rSimBeginCmd != null) {
-				executeRCommand(rSimBeginCmd);
-			}
-		}
+		beginSimulation();
 
 		if (rRunBeginCmd != null) {
 			try {
@@ -131,7 +359,13 @@ public class ScapeRListener extends DefaultScapeListener {
 
 	/**
 	 * When simulation stops, write out the scape as dataframe to R. Does
-	 * nothing if R has not been loaded.
+	 * nothing if R has not been loaded. If R is asynchronous (see
+	 * {@link ScapeRInterface#setAsync(boolean)}), the dataframe is handed off
+	 * as the run's snapshot and the run end R command is submitted, so the
+	 * next run can start while R evaluates it. A run end command that doesn't
+	 * read the dataframe by the dataframe symbol, eg: a function that reads
+	 * it as a global, is executed before the next run instead (see
+	 * {@link ScapeRInterface#submitCommand}).
 	 * 
 	 * @param scapeEvent
 	 *            the scape event
@@ -144,17 +378,109 @@ public class ScapeRListener extends DefaultScapeListener {
 			// create dataframe from scape
 			scapeR.assignScapeDataFrame(runNumber);
 
-			if (rRunEndCmd != null) {
-				executeRCommand(rRunEndCmd);
+			if (scapeR.isAsync()) {
+				scapeR.snapshotScapeDataFrame(runNumber);
 			}
 
+			endRun();
+
 		} catch (RFaceException e) {
 			e.printStackTrace();
 			throw new RuntimeException(e); // NOPMD
 		}
 	}
 
+	/**
+	 * Capture the dataframe of the run's initialised agents for the run begin
+	 * command, if any.
+	 */
+	@Override
+	public Object runInitialized(int run,
+			List<? extends MicroSimCell<?>> agents) throws RFaceException {
+		return rRunBeginCmd == null ? null : scapeR.marshalDataFrame(agents);
+	}
+
+	/**
+	 * Execute the simulation begin command if this is the first run, and the
+	 * run begin command on the dataframe captured by
+	 * {@link #runInitialized(int, List)}.
+	 */
+	@Override
+	public void runStarted(int run, Object initialState)
+			throws RFaceException {
+		runNumber = run;
+		concurrentRuns = true;
+
+		// so a deferred dataframe of the template scape doesn't replace the
+		// run's dataframe
+		scapeR.materializeScapeDataFrame();
+
+		beginSimulation();
+
+		if (rRunBeginCmd != null) {
+			scapeR.assignDataFrame(scapeR.getScapeDFRunName(run),
+					(RList) initialState);
+			executeRCommand(rRunBeginCmd);
+		}
+	}
+
+	/**
+	 * Execute the run end command. The run's dataframe has already been
+	 * assigned, and if R is asynchronous snapshotted, by the
+	 * {@link RunListener} added before this.
+	 */
+	@Override
+	public void runCompleted(int run, List<? extends MicroSimCell<?>> agents) {
+		endRun();
+	}
+
+	/**
+	 * Execute the simulation end command, once the output datasets have
+	 * written their multi-run results.
+	 */
+	@Override
+	public void allRunsCompleted(int numberRuns) {
+		endSimulation();
+	}
+
+	private void beginSimulation() {
+		if (runNumber == 1) {
+			scapeR.printlnToConsole("");
+			if (rSimBeginCmd != null) {
+				executeRCommand(rSimBeginCmd);
+			}
+		}
+	}
+
+	private void endRun() {
+		if (rRunEndCmd == null) {
+			return;
+		}
+
+		if (scapeR.isAsync()) {
+			scapeR.parseEvalPrintLogReplaceAsync(rRunEndCmd, runNumber);
+		} else {
+			executeRCommand(rRunEndCmd);
+		}
+	}
+
+	private void endSimulation() {
+		scapeR.awaitAll();
+
+		if (rSimEndCmd != null) {
+			executeRCommand(rSimEndCmd);
+		}
+
+		scapeR.printPrompt();
+	}
+
 	private void executeRCommand(String rCommand) {
+		try {
+			scapeR.materializeScapeDataFrame();
+		} catch (RFaceException e) {
+			e.printStackTrace();
+			throw new RuntimeException(e); // NOPMD
+		}
 		scapeR.parseEvalPrintLogReplace(rCommand, runNumber);
 	}
 
@@ -166,6 +492,10 @@ public class ScapeRListener extends DefaultScapeListener {
 	 */
 	@Override
 	public void scapeClosing(ScapeEvent scapeEvent) {
+		if (concurrentRuns) {
+			return;
+		}
+
 		scapeClosingCount++;
 
 		// scapeClosing gets called 3 times.
@@ -176,12 +506,7 @@ public class ScapeRListener extends DefaultScapeListener {
 			// execute rSimEndCmd on the second scapeClosing
 			// this occurs after the multi-run datasets
 			// have been created.
-
-			if (rSimEndCmd != null) {
-				executeRCommand(rSimEndCmd);
-			}
-
-			scapeR.printPrompt();
+			endSimulation();
 		}
 	}
 
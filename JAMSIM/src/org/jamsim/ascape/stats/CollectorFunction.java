@@ -2,6 +2,7 @@ package org.jamsim.ascape.stats;
 
 import org.apache.commons.lang.mutable.MutableDouble;
 import org.ascape.util.data.StatCollectorCondCSA;
+import org.jamsim.ascape.MicroSimCell;
 
 /**
  * Collect data values on a subset of the scape. The subset to collect is
@@ -34,6 +35,11 @@ public class CollectorFunction<T> extends StatCollectorCondCSA {
 
 	private final MutableDouble denominator;
 
+	/**
+	 * Whether to skip agents that are not active.
+	 */
+	private boolean activeOnly = false;
+
 	/**
 	 * Construct a {@link CollectorFunction} that returns values for all scape
 	 * members. i.e: has no predicate.
@@ -79,8 +85,26 @@ public class CollectorFunction<T> extends StatCollectorCondCSA {
 		return valueFunction.getValue(scapeMember);
 	}
 
+	/**
+	 * Set whether to only collect data for active agents, ie: skip
+	 * {@link MicroSimCell}s that have been deactivated (see
+	 * {@link MicroSimCell#deactivate()}) without evaluating the predicate or
+	 * value function.
+	 * 
+	 * @param activeOnly
+	 *            active only
+	 */
+	public void setActiveOnly(boolean activeOnly) {
+		this.activeOnly = activeOnly;
+	}
+
 	@Override
 	public boolean meetsCondition(Object object) {
+		if (activeOnly && object instanceof MicroSimCell<?>
+				&& !((MicroSimCell<?>) object).isActive()) {
+			return false;
+		}
+
 		@SuppressWarnings("unchecked")
 		T scapeMember = (T) object;
 		if (predicate == null) {
@@ -6,8 +6,10 @@ import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -29,6 +31,7 @@ import org.ascape.util.swing.PanelViewUtil;
 import org.ascape.view.vis.PanelView;
 import org.jamsim.ascape.MicroSimScape;
 import org.jamsim.ascape.RootScape;
+import org.jamsim.ascape.ScenarioBranchController;
 import org.jamsim.ascape.weights.CategoricalVarAdjustment;
 import org.jamsim.ascape.weights.WeightCalculator;
 import org.jamsim.io.ParameterSet;
@@ -442,9 +445,31 @@ public class ScenarioBuilder implements PanelViewProvider, ActionListener {
 		RootScape rootScape = (RootScape) scape.getRoot();
 		rootScape.setNumberRuns(numberRuns);
 		setScenarioNameIfPresent();
+		setBranchIteration(rootScape.getScenarioBranchController());
 		rootScape.start();
 	}
 	
+	/**
+	 * Tell the branch controller, if any, the first iteration the scenario
+	 * adjusts so the runs can branch from the base simulation.
+	 * @param branchController
+	 * 			the scenario branch controller, or {@code null}
+	 */
+	private void setBranchIteration(ScenarioBranchController branchController) {
+		if (branchController == null) {
+			return;
+		}
+		
+		List<WeightCalculator> wcalcs = new ArrayList<WeightCalculator>();
+		for (Map<String, WeightCalculator> wcalcsyearsmap : allvariablesweightcalcs
+				.values()) {
+			wcalcs.addAll(wcalcsyearsmap.values());
+		}
+		
+		branchController.setFirstAdjustedIteration(ScenarioBranchController
+				.getFirstAdjustedIteration(wcalcs));
+	}
+	
 	
 	private void setScenarioNameIfPresent() {
 		String scenarioName = namebox.getText();
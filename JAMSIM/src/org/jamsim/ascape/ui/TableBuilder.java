@@ -99,7 +99,6 @@ public class TableBuilder implements PanelViewProvider, ActionListener {
 	private JTable table;
 	private CDatasetTableModel tmodel;
 	private REXPDatasetProvider dsProvider;
-	private REXP rexp;
 
 	private DataDictionary dict;
 
@@ -237,10 +236,14 @@ public class TableBuilder implements PanelViewProvider, ActionListener {
 			String tableBuilderExpression = tableBuilderExpression();
 
 			System.out.println(tableBuilderExpression);
-			rexp = rInterface.parseEvalTry(tableBuilderExpression);
-
-			dsProvider = new REXPDatasetProvider(variableSelection + " by "
-					+ subgroupSelection + " - " + scenarioSelection, rexp);
+			String name =
+					variableSelection + " by " + subgroupSelection + " - "
+							+ scenarioSelection;
+
+			// same query on unchanged data is not re-evaluated
+			dsProvider =
+					new REXPDatasetProvider(name, rInterface.parseEvalTryCached(
+							tableBuilderExpression, name));
 			tmodel = new CDatasetTableModel(dsProvider.getOutputDataset(0));
 
 			table = setupTable(dsProvider.getName(), tmodel);
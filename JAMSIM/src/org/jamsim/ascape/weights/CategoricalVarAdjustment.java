@@ -39,7 +39,7 @@ import org.rosuda.REngine.REXP;
  * @version $Revision$
  */
 public class CategoricalVarAdjustment extends Observable implements
-		WeightCalculator, TableModelListener {
+		WeightCalculator, ScenarioAdjustment, TableModelListener {
 
 	/**
 	 * The R matrix that holds the displayed/edited values.
@@ -321,6 +321,49 @@ public class CategoricalVarAdjustment extends Observable implements
 
 	}
 
+	/**
+	 * The cells of the matrix are not tied to a known iteration, so any
+	 * entered proportion is assumed to change the simulation from the first
+	 * iteration. This means a scenario with a categorical adjustment never
+	 * branches from the base simulation (see
+	 * {@link org.jamsim.ascape.ScenarioBranchController}), and simulates
+	 * every iteration again.
+	 * 
+	 * @return 1, or {@link #NOT_ADJUSTED} if all cells are missing (ie: the
+	 *         defaults)
+	 */
+	@Override
+	public int getFirstAdjustedIteration() {
+		try {
+			CDataCacheContainer casperMatrix = tableModel.getContainer();
+			Class<?>[] colTypes =
+					casperMatrix.getMetaDefinition().getColumnTypes();
+
+			CDataRowSet cdrs = casperMatrix.getAll();
+
+			while (cdrs.next()) {
+				for (int i = 0; i < colTypes.length; i++) {
+					Object value = cdrs.getObject(i);
+
+					if (value instanceof Number && !isMissing((Number) value)) {
+						return 1;
+					}
+				}
+			}
+
+			return NOT_ADJUSTED;
+
+		} catch (CDataGridException e) {
+			throw new CDataRuntimeException(e.getMessage(), e);
+		}
+	}
+
+	private static boolean isMissing(Number value) {
+		return value.equals(TypeCheckedValue.MISSING_VALUE_DOUBLE)
+				|| value.equals(TypeCheckedValue.MISSING_VALUE_INTEGER)
+				|| value.equals(TypeCheckedValue.MISSING_VALUE_BYTE);
+	}
+
 	@Override
 	public final void loadState(Preferences prefs) {
 	}
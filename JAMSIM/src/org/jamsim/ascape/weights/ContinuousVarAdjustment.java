@@ -38,7 +38,7 @@ import org.rosuda.REngine.REXPDouble;
  * @version $Revision$
  */
 public class ContinuousVarAdjustment extends Observable implements
-		WeightCalculator, TableModelListener {
+		WeightCalculator, ScenarioAdjustment, TableModelListener {
 
 	/**
 	 * The R variable that will be used as the basis for bin incrementing, eg:
@@ -338,6 +338,32 @@ public class ContinuousVarAdjustment extends Observable implements
 		return ArrayMath.multiply(tableModel.getIncrements(), adjIncrements);
 	}
 
+	/**
+	 * The iteration of the variable this adjusts.
+	 * 
+	 * @return iteration
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * The variable is only adjusted at {@link #getIteration()}, and only if
+	 * an increment has been entered.
+	 * 
+	 * @return {@link #getIteration()}, or {@link #NOT_ADJUSTED} if all
+	 *         increments are zero
+	 */
+	@Override
+	public int getFirstAdjustedIteration() {
+		for (double increment : tableModel.getIncrements()) {
+			if (increment != 0) {
+				return iteration;
+			}
+		}
+		return NOT_ADJUSTED;
+	}
+
 	@Override
 	public final void loadState(Preferences prefs) {
 	}
@@ -0,0 +1,28 @@
+package org.jamsim.ascape.weights;
+
+/**
+ * A scenario adjustment that only changes the simulation from a known
+ * iteration onwards. Earlier iterations of a scenario run are the same as the
+ * base simulation, so the run can branch from a checkpoint of the base
+ * simulation instead of starting again from the first iteration (see
+ * {@link org.jamsim.ascape.ScenarioBranchController}).
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public interface ScenarioAdjustment {
+
+	/**
+	 * Returned by {@link #getFirstAdjustedIteration()} when the adjustment
+	 * does not change the simulation.
+	 */
+	int NOT_ADJUSTED = Integer.MAX_VALUE;
+
+	/**
+	 * The first iteration the current adjustment changes.
+	 * 
+	 * @return first adjusted iteration, or {@link #NOT_ADJUSTED}
+	 */
+	int getFirstAdjustedIteration();
+
+}
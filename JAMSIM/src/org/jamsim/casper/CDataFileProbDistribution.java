@@ -9,13 +9,17 @@ import net.casper.data.model.CDataRowSet;
 import net.casper.io.file.def.CDataFile;
 import net.casper.io.file.def.CDataFileDef;
 
+import org.jamsim.math.AliasDistribution;
+import org.jamsim.math.DiscreteDistribution;
 import org.jamsim.math.IntervalsIntMap;
 import org.omancode.rmt.cellreader.CellReader;
 import org.omancode.rmt.cellreader.CellReaders;
 
 /**
  * Provides an {@link IntervalsIntMap} by accumulation from the columns of a
- * {@link CDataFile}.
+ * {@link CDataFile}. If {@link #setAliasSampling(boolean)} is set then
+ * {@link #getDistribution()} provides an {@link AliasDistribution} of the same
+ * probabilities instead.
  * 
  * @author Oliver Mannion
  * @version $Revision$
@@ -30,6 +34,10 @@ public class CDataFileProbDistribution implements CDataFile {
 
 	private IntervalsIntMap intervalsMap = null;
 
+	private AliasDistribution aliasDistribution = null;
+
+	private boolean aliasSampling = false;
+
 	/**
 	 * From base components, construct a casper dataset file definition that
 	 * returns a {@link IntervalsIntMap}.
@@ -89,6 +97,40 @@ public class CDataFileProbDistribution implements CDataFile {
 		return intervalsMap;
 	}
 
+	/**
+	 * Set whether {@link #getDistribution()} returns an
+	 * {@link AliasDistribution}, which draws in constant time, rather than the
+	 * cumulative distribution. Must be set before
+	 * {@link #loadDataset(java.io.File)} is called.
+	 * 
+	 * @param aliasSampling
+	 *            {@code true} to sample with the alias method
+	 */
+	public void setAliasSampling(boolean aliasSampling) {
+		this.aliasSampling = aliasSampling;
+	}
+
+	/**
+	 * Whether {@link #getDistribution()} returns an {@link AliasDistribution}.
+	 * 
+	 * @return alias sampling
+	 */
+	public boolean isAliasSampling() {
+		return aliasSampling;
+	}
+
+	/**
+	 * Get the distribution to sample from, ie: an {@link AliasDistribution} if
+	 * {@link #isAliasSampling()}, otherwise the intervals map. Must be called
+	 * after {@link #loadDataset(java.io.File)} has been called.
+	 * 
+	 * @return the distribution
+	 */
+	public DiscreteDistribution getDistribution() {
+		IntervalsIntMap map = getIntervalsMap();
+		return aliasSampling ? aliasDistribution : map;
+	}
+
 	/**
 	 * Generate the intervals map from a casper container.
 	 * 
@@ -111,6 +153,10 @@ public class CDataFileProbDistribution implements CDataFile {
 			i++;
 		}
 
+		aliasDistribution =
+				aliasSampling ? new AliasDistribution(probabilities, values)
+						: null;
+
 		return IntervalsIntMap.newProbabilityDistribution(probabilities,
 				values);
 	}
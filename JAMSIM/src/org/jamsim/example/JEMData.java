@@ -22,7 +22,9 @@ import org.jamsim.io.ParameterSet;
 import org.jamsim.math.ColtRNG;
 import org.jamsim.math.IntervalsIntMap;
 import org.jamsim.math.RNG;
-import org.jamsim.matrix.IndexedDenseDoubleMatrix2D;
+import org.jamsim.math.StreamRNG;
+import org.jamsim.matrix.RateTable;
+import org.jamsim.matrix.TableDimension;
 
 /**
  * Global data for JEM.
@@ -38,6 +40,17 @@ public class JEMData implements ScapeData {
 
 	private final RNG random;
 
+	/**
+	 * Seed of the per agent random number streams, or {@code null} if all
+	 * agents share {@link #random}.
+	 */
+	private final Long agentSeed;
+
+	/**
+	 * Number of agents created since agents were last loaded.
+	 */
+	private long agentCount;
+
 	/**
 	 * Table model representations of parameters for display in Navigator.
 	 */
@@ -59,13 +72,14 @@ public class JEMData implements ScapeData {
 
 	private final double[] prob_mort_female;
 
-	private final IndexedDenseDoubleMatrix2D dfle_transitions_matrix;
+	private final RateTable dfle_transitions;
 
 	/**
 	 * Disability state transitions, ie: probability distributions for each
-	 * sex/agegrp/current disability combination.
+	 * sex/agegrp/current disability combination, indexed by
+	 * {@link RateTable#row(int, int, int)} of {@link #dfle_transitions}.
 	 */
-	private final IntervalsIntMap[][][] dfle_transition_probdists;
+	private final IntervalsIntMap[] dfle_transition_probdists;
 
 	private int peopleCount;
 
@@ -78,10 +92,49 @@ public class JEMData implements ScapeData {
 	 *             if problem loading datasets
 	 */
 	public JEMData(FileLoader loader) throws IOException {
+		this(loader, new ColtRNG(), null);
+		// this(loader, new NonRNG(), null);
+	}
+
+	/**
+	 * Construct with a specific random number generator, eg: a separate
+	 * stream for each concurrent run.
+	 * 
+	 * @param loader
+	 *            file loader
+	 * @param random
+	 *            random number generator
+	 * @throws IOException
+	 *             if problem loading datasets
+	 */
+	public JEMData(FileLoader loader, RNG random) throws IOException {
+		this(loader, random, null);
+	}
+
+	/**
+	 * Construct with a separate random number stream for each agent and run,
+	 * keyed by {@code seed}, the run number and the order in which the agent
+	 * is created (see {@link #createAgentRNG(long, int)}). Draws are then the
+	 * same regardless of the order agents are iterated in, the number of
+	 * threads used, or whether runs are executed sequentially or concurrently.
+	 * 
+	 * @param loader
+	 *            file loader
+	 * @param seed
+	 *            simulation seed
+	 * @throws IOException
+	 *             if problem loading datasets
+	 */
+	public JEMData(FileLoader loader, long seed) throws IOException {
+		this(loader, StreamRNG.forKey(seed, 0, 0), seed);
+	}
+
+	private JEMData(FileLoader loader, RNG random, Long agentSeed)
+			throws IOException {
 		this.loader = loader;
 
-		this.random = new ColtRNG();
-		// this.random = new NonRNG();
+		this.random = random;
+		this.agentSeed = agentSeed;
 
 		loader.setDefaultFileLocations(JEMDataDefn.DEFAULT_FILE_LOCATIONS);
 
@@ -95,54 +148,15 @@ public class JEMData implements ScapeData {
 
 		prob_mort_male = loader.loadDoubleArray(JEMDataDefn.PROB_MORT_MALE);
 
-		dfle_transitions_matrix =
-				loader.loadMatrix(JEMDataDefn.DFLE_TRANSITIONS);
+		dfle_transitions =
+				loader.loadRateTable(JEMDataDefn.DFLE_TRANSITIONS,
+						TableDimension.of("Sex", SEX.values()), TableDimension
+								.of("Agegrp", AGE_GRP.values()),
+						TableDimension.of("Current disability state",
+								Disability.values()));
 
 		dfle_transition_probdists =
-				createDisabilityStatePDs(dfle_transitions_matrix);
-
-	}
-
-	/**
-	 * Create a probability distribution for each sex/agegrp/current disability
-	 * combination in the dfle_matrix.
-	 * 
-	 * @param dfle_matrix
-	 *            Indexed matrix of number of visit (1 - 10) probabilities for
-	 *            each agegrp/hhtype/gender and category combination.
-	 * @return probability distributions for number of visits, by
-	 *         agegrp/hhtype/gender index and condition category.
-	 * 
-	 */
-	private final IntervalsIntMap[][][] createDisabilityStatePDs(
-			IndexedDenseDoubleMatrix2D dfle_matrix) {
-
-		IntervalsIntMap[][][] probdists =
-				new IntervalsIntMap[SEX.values().length][AGE_GRP.values().length][Disability
-						.values().length];
-
-		// create individual PDs for each sex/agegrp/current disability
-		// combination from rows of the matrix
-		for (SEX sex : SEX.values()) {
-			for (AGE_GRP ageGrp : AGE_GRP.values()) {
-				for (Disability dfle : Disability.values()) {
-					Object[] key =
-							new Object[] { sex.getValue(), ageGrp.getValue(),
-									dfle.getValue() };
-					int index = dfle_matrix.indexLookupRow(key);
-					double[] probs = dfle_matrix.viewRow(index).toArray();
-
-					IntervalsIntMap cd =
-							IntervalsIntMap.newProbabilityDistribution(probs,
-									Disability.ALL_VALUES);
-
-					probdists[sex.ordinal()][ageGrp.ordinal()][dfle.ordinal()] =
-							cd;
-				}
-			}
-		}
-
-		return probdists;
+				dfle_transitions.createDistributions(Disability.ALL_VALUES);
 
 	}
 
@@ -166,8 +180,8 @@ public class JEMData implements ScapeData {
 			Disability dfle) {
 
 		IntervalsIntMap pd =
-				dfle_transition_probdists[sex.ordinal()][ageGrp.ordinal()][dfle
-						.ordinal()];
+				dfle_transition_probdists[dfle_transitions.row(sex.ordinal(),
+						ageGrp.ordinal(), dfle.ordinal())];
 
 		int newDisability = pd.getMappedValue(random);
 
@@ -224,9 +238,50 @@ public class JEMData implements ScapeData {
 		return random;
 	}
 
+	/**
+	 * Get the number of a newly created agent, ie: the order in which it was
+	 * created since agents were last loaded, which is its position in the base
+	 * file.
+	 * 
+	 * @return agent number, starting at 1
+	 */
+	public long nextAgentNumber() {
+		return ++agentCount;
+	}
+
+	/**
+	 * Whether each agent gets its own random number stream, ie: this was
+	 * constructed with a seed. Otherwise agents share {@link #getRNG()}, and
+	 * can't be iterated in parallel reproducibly.
+	 * 
+	 * @return {@code true} if agents have their own streams
+	 */
+	public boolean hasAgentRNGs() {
+		return agentSeed != null;
+	}
+
+	/**
+	 * Get the random number generator of an agent for a run. If constructed
+	 * with a seed, each agent gets its own stream for each run keyed by (seed,
+	 * run, agent number). Otherwise returns the shared {@link #getRNG()}.
+	 * 
+	 * @param agentNumber
+	 *            agent number, see {@link #nextAgentNumber()}
+	 * @param run
+	 *            run number, or 0 before the first run
+	 * @return random number generator for the agent
+	 */
+	public RNG createAgentRNG(long agentNumber, int run) {
+		if (agentSeed == null) {
+			return random;
+		}
+		return StreamRNG.forKey(agentSeed, run, agentNumber);
+	}
+
 	@Override
 	public Collection<? extends MicroSimCell<? extends ScapeData>> loadAgents(
 			File basefile) throws IOException {
+		agentCount = 0;
 		Collection<? extends MicroSimCell<? extends ScapeData>> people =
 				loader.loadJSONMarkedUpBeans(JEMDataDefn.BASEFILE_DEFINITION,
 						basefile, Person.class);
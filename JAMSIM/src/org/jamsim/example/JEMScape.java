@@ -2,8 +2,11 @@ package org.jamsim.example;
 
 import java.io.IOException;
 
+import org.jamsim.ascape.BatchSettings;
 import org.jamsim.ascape.MicroSimScape;
 import org.jamsim.ascape.RootScape;
+import org.jamsim.ascape.RunAscape;
+import org.jamsim.ascape.RunFactory;
 import org.jamsim.ascape.r.ScapeRInterface;
 import org.jamsim.ascape.ui.cmd.SingleVariableCommand;
 
@@ -43,7 +46,7 @@ public class JEMScape extends RootScape<JEMData> {
 		super.createScape();
 
 		try {
-			JEMData data = new JEMData(getLoader());
+			JEMData data = createData();
 
 			baseScape = createBaseScape("People", new Person());
 
@@ -85,6 +88,51 @@ public class JEMScape extends RootScape<JEMData> {
 		super.createGraphicViews();
 	}
 
+	@Override
+	protected void createBatchViews() {
+
+		// add scape R listener that acts on scape events
+		addScapeRListener(null, "beginSim()", "beginRun()", "endOfRun()",
+				"endOfSim()");
+
+		addBaseFileUpdateRCmd("baseUpdated()");
+	}
+
+	/**
+	 * Each concurrent run gets its own {@link JEMData} with a random number
+	 * stream per person, keyed by run and person. Only if the batch settings
+	 * specify a seed, otherwise all people share one random number stream
+	 * and concurrent runs would draw different numbers to sequential runs.
+	 */
+	@Override
+	protected RunFactory<JEMData> createRunFactory() {
+		if (getSeed() == null) {
+			return null;
+		}
+
+		return new RunFactory<JEMData>() {
+			@Override
+			public JEMData createScapeData(int run) throws IOException {
+				return createData();
+			}
+		};
+	}
+
+	/**
+	 * Create the {@link JEMData}, with a random number stream per person if
+	 * the batch settings specify a seed (see {@link BatchSettings#SEED_KEY}).
+	 */
+	private JEMData createData() throws IOException {
+		Long seed = getSeed();
+		return seed == null ? new JEMData(getLoader()) : new JEMData(
+				getLoader(), seed);
+	}
+
+	private static Long getSeed() {
+		return RunAscape.isHeadless() ? RunAscape.getBatchSettings()
+				.getSeed() : null;
+	}
+
 	private static final SingleVariableCommand VIEW_OBJECTS =
 			new SingleVariableCommand("View Objects", null, "with(people, "
 					+ SingleVariableCommand.REPLACEMENT + ")");
@@ -1,5 +1,8 @@
 package org.jamsim.example;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,6 +10,8 @@ import net.casper.data.model.CDataGridException;
 import net.casper.data.model.CMarkedUpRow;
 
 import org.jamsim.ascape.MicroSimCell;
+import org.jamsim.ascape.ParallelIterationSafe;
+import org.jamsim.ascape.ScapeCheckpoint;
 import org.jamsim.ascape.weights.WeightCalculator;
 import org.jamsim.data.DataUtil;
 import org.jamsim.example.types.AGE_GRP;
@@ -15,12 +20,17 @@ import org.jamsim.example.types.SEX;
 import org.jamsim.math.RNG;
 
 /**
- * A person.
+ * A person. Only reads {@link JEMData} when iterating, so is
+ * {@link ParallelIterationSafe} if it has its own random number stream.
+ * Doesn't report its changed dataframe columns, because its array properties
+ * mean its scape dataframe is always assigned whole (see
+ * {@link org.jamsim.ascape.MicroSimScape#setTrackColumnChanges(boolean)}).
  * 
  * @author Oliver Mannion
  * @version $Revision$
  */
-public class Person extends MicroSimCell<JEMData> {
+public class Person extends MicroSimCell<JEMData> implements
+		ParallelIterationSafe {
 
 	/**
 	 * 
@@ -29,7 +39,13 @@ public class Person extends MicroSimCell<JEMData> {
 
 	private final JEMData mdata;
 
-	private final RNG rng;
+	/**
+	 * Order in which this person was created, which keys its random number
+	 * stream. See {@link JEMData#createAgentRNG(long, int)}.
+	 */
+	private final long agentNumber;
+
+	private RNG rng;
 
 	private int age;
 
@@ -57,11 +73,12 @@ public class Person extends MicroSimCell<JEMData> {
 	/**
 	 * Default constructor. Before construction
 	 * {@link MicroSimCell#setData(org.jamsim.ascape.ScapeData)} must be called
-	 * to set globals.
+	 * to set globals. The random number generator is set when the first run
+	 * initialises this person.
 	 */
 	public Person() {
 		mdata = getScapeData();
-		rng = (mdata != null) ? mdata.getRNG() : null;
+		agentNumber = (mdata != null) ? mdata.nextAgentNumber() : 0;
 	}
 
 	/**
@@ -96,10 +113,15 @@ public class Person extends MicroSimCell<JEMData> {
 	}
 
 	/**
-	 * Called at the beginning of each run. Reset changed variables.
+	 * Called at the beginning of each run. Reset changed variables, and start
+	 * this run's random number stream.
 	 */
 	@Override
 	public void initialize() {
+		if (mdata != null && getRun() > 0) {
+			rng = mdata.createAgentRNG(agentNumber, getRun());
+		}
+
 		age = 0;
 		ageGrp = AGE_GRP.getFromAge(age);
 		earnings_to_date = DataUtil.missingIntArray(JEMScape.NUM_ITERATIONS);
@@ -109,6 +131,17 @@ public class Person extends MicroSimCell<JEMData> {
 		alive = true;
 	}
 
+	/**
+	 * Safe if {@link JEMData#hasAgentRNGs()}, ie: this person draws from its
+	 * own random number stream.
+	 * 
+	 * @return {@code true} if safe to iterate in parallel
+	 */
+	@Override
+	public boolean isParallelIterationSafe() {
+		return mdata != null && mdata.hasAgentRNGs();
+	}
+
 	/**
 	 * Performs simulation on this {@link Person} each time step.
 	 */
@@ -119,7 +152,7 @@ public class Person extends MicroSimCell<JEMData> {
 		if (alive) {
 
 			if (age > JEMDataDefn.MAX_LIFE) {
-				alive = false;
+				die();
 			} else {
 
 				// determine the disability status of the person
@@ -143,13 +176,76 @@ public class Person extends MicroSimCell<JEMData> {
 				// determine whether the person dies this year
 				if (rng.nextUniform01() <= mdata.probabilityOfDeath(sex,
 						age - 1)) {
-					alive = false;
+					die();
 				}
 
 			}
 		}
 	}
 
+	/**
+	 * Dead people leave the scape's active set, so are no longer iterated.
+	 */
+	private void die() {
+		alive = false;
+		deactivate();
+	}
+
+	/**
+	 * Write the variables changed by {@link #initialize()} and
+	 * {@link #iterate()}, and this person's random number stream if it has its
+	 * own.
+	 * 
+	 * @param out
+	 *            output to write to
+	 * @throws IOException
+	 *             if problem writing
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(age);
+		out.writeBoolean(alive);
+		out.writeInt(current_disability_state.getValue());
+		out.writeInt(total_earnings);
+		writeInts(earnings_to_date, out);
+		writeInts(disability_state, out);
+
+		if (rng != mdata.getRNG()) {
+			ScapeCheckpoint.writeRNG(rng, out);
+		}
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		age = in.readInt();
+		ageGrp = AGE_GRP.getFromAge(age);
+		alive = in.readBoolean();
+		current_disability_state = Disability.get(in.readInt());
+		total_earnings = in.readInt();
+		earnings_to_date = readInts(in);
+		disability_state = readInts(in);
+
+		if (rng != mdata.getRNG()) {
+			ScapeCheckpoint.readRNG(rng, in);
+		}
+	}
+
+	private static void writeInts(int[] values, DataOutput out)
+			throws IOException {
+		out.writeInt(values.length);
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	private static int[] readInts(DataInput in) throws IOException {
+		int[] values = new int[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
 	@Override
 	public String toString() {
 		return sex + " " + age;
@@ -1,5 +1,7 @@
 package org.jamsim.example;
 
+import java.io.IOException;
+
 import org.jamsim.ascape.RunAscape;
 
 /**
@@ -15,13 +17,22 @@ public final class RunJEM {
 	}
 
 	/**
-	 * Start Ascape with {@link JEMScape}.
+	 * Start Ascape with {@link JEMScape}. If there are no arguments starts the
+	 * Swing GUI, otherwise runs headless.
 	 * 
 	 * @param args
-	 *            not used
+	 *            properties files and/or {@code key=value} batch parameters,
+	 *            eg: {@code runs=10 "base file=base.csv"}. See
+	 *            {@link org.jamsim.ascape.BatchSettings}.
+	 * @throws IOException
+	 *             if problem reading a properties file
 	 */
-	public static void main(String[] args) {
-		RunAscape.start(JEMScape.class);
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			RunAscape.start(JEMScape.class);
+		} else {
+			RunAscape.startHeadless(JEMScape.class, args);
+		}
 	}
 
 }
\ No newline at end of file
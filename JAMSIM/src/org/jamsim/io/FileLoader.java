@@ -2,6 +2,7 @@ package org.jamsim.io;
 
 import java.awt.Component;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -28,12 +29,16 @@ import net.casper.io.file.in.CBuildFromFile;
 
 import org.jamsim.ascape.ui.RExpression;
 import org.jamsim.casper.CDataFileProbDistribution;
+import org.jamsim.math.DiscreteDistribution;
 import org.jamsim.math.Glimmix;
 import org.jamsim.math.GlimmixTableModel;
 import org.jamsim.math.IntervalsIntMap;
 import org.jamsim.math.IntervalsIntMapTableModel;
 import org.jamsim.matrix.IndexedDenseDoubleMatrix2D;
 import org.jamsim.matrix.IndexedMatrixTableModel;
+import org.jamsim.matrix.RateTable;
+import org.jamsim.matrix.SparseIndexedDoubleMatrix2D;
+import org.jamsim.matrix.TableDimension;
 import org.omancode.util.io.ExtFileFilter;
 import org.omancode.util.io.Output;
 import org.omancode.util.io.OutputToPrintStream;
@@ -44,6 +49,12 @@ import org.omancode.util.swing.PrefsOrSaveFileChooser;
 /**
  * File loader that loads datasets, and objects based on datasets, from files.
  * The location of files is determined by the preferences or a GUI prompt.
+ * <p>
+ * When constructed with a map of fixed file locations (see
+ * {@link #FileLoader(Class, Output, Map)}) the loader runs headless: file
+ * locations are read only from the map, and are never read from or saved to
+ * the preferences. A missing location is an error rather than a prompt.
+ * </p>
  * 
  * @author Oliver Mannion
  * @version $Revision$
@@ -60,6 +71,12 @@ public class FileLoader implements Output {
 
 	private final CDataFileDefLoader cdefLoader = new CDataFileDefLoader();
 
+	/**
+	 * File locations used instead of the preferences and file choosers when
+	 * headless, or {@code null} if not headless.
+	 */
+	private final Map<String, String> fixedLocations;
+
 	/**
 	 * Table model representations of datasets, matrices etc. for display in a
 	 * Swing GUI.
@@ -108,7 +125,33 @@ public class FileLoader implements Output {
 	 *            System.out).
 	 */
 	public FileLoader(Class<?> prefsClass, Output output) {
+		this(prefsClass, output, null);
+	}
+
+	/**
+	 * Construct {@link FileLoader} that looks up file locations in
+	 * {@code fixedLocations} instead of the preferences and never displays a
+	 * GUI prompt. Used when running headless.
+	 * 
+	 * @param prefsClass
+	 *            preferences node, if {@code null} uses the {@link FileLoader}
+	 *            class node.
+	 * @param output
+	 *            output object, if {@code null} uses the default
+	 *            {@link OutputToPrintStream} instance (ie: prints to
+	 *            System.out).
+	 * @param fixedLocations
+	 *            map with key of file description (ie: dataset
+	 *            name/preference key), and value of file path. If
+	 *            {@code null} file locations are looked up in the preferences
+	 *            or via a GUI prompt.
+	 */
+	public FileLoader(Class<?> prefsClass, Output output,
+			Map<String, String> fixedLocations) {
 		this.output = output == null ? new OutputToPrintStream() : output;
+		this.fixedLocations =
+				fixedLocations == null ? null
+						: new LinkedHashMap<String, String>(fixedLocations);
 		prefs =
 				Preferences.userNodeForPackage(prefsClass == null ? this
 						.getClass() : prefsClass);
@@ -129,12 +172,92 @@ public class FileLoader implements Output {
 			Map<String, String> defaultFileLocations) {
 		for (Map.Entry<String, String> e : defaultFileLocations.entrySet()) {
 
-			if ("".equals(prefs.get(e.getKey(), ""))) {
-				prefs.put(e.getKey(), e.getValue());
+			if ("".equals(getLocation(e.getKey()))) {
+				putLocation(e.getKey(), e.getValue());
 			}
 		}
 	}
 
+	/**
+	 * Whether this loader is headless, ie: uses fixed file locations and never
+	 * prompts.
+	 * 
+	 * @return {@code true} if headless
+	 */
+	public boolean isHeadless() {
+		return fixedLocations != null;
+	}
+
+	/**
+	 * Get the stored location for {@code key}, from the fixed locations if
+	 * headless, otherwise from the preferences.
+	 * 
+	 * @param key
+	 *            file description (ie: dataset name/preference key)
+	 * @return file path, or the empty string if no location is stored
+	 */
+	public String getLocation(String key) {
+		if (fixedLocations != null) {
+			String location = fixedLocations.get(key);
+			return location == null ? "" : location;
+		}
+		return prefs.get(key, "");
+	}
+
+	/**
+	 * Store the location for {@code key}, in the fixed locations if headless,
+	 * otherwise in the preferences.
+	 * 
+	 * @param key
+	 *            file description (ie: dataset name/preference key)
+	 * @param location
+	 *            file path
+	 */
+	public void putLocation(String key, String location) {
+		if (fixedLocations != null) {
+			fixedLocations.put(key, location);
+		} else {
+			prefs.put(key, location);
+		}
+	}
+
+	/**
+	 * Get the fixed location for {@code key} when headless.
+	 * 
+	 * @param key
+	 *            file description (ie: dataset name/preference key)
+	 * @param directory
+	 *            {@code true} if the location must be a directory
+	 * @return file
+	 * @throws FileNotFoundException
+	 *             if no location has been specified, or it does not exist
+	 */
+	private File getFixedFile(String key, boolean directory)
+			throws FileNotFoundException {
+		String location = getLocation(key);
+
+		if ("".equals(location)) {
+			throw new FileNotFoundException("No location specified for \""
+					+ key + "\"");
+		}
+
+		File file = new File(location);
+
+		if (directory ? !file.isDirectory() : !file.exists()) {
+			throw new FileNotFoundException("Location of \"" + key + "\" ["
+					+ location + "] does not exist");
+		}
+
+		return file;
+	}
+
+	private void checkNotHeadless(String dialogTitle) {
+		if (fixedLocations != null) {
+			throw new IllegalStateException("Cannot show dialog \""
+					+ dialogTitle + "\" when headless");
+		}
+	}
+
 	/**
 	 * Convenience method which displays the chooser with the default dialog
 	 * title {@link PrefsOrOpenFileChooser#DEFAULT_PROMPT}. The chooser has no
@@ -147,6 +270,9 @@ public class FileLoader implements Output {
 	 *             if no valid file is selected when prompted.
 	 */
 	public File getFile(String prefsKey) throws IOException {
+		if (fixedLocations != null) {
+			return getFixedFile(prefsKey, false);
+		}
 		return openChooser.getFile(prefsKey);
 	}
 
@@ -162,6 +288,14 @@ public class FileLoader implements Output {
 	 *             if no valid file is selected when prompted.
 	 */
 	public File getFileToSave(String prefsKey) throws IOException {
+		if (fixedLocations != null) {
+			String location = getLocation(prefsKey);
+			if ("".equals(location)) {
+				throw new FileNotFoundException("No location specified for \""
+						+ prefsKey + "\"");
+			}
+			return new File(location);
+		}
 		return saveChooser.getFile(prefsKey);
 	}
 
@@ -184,6 +318,9 @@ public class FileLoader implements Output {
 	 */
 	public File getFile(String prefsKey, String prompt, FileFilter filter,
 			boolean saveFileSelectedToPrefs) throws IOException {
+		if (fixedLocations != null) {
+			return getFixedFile(prefsKey, false);
+		}
 		return openChooser.getFile(prefsKey, prompt, filter,
 				saveFileSelectedToPrefs);
 	}
@@ -204,6 +341,9 @@ public class FileLoader implements Output {
 	 */
 	public File getDirectory(String prefsKey, String prompt,
 			boolean saveDirSelectedToPrefs) throws IOException {
+		if (fixedLocations != null) {
+			return getFixedFile(prefsKey, true);
+		}
 		return openChooser.getDirectory(prefsKey, prompt,
 				saveDirSelectedToPrefs);
 	}
@@ -223,6 +363,7 @@ public class FileLoader implements Output {
 	 */
 	public File showOpenDialog(String dialogTitle, Component parent,
 			FileFilter filter) {
+		checkNotHeadless(dialogTitle);
 		return openChooser.showOpenDialog(dialogTitle, parent, filter);
 	}
 
@@ -242,6 +383,7 @@ public class FileLoader implements Output {
 	 */
 	public File showSaveDialogPromptOverwrite(String dialogTitle,
 			Component parent, FileFilter filter) {
+		checkNotHeadless(dialogTitle);
 		return saveChooser.showSaveDialogPromptOverwrite(dialogTitle, parent,
 				filter);
 	}
@@ -258,6 +400,7 @@ public class FileLoader implements Output {
 	 */
 	public File showOpenDialogForDirectories(String dialogTitle,
 			Component parent) {
+		checkNotHeadless(dialogTitle);
 		return openChooser.showOpenDialogForDirectories(dialogTitle, parent);
 	}
 
@@ -337,7 +480,7 @@ public class FileLoader implements Output {
 		println("Done. ");
 
 		// save location of file selected in prefs
-		prefs.put(datasetName, file.getPath());
+		putLocation(datasetName, file.getPath());
 
 		return cdcc;
 	}
@@ -383,7 +526,7 @@ public class FileLoader implements Output {
 		println("Done. ");
 
 		// save location of file selected in prefs
-		prefs.put(datasetName, file.getPath());
+		putLocation(datasetName, file.getPath());
 
 		return cdcc;
 	}
@@ -414,7 +557,7 @@ public class FileLoader implements Output {
 		
 		Map<String, Map<String, String>> tableBuilderData = reader.readTableBuilderDataCSVFile(file.getPath());
 		
-		prefs.put(datasetName, file.getPath());
+		putLocation(datasetName, file.getPath());
 		
 		return tableBuilderData;
 	}
@@ -437,7 +580,7 @@ public class FileLoader implements Output {
 		
 		Map<String, RExpression> subgroupsToOptions = reader.readSubgroupsToOptionsCSVFile(file.getPath());
 		
-		prefs.put(datasetName,  file.getPath());
+		putLocation(datasetName, file.getPath());
 		
 		return subgroupsToOptions;	
 	}
@@ -468,6 +611,57 @@ public class FileLoader implements Output {
 
 	}
 
+	/**
+	 * Convenience method for loading a casper dataset into a
+	 * {@link SparseIndexedDoubleMatrix2D}, eg: a transition table that is
+	 * mostly zeros. Dataset must be made up of all doubles, as for
+	 * {@link #loadMatrix(CDataFile)}.
+	 * 
+	 * @param cdef
+	 *            dataset definition
+	 * @return sparse matrix
+	 * @throws IOException
+	 *             problem reading dataset, or dataset doesn't contain doubles.
+	 */
+	public SparseIndexedDoubleMatrix2D loadSparseMatrix(CDataFile cdef)
+			throws IOException {
+
+		try {
+			SparseIndexedDoubleMatrix2D matrix =
+					new SparseIndexedDoubleMatrix2D(loadDataset(cdef));
+
+			tmodels.put(cdef.getName(), new IndexedMatrixTableModel(matrix));
+			return matrix;
+		} catch (CDataGridException e) {
+			throw new IOException(e);
+		}
+
+	}
+
+	/**
+	 * Convenience method for loading a casper dataset into a
+	 * {@link RateTable}, via {@link #loadMatrix(CDataFile)}.
+	 * 
+	 * @param cdef
+	 *            dataset definition
+	 * @param dimensions
+	 *            a dimension for each index column, in lookup order
+	 * @return rate table
+	 * @throws IOException
+	 *             problem reading dataset, dataset doesn't contain doubles, or
+	 *             doesn't have exactly one row for each combination of
+	 *             dimension values.
+	 */
+	public RateTable loadRateTable(CDataFile cdef,
+			TableDimension... dimensions) throws IOException {
+		try {
+			return new RateTable(loadMatrix(cdef), dimensions);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Problem loading " + cdef.getName() + ": "
+					+ e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Loads a {@link CDataFile} from a JSON string in a text file.
 	 * 
@@ -488,7 +682,7 @@ public class FileLoader implements Output {
 		CDataFileDef cdef = cdefLoader.fromJsonFile(file);
 
 		// save location of file selected in prefs
-		prefs.put(cdefName, file.getPath());
+		putLocation(cdefName, file.getPath());
 
 		return cdef;
 	}
@@ -516,6 +710,27 @@ public class FileLoader implements Output {
 
 	}
 
+	/**
+	 * Convenience method for loading a casper dataset into a
+	 * {@link DiscreteDistribution}, ie: an
+	 * {@link org.jamsim.math.AliasDistribution} if
+	 * {@link CDataFileProbDistribution#isAliasSampling()}, otherwise an
+	 * {@link IntervalsIntMap}. The table model shows the cumulative
+	 * distribution either way.
+	 * 
+	 * @param cdefmap
+	 *            dataset definition
+	 * @return distribution
+	 * @throws IOException
+	 *             problem reading dataset, or dataset columns of the wrong
+	 *             type.
+	 */
+	public DiscreteDistribution loadProbabilityDistribution(
+			CDataFileProbDistribution cdefmap) throws IOException {
+		loadCumulativeDistribution(cdefmap);
+		return cdefmap.getDistribution();
+	}
+
 	/**
 	 * Convenience method for loading a casper dataset into a map. Create table
 	 * model for dataset.
@@ -0,0 +1,168 @@
+package org.jamsim.math;
+
+/**
+ * Base class of {@link RNG}s that adds bulk methods, which fill a range of an
+ * array in one call. The bulk methods must return the same values, in the same
+ * order, as repeated calls to the equivalent scalar method, so a model can
+ * switch between the two without changing results.
+ * <p>
+ * The bulk methods here just call the scalar methods. Subclasses override them
+ * where a block can be drawn faster. Use the static {@code fill} methods to
+ * draw in bulk from any {@link RNG}, including those that don't extend this
+ * class.
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public abstract class AbstractRNG implements RNG {
+
+	/**
+	 * Fill {@code dest[from]} to {@code dest[to - 1]} with uniformly
+	 * distributed random numbers in the open interval (0,1). Equivalent to
+	 * calling {@link #nextUniform01()} for each element in turn.
+	 * 
+	 * @param dest
+	 *            array to fill
+	 * @param from
+	 *            index of the first element to fill (inclusive)
+	 * @param to
+	 *            index of the last element to fill (exclusive)
+	 */
+	public void nextUniform01(double[] dest, int from, int to) {
+		for (int i = from; i < to; i++) {
+			dest[i] = nextUniform01();
+		}
+	}
+
+	/**
+	 * Fill {@code dest[from]} to {@code dest[to - 1]} with random numbers from
+	 * the Gaussian (normal) distribution. Equivalent to calling
+	 * {@link #nextGaussian(double, double)} for each element in turn.
+	 * 
+	 * @param dest
+	 *            array to fill
+	 * @param from
+	 *            index of the first element to fill (inclusive)
+	 * @param to
+	 *            index of the last element to fill (exclusive)
+	 * @param mean
+	 *            mean
+	 * @param standardDeviation
+	 *            standard deviation
+	 */
+	public void nextGaussian(double[] dest, int from, int to, double mean,
+			double standardDeviation) {
+		for (int i = from; i < to; i++) {
+			dest[i] = nextGaussian(mean, standardDeviation);
+		}
+	}
+
+	/**
+	 * Fill {@code dest[from]} to {@code dest[to - 1]} with values drawn from
+	 * {@code map}, eg: a probability distribution created by
+	 * {@link IntervalsIntMap#newProbabilityDistribution(double[], int[])}.
+	 * Equivalent to calling {@code map.getMappedValue(nextUniform01())} for
+	 * each element in turn.
+	 * 
+	 * @param map
+	 *            intervals map to draw from
+	 * @param dest
+	 *            array to fill
+	 * @param from
+	 *            index of the first element to fill (inclusive)
+	 * @param to
+	 *            index of the last element to fill (exclusive)
+	 */
+	public void nextMappedValues(IntervalsIntMap map, int[] dest, int from,
+			int to) {
+		for (int i = from; i < to; i++) {
+			dest[i] = map.getMappedValue(nextUniform01());
+		}
+	}
+
+	/**
+	 * Fill {@code dest[from]} to {@code dest[to - 1]} with uniformly
+	 * distributed random numbers from {@code rng}. Uses
+	 * {@link #nextUniform01(double[], int, int)} if {@code rng} is an
+	 * {@link AbstractRNG}.
+	 * 
+	 * @param rng
+	 *            random number generator
+	 * @param dest
+	 *            array to fill
+	 * @param from
+	 *            index of the first element to fill (inclusive)
+	 * @param to
+	 *            index of the last element to fill (exclusive)
+	 */
+	public static void fillUniform01(RNG rng, double[] dest, int from, int to) {
+		if (rng instanceof AbstractRNG) {
+			((AbstractRNG) rng).nextUniform01(dest, from, to);
+		} else {
+			for (int i = from; i < to; i++) {
+				dest[i] = rng.nextUniform01();
+			}
+		}
+	}
+
+	/**
+	 * Fill {@code dest[from]} to {@code dest[to - 1]} with random numbers from
+	 * the Gaussian (normal) distribution drawn from {@code rng}. Uses
+	 * {@link #nextGaussian(double[], int, int, double, double)} if {@code rng}
+	 * is an {@link AbstractRNG}.
+	 * 
+	 * @param rng
+	 *            random number generator
+	 * @param dest
+	 *            array to fill
+	 * @param from
+	 *            index of the first element to fill (inclusive)
+	 * @param to
+	 *            index of the last element to fill (exclusive)
+	 * @param mean
+	 *            mean
+	 * @param standardDeviation
+	 *            standard deviation
+	 */
+	public static void fillGaussian(RNG rng, double[] dest, int from, int to,
+			double mean, double standardDeviation) {
+		if (rng instanceof AbstractRNG) {
+			((AbstractRNG) rng).nextGaussian(dest, from, to, mean,
+					standardDeviation);
+		} else {
+			for (int i = from; i < to; i++) {
+				dest[i] = rng.nextGaussian(mean, standardDeviation);
+			}
+		}
+	}
+
+	/**
+	 * Fill {@code dest[from]} to {@code dest[to - 1]} with values drawn from
+	 * {@code map} using {@code rng}. Uses
+	 * {@link #nextMappedValues(IntervalsIntMap, int[], int, int)} if
+	 * {@code rng} is an {@link AbstractRNG}.
+	 * 
+	 * @param rng
+	 *            random number generator
+	 * @param map
+	 *            intervals map to draw from
+	 * @param dest
+	 *            array to fill
+	 * @param from
+	 *            index of the first element to fill (inclusive)
+	 * @param to
+	 *            index of the last element to fill (exclusive)
+	 */
+	public static void fillMappedValues(RNG rng, IntervalsIntMap map,
+			int[] dest, int from, int to) {
+		if (rng instanceof AbstractRNG) {
+			((AbstractRNG) rng).nextMappedValues(map, dest, from, to);
+		} else {
+			for (int i = from; i < to; i++) {
+				dest[i] = map.getMappedValue(rng.nextUniform01());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+package org.jamsim.math;
+
+import java.util.Arrays;
+
+/**
+ * Samples a probability distribution over integer values in constant time
+ * using Walker's alias method, with the table built by Vose's algorithm.
+ * Constructed from the same inputs as
+ * {@link IntervalsIntMap#newProbabilityDistribution(double[], int[])}, but a
+ * draw is a multiply, a compare and two array reads rather than a binary
+ * search, and does not allocate.
+ * <p>
+ * Each draw uses a single random number: its integer part (when scaled by the
+ * number of values) selects a column of the table and its fractional part
+ * chooses between the column's value and its alias. So a given random number
+ * generally draws a different value than the cumulative distribution does,
+ * although values are drawn with the same probabilities.
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class AliasDistribution implements DiscreteDistribution {
+
+	/**
+	 * Probability of drawing the column's own value rather than its alias.
+	 */
+	private final double[] thresholds;
+
+	private final int[] values;
+
+	private final int[] aliasValues;
+
+	/**
+	 * Construct alias table.
+	 * 
+	 * @param probabilities
+	 *            individual probabilities of each value. Need not sum to 1, as
+	 *            they are divided by their sum.
+	 * @param values
+	 *            values that map to {@code probabilities}
+	 * @throws IllegalArgumentException
+	 *             if the arrays are empty or different lengths, a probability
+	 *             is negative or not finite, or the probabilities sum to 0
+	 */
+	public AliasDistribution(double[] probabilities, int[] values) {
+		int n = probabilities.length;
+
+		if (n != values.length) {
+			throw new IllegalArgumentException("probabilities.length (" + n
+					+ ") != values.length (" + values.length + ")");
+		}
+		if (n == 0) {
+			throw new IllegalArgumentException("No probabilities");
+		}
+
+		for (int i = 0; i < n; i++) {
+			if (!(probabilities[i] >= 0)
+					|| Double.isInfinite(probabilities[i])) {
+				throw new IllegalArgumentException("probabilities[" + i
+						+ "] (" + probabilities[i] + ") is not a probability");
+			}
+		}
+
+		double sumProbs = IntervalsIntMap.sumArray(probabilities);
+		if (!(sumProbs > 0)) {
+			throw new IllegalArgumentException("probabilities sum to "
+					+ sumProbs);
+		}
+
+		this.thresholds = new double[n];
+		this.values = values.clone();
+		this.aliasValues = values.clone();
+
+		// probabilities scaled so the mean is 1
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int numSmall = 0;
+		int numLarge = 0;
+
+		for (int i = 0; i < n; i++) {
+			scaled[i] = probabilities[i] * n / sumProbs;
+			if (scaled[i] < 1) {
+				small[numSmall++] = i;
+			} else {
+				large[numLarge++] = i;
+			}
+		}
+
+		// fill each small column's shortfall from a large column
+		while (numSmall > 0 && numLarge > 0) {
+			int less = small[--numSmall];
+			int more = large[--numLarge];
+
+			thresholds[less] = scaled[less];
+			aliasValues[less] = values[more];
+
+			scaled[more] = (scaled[more] + scaled[less]) - 1;
+			if (scaled[more] < 1) {
+				small[numSmall++] = more;
+			} else {
+				large[numLarge++] = more;
+			}
+		}
+
+		// left over columns are full, bar rounding error
+		while (numLarge > 0) {
+			thresholds[large[--numLarge]] = 1;
+		}
+		while (numSmall > 0) {
+			thresholds[small[--numSmall]] = 1;
+		}
+	}
+
+	@Override
+	public int draw(double random) {
+		if (!(random > 0 && random <= 1)) {
+			throw new IllegalArgumentException("random (" + random
+					+ ") not in (0,1]");
+		}
+
+		double x = random * thresholds.length;
+		int column = (int) x;
+
+		// random == 1
+		if (column == thresholds.length) {
+			column--;
+		}
+
+		return x - column < thresholds[column] ? values[column]
+				: aliasValues[column];
+	}
+
+	/**
+	 * Get the values of the distribution.
+	 * 
+	 * @return values array
+	 */
+	public int[] getValues() {
+		return values.clone();
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer sbuf = new StringBuffer(256);
+
+		sbuf.append("Values: ").append(Arrays.toString(values)).append('\n');
+		sbuf.append("Thresholds: ").append(Arrays.toString(thresholds))
+				.append('\n');
+		sbuf.append("Aliases: ").append(Arrays.toString(aliasValues))
+				.append('\n');
+
+		return sbuf.toString();
+	}
+
+}
@@ -1,9 +1,13 @@
 package org.jamsim.math;
 
+import java.util.Arrays;
+
 import org.apache.commons.lang.ArrayUtils;
 
 /**
- * Logic tests and arithmetic operations on arrays.
+ * Logic tests and arithmetic operations on arrays. The element by element
+ * operations write to a destination array, which may be one of the inputs, so
+ * work on large columns, eg: agent weights, need not allocate.
  * 
  * @author Oliver Mannion
  * @version $Revision$
@@ -46,19 +50,7 @@ public final class ArrayMath {
 	 * @return the sum of array1 + array2
 	 */
 	public static double[] sum(double[] array1, double[] array2) {
-		if (array1.length != array2.length) {
-			throw new IllegalArgumentException("array1.length ("
-					+ array1.length + ") != array2.length (" + array2.length
-					+ ")");
-		}
-
-		double[] sum = new double[array1.length];
-
-		for (int i = 0; i < array1.length; i++) {
-			sum[i] = array1[i] + array2[i];
-		}
-
-		return sum;
+		return add(array1, array2, new double[array1.length]);
 	}
 
 	/**
@@ -71,11 +63,7 @@ public final class ArrayMath {
 	 * @return the sum of array1 + array2
 	 */
 	public static int[] sum(int[] array1, int[] array2) {
-		if (array1.length != array2.length) {
-			throw new IllegalArgumentException("array1.length ("
-					+ array1.length + ") != array2.length (" + array2.length
-					+ ")");
-		}
+		checkLengths("array1", array1.length, "array2", array2.length);
 
 		int[] sum = new int[array1.length];
 
@@ -96,13 +84,261 @@ public final class ArrayMath {
 	 * @return product
 	 */
 	public static double[] multiply(double[] array, double factor) {
-		double[] product = new double[array.length];
+		return scale(array, factor, new double[array.length]);
+	}
+
+	/**
+	 * Add two arrays element by element into {@code dest}, ie:
+	 * {@code dest[i] = array1[i] + array2[i]}. {@code dest} may be
+	 * {@code array1} or {@code array2} to add in place.
+	 * 
+	 * @param array1
+	 *            array 1
+	 * @param array2
+	 *            array 2
+	 * @param dest
+	 *            destination array
+	 * @return {@code dest}
+	 */
+	public static double[] add(double[] array1, double[] array2,
+			double[] dest) {
+		checkLengths("array1", array1.length, "array2", array2.length);
+		checkLengths("array1", array1.length, "dest", dest.length);
+
+		for (int i = 0; i < dest.length; i++) {
+			dest[i] = array1[i] + array2[i];
+		}
+
+		return dest;
+	}
+
+	/**
+	 * Multiply each element of the array by {@code factor} into
+	 * {@code dest}. {@code dest} may be {@code array} to scale in place.
+	 * 
+	 * @param array
+	 *            doubles to multiply
+	 * @param factor
+	 *            scalar to multiply by
+	 * @param dest
+	 *            destination array
+	 * @return {@code dest}
+	 */
+	public static double[] scale(double[] array, double factor,
+			double[] dest) {
+		checkLengths("array", array.length, "dest", dest.length);
+
+		for (int i = 0; i < dest.length; i++) {
+			dest[i] = array[i] * factor;
+		}
+
+		return dest;
+	}
+
+	/**
+	 * Multiply two arrays and add a third, element by element, ie:
+	 * {@code dest[i] = array1[i] * array2[i] + addend[i]}. {@code dest} may
+	 * be any of the arguments, eg: {@code addend} to accumulate products.
+	 * 
+	 * @param array1
+	 *            array 1
+	 * @param array2
+	 *            array 2
+	 * @param addend
+	 *            array to add to the products
+	 * @param dest
+	 *            destination array
+	 * @return {@code dest}
+	 */
+	public static double[] multiplyAdd(double[] array1, double[] array2,
+			double[] addend, double[] dest) {
+		checkLengths("array1", array1.length, "array2", array2.length);
+		checkLengths("array1", array1.length, "addend", addend.length);
+		checkLengths("array1", array1.length, "dest", dest.length);
+
+		for (int i = 0; i < dest.length; i++) {
+			dest[i] = array1[i] * array2[i] + addend[i];
+		}
+
+		return dest;
+	}
+
+	/**
+	 * Weighted sum of arrays, element by element, ie:
+	 * {@code dest[i] = weights[0] * arrays[0][i] + weights[1] * arrays[1][i] + ...}
+	 * , eg: to combine the outputs of several runs. {@code dest} must not be
+	 * one of {@code arrays}.
+	 * 
+	 * @param arrays
+	 *            arrays to sum, all the same length as {@code dest}
+	 * @param weights
+	 *            weight of each array
+	 * @param dest
+	 *            destination array
+	 * @return {@code dest}
+	 */
+	public static double[] weightedSum(double[][] arrays, double[] weights,
+			double[] dest) {
+		checkLengths("arrays", arrays.length, "weights", weights.length);
+
+		Arrays.fill(dest, 0);
+
+		// one pass over dest per array, so each pass is a simple
+		// multiply-add that the JIT can vectorise
+		for (int k = 0; k < arrays.length; k++) {
+			double[] array = arrays[k];
+			double weight = weights[k];
+			checkLengths("arrays[" + k + "]", array.length, "dest",
+					dest.length);
+
+			for (int i = 0; i < dest.length; i++) {
+				dest[i] += weight * array[i];
+			}
+		}
+
+		return dest;
+	}
+
+	/**
+	 * Dot product, ie: the sum of {@code array1[i] * array2[i]}, eg: the
+	 * weighted total of a variable.
+	 * 
+	 * @param array1
+	 *            array 1
+	 * @param array2
+	 *            array 2
+	 * @return dot product
+	 */
+	public static double dot(double[] array1, double[] array2) {
+		checkLengths("array1", array1.length, "array2", array2.length);
+
+		// independent accumulators so successive additions do not wait on
+		// each other
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		int end = array1.length - 3;
+		for (; i < end; i += 4) {
+			sum0 += array1[i] * array2[i];
+			sum1 += array1[i + 1] * array2[i + 1];
+			sum2 += array1[i + 2] * array2[i + 2];
+			sum3 += array1[i + 3] * array2[i + 3];
+		}
+		for (; i < array1.length; i++) {
+			sum0 += array1[i] * array2[i];
+		}
+
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Sum of an array.
+	 * 
+	 * @param array
+	 *            array
+	 * @return sum of all elements
+	 */
+	public static double sum(double[] array) {
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		int end = array.length - 3;
+		for (; i < end; i += 4) {
+			sum0 += array[i];
+			sum1 += array[i + 1];
+			sum2 += array[i + 2];
+			sum3 += array[i + 3];
+		}
+		for (; i < array.length; i++) {
+			sum0 += array[i];
+		}
+
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Sum of the elements of an array where {@code mask} is {@code true}, eg:
+	 * the total of a variable over the agents in a subgroup.
+	 * 
+	 * @param array
+	 *            array
+	 * @param mask
+	 *            elements to include
+	 * @return sum of the masked elements
+	 */
+	public static double maskedSum(double[] array, boolean[] mask) {
+		checkLengths("array", array.length, "mask", mask.length);
+
+		// branch free, so an unpredictable mask costs no mispredictions
+		double sum0 = 0, sum1 = 0;
+		int i = 0;
+		int end = array.length - 1;
+		for (; i < end; i += 2) {
+			sum0 += mask[i] ? array[i] : 0;
+			sum1 += mask[i + 1] ? array[i + 1] : 0;
+		}
+		if (i < array.length && mask[i]) {
+			sum0 += array[i];
+		}
+
+		return sum0 + sum1;
+	}
+
+	/**
+	 * Cumulative sum, ie: {@code dest[i] = array[0] + ... + array[i]}, eg: to
+	 * turn probabilities into a cumulative distribution. {@code dest} may be
+	 * {@code array} to sum in place.
+	 * 
+	 * @param array
+	 *            array
+	 * @param dest
+	 *            destination array
+	 * @return {@code dest}
+	 */
+	public static double[] prefixSum(double[] array, double[] dest) {
+		checkLengths("array", array.length, "dest", dest.length);
+
+		double sum = 0;
+		for (int i = 0; i < dest.length; i++) {
+			sum += array[i];
+			dest[i] = sum;
+		}
+
+		return dest;
+	}
+
+	/**
+	 * Compensated sum of an array. Uses the Kahan-Babuska (Neumaier)
+	 * algorithm, so the rounding error does not grow with the length of the
+	 * array, eg: when summing millions of small weights. Slower than
+	 * {@link #sum(double[])}.
+	 * 
+	 * @param array
+	 *            array
+	 * @return sum of all elements
+	 */
+	public static double compensatedSum(double[] array) {
+		double sum = 0;
+		double compensation = 0;
 
 		for (int i = 0; i < array.length; i++) {
-			product[i] = array[i] * factor;
+			double value = array[i];
+			double t = sum + value;
+			if (Math.abs(sum) >= Math.abs(value)) {
+				compensation += (sum - t) + value;
+			} else {
+				compensation += (value - t) + sum;
+			}
+			sum = t;
 		}
 
-		return product;
+		return sum + compensation;
+	}
+
+	private static void checkLengths(String name1, int length1,
+			String name2, int length2) {
+		if (length1 != length2) {
+			throw new IllegalArgumentException(name1 + ".length (" + length1
+					+ ") != " + name2 + ".length (" + length2 + ")");
+		}
 	}
 
 }
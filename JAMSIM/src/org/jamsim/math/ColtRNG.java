@@ -2,6 +2,7 @@ package org.jamsim.math;
 
 import cern.jet.random.Normal;
 import cern.jet.random.Uniform;
+import cern.jet.random.engine.MersenneTwister;
 
 /**
  * Random Number Generator (RNG) interface implementation using the CERN Colt
@@ -10,16 +11,94 @@ import cern.jet.random.Uniform;
  * @author Oliver Mannion
  * @version $Revision$
  */
-public class ColtRNG implements RNG {
+public class ColtRNG extends AbstractRNG {
+
+	/**
+	 * Uniform distribution of this instance, or {@code null} to use the shared
+	 * static Colt distributions.
+	 */
+	private final Uniform uniform;
+
+	private final Normal normal;
+
+	/**
+	 * Construct {@link ColtRNG} that uses the shared static Colt
+	 * distributions.
+	 */
+	public ColtRNG() {
+		uniform = null;
+		normal = null;
+	}
+
+	/**
+	 * Construct {@link ColtRNG} with its own random number stream. Use this to
+	 * give independent runs (eg: concurrent runs) independent and reproducible
+	 * streams.
+	 * 
+	 * @param seed
+	 *            seed of this instance's stream
+	 */
+	public ColtRNG(int seed) {
+		MersenneTwister engine = new MersenneTwister(seed);
+		uniform = new Uniform(engine);
+		normal = new Normal(0, 1, engine);
+	}
 
 	@Override
 	public double nextGaussian(double mean, double standardDeviation) {
-		return Normal.staticNextDouble(mean, standardDeviation);
+		if (normal == null) {
+			return Normal.staticNextDouble(mean, standardDeviation);
+		}
+		return normal.nextDouble(mean, standardDeviation);
 	}
 
 	@Override
 	public double nextUniform01() {
-		return Uniform.staticNextDouble();
+		if (uniform == null) {
+			return Uniform.staticNextDouble();
+		}
+		return uniform.nextDouble();
+	}
+
+	@Override
+	public void nextUniform01(double[] dest, int from, int to) {
+		if (uniform == null) {
+			for (int i = from; i < to; i++) {
+				dest[i] = Uniform.staticNextDouble();
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				dest[i] = uniform.nextDouble();
+			}
+		}
+	}
+
+	@Override
+	public void nextGaussian(double[] dest, int from, int to, double mean,
+			double standardDeviation) {
+		if (normal == null) {
+			for (int i = from; i < to; i++) {
+				dest[i] = Normal.staticNextDouble(mean, standardDeviation);
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				dest[i] = normal.nextDouble(mean, standardDeviation);
+			}
+		}
+	}
+
+	@Override
+	public void nextMappedValues(IntervalsIntMap map, int[] dest, int from,
+			int to) {
+		if (uniform == null) {
+			for (int i = from; i < to; i++) {
+				dest[i] = map.getMappedValue(Uniform.staticNextDouble());
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				dest[i] = map.getMappedValue(uniform.nextDouble());
+			}
+		}
 	}
 
 }
@@ -0,0 +1,293 @@
+package org.jamsim.math;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link Glimmix} model compiled against a fixed set of agent variables, ie:
+ * each effect name is resolved once to the position of its variable, so
+ * evaluating the model is a loop over primitive arrays with no map lookups or
+ * boxing. Created by {@link Glimmix#compile(String[])}.
+ * <p>
+ * Agents are supplied either as a row, ie: a {@code double[]} of the
+ * variables' values, or as a batch of columns, ie: a {@code double[][]} with
+ * one array per variable indexed by agent (columns of variables not in the
+ * model may be {@code null}). The methods that take columns evaluate agents
+ * {@code from} (inclusive) to {@code to} (exclusive) and write the result for
+ * agent {@code i} to {@code dest[i]}.
+ * </p>
+ * <p>
+ * Effects are summed in the same order as {@link Glimmix#sumOfProducts(Map)},
+ * so results are identical to the uncompiled model.
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class CompiledGlimmix {
+
+	private final String[] variables;
+
+	/**
+	 * Position in {@link #variables} of each effect.
+	 */
+	private final int[] indices;
+
+	private final double[] coefficients;
+
+	/**
+	 * Compile effect estimates against a set of variables.
+	 * 
+	 * @param effectEstimates
+	 *            effect names to estimate (coefficient) mappings, eg:
+	 *            {@link Glimmix#getEffectEstimates()}
+	 * @param variables
+	 *            variable names, in row or column order
+	 * @throws IllegalArgumentException
+	 *             if an effect is not in {@code variables}
+	 */
+	public CompiledGlimmix(Map<String, Double> effectEstimates,
+			String[] variables) {
+		Map<String, Integer> positions =
+				new HashMap<String, Integer>(variables.length * 2);
+		for (int i = 0; i < variables.length; i++) {
+			positions.put(variables[i], i);
+		}
+
+		this.variables = variables.clone();
+		this.indices = new int[effectEstimates.size()];
+		this.coefficients = new double[effectEstimates.size()];
+
+		int i = 0; // NOPMD
+		for (Map.Entry<String, Double> entry : effectEstimates.entrySet()) {
+			Integer position = positions.get(entry.getKey());
+
+			if (position == null) {
+				throw new IllegalArgumentException("Missing value for "
+						+ entry.getKey());
+			}
+
+			indices[i] = position;
+			coefficients[i] = entry.getValue();
+			i++;
+		}
+	}
+
+	/**
+	 * Variable names this model was compiled against.
+	 * 
+	 * @return variable names
+	 */
+	public String[] getVariables() {
+		return variables.clone();
+	}
+
+	/**
+	 * Sum of the product of the agent's values and the model's effect
+	 * estimates. See {@link Glimmix#sumOfProducts(Map)}.
+	 * 
+	 * @param row
+	 *            values of the variables
+	 * @return sum
+	 */
+	public double sumOfProducts(double[] row) {
+		double result = 0;
+		for (int i = 0; i < indices.length; i++) {
+			result = result + coefficients[i] * row[indices[i]];
+		}
+		return result;
+	}
+
+	/**
+	 * Sum of products of a batch of agents. See {@link #sumOfProducts(double[])}.
+	 * 
+	 * @param columns
+	 *            values of the variables, one array per variable
+	 * @param from
+	 *            first agent (inclusive)
+	 * @param to
+	 *            last agent (exclusive)
+	 * @param dest
+	 *            sum of each agent
+	 */
+	public void sumOfProducts(double[][] columns, int from, int to,
+			double[] dest) {
+		sumOfProducts(columns, from, to, dest, from);
+	}
+
+	/**
+	 * Sum of products of agents {@code from} to {@code to}, written from
+	 * {@code dest[offset]}.
+	 */
+	private void sumOfProducts(double[][] columns, int from, int to,
+			double[] dest, int offset) {
+		int shift = offset - from;
+
+		for (int j = from; j < to; j++) {
+			dest[j + shift] = 0;
+		}
+
+		// a column at a time, in effect order, so each sum is accumulated in
+		// the same order as the row version
+		for (int i = 0; i < indices.length; i++) {
+			double coefficient = coefficients[i];
+			double[] column = columns[indices[i]];
+
+			for (int j = from; j < to; j++) {
+				dest[j + shift] = dest[j + shift] + coefficient * column[j];
+			}
+		}
+	}
+
+	/**
+	 * Logit probability. See {@link Glimmix#evaluateLogitProb(Map, double)}.
+	 * 
+	 * @param row
+	 *            values of the variables
+	 * @param gamma
+	 *            gamma to add to the sum of products
+	 * @return logit probability
+	 */
+	public double evaluateLogitProb(double[] row, double gamma) {
+		return MathUtil.probFromLogit(sumOfProducts(row) + gamma);
+	}
+
+	/**
+	 * Logit probability of a batch of agents. See
+	 * {@link #evaluateLogitProb(double[], double)}.
+	 * 
+	 * @param columns
+	 *            values of the variables, one array per variable
+	 * @param from
+	 *            first agent (inclusive)
+	 * @param to
+	 *            last agent (exclusive)
+	 * @param gamma
+	 *            gamma to add to the sum of products
+	 * @param dest
+	 *            logit probability of each agent
+	 */
+	public void evaluateLogitProb(double[][] columns, int from, int to,
+			double gamma, double[] dest) {
+		sumOfProducts(columns, from, to, dest);
+
+		for (int j = from; j < to; j++) {
+			dest[j] = MathUtil.probFromLogit(dest[j] + gamma);
+		}
+	}
+
+	/**
+	 * Binary logit draw. See
+	 * {@link Glimmix#binaryLogitDraw(Map, double, RNG)}.
+	 * 
+	 * @param row
+	 *            values of the variables
+	 * @param gamma
+	 *            gamma to add to the sum of products
+	 * @param random
+	 *            random number generator
+	 * @return random.nextUniform01() <= prob ? 1 : 2.
+	 */
+	public int binaryLogitDraw(double[] row, double gamma, RNG random) {
+		return random.nextUniform01() <= evaluateLogitProb(row, gamma) ? 1 : 2;
+	}
+
+	/**
+	 * Binary logit draw of a batch of agents. Draws the same random numbers,
+	 * in agent order, as calling {@link #binaryLogitDraw(double[], double, RNG)}
+	 * for each agent in turn.
+	 * 
+	 * @param columns
+	 *            values of the variables, one array per variable
+	 * @param from
+	 *            first agent (inclusive)
+	 * @param to
+	 *            last agent (exclusive)
+	 * @param gamma
+	 *            gamma to add to the sum of products
+	 * @param random
+	 *            random number generator
+	 * @param dest
+	 *            1 or 2 for each agent
+	 */
+	public void binaryLogitDraw(double[][] columns, int from, int to,
+			double gamma, RNG random, int[] dest) {
+		int length = to - from;
+		double[] sums = new double[length];
+		double[] uniforms = new double[length];
+
+		sumOfProducts(columns, from, to, sums, 0);
+		AbstractRNG.fillUniform01(random, uniforms, 0, length);
+
+		for (int j = 0; j < length; j++) {
+			dest[from + j] =
+					uniforms[j] <= MathUtil.probFromLogit(sums[j] + gamma) ? 1
+							: 2;
+		}
+	}
+
+	/**
+	 * Exponentiated sum of products, rounded and optionally limited. See
+	 * {@link Glimmix#evaluateInteger(Map, double, boolean, int, int)}.
+	 * 
+	 * @param row
+	 *            values of the variables
+	 * @param gamma
+	 *            gamma to add to the sum of products
+	 * @param limit
+	 *            toggle to determine whether min/max limits are applied.
+	 * @param min
+	 *            min limit
+	 * @param max
+	 *            max limit
+	 * @return integer value
+	 */
+	public int evaluateInteger(double[] row, double gamma, boolean limit,
+			int min, int max) {
+		return toInteger(sumOfProducts(row) + gamma, limit, min, max);
+	}
+
+	/**
+	 * Exponentiated sum of products of a batch of agents. See
+	 * {@link #evaluateInteger(double[], double, boolean, int, int)}.
+	 * 
+	 * @param columns
+	 *            values of the variables, one array per variable
+	 * @param from
+	 *            first agent (inclusive)
+	 * @param to
+	 *            last agent (exclusive)
+	 * @param gamma
+	 *            gamma to add to the sum of products
+	 * @param limit
+	 *            toggle to determine whether min/max limits are applied.
+	 * @param min
+	 *            min limit
+	 * @param max
+	 *            max limit
+	 * @param dest
+	 *            integer value of each agent
+	 */
+	public void evaluateInteger(double[][] columns, int from, int to,
+			double gamma, boolean limit, int min, int max, int[] dest) {
+		double[] sums = new double[to - from];
+		sumOfProducts(columns, from, to, sums, 0);
+
+		for (int j = 0; j < sums.length; j++) {
+			dest[from + j] = toInteger(sums[j] + gamma, limit, min, max);
+		}
+	}
+
+	private static int toInteger(double model, boolean limit, int min, int max) {
+		int intValue = (int) Math.round(Math.exp(model));
+		if (limit) {
+			if (intValue < min) {
+				intValue = min;
+			} else if (intValue > max) {
+				intValue = max;
+			}
+		}
+		return intValue;
+	}
+
+}
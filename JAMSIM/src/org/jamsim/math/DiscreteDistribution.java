@@ -0,0 +1,29 @@
+package org.jamsim.math;
+
+/**
+ * A probability distribution over integer values that is sampled with a
+ * uniform random number. Implemented by a cumulative distribution (ie: an
+ * {@link IntervalsIntMap} created by
+ * {@link IntervalsIntMap#newProbabilityDistribution(double[], int[])}) and by
+ * an {@link AliasDistribution}, so a model can switch between the two.
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public interface DiscreteDistribution {
+
+	/**
+	 * Draw a value from the distribution. The same {@code random} number does
+	 * not necessarily give the same value in different implementations, but
+	 * values are drawn with the same probabilities.
+	 * 
+	 * @param random
+	 *            a random number in the range {@code (0,1]}, eg: from
+	 *            {@link RNG#nextUniform01()}
+	 * @return value drawn
+	 * @throws IllegalArgumentException
+	 *             if {@code random} is outside the range {@code (0,1]}
+	 */
+	int draw(double random);
+
+}
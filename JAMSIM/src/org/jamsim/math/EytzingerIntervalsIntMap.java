@@ -0,0 +1,155 @@
+package org.jamsim.math;
+
+/**
+ * An {@link IntervalsIntMap} that looks up intervals in a copy of the right
+ * bounds stored in Eytzinger (breadth first binary tree) order. The first
+ * levels of the tree share a few cache lines and the search loop has no
+ * unpredictable branches, so lookups in large interval tables, eg: thousands
+ * of earnings bands, are faster than a binary search of the sorted bounds.
+ * <p>
+ * {@link #getMappedValue(double)} returns exactly the same value, and throws
+ * the same exceptions, as {@link IntervalsIntMap#getMappedValue(double)}.
+ * Inputs where the two searches could differ (NaN or infinite {@code x},
+ * infinite or unsorted bounds, or {@code x} equal to a repeated bound) are
+ * passed to {@link IntervalsIntMap#getMappedValue(double)}.
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class EytzingerIntervalsIntMap extends IntervalsIntMap {
+
+	private final double leftBound;
+
+	private final double firstRightBound;
+
+	private final double rightMostBound;
+
+	private final int firstValue;
+
+	/**
+	 * Right bounds in Eytzinger order, from index 1. Index 0 is unused.
+	 */
+	private final double[] tree;
+
+	/**
+	 * Values in the same order as {@link #tree}.
+	 */
+	private final int[] treeValues;
+
+	/**
+	 * Whether the bounds are finite and sorted.
+	 */
+	private final boolean searchable;
+
+	/**
+	 * Whether any right bound is repeated.
+	 */
+	private final boolean repeatedBounds;
+
+	/**
+	 * Construct a contiguous set of intervals. See
+	 * {@link IntervalsIntMap#IntervalsIntMap(double, double[], int[])}.
+	 * 
+	 * @param leftBound
+	 *            the bottom of the interval range.
+	 * @param rightBounds
+	 *            array, sorted from lowest to highest, of successive right
+	 *            bounds of each interval
+	 * @param values
+	 *            the set of values mapped to by each interval
+	 */
+	public EytzingerIntervalsIntMap(double leftBound, double[] rightBounds,
+			int[] values) {
+		super(leftBound, rightBounds, values);
+
+		int n = rightBounds.length;
+		this.leftBound = leftBound;
+		this.firstRightBound = rightBounds[0];
+		this.rightMostBound = rightBounds[n - 1];
+		this.firstValue = values[0];
+		this.tree = new double[n + 1];
+		this.treeValues = new int[n + 1];
+
+		boolean finiteSorted = !isInfiniteOrNaN(leftBound);
+		boolean repeated = false;
+		for (int i = 0; i < n; i++) {
+			finiteSorted &= !isInfiniteOrNaN(rightBounds[i]);
+			if (i > 0) {
+				finiteSorted &= rightBounds[i - 1] <= rightBounds[i];
+				repeated |= rightBounds[i - 1] == rightBounds[i];
+			}
+		}
+		this.searchable = finiteSorted;
+		this.repeatedBounds = repeated;
+
+		fill(rightBounds, values, 0, 1);
+	}
+
+	/**
+	 * Create from an existing map.
+	 * 
+	 * @param map
+	 *            intervals map, eg: created by
+	 *            {@link IntervalsIntMap#newProbabilityDistribution(double[], int[])}
+	 * @return map with the same intervals and values
+	 */
+	public static EytzingerIntervalsIntMap of(IntervalsIntMap map) {
+		double[] intervals = map.getIntervals();
+		double[] rightBounds = new double[intervals.length - 1];
+		System.arraycopy(intervals, 1, rightBounds, 0, rightBounds.length);
+		return new EytzingerIntervalsIntMap(intervals[0], rightBounds,
+				map.getValues());
+	}
+
+	/**
+	 * In order walk of the tree, assigning sorted bounds from {@code next}.
+	 * 
+	 * @return next sorted bound to assign
+	 */
+	private int fill(double[] rightBounds, int[] values, int next, int node) {
+		if (node < tree.length) {
+			next = fill(rightBounds, values, next, 2 * node);
+			tree[node] = rightBounds[next];
+			treeValues[node] = values[next];
+			next++;
+			next = fill(rightBounds, values, next, 2 * node + 1);
+		}
+		return next;
+	}
+
+	private static boolean isInfiniteOrNaN(double x) {
+		return Double.isNaN(x) || Double.isInfinite(x);
+	}
+
+	@Override
+	public int getMappedValue(double x) {
+		if (!searchable || isInfiniteOrNaN(x) || x <= leftBound
+				|| x > rightMostBound) {
+			// including the exceptions
+			return super.getMappedValue(x);
+		}
+
+		if (x <= firstRightBound) {
+			return firstValue;
+		}
+
+		// descend to the leaf beyond the first bound >= x
+		int n = tree.length - 1;
+		int k = 1;
+		while (k <= n) {
+			k = 2 * k + (tree[k] < x ? 1 : 0);
+		}
+
+		// undo the right turns taken after the last left turn
+		k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+
+		if (repeatedBounds && tree[k] == x) {
+			// the binary search may return any of the repeated bounds
+			return super.getMappedValue(x);
+		}
+
+		return treeValues[k];
+	}
+
+}
@@ -152,6 +152,20 @@ public class Glimmix {
 		return intValue;
 	}
 
+	/**
+	 * Compile this model against a fixed set of agent variables, to evaluate
+	 * it for rows or column batches of primitive values.
+	 * 
+	 * @param variables
+	 *            variable names, in row or column order
+	 * @return compiled model
+	 * @throws IllegalArgumentException
+	 *             if an effect is not in {@code variables}
+	 */
+	public CompiledGlimmix compile(String[] variables) {
+		return new CompiledGlimmix(effectEstimates, variables);
+	}
+
 	/**
 	 * Get underlying map of effect names and estimates.
 	 * 
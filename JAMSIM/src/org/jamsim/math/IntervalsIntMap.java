@@ -1,8 +1,5 @@
 package org.jamsim.math;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-
 import java.util.Arrays;
 
 /**
@@ -10,12 +7,13 @@ import java.util.Arrays;
  * integer values.
  * 
  * Allows the creation of a probability distribution from which a sample can be
- * taken by calling {@link #getMappedValue(double)} with a random number.
+ * taken by calling {@link #getMappedValue(double)} with a random number. See
+ * also {@link AliasDistribution}, which samples in constant time.
  * 
  * @author Oliver Mannion
  * @version $Revision$
  */
-public class IntervalsIntMap {
+public class IntervalsIntMap implements DiscreteDistribution {
 
 	private static final double COMPARE_DELTA = 0;
 	private final double leftBound;
@@ -153,6 +151,18 @@ public class IntervalsIntMap {
 		return values[indexBeforeRightBound + 1];
 	}
 
+	/**
+	 * Same as {@link #getMappedValue(double)}.
+	 * 
+	 * @param random
+	 *            a random number in the range {@code (0,1]}
+	 * @return mapped value
+	 */
+	@Override
+	public int draw(double random) {
+		return getMappedValue(random);
+	}
+
 	/**
 	 * Returns the index of the greatest array value strictly less than the
 	 * given key.
@@ -229,6 +239,13 @@ public class IntervalsIntMap {
 	 * distribution (ie: {@link IntervalsIntMap}) from the set of probabilities
 	 * that are included (i.e.: {@code includeProb[i] = true}). Second, using
 	 * {@code random} select a probability interval and return its index.
+	 * <p>
+	 * Draws without creating the distribution, see
+	 * {@link MaskedCategoricalSampler}. Unlike {@link #getMappedValue(double)},
+	 * a {@code random} equal to a bound repeated by zero probabilities returns
+	 * the first index with that bound, and a {@code NaN} {@code random}
+	 * throws an {@link IllegalArgumentException}.
+	 * </p>
 	 * 
 	 * @param includeProb
 	 *            the set of all probabilities to include. Only where
@@ -240,40 +257,16 @@ public class IntervalsIntMap {
 	 *            be used to create the cumulative distribution.
 	 * @param random
 	 *            a random number in the range {@code (0,1]}.
-	 * @return an index in the range {@code [0, includeProb.length]}. This is
-	 *         the position of the probability in the {@code includeProb} array.
+	 * @return an index in the range {@code [0, includeProb.length)}. This is
+	 *         the position of the probability in the {@code includeProb} array,
+	 *         or -1 if no probabilities are included.
+	 * @throws IllegalArgumentException
+	 *             if {@code random} is not in the range {@code (0,1]}
 	 */
 	public static int drawIndexFromProbs(boolean[] includeProb,
 			double[] probabilities, double random) {
-
-		IntArrayList indexOfProbsIncluded =
-				new IntArrayList(includeProb.length);
-		DoubleArrayList includedProbsList =
-				new DoubleArrayList(includeProb.length);
-
-		// create lists of:
-		// 1) the index of included probabilities
-		// 2) the included probability values
-		for (int i = 0; i < includeProb.length; i++) {
-			if (includeProb[i]) {
-				indexOfProbsIncluded.add(i);
-				includedProbsList.add(probabilities[i]);
-			}
-		}
-
-		if (indexOfProbsIncluded.size() == 0) {
-			// no included probabilities
-			return -1;
-		}
-
-		// create probability distribution
-		IntervalsIntMap pdmap =
-				IntervalsIntMap.newProbabilityDistribution(
-						includedProbsList.toDoubleArray(),
-						indexOfProbsIncluded.toIntArray());
-
-		// select an index from the probability distribution
-		return pdmap.getMappedValue(random);
+		return MaskedCategoricalSampler.drawIndex(includeProb, probabilities,
+				random);
 	}
 
 }
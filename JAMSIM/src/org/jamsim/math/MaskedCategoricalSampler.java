@@ -0,0 +1,147 @@
+package org.jamsim.math;
+
+/**
+ * Draws the index of a probability from a set of probabilities, only some of
+ * which are included, eg: the events an agent is currently at risk of. The
+ * same as {@link IntervalsIntMap#drawIndexFromProbs(boolean[], double[], double)}
+ * but without creating an {@link IntervalsIntMap}, so drawing does not
+ * allocate.
+ * <p>
+ * The included probabilities are accumulated in index order and divided by
+ * their sum exactly as
+ * {@link IntervalsIntMap#newProbabilityDistribution(double[], int[])} does,
+ * and the first index whose right bound is at least the random number is
+ * drawn. Where included probabilities of 0 repeat a bound, a random number
+ * equal to that bound draws the first index with the bound, whereas the binary
+ * search of an {@link IntervalsIntMap} could draw a later, zero probability,
+ * index. So an index with probability 0 is never drawn.
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class MaskedCategoricalSampler {
+
+	private final double[] probabilities;
+
+	/**
+	 * Construct a sampler of {@code probabilities}, eg: shared by all agents.
+	 * 
+	 * @param probabilities
+	 *            the probability of each index. Need not sum to 1.
+	 */
+	public MaskedCategoricalSampler(double[] probabilities) {
+		this.probabilities = probabilities.clone();
+	}
+
+	/**
+	 * Number of probabilities, ie: the length of an include mask.
+	 * 
+	 * @return number of probabilities
+	 */
+	public int size() {
+		return probabilities.length;
+	}
+
+	/**
+	 * Draw an index from the included probabilities.
+	 * 
+	 * @param includeProb
+	 *            only where {@code includeProb[i] = true} will that probability
+	 *            be included
+	 * @param random
+	 *            a random number in the range {@code (0,1]}
+	 * @return an index in the range {@code [0, includeProb.length)}, or -1 if
+	 *         no probabilities are included
+	 */
+	public int draw(boolean[] includeProb, double random) {
+		return drawIndex(includeProb, probabilities, random);
+	}
+
+	/**
+	 * Draw an index for each of a number of agents that share these
+	 * probabilities but include different ones. Equivalent to calling
+	 * {@link #draw(boolean[], double)} for each agent in turn.
+	 * 
+	 * @param includeProbs
+	 *            include mask of each agent
+	 * @param randoms
+	 *            random number of each agent, in the range {@code (0,1]}
+	 * @param dest
+	 *            array to fill with the index drawn for each agent
+	 */
+	public void draw(boolean[][] includeProbs, double[] randoms, int[] dest) {
+		if (randoms.length < includeProbs.length
+				|| dest.length < includeProbs.length) {
+			throw new IllegalArgumentException("randoms.length ("
+					+ randoms.length + ") and dest.length (" + dest.length
+					+ ") must be at least includeProbs.length ("
+					+ includeProbs.length + ")");
+		}
+
+		for (int i = 0; i < includeProbs.length; i++) {
+			dest[i] = drawIndex(includeProbs[i], probabilities, randoms[i]);
+		}
+	}
+
+	/**
+	 * Draw an index from the included probabilities.
+	 * 
+	 * @param includeProb
+	 *            only where {@code includeProb[i] = true} will that probability
+	 *            be included
+	 * @param probabilities
+	 *            the probability of each index
+	 * @param random
+	 *            a random number in the range {@code (0,1]}
+	 * @return the first included index whose right bound is at least
+	 *         {@code random}, or -1 if no probabilities are included
+	 * @throws IllegalArgumentException
+	 *             if {@code random} is not in the range {@code (0,1]},
+	 *             including if it is {@code NaN}, or greater than the
+	 *             accumulated probabilities because of rounding error
+	 */
+	public static int drawIndex(boolean[] includeProb, double[] probabilities,
+			double random) {
+		double sumProbs = 0;
+		int last = -1;
+
+		for (int i = 0; i < includeProb.length; i++) {
+			if (includeProb[i]) {
+				sumProbs = sumProbs + probabilities[i];
+				last = i;
+			}
+		}
+
+		if (last == -1) {
+			// no included probabilities
+			return -1;
+		}
+
+		if (Double.isNaN(random)) {
+			throw new IllegalArgumentException("x is NaN.");
+		}
+
+		if (random <= 0) {
+			throw new IllegalArgumentException("x (" + random
+					+ ") <= leftBound (0.0).");
+		}
+
+		// accumulate the same bounds as a cumulative distribution would
+		double rightBound = 0;
+
+		for (int i = 0; i <= last; i++) {
+			if (includeProb[i]) {
+				rightBound = rightBound + probabilities[i] / sumProbs;
+
+				if (random <= rightBound) {
+					return i;
+				}
+			}
+		}
+
+		throw new IllegalArgumentException("x (" + random
+				+ ") > rightMostBound (" + rightBound + ").");
+	}
+
+}
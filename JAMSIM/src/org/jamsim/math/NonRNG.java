@@ -1,13 +1,18 @@
 package org.jamsim.math;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * Random Number Generator (RNG) interface implementation that always returns
- * the same number.
+ * the same number. Has no state, so saving and restoring it does nothing.
  * 
  * @author Oliver Mannion
  * @version $Revision$
  */
-public class NonRNG implements RNG {
+public class NonRNG extends AbstractRNG implements RestorableRNG {
 
 	private final double number;
 	
@@ -43,4 +48,34 @@ public class NonRNG implements RNG {
 		return number;
 	}
 
+	@Override
+	public void nextUniform01(double[] dest, int from, int to) {
+		Arrays.fill(dest, from, to, number);
+	}
+
+	@Override
+	public void nextGaussian(double[] dest, int from, int to, double mean,
+			double standardDeviation) {
+		Arrays.fill(dest, from, to, number);
+	}
+
+	@Override
+	public void nextMappedValues(IntervalsIntMap map, int[] dest, int from,
+			int to) {
+		// map is not evaluated, and can't throw, if there is nothing to fill
+		if (from < to) {
+			Arrays.fill(dest, from, to, map.getMappedValue(number));
+		}
+	}
+
+	@Override
+	public void writeState(DataOutput out) {
+		// no state
+	}
+
+	@Override
+	public void readState(DataInput in) {
+		// no state
+	}
+
 }
@@ -1,7 +1,8 @@
 package org.jamsim.math;
 
 /**
- * Random Number Generator (RNG) interface.
+ * Random Number Generator (RNG) interface. See {@link AbstractRNG} for bulk
+ * methods.
  * 
  * @author Oliver Mannion
  * @version $Revision$
@@ -0,0 +1,39 @@
+package org.jamsim.math;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A {@link RNG} whose state can be saved and later restored, eg: as part of a
+ * simulation checkpoint. After {@link #readState(DataInput)} the generator
+ * returns the same numbers it returned after the matching
+ * {@link #writeState(DataOutput)}.
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public interface RestorableRNG extends RNG {
+
+	/**
+	 * Write the current state.
+	 * 
+	 * @param out
+	 *            output to write to
+	 * @throws IOException
+	 *             if problem writing
+	 */
+	void writeState(DataOutput out) throws IOException;
+
+	/**
+	 * Replace the current state with a state written by
+	 * {@link #writeState(DataOutput)}.
+	 * 
+	 * @param in
+	 *            input to read from
+	 * @throws IOException
+	 *             if problem reading, or the state is not valid
+	 */
+	void readState(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,219 @@
+package org.jamsim.math;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Splittable Random Number Generator (RNG) that provides independent,
+ * reproducible streams, eg: one stream per run and per agent. Uses the
+ * SplitMix64 algorithm (the algorithm of Java 8's
+ * {@code java.util.SplittableRandom}).
+ * <p>
+ * A stream is created from a seed, derived from a (seed, run, agent id) key via
+ * {@link #forKey(long, long, long)}, or split from an existing stream via
+ * {@link #split()}. Streams keyed by agent give the same draws regardless of
+ * the order in which agents are iterated or the number of threads used.
+ * </p>
+ * <p>
+ * Instances are not thread-safe, but there is no shared state between
+ * instances, so each agent or thread should use its own stream. Drawing does
+ * not lock or allocate.
+ * </p>
+ * <p>
+ * The state of a stream is two longs, so is cheap to save and restore.
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class StreamRNG extends AbstractRNG implements RestorableRNG {
+
+	/**
+	 * The odd integer closest to 2^64/phi, the default gamma.
+	 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * 2^-53, converts the top 53 bits of a long to a double in [0,1).
+	 */
+	private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+	private long seed;
+
+	/**
+	 * Odd increment added to {@link #seed} on each draw. Different streams
+	 * use different gammas.
+	 */
+	private long gamma;
+
+	/**
+	 * Construct stream from a seed.
+	 *
+	 * @param seed
+	 *            seed
+	 */
+	public StreamRNG(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private StreamRNG(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Create the stream for a (seed, run, agent id) key. The same key always
+	 * gives the same stream, and different keys give independent streams.
+	 *
+	 * @param seed
+	 *            simulation seed
+	 * @param run
+	 *            run number
+	 * @param agentId
+	 *            agent id, eg: the agent's position in the base file
+	 * @return stream for the key
+	 */
+	public static StreamRNG forKey(long seed, long run, long agentId) {
+		long h = mix64(seed);
+		h = mix64(h ^ mix64(run + GOLDEN_GAMMA));
+		h = mix64(h ^ mix64(agentId + 2 * GOLDEN_GAMMA));
+		return new StreamRNG(h, mixGamma(h + GOLDEN_GAMMA));
+	}
+
+	/**
+	 * Split off a new stream. The new stream is independent of this one, and
+	 * splitting in the same order gives the same streams.
+	 *
+	 * @return new stream
+	 */
+	public StreamRNG split() {
+		return new StreamRNG(nextLong(), mixGamma(nextSeed()));
+	}
+
+	/**
+	 * Next pseudo-random long, uniformly distributed over all long values.
+	 *
+	 * @return next long
+	 */
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	/**
+	 * Next pseudo-random double, uniformly distributed in (0,1), ie: never
+	 * returns 0 or 1.
+	 *
+	 * @return next uniform double
+	 */
+	@Override
+	public double nextUniform01() {
+		return ((nextLong() >>> 11) + 0.5) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * Next normally distributed double. Uses the Box-Muller transform, so each
+	 * call consumes exactly two uniforms and no value is carried between
+	 * calls.
+	 *
+	 * @param mean
+	 *            mean
+	 * @param standardDeviation
+	 *            standard deviation
+	 * @return next gaussian double
+	 */
+	@Override
+	public double nextGaussian(double mean, double standardDeviation) {
+		double u1 = nextUniform01();
+		double u2 = nextUniform01();
+		return mean + standardDeviation * Math.sqrt(-2 * Math.log(u1))
+				* Math.cos(2 * Math.PI * u2);
+	}
+
+	@Override
+	public void nextUniform01(double[] dest, int from, int to) {
+		long s = seed;
+		for (int i = from; i < to; i++) {
+			s += gamma;
+			dest[i] = ((mix64(s) >>> 11) + 0.5) * DOUBLE_UNIT;
+		}
+		seed = s;
+	}
+
+	@Override
+	public void nextGaussian(double[] dest, int from, int to, double mean,
+			double standardDeviation) {
+		long s = seed;
+		for (int i = from; i < to; i++) {
+			s += gamma;
+			double u1 = ((mix64(s) >>> 11) + 0.5) * DOUBLE_UNIT;
+			s += gamma;
+			double u2 = ((mix64(s) >>> 11) + 0.5) * DOUBLE_UNIT;
+			dest[i] =
+					mean + standardDeviation * Math.sqrt(-2 * Math.log(u1))
+							* Math.cos(2 * Math.PI * u2);
+		}
+		seed = s;
+	}
+
+	@Override
+	public void nextMappedValues(IntervalsIntMap map, int[] dest, int from,
+			int to) {
+		long s = seed;
+		try {
+			for (int i = from; i < to; i++) {
+				s += gamma;
+				dest[i] =
+						map.getMappedValue(((mix64(s) >>> 11) + 0.5)
+								* DOUBLE_UNIT);
+			}
+		} finally {
+			// leave the stream where the scalar path would if map throws
+			seed = s;
+		}
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeLong(seed);
+		out.writeLong(gamma);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		long inSeed = in.readLong();
+		long inGamma = in.readLong();
+
+		if ((inGamma & 1L) == 0) {
+			throw new IOException("Invalid stream state, gamma " + inGamma
+					+ " is not odd");
+		}
+
+		seed = inSeed;
+		gamma = inGamma;
+	}
+
+	private long nextSeed() {
+		seed += gamma;
+		return seed;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Derive an odd gamma with enough bit transitions to give a good quality
+	 * stream.
+	 */
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+}
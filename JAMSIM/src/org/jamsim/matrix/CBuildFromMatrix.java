@@ -7,12 +7,12 @@ import java.util.Map;
 import net.casper.data.model.CBuilder;
 
 import org.apache.commons.lang.ArrayUtils;
-import org.omancode.rmt.cellreader.narrow.NarrowException;
-import org.omancode.rmt.cellreader.narrow.NarrowUtil;
-import org.omancode.util.ArrayUtil;
 
 /**
- * Create a casper dataset from a matrix.
+ * Create a casper dataset from a matrix. Rows are streamed straight from the
+ * matrix, ie: the matrix and its index are not copied first. Index columns are
+ * narrowed once by the matrix, see
+ * {@link IndexedDenseDoubleMatrix2D#getIndexColumn(int)}.
  * 
  * @author Oliver Mannion
  * @version $Revision$
@@ -20,8 +20,8 @@ import org.omancode.util.ArrayUtil;
 public class CBuildFromMatrix implements CBuilder {
 
 	private final String name;
-	private Object[][] index;
-	private final double[][] matrix;
+	private final IndexedDenseDoubleMatrix2D imatrix;
+	private final int numIndexColumns;
 	private final int numColumns;
 	private int currentRow;
 
@@ -45,18 +45,18 @@ public class CBuildFromMatrix implements CBuilder {
 	 */
 	public CBuildFromMatrix(String name, IndexedDenseDoubleMatrix2D imatrix) {
 		this.name = name;
-		this.index = imatrix.getIndex();
+		this.imatrix = imatrix;
 		this.indexColumnNames = imatrix.getIndexColumnNames();
 		this.matrixColumnNames = imatrix.getMatrixColumnNames();
-		this.matrix = imatrix.toArray();
 
-		if (index.length != matrix.length) {
-			throw new IllegalArgumentException("index.length ("
-					+ index.length + ") != matrix.length (" + matrix.length
-					+ ")");
+		int indexRows = imatrix.getIndex().length;
+		if (indexRows != imatrix.rows()) {
+			throw new IllegalArgumentException("index.length (" + indexRows
+					+ ") != matrix.length (" + imatrix.rows() + ")");
 		}
 
-		numColumns = matrixColumnNames.length + indexColumnNames.length;
+		numIndexColumns = indexColumnNames.length;
+		numColumns = matrixColumnNames.length + numIndexColumns;
 
 	}
 
@@ -73,28 +73,14 @@ public class CBuildFromMatrix implements CBuilder {
 
 	@Override
 	public Class[] getColumnTypes() {
-
-		Object[][] indexT = ArrayUtil.transpose(index);
 		Class<?>[] columnTypes = new Class<?>[numColumns];
 		int col;
 
-		// calculate narrowest index column types
-		// narrow transposed index
-		for (col = 0; col < indexT.length; col++) {
-			columnTypes[col] = NarrowUtil.calcNarrowestType(indexT[col], false);
-			try {
-				indexT[col] =
-					NarrowUtil.narrowArray(indexT[col], columnTypes[col],
-								false);
-			} catch (NarrowException e) {
-				throw new IllegalStateException(e);
-			}
-
+		// narrowest index column types
+		for (col = 0; col < numIndexColumns; col++) {
+			columnTypes[col] = imatrix.getIndexColumnType(col);
 		}
 
-		// replace index with narrowed index
-		index = ArrayUtil.transpose(indexT);
-
 		// remaining columns are doubles from the matrix
 		for (; col < numColumns; col++) {
 			columnTypes[col] = Double.class;
@@ -125,14 +111,18 @@ public class CBuildFromMatrix implements CBuilder {
 
 	@Override
 	public Object[] readRow() throws IOException {
-		if (currentRow == index.length) {
+		if (currentRow == imatrix.rows()) {
 			return null;
 
 		}
 
-		return ArrayUtils.addAll(index[currentRow], ArrayUtils
-				.toObject(matrix[currentRow++]));
+		Object[] row = new Object[numColumns];
+		for (int col = 0; col < numIndexColumns; col++) {
+			row[col] = imatrix.getIndexColumn(col)[currentRow];
+		}
+		imatrix.copyRowTo(currentRow++, row, numIndexColumns);
 
+		return row;
 	}
 
 }
@@ -1,9 +1,10 @@
 package org.jamsim.matrix;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import net.casper.data.model.CDataCacheContainer;
 import net.casper.data.model.CDataGridException;
@@ -11,7 +12,10 @@ import net.casper.data.model.CDataRowSet;
 import net.casper.data.model.CRowMetaData;
 
 import org.apache.commons.lang.ArrayUtils;
+import org.omancode.rmt.cellreader.narrow.NarrowException;
+import org.omancode.rmt.cellreader.narrow.NarrowUtil;
 
+import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 
 /**
@@ -20,7 +24,8 @@ import cern.colt.matrix.impl.DenseDoubleMatrix2D;
  * @author Oliver Mannion
  * @version $Revision$
  */
-public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
+public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D implements
+		IndexedMatrix {
 
 	/**
 	 * Serial ID.
@@ -45,6 +50,48 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 	 */
 	private final List<String> matrixColumnNames;
 
+	/**
+	 * Maximum number of bits in a packed key.
+	 */
+	private static final int MAX_PACKED_BITS = 62;
+
+	/**
+	 * Row of each key, when keys can't be packed. Created from {@link #index}
+	 * on first use after deserialisation.
+	 */
+	private transient Map<List<Object>, Integer> keyRows;
+
+	/**
+	 * Row of each packed key, if all keys can be packed.
+	 */
+	private transient PackedKeyIndex packedKeyRows;
+
+	/**
+	 * Class of each key column, when keys are packed.
+	 */
+	private transient Class<?>[] packedClasses;
+
+	/**
+	 * Lowest value of each key column, when keys are packed.
+	 */
+	private transient long[] packedMins;
+
+	/**
+	 * Number of bits of each key column, when keys are packed.
+	 */
+	private transient int[] packedBits;
+
+	/**
+	 * Index columns narrowed to their narrowest type. Calculated once, on
+	 * first use. See {@link #getIndexColumn(int)}.
+	 */
+	private transient Object[][] narrowedIndexColumns;
+
+	/**
+	 * Types of {@link #narrowedIndexColumns}.
+	 */
+	private transient Class<?>[] narrowedIndexTypes;
+
 	/**
 	 * Construct an instance from a {@link CDataCacheContainer}. Convenience
 	 * method for {@link #IndexedDenseDoubleMatrix2D(CDataRowSet)}.
@@ -60,7 +107,7 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 	}
 
 	/**
-	 * Get the index. Used by {@link IndexedMatrixTableModel}.
+	 * Get the index. Used by {@link CBuildFromMatrix}.
 	 * 
 	 * @return the index
 	 */
@@ -93,6 +140,7 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 		this.index = index;
 		this.matrixColumnNames = Arrays.asList(matrixColumnNames);
 
+		buildKeyIndex();
 	}
 
 	/**
@@ -151,18 +199,21 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 		// get meta information from CDataRowSet
 		CRowMetaData meta = cdrs.getMetaDefinition();
 
-		// create list of the columns that are primary keys
-		List<Integer> primaryKeys = new ArrayList<Integer>();
+		// flag the columns that are primary keys
+		int cols = meta.getColumnCount();
+		boolean[] primaryKeys = new boolean[cols];
+		int keys = 0;
 		for (int pkIndex : meta.getPrimaryKeyColumnIndices()) {
-			primaryKeys.add(pkIndex);
+			if (!primaryKeys[pkIndex]) {
+				primaryKeys[pkIndex] = true;
+				keys++;
+			}
 		}
-		int keys = primaryKeys.size();
 
 		// create lists of column names
-		int cols = meta.getColumnCount();
 		String[] allColumnNames = meta.getColumnNames();
 		for (int col = 0; col < cols; col++) {
-			if (primaryKeys.contains(col)) {
+			if (primaryKeys[col]) {
 				indexColumnNames.add(allColumnNames[col]);
 			} else {
 				matrixColumnNames.add(allColumnNames[col]);
@@ -185,7 +236,7 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 		int resultCol = 0;
 		while (cdrs.next()) {
 			for (int col = 0; col < cols; col++) {
-				if (primaryKeys.contains(col)) {
+				if (primaryKeys[col]) {
 					index[row][keyCol++] = cdrs.getObject(col);
 				} else {
 					result[row][resultCol++] = cdrs.getDouble(col);
@@ -206,6 +257,126 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 		setUp(rows, resultCols);
 		this.elements = new double[rows * resultCols];
 		assign(result);
+
+		buildKeyIndex();
+	}
+
+	/**
+	 * Index the row of each key. If every key column holds only
+	 * {@link Integer}s, {@link Character}s, {@link Short}s or {@link Byte}s
+	 * (one type per column) and together their ranges fit in a long, keys are
+	 * packed into a long and indexed without boxing. Otherwise keys are
+	 * indexed in a hash map. Where keys are repeated the first row is indexed,
+	 * as a scan would find.
+	 */
+	private void buildKeyIndex() {
+		if (packKeys()) {
+			packedKeyRows = new PackedKeyIndex(index.length);
+			for (int row = 0; row < index.length; row++) {
+				packedKeyRows.putIfAbsent(packKey(index[row]), row);
+			}
+		} else {
+			keyRows = new HashMap<List<Object>, Integer>(index.length * 2);
+			for (int row = 0; row < index.length; row++) {
+				List<Object> key = Arrays.asList(index[row]);
+				if (!keyRows.containsKey(key)) {
+					keyRows.put(key, row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Work out how to pack keys.
+	 * 
+	 * @return {@code false} if keys can't be packed
+	 */
+	private boolean packKeys() {
+		int keyCols = indexColumnNames.size();
+		Class<?>[] classes = new Class<?>[keyCols];
+		long[] mins = new long[keyCols];
+		int[] bits = new int[keyCols];
+		int totalBits = 0;
+
+		for (int col = 0; col < keyCols; col++) {
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+
+			for (Object[] key : index) {
+				if (key.length != keyCols || key[col] == null) {
+					return false;
+				}
+
+				if (classes[col] == null) {
+					classes[col] = key[col].getClass();
+				}
+				if (key[col].getClass() != classes[col]) {
+					return false;
+				}
+
+				long value = smallIntegerValue(key[col]);
+				if (value == Long.MIN_VALUE) {
+					return false;
+				}
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+
+			mins[col] = min;
+			bits[col] = index.length == 0 ? 0 : 64 - Long
+					.numberOfLeadingZeros(max - min);
+			totalBits += bits[col];
+		}
+
+		if (totalBits > MAX_PACKED_BITS) {
+			return false;
+		}
+
+		packedClasses = classes;
+		packedMins = mins;
+		packedBits = bits;
+		return true;
+	}
+
+	/**
+	 * Value of an {@link Integer}, {@link Character}, {@link Short} or
+	 * {@link Byte}.
+	 * 
+	 * @return value, or {@link Long#MIN_VALUE} if {@code o} is of another type
+	 */
+	private static long smallIntegerValue(Object o) {
+		if (o instanceof Integer || o instanceof Short || o instanceof Byte) {
+			return ((Number) o).longValue();
+		}
+		if (o instanceof Character) {
+			return (Character) o;
+		}
+		return Long.MIN_VALUE;
+	}
+
+	/**
+	 * Pack a key.
+	 * 
+	 * @return packed key, or -1 if {@code key} can't be in the index
+	 */
+	private long packKey(Object[] key) {
+		if (key.length != packedClasses.length) {
+			return -1;
+		}
+
+		long packed = 0;
+		for (int col = 0; col < key.length; col++) {
+			if (key[col] == null || key[col].getClass() != packedClasses[col]) {
+				return -1;
+			}
+
+			long value = smallIntegerValue(key[col]) - packedMins[col];
+			if (value < 0 || value >>> packedBits[col] != 0) {
+				return -1;
+			}
+			packed = packed << packedBits[col] | value;
+		}
+		return packed;
 	}
 
 	/**
@@ -235,14 +406,40 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 	 *            a primary key value
 	 * @return row number, or exception thrown if key is not found
 	 */
+	@Override
 	public int indexLookupRow(Object[] key) {
-		for (int i = 0; i < rows; i++) {
-			if (Arrays.equals(index[i], key)) {
-				return i;
-			}
+		if (packedKeyRows == null && keyRows == null) {
+			// deserialised
+			buildKeyIndex();
 		}
-		throw new RuntimeException("Key: " + Arrays.toString(key)
-				+ " does not exist in matrix");
+
+		int row = -1;
+		if (packedKeyRows != null) {
+			long packed = packKey(key);
+			row = packed == -1 ? -1 : packedKeyRows.get(packed);
+		} else {
+			Integer keyRow = keyRows.get(Arrays.asList(key));
+			row = keyRow == null ? -1 : keyRow;
+		}
+
+		if (row == -1) {
+			throw new RuntimeException("Key: " + Arrays.toString(key)
+					+ " does not exist in matrix");
+		}
+		return row;
+	}
+
+	/**
+	 * Does a lookup in the index for the supplied key and returns a view of
+	 * the corresponding matrix row, ie: the row's values are not copied. See
+	 * {@link #indexLookupRow(Object[])}.
+	 * 
+	 * @param key
+	 *            a primary key value
+	 * @return row view, or exception thrown if key is not found
+	 */
+	public DoubleMatrix1D indexLookupRowView(Object[] key) {
+		return viewRow(indexLookupRow(key));
 	}
 
 	/**
@@ -250,6 +447,7 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 	 * 
 	 * @return ordered list of column names for this matrix.
 	 */
+	@Override
 	public String[] getMatrixColumnNames() {
 		return matrixColumnNames
 				.toArray(new String[matrixColumnNames.size()]);
@@ -260,6 +458,7 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 	 * 
 	 * @return ordered list of column names for this matrix.
 	 */
+	@Override
 	public String[] getIndexColumnNames() {
 		return indexColumnNames.toArray(new String[indexColumnNames.size()]);
 	}
@@ -270,9 +469,103 @@ public class IndexedDenseDoubleMatrix2D extends DenseDoubleMatrix2D {
 	 * 
 	 * @return ordered list of column names for this matrix.
 	 */
+	@Override
 	public String[] getAllColumnNames() {
 		return (String[]) ArrayUtils.addAll(getIndexColumnNames(),
 				getMatrixColumnNames());
 	}
 
+	/**
+	 * Get the values of an index column, narrowed to the narrowest type that
+	 * holds them all, eg: a column of {@code 1} and {@code "2"} is narrowed
+	 * to {@link Integer}s. Columns are narrowed once, on first use, and the
+	 * returned array is shared so must not be modified.
+	 * 
+	 * @param col
+	 *            index column
+	 * @return narrowed index column values, one per row
+	 */
+	@Override
+	public Object[] getIndexColumn(int col) {
+		narrowIndex();
+		return narrowedIndexColumns[col];
+	}
+
+	/**
+	 * Get the narrowest type of an index column. See
+	 * {@link #getIndexColumn(int)}.
+	 * 
+	 * @param col
+	 *            index column
+	 * @return narrowest type of the index column
+	 */
+	@Override
+	public Class<?> getIndexColumnType(int col) {
+		narrowIndex();
+		return narrowedIndexTypes[col];
+	}
+
+	private void narrowIndex() {
+		if (narrowedIndexColumns != null) {
+			return;
+		}
+
+		int numIndexColumns = indexColumnNames.size();
+		Object[][] columns = new Object[numIndexColumns][];
+		Class<?>[] types = new Class<?>[numIndexColumns];
+
+		for (int col = 0; col < numIndexColumns; col++) {
+			Object[] column = new Object[index.length];
+			for (int row = 0; row < index.length; row++) {
+				column[row] = index[row][col];
+			}
+
+			types[col] = NarrowUtil.calcNarrowestType(column, false);
+			try {
+				columns[col] = NarrowUtil.narrowArray(column, types[col], false);
+			} catch (NarrowException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		narrowedIndexTypes = types;
+		narrowedIndexColumns = columns;
+	}
+
+	/**
+	 * Copy a matrix column out of the backing array.
+	 * 
+	 * @param col
+	 *            matrix column
+	 * @return column values, one per row
+	 */
+	public double[] getMatrixColumn(int col) {
+		checkColumn(col);
+		double[] column = new double[rows];
+		for (int row = 0, pos = index(0, col); row < rows; row++, pos +=
+				rowStride) {
+			column[row] = elements[pos];
+		}
+		return column;
+	}
+
+	/**
+	 * Box the values of a matrix row straight from the backing array into
+	 * {@code dest}, eg: to build a casper row without copying the matrix.
+	 * 
+	 * @param row
+	 *            matrix row
+	 * @param dest
+	 *            destination array
+	 * @param destPos
+	 *            position in {@code dest} of the first column
+	 */
+	void copyRowTo(int row, Object[] dest, int destPos) {
+		checkRow(row);
+		for (int col = 0, pos = index(row, 0); col < columns; col++, pos +=
+				columnStride) {
+			dest[destPos + col] = elements[pos];
+		}
+	}
+
 }
\ No newline at end of file
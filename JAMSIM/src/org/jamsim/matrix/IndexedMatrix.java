@@ -0,0 +1,90 @@
+package org.jamsim.matrix;
+
+/**
+ * A 2D matrix of doubles with an index, ie: each row is identified by a key
+ * of one or more index column values. Implemented by the dense
+ * {@link IndexedDenseDoubleMatrix2D} and the sparse
+ * {@link SparseIndexedDoubleMatrix2D}.
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public interface IndexedMatrix {
+
+	/**
+	 * Number of rows.
+	 *
+	 * @return number of rows
+	 */
+	int rows();
+
+	/**
+	 * Number of matrix columns, ie: excluding the index columns.
+	 *
+	 * @return number of matrix columns
+	 */
+	int columns();
+
+	/**
+	 * Get a matrix value.
+	 *
+	 * @param row
+	 *            row
+	 * @param column
+	 *            matrix column
+	 * @return value
+	 */
+	double get(int row, int column);
+
+	/**
+	 * Does a lookup in the index for the supplied key and returns the
+	 * corresponding matrix row number.
+	 *
+	 * @param key
+	 *            a primary key value
+	 * @return row number, or exception thrown if key is not found
+	 */
+	int indexLookupRow(Object[] key);
+
+	/**
+	 * Get the values of an index column, narrowed to the narrowest type that
+	 * holds them all. The returned array must not be modified.
+	 *
+	 * @param col
+	 *            index column
+	 * @return narrowed index column values, one per row
+	 */
+	Object[] getIndexColumn(int col);
+
+	/**
+	 * Get the narrowest type of an index column.
+	 *
+	 * @param col
+	 *            index column
+	 * @return narrowest type of the index column
+	 */
+	Class<?> getIndexColumnType(int col);
+
+	/**
+	 * Get ordered list of column names for the index.
+	 *
+	 * @return ordered list of column names for the index.
+	 */
+	String[] getIndexColumnNames();
+
+	/**
+	 * Get ordered list of column names for the matrix.
+	 *
+	 * @return ordered list of column names for the matrix.
+	 */
+	String[] getMatrixColumnNames();
+
+	/**
+	 * Get ordered list of all column names for the index, following by the
+	 * matrix.
+	 *
+	 * @return ordered list of column names.
+	 */
+	String[] getAllColumnNames();
+
+}
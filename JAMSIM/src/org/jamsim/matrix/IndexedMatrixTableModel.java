@@ -3,8 +3,8 @@ package org.jamsim.matrix;
 import javax.swing.table.AbstractTableModel;
 
 /**
- * A TableModel wrapper for a {@link IndexedDenseDoubleMatrix2D}. The matrix
- * index coluns are shown before the matrix itself.
+ * A TableModel wrapper for an {@link IndexedMatrix}. The matrix index coluns
+ * are shown, narrowed, before the matrix itself.
  * 
  * @author Oliver Mannion
  * @version $Revision$
@@ -15,38 +15,39 @@ public class IndexedMatrixTableModel extends AbstractTableModel {
 	 */
 	private static final long serialVersionUID = -4901947312398943011L;
 
-	private final IndexedDenseDoubleMatrix2D matrix;
+	private final IndexedMatrix matrix;
 	private final Object[][] index;
 	private final String[] columnNames;
 	private final Class<?>[] columnTypes;
 	private final int numIndexCols;
 
 	/**
-	 * Construct a table model for a {@link IndexedDenseDoubleMatrix2D}.
+	 * Construct a table model for an {@link IndexedMatrix}.
 	 * 
 	 * @param matrix
 	 *            indexed matrix
 	 */
-	public IndexedMatrixTableModel(IndexedDenseDoubleMatrix2D matrix) {
+	public IndexedMatrixTableModel(IndexedMatrix matrix) {
 		this.matrix = matrix;
-		this.index = matrix.getIndex();
 		this.columnNames = matrix.getAllColumnNames();
+		this.numIndexCols = matrix.getIndexColumnNames().length;
 
-		this.columnTypes =
-				constructColumnTypesArray(index[0], matrix.columns());
+		this.index = new Object[numIndexCols][];
+		for (int i = 0; i < numIndexCols; i++) {
+			index[i] = matrix.getIndexColumn(i);
+		}
 
-		this.numIndexCols = index[0].length;
+		this.columnTypes = constructColumnTypesArray(matrix);
 	}
 
-	private Class<?>[] constructColumnTypesArray(Object[] indexRow,
-			int matrixCols) {
-		Class<?>[] colTypes = new Class<?>[indexRow.length + matrixCols];
+	private Class<?>[] constructColumnTypesArray(IndexedMatrix matrix) {
+		Class<?>[] colTypes = new Class<?>[numIndexCols + matrix.columns()];
 
-		for (int i = 0; i < indexRow.length; i++) {
-			colTypes[i] = indexRow[i].getClass();
+		for (int i = 0; i < numIndexCols; i++) {
+			colTypes[i] = matrix.getIndexColumnType(i);
 		}
 
-		for (int i = indexRow.length; i < indexRow.length + matrixCols; i++) {
+		for (int i = numIndexCols; i < colTypes.length; i++) {
 			colTypes[i] = Double.class;
 		}
 
@@ -67,7 +68,7 @@ public class IndexedMatrixTableModel extends AbstractTableModel {
 	public Object getValueAt(int rowIndex, int columnIndex) {
 
 		if (columnIndex < numIndexCols) {
-			return index[rowIndex][columnIndex];
+			return index[columnIndex][rowIndex];
 		} else {
 			return matrix.get(rowIndex, columnIndex - numIndexCols);
 		}
@@ -1,5 +1,12 @@
 package org.jamsim.matrix;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
@@ -24,13 +31,46 @@ public class MatrixUtil {
 	 *         column of each row multiplied by the corresponding column in m1
 	 */
 	public static DoubleMatrix2D mult(DoubleMatrix2D m2, DoubleMatrix1D m1) {
-		DoubleMatrix2D result = m2.copy();
+		return mult(m2, m1, m2.like());
+	}
 
-		for (int i = m2.rows(); --i >= 0;) {
-			result.viewRow(i).assign(m1, cern.jet.math.Functions.mult);
+	/**
+	 * Multiply each row in a 2D matrix by a 1D matrix into an existing matrix,
+	 * eg: a buffer reused between adjustments. Each cell is read and written
+	 * once.
+	 * 
+	 * @param m2
+	 *            Source 2D matrix
+	 * @param m1
+	 *            1D matrix to multiple each row of m2 by
+	 * @param dest
+	 *            matrix to write the result to, the same shape as m2. May be
+	 *            m2 to multiply in place.
+	 * @return {@code dest}
+	 */
+	public static DoubleMatrix2D mult(DoubleMatrix2D m2, DoubleMatrix1D m1,
+			DoubleMatrix2D dest) {
+		int rows = m2.rows();
+		int columns = m2.columns();
+
+		if (m1.size() != columns) {
+			throw new IllegalArgumentException("m1.size() (" + m1.size()
+					+ ") != m2.columns() (" + columns + ")");
+		}
+		if (dest.rows() != rows || dest.columns() != columns) {
+			throw new IllegalArgumentException("dest is " + dest.rows() + "x"
+					+ dest.columns() + " not " + rows + "x" + columns);
 		}
 
-		return result;
+		double[] factors = m1.toArray();
+
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < columns; col++) {
+				dest.setQuick(row, col, m2.getQuick(row, col) * factors[col]);
+			}
+		}
+
+		return dest;
 	}
 
 	/**
@@ -55,4 +95,89 @@ public class MatrixUtil {
 		return result;
 	}
 
+	/**
+	 * For each row in mToAdjust, create a view of mToAdjust multiplied by this
+	 * row. Nothing is copied, the adjustment is applied as cells are read. See
+	 * {@link ScaledDoubleMatrix2D}.
+	 * 
+	 * @param mToAdjust
+	 *            matrix to be adjusted
+	 * @param mAdjustBy
+	 *            matrix used to adjust {@code mToAdjust}
+	 * @return DoubleMatrix2D[] array of adjusted matrix views
+	 */
+	public static DoubleMatrix2D[] createAdjustedMatrixViews(
+			DoubleMatrix2D mToAdjust, DoubleMatrix2D mAdjustBy) {
+		int numAdjustments = mAdjustBy.rows();
+		DoubleMatrix2D[] result = new DoubleMatrix2D[numAdjustments];
+
+		for (int i = 0; i < numAdjustments; i++) {
+			result[i] =
+					new ScaledDoubleMatrix2D(mToAdjust, mAdjustBy.viewRow(i));
+		}
+
+		return result;
+	}
+
+	/**
+	 * For each row in mToAdjust, multiply mToAdjust by this row into the
+	 * corresponding preallocated matrix of {@code dest}. Adjustments are
+	 * made concurrently on {@code executor}, and this method returns once they
+	 * are all complete.
+	 * 
+	 * @param mToAdjust
+	 *            matrix to be adjusted. Only read, so is safely shared between
+	 *            threads.
+	 * @param mAdjustBy
+	 *            matrix used to adjust {@code mToAdjust}
+	 * @param dest
+	 *            a matrix the same shape as {@code mToAdjust} for each row of
+	 *            {@code mAdjustBy}, eg: the result of a previous call
+	 * @param executor
+	 *            executor to make the adjustments on
+	 * @return {@code dest}
+	 */
+	public static DoubleMatrix2D[] createAdjustedMatrixArray(
+			final DoubleMatrix2D mToAdjust, DoubleMatrix2D mAdjustBy,
+			final DoubleMatrix2D[] dest, ExecutorService executor) {
+		int numAdjustments = mAdjustBy.rows();
+
+		if (dest.length != numAdjustments) {
+			throw new IllegalArgumentException("dest.length (" + dest.length
+					+ ") != mAdjustBy.rows() (" + numAdjustments + ")");
+		}
+
+		List<Callable<Object>> tasks =
+				new ArrayList<Callable<Object>>(numAdjustments);
+
+		for (int i = 0; i < numAdjustments; i++) {
+			final int adjustment = i;
+			final DoubleMatrix1D adjustBy = mAdjustBy.viewRow(i);
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					mult(mToAdjust, adjustBy, dest[adjustment]);
+					return null;
+				}
+			});
+		}
+
+		try {
+			for (Future<Object> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause.getMessage(), cause);
+		}
+
+		return dest;
+	}
+
 }
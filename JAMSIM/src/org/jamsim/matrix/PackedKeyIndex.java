@@ -0,0 +1,86 @@
+package org.jamsim.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from non-negative {@code long} keys to rows. Used
+ * by {@link IndexedDenseDoubleMatrix2D} to look up multi column keys that
+ * have been packed into a long, without boxing.
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+final class PackedKeyIndex {
+
+	private final long[] keys;
+
+	/**
+	 * Row of each slot, or -1 if the slot is empty.
+	 */
+	private final int[] rows;
+
+	private final int mask;
+
+	/**
+	 * Construct an empty index with space for {@code expectedKeys}.
+	 * 
+	 * @param expectedKeys
+	 *            number of keys that will be added
+	 */
+	PackedKeyIndex(int expectedKeys) {
+		int capacity = Integer.highestOneBit(Math.max(expectedKeys, 1) * 2);
+		if (capacity < expectedKeys * 2) {
+			capacity <<= 1;
+		}
+
+		keys = new long[capacity];
+		rows = new int[capacity];
+		Arrays.fill(rows, -1);
+		mask = capacity - 1;
+	}
+
+	private static int slot(long key) {
+		long h = key * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Add a key, unless it is already present, ie: the first row with a key
+	 * is kept.
+	 * 
+	 * @param key
+	 *            packed key
+	 * @param row
+	 *            row
+	 */
+	void putIfAbsent(long key, int row) {
+		int i = slot(key) & mask;
+		while (rows[i] != -1) {
+			if (keys[i] == key) {
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		rows[i] = row;
+	}
+
+	/**
+	 * Get the row of a key.
+	 * 
+	 * @param key
+	 *            packed key
+	 * @return row, or -1 if not present
+	 */
+	int get(long key) {
+		int i = slot(key) & mask;
+		while (rows[i] != -1) {
+			if (keys[i] == key) {
+				return rows[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+}
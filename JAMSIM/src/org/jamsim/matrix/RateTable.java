@@ -0,0 +1,269 @@
+package org.jamsim.matrix;
+
+import java.util.Arrays;
+
+import org.jamsim.math.IntervalsIntMap;
+
+/**
+ * An N-dimensional table of rates or transition probabilities, eg: the
+ * probability of each disability state by sex, age group and current
+ * disability state. Each index column of an
+ * {@link IndexedDenseDoubleMatrix2D} is a {@link TableDimension} that maps the
+ * column's values to dense ordinals, and the matrix columns are the last
+ * dimension.
+ * <p>
+ * Values are held in one flat array in row major order, ie: the last index
+ * dimension varies fastest, then the matrix column. A row (ie: all matrix
+ * columns for one combination of index values) is located by multiplying each
+ * ordinal by its dimension's stride, so lookups do not box or search.
+ * Ordinals are not range checked, so must be less than the size of their
+ * dimension, eg: from {@link Enum#ordinal()} or
+ * {@link TableDimension#rangeOrdinal(int)}.
+ * </p>
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class RateTable {
+
+	private final TableDimension[] dimensions;
+
+	private final String[] columnNames;
+
+	private final int numColumns;
+
+	private final int numRows;
+
+	/**
+	 * Number of rows between consecutive ordinals of each dimension.
+	 */
+	private final int[] strides;
+
+	private final double[] values;
+
+	/**
+	 * Create a table from an indexed matrix. The matrix must have exactly one
+	 * row for each combination of ordinals of {@code dimensions}. Matrix rows
+	 * with index values not in a dimension are ignored.
+	 * 
+	 * @param matrix
+	 *            indexed matrix
+	 * @param dimensions
+	 *            a dimension for each index column, in lookup order
+	 * @throws IllegalArgumentException
+	 *             if a dimension is not an index column of {@code matrix}, or
+	 *             a combination of ordinals has no row or more than one row
+	 */
+	public RateTable(IndexedDenseDoubleMatrix2D matrix,
+			TableDimension... dimensions) {
+		this.dimensions = dimensions.clone();
+		this.columnNames = matrix.getMatrixColumnNames();
+		this.numColumns = matrix.columns();
+		this.strides = new int[dimensions.length];
+
+		int rowsInTable = 1;
+		for (int d = dimensions.length - 1; d >= 0; d--) {
+			strides[d] = rowsInTable;
+			rowsInTable *= dimensions[d].size();
+		}
+		this.numRows = rowsInTable;
+		this.values = new double[numRows * numColumns];
+
+		int[] indexColumns = indexColumns(matrix, dimensions);
+		Object[][] index = matrix.getIndex();
+		boolean[] filled = new boolean[numRows];
+
+		for (int matrixRow = 0; matrixRow < index.length; matrixRow++) {
+			int row = 0;
+
+			for (int d = 0; d < dimensions.length && row != -1; d++) {
+				int ordinal =
+						dimensions[d].lookupOrdinal(index[matrixRow][indexColumns[d]]);
+				row = ordinal == -1 ? -1 : row + ordinal * strides[d];
+			}
+
+			if (row != -1) {
+				if (filled[row]) {
+					throw new IllegalArgumentException("More than one row for "
+							+ Arrays.toString(index[matrixRow]));
+				}
+				filled[row] = true;
+
+				for (int col = 0; col < numColumns; col++) {
+					values[row * numColumns + col] =
+							matrix.getQuick(matrixRow, col);
+				}
+			}
+		}
+
+		for (int row = 0; row < numRows; row++) {
+			if (!filled[row]) {
+				throw new IllegalArgumentException("No row for "
+						+ Arrays.toString(getKeys(row)));
+			}
+		}
+	}
+
+	private static int[] indexColumns(IndexedDenseDoubleMatrix2D matrix,
+			TableDimension[] dimensions) {
+		String[] indexColumnNames = matrix.getIndexColumnNames();
+		int[] indexColumns = new int[dimensions.length];
+
+		for (int d = 0; d < dimensions.length; d++) {
+			indexColumns[d] =
+					Arrays.asList(indexColumnNames).indexOf(
+							dimensions[d].getColumn());
+
+			if (indexColumns[d] == -1) {
+				throw new IllegalArgumentException(dimensions[d].getColumn()
+						+ " is not an index column of "
+						+ Arrays.toString(indexColumnNames));
+			}
+		}
+
+		return indexColumns;
+	}
+
+	/**
+	 * Index values of a row, eg: for error messages.
+	 * 
+	 * @param row
+	 *            row
+	 * @return index value of each dimension
+	 */
+	public Object[] getKeys(int row) {
+		Object[] keys = new Object[dimensions.length];
+		for (int d = 0; d < dimensions.length; d++) {
+			keys[d] = dimensions[d].getKey(row / strides[d]
+					% dimensions[d].size());
+		}
+		return keys;
+	}
+
+	/**
+	 * Number of rows, ie: combinations of ordinals.
+	 * 
+	 * @return number of rows
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+
+	/**
+	 * Number of matrix columns.
+	 * 
+	 * @return number of columns
+	 */
+	public int getNumColumns() {
+		return numColumns;
+	}
+
+	/**
+	 * Matrix column names.
+	 * 
+	 * @return column names
+	 */
+	public String[] getColumnNames() {
+		return columnNames.clone();
+	}
+
+	/**
+	 * Row of a one dimensional table.
+	 * 
+	 * @param ordinal0
+	 *            ordinal of the first dimension
+	 * @return row
+	 */
+	public int row(int ordinal0) {
+		return ordinal0 * strides[0];
+	}
+
+	/**
+	 * Row of a two dimensional table.
+	 * 
+	 * @param ordinal0
+	 *            ordinal of the first dimension
+	 * @param ordinal1
+	 *            ordinal of the second dimension
+	 * @return row
+	 */
+	public int row(int ordinal0, int ordinal1) {
+		return ordinal0 * strides[0] + ordinal1 * strides[1];
+	}
+
+	/**
+	 * Row of a three dimensional table.
+	 * 
+	 * @param ordinal0
+	 *            ordinal of the first dimension
+	 * @param ordinal1
+	 *            ordinal of the second dimension
+	 * @param ordinal2
+	 *            ordinal of the third dimension
+	 * @return row
+	 */
+	public int row(int ordinal0, int ordinal1, int ordinal2) {
+		return ordinal0 * strides[0] + ordinal1 * strides[1] + ordinal2
+				* strides[2];
+	}
+
+	/**
+	 * Row of a table of any number of dimensions.
+	 * 
+	 * @param ordinals
+	 *            ordinal of each dimension
+	 * @return row
+	 */
+	public int row(int[] ordinals) {
+		int row = 0;
+		for (int d = 0; d < strides.length; d++) {
+			row += ordinals[d] * strides[d];
+		}
+		return row;
+	}
+
+	/**
+	 * Get a value.
+	 * 
+	 * @param row
+	 *            row, eg: from {@link #row(int, int)}
+	 * @param col
+	 *            matrix column
+	 * @return value
+	 */
+	public double get(int row, int col) {
+		return values[row * numColumns + col];
+	}
+
+	/**
+	 * Copy the values of a row.
+	 * 
+	 * @param row
+	 *            row
+	 * @return values of each matrix column
+	 */
+	public double[] getRow(int row) {
+		int from = row * numColumns;
+		return Arrays.copyOfRange(values, from, from + numColumns);
+	}
+
+	/**
+	 * Create a probability distribution from each row, ie: for transition
+	 * tables where each matrix column is the probability of moving to a
+	 * state.
+	 * 
+	 * @param mappedValues
+	 *            value drawn for each matrix column
+	 * @return distribution of each row, indexed by row
+	 */
+	public IntervalsIntMap[] createDistributions(int[] mappedValues) {
+		IntervalsIntMap[] distributions = new IntervalsIntMap[numRows];
+		for (int row = 0; row < numRows; row++) {
+			distributions[row] =
+					IntervalsIntMap.newProbabilityDistribution(getRow(row),
+							mappedValues);
+		}
+		return distributions;
+	}
+
+}
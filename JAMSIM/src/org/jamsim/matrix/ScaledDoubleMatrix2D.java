@@ -0,0 +1,155 @@
+package org.jamsim.matrix;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.AbstractMatrix2D;
+
+/**
+ * A read only view of a 2D matrix with each row multiplied by a 1D matrix,
+ * ie: {@code getQuick(row, column) == base.getQuick(row, column) * scale[column]}.
+ * The scaling is applied when a cell is read, so creating the view does not
+ * copy the base matrix. See {@link MatrixUtil#createAdjustedMatrixViews}.
+ * <p>
+ * Changes to the base matrix are seen by the view. Part, dice and stride views
+ * of this matrix are supported, but {@link #viewRow(int)} and
+ * {@link #viewColumn(int)} return copies, and selection views are not
+ * supported.
+ * </p>
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class ScaledDoubleMatrix2D extends DoubleMatrix2D {
+
+	private static final long serialVersionUID = 6305624337414733185L;
+
+	private final DoubleMatrix2D base;
+
+	private final double[] scale;
+
+	/**
+	 * Whether this view's rows are the base matrix's columns.
+	 */
+	private boolean diced = false;
+
+	/**
+	 * Construct a view of {@code base} with each row multiplied by
+	 * {@code scale}.
+	 *
+	 * @param base
+	 *            matrix to scale
+	 * @param scale
+	 *            1D matrix to multiply each row of {@code base} by. Copied, ie:
+	 *            later changes to {@code scale} are not seen by the view.
+	 */
+	public ScaledDoubleMatrix2D(DoubleMatrix2D base, DoubleMatrix1D scale) {
+		if (scale.size() != base.columns()) {
+			throw new IllegalArgumentException("scale.size() ("
+					+ scale.size() + ") != base.columns() ("
+					+ base.columns() + ")");
+		}
+
+		this.base = base;
+		this.scale = scale.toArray();
+
+		// unit strides, so a cell's offsets are its base row and column
+		setUp(base.rows(), base.columns(), 0, 0, 1, 1);
+	}
+
+	@Override
+	public double getQuick(int row, int column) {
+		int baseRow = rowZero + row * rowStride;
+		int baseColumn = columnZero + column * columnStride;
+
+		if (diced) {
+			int swap = baseRow;
+			baseRow = baseColumn;
+			baseColumn = swap;
+		}
+
+		return base.getQuick(baseRow, baseColumn) * scale[baseColumn];
+	}
+
+	/**
+	 * Not supported, the view is read only.
+	 *
+	 * @param row
+	 *            row
+	 * @param column
+	 *            column
+	 * @param value
+	 *            value
+	 */
+	@Override
+	public void setQuick(int row, int column, double value) {
+		throw new UnsupportedOperationException(
+				"Scaled matrix is read only");
+	}
+
+	@Override
+	public DoubleMatrix2D like(int rows, int columns) {
+		return base.like(rows, columns);
+	}
+
+	@Override
+	public DoubleMatrix1D like1D(int size) {
+		return base.like1D(size);
+	}
+
+	@Override
+	protected DoubleMatrix1D like1D(int size, int zero, int stride) {
+		throw new UnsupportedOperationException(
+				"Scaled matrix has no 1D views");
+	}
+
+	@Override
+	protected DoubleMatrix2D viewSelectionLike(int[] rowOffsets,
+			int[] columnOffsets) {
+		throw new UnsupportedOperationException(
+				"Scaled matrix has no selection views");
+	}
+
+	@Override
+	protected AbstractMatrix2D vDice() {
+		super.vDice();
+		diced = !diced;
+		return this;
+	}
+
+	/**
+	 * Copy of a row, ie: changes to the returned matrix are not written to
+	 * this matrix.
+	 *
+	 * @param row
+	 *            row
+	 * @return copy of the row
+	 */
+	@Override
+	public DoubleMatrix1D viewRow(int row) {
+		checkRow(row);
+		DoubleMatrix1D copy = like1D(columns);
+		for (int column = 0; column < columns; column++) {
+			copy.setQuick(column, getQuick(row, column));
+		}
+		return copy;
+	}
+
+	/**
+	 * Copy of a column, ie: changes to the returned matrix are not written to
+	 * this matrix.
+	 *
+	 * @param column
+	 *            column
+	 * @return copy of the column
+	 */
+	@Override
+	public DoubleMatrix1D viewColumn(int column) {
+		checkColumn(column);
+		DoubleMatrix1D copy = like1D(rows);
+		for (int row = 0; row < rows; row++) {
+			copy.setQuick(row, getQuick(row, column));
+		}
+		return copy;
+	}
+
+}
@@ -0,0 +1,407 @@
+package org.jamsim.matrix;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import net.casper.data.model.CDataCacheContainer;
+import net.casper.data.model.CDataGridException;
+import net.casper.data.model.CDataRowSet;
+import net.casper.data.model.CRowMetaData;
+
+import org.jamsim.math.IntervalsIntMap;
+
+/**
+ * A sparse 2D matrix of doubles with an index, eg: a transition table where
+ * each state can only move to a few neighbouring states. Only the non-zero
+ * values are stored, row by row, in compressed sparse row (CSR) form. The
+ * index is the same as an {@link IndexedDenseDoubleMatrix2D}'s.
+ * <p>
+ * The non-zero values of row {@code r} are at positions
+ * {@code rowStart(r) <= pos < rowEnd(r)}, in column order, eg:
+ * </p>
+ *
+ * <pre>
+ * for (int pos = m.rowStart(row); pos &lt; m.rowEnd(row); pos++) {
+ * 	total += m.getNonZeroValue(pos) * x[m.getNonZeroColumn(pos)];
+ * }
+ * </pre>
+ *
+ * Immutable once constructed.
+ *
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public class SparseIndexedDoubleMatrix2D implements IndexedMatrix,
+		Serializable {
+
+	private static final long serialVersionUID = 2837517026094165127L;
+
+	/**
+	 * The index, held as a matrix with no matrix columns, which provides key
+	 * lookup and narrowing.
+	 */
+	private final IndexedDenseDoubleMatrix2D index;
+
+	private final String[] matrixColumnNames;
+
+	/**
+	 * Position in {@link #columnIndexes} and {@link #values} of the first
+	 * non-zero value of each row, and the number of non-zero values at the
+	 * end, ie: {@code rows() + 1} elements.
+	 */
+	private final int[] rowStarts;
+
+	private final int[] columnIndexes;
+
+	private final double[] values;
+
+	/**
+	 * Construct an instance from a {@link CDataCacheContainer}. Convenience
+	 * method for {@link #SparseIndexedDoubleMatrix2D(CDataRowSet)}.
+	 *
+	 * @param container
+	 *            casper container
+	 * @throws CDataGridException
+	 *             if problem reading container.
+	 */
+	public SparseIndexedDoubleMatrix2D(CDataCacheContainer container)
+			throws CDataGridException {
+		this(container.getAll());
+	}
+
+	/**
+	 * Construct an instance from a multi column index and a 2D double array.
+	 *
+	 * @param indexColumnNames
+	 *            column names of the index
+	 * @param index
+	 *            a multi-columned index
+	 * @param matrixColumnNames
+	 *            column names of the matrix
+	 * @param matrix
+	 *            the matrix
+	 */
+	public SparseIndexedDoubleMatrix2D(String[] indexColumnNames,
+			Object[][] index, String[] matrixColumnNames, double[][] matrix) {
+		if (index == null) {
+			throw new IllegalArgumentException(
+					"No index supplied for creation of indexed matrix");
+		}
+		if (index.length != matrix.length) {
+			throw new IllegalArgumentException("index.length ("
+					+ index.length + ") != matrix.length (" + matrix.length
+					+ ")");
+		}
+
+		this.index = indexOnly(indexColumnNames, index);
+		this.matrixColumnNames = matrixColumnNames.clone();
+
+		Compressor compressor =
+				new Compressor(matrix.length, matrixColumnNames.length);
+		for (double[] row : matrix) {
+			if (row.length != matrixColumnNames.length) {
+				throw new IllegalArgumentException("row length ("
+						+ row.length + ") != number of matrix columns ("
+						+ matrixColumnNames.length + ")");
+			}
+			compressor.addRow(row);
+		}
+
+		rowStarts = compressor.rowStarts;
+		columnIndexes = compressor.trimmedColumnIndexes();
+		values = compressor.trimmedValues();
+	}
+
+	/**
+	 * Construct an instance from a CDataRowSet. The primary key columns of the
+	 * dataset form the index, and all other columns, which must contain
+	 * doubles, the matrix. Rows are compressed as they are read, so the dense
+	 * matrix is never held.
+	 *
+	 * @param cdrs
+	 *            a casper CDataRowSet
+	 * @throws CDataGridException
+	 *             if problem reading dataset
+	 */
+	public SparseIndexedDoubleMatrix2D(CDataRowSet cdrs)
+			throws CDataGridException {
+		CRowMetaData meta = cdrs.getMetaDefinition();
+
+		// flag the columns that are primary keys
+		int cols = meta.getColumnCount();
+		boolean[] primaryKeys = new boolean[cols];
+		int keys = 0;
+		for (int pkIndex : meta.getPrimaryKeyColumnIndices()) {
+			if (!primaryKeys[pkIndex]) {
+				primaryKeys[pkIndex] = true;
+				keys++;
+			}
+		}
+
+		// create lists of column names
+		String[] allColumnNames = meta.getColumnNames();
+		String[] indexColumnNames = new String[keys];
+		matrixColumnNames = new String[cols - keys];
+		for (int col = 0, keyCol = 0, matrixCol = 0; col < cols; col++) {
+			if (primaryKeys[col]) {
+				indexColumnNames[keyCol++] = allColumnNames[col];
+			} else {
+				matrixColumnNames[matrixCol++] = allColumnNames[col];
+			}
+		}
+
+		int rows = cdrs.getNumberRows();
+		Object[][] keyValues = new Object[rows][keys];
+		double[] rowValues = new double[matrixColumnNames.length];
+		Compressor compressor =
+				new Compressor(rows, matrixColumnNames.length);
+
+		cdrs.reset(); // reset cursor to beginning
+
+		int row = 0;
+		while (cdrs.next()) {
+			for (int col = 0, keyCol = 0, matrixCol = 0; col < cols; col++) {
+				if (primaryKeys[col]) {
+					keyValues[row][keyCol++] = cdrs.getObject(col);
+				} else {
+					rowValues[matrixCol++] = cdrs.getDouble(col);
+				}
+			}
+			compressor.addRow(rowValues);
+			row++;
+		}
+
+		this.index = indexOnly(indexColumnNames, keyValues);
+		rowStarts = compressor.rowStarts;
+		columnIndexes = compressor.trimmedColumnIndexes();
+		values = compressor.trimmedValues();
+	}
+
+	private static IndexedDenseDoubleMatrix2D indexOnly(
+			String[] indexColumnNames, Object[][] index) {
+		return new IndexedDenseDoubleMatrix2D(indexColumnNames, index,
+				new String[0], new double[index.length][0]);
+	}
+
+	/**
+	 * Accumulates the non-zero values of each row.
+	 */
+	private static final class Compressor {
+
+		private final int[] rowStarts;
+		private int[] columnIndexes;
+		private double[] values;
+		private int rows = 0;
+		private int size = 0;
+
+		public Compressor(int rows, int columns) {
+			rowStarts = new int[rows + 1];
+
+			// guess each row has a few non-zero values
+			int capacity = Math.max(16, rows * Math.min(columns, 4));
+			columnIndexes = new int[capacity];
+			values = new double[capacity];
+		}
+
+		public void addRow(double[] row) {
+			for (int col = 0; col < row.length; col++) {
+				if (row[col] != 0) {
+					if (size == values.length) {
+						int capacity = size + (size >> 1) + 1;
+						columnIndexes = Arrays.copyOf(columnIndexes, capacity);
+						values = Arrays.copyOf(values, capacity);
+					}
+					columnIndexes[size] = col;
+					values[size] = row[col];
+					size++;
+				}
+			}
+			rowStarts[++rows] = size;
+		}
+
+		public int[] trimmedColumnIndexes() {
+			return Arrays.copyOf(columnIndexes, size);
+		}
+
+		public double[] trimmedValues() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	@Override
+	public int rows() {
+		return rowStarts.length - 1;
+	}
+
+	@Override
+	public int columns() {
+		return matrixColumnNames.length;
+	}
+
+	/**
+	 * Number of non-zero values.
+	 *
+	 * @return number of non-zero values
+	 */
+	public int cardinality() {
+		return values.length;
+	}
+
+	/**
+	 * Get a matrix value. Searches the non-zero values of the row, so to read
+	 * a whole row iterate over its non-zero values instead.
+	 *
+	 * @param row
+	 *            row
+	 * @param column
+	 *            matrix column
+	 * @return value, {@code 0} if not stored
+	 */
+	@Override
+	public double get(int row, int column) {
+		if (row < 0 || row >= rows() || column < 0 || column >= columns()) {
+			throw new IndexOutOfBoundsException("row:" + row + ", column:"
+					+ column);
+		}
+
+		int pos =
+				Arrays.binarySearch(columnIndexes, rowStarts[row],
+						rowStarts[row + 1], column);
+		return pos < 0 ? 0 : values[pos];
+	}
+
+	/**
+	 * Position of the first non-zero value of a row.
+	 *
+	 * @param row
+	 *            row
+	 * @return position of the row's first non-zero value
+	 */
+	public int rowStart(int row) {
+		return rowStarts[row];
+	}
+
+	/**
+	 * Position after the last non-zero value of a row.
+	 *
+	 * @param row
+	 *            row
+	 * @return position after the row's last non-zero value
+	 */
+	public int rowEnd(int row) {
+		return rowStarts[row + 1];
+	}
+
+	/**
+	 * Matrix column of a non-zero value.
+	 *
+	 * @param pos
+	 *            position of the non-zero value
+	 * @return matrix column
+	 */
+	public int getNonZeroColumn(int pos) {
+		return columnIndexes[pos];
+	}
+
+	/**
+	 * A non-zero value.
+	 *
+	 * @param pos
+	 *            position of the non-zero value
+	 * @return value
+	 */
+	public double getNonZeroValue(int pos) {
+		return values[pos];
+	}
+
+	/**
+	 * Create a distribution from the non-zero values of a row, eg: the
+	 * transition probabilities from a state. Only the non-zero values are
+	 * visited, so a row of a few non-zero values among hundreds of columns is
+	 * cheap to build and to draw from.
+	 *
+	 * @param row
+	 *            row
+	 * @param mappedValues
+	 *            value drawn for each matrix column, eg: a state
+	 * @return distribution of the row's non-zero values
+	 * @throws IllegalArgumentException
+	 *             if the row has no non-zero values, or
+	 *             {@code mappedValues.length != columns()}
+	 */
+	public IntervalsIntMap createDistribution(int row, int[] mappedValues) {
+		if (mappedValues.length != columns()) {
+			throw new IllegalArgumentException("mappedValues.length ("
+					+ mappedValues.length + ") != columns() (" + columns()
+					+ ")");
+		}
+
+		int start = rowStarts[row];
+		int end = rowStarts[row + 1];
+		if (start == end) {
+			throw new IllegalArgumentException("Row " + row
+					+ " has no non-zero values");
+		}
+
+		int[] rowValues = new int[end - start];
+		for (int pos = start; pos < end; pos++) {
+			rowValues[pos - start] = mappedValues[columnIndexes[pos]];
+		}
+
+		return IntervalsIntMap.newProbabilityDistribution(Arrays.copyOfRange(
+				values, start, end), rowValues);
+	}
+
+	/**
+	 * Create a distribution from the non-zero values of each row. See
+	 * {@link #createDistribution(int, int[])}.
+	 *
+	 * @param mappedValues
+	 *            value drawn for each matrix column, eg: a state
+	 * @return a distribution for each row
+	 */
+	public IntervalsIntMap[] createDistributions(int[] mappedValues) {
+		IntervalsIntMap[] distributions = new IntervalsIntMap[rows()];
+		for (int row = 0; row < distributions.length; row++) {
+			distributions[row] = createDistribution(row, mappedValues);
+		}
+		return distributions;
+	}
+
+	@Override
+	public int indexLookupRow(Object[] key) {
+		return index.indexLookupRow(key);
+	}
+
+	@Override
+	public Object[] getIndexColumn(int col) {
+		return index.getIndexColumn(col);
+	}
+
+	@Override
+	public Class<?> getIndexColumnType(int col) {
+		return index.getIndexColumnType(col);
+	}
+
+	@Override
+	public String[] getIndexColumnNames() {
+		return index.getIndexColumnNames();
+	}
+
+	@Override
+	public String[] getMatrixColumnNames() {
+		return matrixColumnNames.clone();
+	}
+
+	@Override
+	public String[] getAllColumnNames() {
+		String[] indexColumnNames = index.getIndexColumnNames();
+		String[] all =
+				Arrays.copyOf(indexColumnNames, indexColumnNames.length
+						+ matrixColumnNames.length);
+		System.arraycopy(matrixColumnNames, 0, all, indexColumnNames.length,
+				matrixColumnNames.length);
+		return all;
+	}
+
+}
@@ -0,0 +1,165 @@
+package org.jamsim.matrix;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jamsim.data.ValueProvider;
+
+/**
+ * A dimension of a {@link RateTable}, ie: an index column whose values are
+ * mapped to dense ordinals {@code 0} to {@code size() - 1}. Either the values
+ * of a set of {@link ValueProvider}s (eg: a model enum, where the ordinal is
+ * the enum's ordinal), or a range of ints (eg: single years of age).
+ * 
+ * @author Oliver Mannion
+ * @version $Revision$
+ */
+public final class TableDimension {
+
+	private final String column;
+
+	private final Object[] keys;
+
+	private final Map<Object, Integer> ordinals;
+
+	private final int min;
+
+	private TableDimension(String column, Object[] keys, int min) {
+		this.column = column;
+		this.keys = keys;
+		this.min = min;
+		this.ordinals = new HashMap<Object, Integer>(keys.length * 2);
+
+		for (int i = 0; i < keys.length; i++) {
+			if (ordinals.put(normalise(keys[i]), i) != null) {
+				throw new IllegalArgumentException("Duplicate value "
+						+ keys[i] + " in dimension " + column);
+			}
+		}
+	}
+
+	/**
+	 * Dimension of the values of {@code providers}. The ordinal of a value is
+	 * the position of its provider, so for an enum pass {@code Enum.values()}
+	 * and use {@link Enum#ordinal()}.
+	 * 
+	 * @param column
+	 *            index column name
+	 * @param providers
+	 *            value providers
+	 * @return dimension
+	 */
+	public static TableDimension of(String column,
+			ValueProvider<?>[] providers) {
+		Object[] keys = new Object[providers.length];
+		for (int i = 0; i < providers.length; i++) {
+			keys[i] = providers[i].getValue();
+		}
+		return new TableDimension(column, keys, 0);
+	}
+
+	/**
+	 * Dimension of the ints {@code min} to {@code max} inclusive. The ordinal
+	 * of a value is {@code value - min}.
+	 * 
+	 * @param column
+	 *            index column name
+	 * @param min
+	 *            lowest value
+	 * @param max
+	 *            highest value
+	 * @return dimension
+	 */
+	public static TableDimension range(String column, int min, int max) {
+		if (max < min) {
+			throw new IllegalArgumentException("max (" + max + ") < min ("
+					+ min + ")");
+		}
+
+		Object[] keys = new Object[max - min + 1];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = min + i;
+		}
+		return new TableDimension(column, keys, min);
+	}
+
+	/**
+	 * Index columns hold numbers as whatever type was read from file, so
+	 * compare whole numbers by value.
+	 */
+	private static Object normalise(Object key) {
+		if (key instanceof Number) {
+			double value = ((Number) key).doubleValue();
+			if (value == Math.rint(value)) {
+				return Long.valueOf((long) value);
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Index column name.
+	 * 
+	 * @return column name
+	 */
+	public String getColumn() {
+		return column;
+	}
+
+	/**
+	 * Number of ordinals.
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Index column value of an ordinal.
+	 * 
+	 * @param ordinal
+	 *            ordinal
+	 * @return value
+	 */
+	public Object getKey(int ordinal) {
+		return keys[ordinal];
+	}
+
+	/**
+	 * Ordinal of an index column value.
+	 * 
+	 * @param key
+	 *            index column value
+	 * @return ordinal, or -1 if {@code key} is not in this dimension
+	 */
+	public int lookupOrdinal(Object key) {
+		Integer ordinal = ordinals.get(normalise(key));
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	/**
+	 * Ordinal of an int in a {@link #range(String, int, int)} dimension,
+	 * without boxing.
+	 * 
+	 * @param value
+	 *            value
+	 * @return {@code value - min}
+	 * @throws IllegalArgumentException
+	 *             if {@code value} is outside the range
+	 */
+	public int rangeOrdinal(int value) {
+		int ordinal = value - min;
+		if (ordinal < 0 || ordinal >= keys.length) {
+			throw new IllegalArgumentException(column + " value " + value
+					+ " not in dimension");
+		}
+		return ordinal;
+	}
+
+	@Override
+	public String toString() {
+		return column + " (" + keys.length + ")";
+	}
+
+}
@@ -0,0 +1,198 @@
+package org.jamsim.ascape.columnar.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.casper.data.model.CDataCacheContainer;
+import net.casper.data.model.CDataGridException;
+
+import org.jamsim.ascape.columnar.AgentCursor;
+import org.jamsim.ascape.columnar.AgentTable;
+import org.jamsim.ascape.columnar.CBuildFromAgentTable;
+import org.jamsim.ascape.columnar.ColumnType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AgentTableTest {
+
+	private static final int ROWS = 100;
+
+	private AgentTable table;
+
+	@Before
+	public void setUp() {
+		Map<String, ColumnType> columnTypes =
+				new LinkedHashMap<String, ColumnType>();
+		columnTypes.put("age", ColumnType.INT);
+		columnTypes.put("weight", ColumnType.DOUBLE);
+		columnTypes.put("alive", ColumnType.BOOLEAN);
+
+		table = new AgentTable(columnTypes, 1);
+	}
+
+	@Test
+	public void testColumns() {
+		assertArrayEquals(new String[] { "age", "weight", "alive" }, table
+				.getColumnNames());
+		assertEquals(1, table.getColumnIndex("weight"));
+		assertEquals(ColumnType.BOOLEAN, table.getColumnType(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongColumnType() {
+		table.getDoubleColumn(table.getColumnIndex("age"));
+	}
+
+	/**
+	 * Values survive the table growing.
+	 */
+	@Test
+	public void testGrow() {
+		for (int i = 0; i < ROWS; i++) {
+			int row = table.addRow();
+			table.setInt(0, row, i);
+			table.setDouble(1, row, i / 2.0);
+			table.setBoolean(2, row, i % 2 == 0);
+		}
+
+		assertEquals(ROWS, table.size());
+		assertTrue(table.getIntColumn(0).length >= ROWS);
+
+		for (int i = 0; i < ROWS; i++) {
+			assertEquals(i, table.getInt(0, i));
+			assertEquals(i / 2.0, table.getDouble(1, i), 0);
+			assertEquals(i % 2 == 0, table.getValue(2, i));
+		}
+	}
+
+	@Test
+	public void testCursor() {
+		for (int i = 0; i < ROWS; i++) {
+			table.setInt(0, table.addRow(), i);
+		}
+
+		AgentCursor cursor = new AgentCursor(table) {
+			private final int age = table.getColumnIndex("age");
+
+			@Override
+			public void iterate() {
+				setInt(age, getInt(age) + 1);
+			}
+		};
+
+		for (int i = 0; i < ROWS; i++) {
+			cursor.moveTo(i).iterate();
+		}
+
+		for (int i = 0; i < ROWS; i++) {
+			assertEquals(i + 1, table.getInt(0, i));
+		}
+	}
+
+	private static AgentTable createSexTable(ColumnType type) {
+		Map<String, ColumnType> columnTypes =
+				new LinkedHashMap<String, ColumnType>();
+		columnTypes.put("sex", type);
+		return new AgentTable(columnTypes, 1);
+	}
+
+	/**
+	 * Chars are copied between tables, and missing chars are null.
+	 */
+	@Test
+	public void testCharColumn() throws CDataGridException {
+		AgentTable source = createSexTable(ColumnType.CHAR);
+		source.setChar(0, source.addRow(), 'F');
+		source.addRow();
+
+		AgentTable target = createSexTable(ColumnType.CHAR);
+		target.addRows(new CDataCacheContainer(new CBuildFromAgentTable(
+				"source", source)).getAll());
+
+		assertEquals(2, target.size());
+		assertEquals('F', target.getChar(0, 0));
+		assertEquals('F', target.getValue(0, 0));
+		assertEquals(AgentTable.MISSING_VALUE_CHAR, target.getChar(0, 1));
+		assertNull(target.getValue(0, 1));
+	}
+
+	/**
+	 * A char can't be loaded into an int column.
+	 */
+	@Test(expected = CDataGridException.class)
+	public void testInvalidValue() throws CDataGridException {
+		AgentTable source = createSexTable(ColumnType.CHAR);
+		source.setChar(0, source.addRow(), 'F');
+
+		createSexTable(ColumnType.INT).addRows(
+				new CDataCacheContainer(new CBuildFromAgentTable("source",
+						source)).getAll());
+	}
+
+	private static byte[] writeState(AgentTable table) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		table.writeState(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static void readState(AgentTable table, byte[] state)
+			throws IOException {
+		table.readState(new DataInputStream(new ByteArrayInputStream(state)));
+	}
+
+	/**
+	 * Rows written are restored, replacing rows changed or added since.
+	 */
+	@Test
+	public void testWriteReadState() throws IOException {
+		for (int i = 0; i < ROWS; i++) {
+			int row = table.addRow();
+			table.setInt(0, row, i);
+			table.setDouble(1, row, i / 2.0);
+			table.setBoolean(2, row, i % 2 == 0);
+		}
+
+		byte[] state = writeState(table);
+
+		for (int i = 0; i < ROWS; i++) {
+			table.setInt(0, i, -1);
+			table.setBoolean(2, i, false);
+		}
+		table.setDouble(1, table.addRow(), 1);
+
+		readState(table, state);
+
+		assertEquals(ROWS, table.size());
+		for (int i = 0; i < ROWS; i++) {
+			assertEquals(i, table.getInt(0, i));
+			assertEquals(i / 2.0, table.getDouble(1, i), 0);
+			assertEquals(i % 2 == 0, table.getBoolean(2, i));
+		}
+
+		// the row added since is added again with default values
+		assertEquals(0, table.getDouble(1, table.addRow()), 0);
+	}
+
+	/**
+	 * Rows can only be restored into a table with the same columns.
+	 */
+	@Test(expected = IOException.class)
+	public void testReadStateOtherColumns() throws IOException {
+		AgentTable chars = createSexTable(ColumnType.CHAR);
+		chars.setChar(0, chars.addRow(), 'F');
+
+		readState(createSexTable(ColumnType.INT), writeState(chars));
+	}
+}
@@ -0,0 +1,213 @@
+package org.jamsim.ascape.r.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.casper.data.model.CMarkedUpRow;
+import net.casper.data.model.CMarkedUpRowBean;
+
+import org.jamsim.ascape.r.BeanColumnMarshaller;
+import org.junit.Test;
+import org.omancode.r.types.RVectorList;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.RList;
+
+public class BeanColumnMarshallerTest {
+
+	/**
+	 * Stop class, whose properties are not columns.
+	 */
+	public static class Agent implements CMarkedUpRowBean {
+
+		public int getId() {
+			return 1;
+		}
+
+		@Override
+		public CMarkedUpRow getMarkedUpRow() {
+			return null;
+		}
+
+		@Override
+		public void setMarkedUpRow(CMarkedUpRow row) {
+			// not loaded from a base file
+		}
+	}
+
+	/**
+	 * A bean with a property of each primitive kind.
+	 */
+	public static class Person extends Agent {
+
+		private final int age;
+
+		private final double income;
+
+		private final boolean alive;
+
+		private final char sex;
+
+		public Person(int age, double income, boolean alive, char sex) {
+			this.age = age;
+			this.income = income;
+			this.alive = alive;
+			this.sex = sex;
+		}
+
+		public int getAge() {
+			return age;
+		}
+
+		public double getIncome() {
+			return income;
+		}
+
+		public boolean isAlive() {
+			return alive;
+		}
+
+		public char getSex() {
+			return sex;
+		}
+	}
+
+	/**
+	 * A bean with properties that are not columns.
+	 */
+	public static class Resident extends Person {
+
+		public Resident() {
+			super(0, 0, true, 'F');
+		}
+
+		/**
+		 * Not a primitive, so not a column.
+		 */
+		public Object getHousehold() {
+			return null;
+		}
+
+		/**
+		 * Write only, so not a column.
+		 */
+		public void setNote(String note) {
+			// not read
+		}
+	}
+
+	/**
+	 * A bean with an array property.
+	 */
+	public static class History extends Agent {
+
+		public int[] getEarnings() {
+			return new int[0];
+		}
+	}
+
+	private static List<Person> createPeople() {
+		List<Person> people = new ArrayList<Person>();
+		people.add(new Person(20, 1000.5, true, 'F'));
+		people.add(new Person(65, 0, false, 'M'));
+		people.add(new Person(40, 250, true, 'F'));
+		return people;
+	}
+
+	/**
+	 * Columns have the same names, order, R types and values as the columns
+	 * created by {@link RVectorList}.
+	 */
+	@Test
+	public void testSameAsRVectorList() throws Exception {
+		List<Person> people = createPeople();
+
+		RList expected =
+				new RVectorList(people, Agent.class).addCMarkedUpRow(people)
+						.asRList();
+		RList actual =
+				BeanColumnMarshaller.create(Person.class, Agent.class)
+						.marshal(people);
+
+		assertArrayEquals(expected.keys(), actual.keys());
+
+		for (int col = 0; col < expected.size(); col++) {
+			REXP expectedColumn = expected.at(col);
+			REXP actualColumn = actual.at(col);
+			assertEquals(expected.keyAt(col), expectedColumn.getClass(),
+					actualColumn.getClass());
+			assertArrayEquals(expected.keyAt(col), expectedColumn
+					.asStrings(), actualColumn.asStrings());
+		}
+	}
+
+	/**
+	 * {@code char} properties become character vectors.
+	 */
+	@Test
+	public void testCharToString() throws Exception {
+		RList columns =
+				BeanColumnMarshaller.create(Person.class, Agent.class)
+						.marshal(createPeople());
+
+		REXP sex = columns.at("sex");
+		assertTrue(sex instanceof REXPString);
+		assertArrayEquals(new String[] { "F", "M", "F" }, sex.asStrings());
+	}
+
+	/**
+	 * Properties of the stop class, properties that are not primitives and
+	 * write only properties are not columns.
+	 */
+	@Test
+	public void testExcludedProperties() throws Exception {
+		BeanColumnMarshaller marshaller =
+				BeanColumnMarshaller.create(Resident.class, Agent.class);
+
+		List<String> names = Arrays.asList(marshaller.getColumnNames());
+		assertEquals(4, names.size());
+		assertTrue(names.containsAll(Arrays.asList("age", "income", "alive",
+				"sex")));
+
+		assertTrue(marshaller.hasColumns(Arrays.asList("sex", "age")));
+		assertFalse(marshaller.hasColumns(Arrays.asList("id")));
+		assertFalse(marshaller.hasColumns(Arrays.asList("household")));
+		assertFalse(marshaller.hasColumns(Arrays.asList("note")));
+	}
+
+	/**
+	 * Beans with array properties must be converted by {@link RVectorList}.
+	 */
+	@Test
+	public void testArrayProperty() throws Exception {
+		assertNull(BeanColumnMarshaller.create(History.class, Agent.class));
+	}
+
+	/**
+	 * Some of the columns are created, in the order requested.
+	 */
+	@Test
+	public void testSelectedColumns() throws Exception {
+		RList columns =
+				BeanColumnMarshaller.create(Person.class, Agent.class)
+						.marshal(createPeople(), Arrays.asList("sex", "age"));
+
+		assertArrayEquals(new String[] { "sex", "age" }, columns.keys());
+		assertArrayEquals(new int[] { 20, 65, 40 }, columns.at("age")
+				.asIntegers());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownColumn() throws Exception {
+		BeanColumnMarshaller.create(Person.class, Agent.class).marshal(
+				createPeople(), Arrays.asList("id"));
+	}
+
+}
@@ -0,0 +1,171 @@
+package org.jamsim.ascape.r.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jamsim.ascape.r.BeanColumnMarshaller;
+import org.jamsim.ascape.r.MarshalledDataFrame;
+import org.jamsim.ascape.r.tests.BeanColumnMarshallerTest.Agent;
+import org.jamsim.ascape.r.tests.BeanColumnMarshallerTest.Person;
+import org.junit.Before;
+import org.junit.Test;
+import org.rosuda.REngine.RList;
+
+public class MarshalledDataFrameTest {
+
+	private static final String NAME = "people";
+
+	private BeanColumnMarshaller marshaller;
+
+	private Person[] people;
+
+	@Before
+	public void setUp() throws Exception {
+		marshaller = BeanColumnMarshaller.create(Person.class, Agent.class);
+		people =
+				new Person[] { new Person(20, 100.0, true, 'F'),
+						new Person(65, 0.5, true, 'M'),
+						new Person(40, 50.25, true, 'F'),
+						new Person(80, 10.0, true, 'M') };
+	}
+
+	private static Set<String> columns(String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+	/**
+	 * Only the changed columns are created, from the agents' current values.
+	 */
+	@Test
+	public void testChangedColumns() throws Exception {
+		MarshalledDataFrame df = new MarshalledDataFrame(NAME, marshaller, 3);
+		Set<String> changed = columns("income");
+
+		assertTrue(df.canUpdate(NAME, changed, false, 3));
+
+		List<Person> agents = Arrays.asList(people);
+		RList columns = df.marshalColumns(agents, changed);
+
+		assertArrayEquals(new String[] { "income" }, columns.keys());
+		assertArrayEquals(new double[] { 100.0, 0.5, 50.25, 10.0 }, columns
+				.at("income").asDoubles(), 0);
+	}
+
+	/**
+	 * An update with no changed columns is still an update, eg: when only
+	 * the active set has changed.
+	 */
+	@Test
+	public void testNoChangedColumns() {
+		MarshalledDataFrame df = new MarshalledDataFrame(NAME, marshaller, 3);
+		assertTrue(df.canUpdate(NAME, Collections.<String> emptySet(), false,
+				3));
+	}
+
+	/**
+	 * The whole dataframe is reassigned when the columns can't be.
+	 */
+	@Test
+	public void testCannotUpdate() {
+		MarshalledDataFrame df = new MarshalledDataFrame(NAME, marshaller, 3);
+
+		// every column may have changed, or changes not tracked
+		assertFalse(df.canUpdate(NAME, null, false, 3));
+
+		// another run's dataframe
+		assertFalse(df.canUpdate("people.run1", columns("age"), false, 3));
+
+		// not a column of the dataframe
+		assertFalse(df.canUpdate(NAME, columns("age", "id"), false, 3));
+
+		// members added or removed, so the rows are no longer the agents
+		assertFalse(df.canUpdate(NAME, columns("age"), false, 4));
+
+		// now active agents only
+		assertFalse(df.canUpdate(NAME, columns("age"), true, 3));
+	}
+
+	/**
+	 * Rows of agents that have left the active set are removed, numbered
+	 * from 1, and the remaining rows become the active agents.
+	 */
+	@Test
+	public void testDropInactiveRows() {
+		MarshalledDataFrame df =
+				new MarshalledDataFrame(NAME, marshaller, 3, people.clone(), 7);
+
+		assertTrue(df.isActiveOnly());
+		assertFalse(df.isActiveChanged(7));
+		assertTrue(df.isActiveChanged(8));
+		assertTrue(df.canUpdate(NAME, columns("age"), true, 3));
+		assertFalse(df.canUpdate(NAME, columns("age"), false, 3));
+
+		Object[] active = { people[0], people[2] };
+		assertArrayEquals(new int[] { 2, 4 }, df.dropInactiveRows(active, 8));
+		assertFalse(df.isActiveChanged(8));
+
+		// numbered from the remaining rows
+		active = new Object[] { people[2] };
+		assertArrayEquals(new int[] { 1 }, df.dropInactiveRows(active, 9));
+	}
+
+	/**
+	 * Nothing is removed if the active set is unchanged.
+	 */
+	@Test
+	public void testNoInactiveRows() {
+		MarshalledDataFrame df =
+				new MarshalledDataFrame(NAME, marshaller, 3, people.clone(), 7);
+
+		assertArrayEquals(new int[0], df.dropInactiveRows(people.clone(), 8));
+	}
+
+	/**
+	 * Active agents that aren't the rows less some removed can't be updated
+	 * by removing rows.
+	 */
+	@Test
+	public void testActiveNotSubsequence() {
+		MarshalledDataFrame df =
+				new MarshalledDataFrame(NAME, marshaller, 3, people.clone(), 7);
+
+		// reordered
+		assertNull(df.dropInactiveRows(new Object[] { people[1], people[0] },
+				8));
+
+		// a new agent
+		assertNull(df.dropInactiveRows(new Object[] { people[0],
+				new Person(1, 0, true, 'F') }, 8));
+
+		// more agents than rows
+		Object[] more = Arrays.copyOf(people, people.length + 1, Object[].class);
+		more[people.length] = new Person(1, 0, true, 'F');
+		assertNull(df.dropInactiveRows(more, 8));
+
+		// the rows are unchanged by a failed removal
+		assertTrue(df.isActiveChanged(8));
+		assertArrayEquals(new int[] { 1 }, df.dropInactiveRows(new Object[] {
+				people[1], people[2], people[3] }, 8));
+	}
+
+	/**
+	 * A dataframe of all members has no rows to remove.
+	 */
+	@Test
+	public void testAllMembers() {
+		MarshalledDataFrame df = new MarshalledDataFrame(NAME, marshaller, 3);
+
+		assertFalse(df.isActiveOnly());
+		assertFalse(df.isActiveChanged(8));
+		assertNull(df.dropInactiveRows(new Object[] { people[0] }, 8));
+	}
+
+}
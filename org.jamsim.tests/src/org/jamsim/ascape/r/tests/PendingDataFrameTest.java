@@ -0,0 +1,127 @@
+package org.jamsim.ascape.r.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.jamsim.ascape.r.PendingDataFrame;
+import org.junit.Test;
+
+public class PendingDataFrameTest {
+
+	/**
+	 * A deferred assign is pending until taken.
+	 */
+	@Test
+	public void testDeferredAssign() {
+		PendingDataFrame pending = new PendingDataFrame();
+		assertFalse(pending.isPending());
+		assertFalse(pending.take());
+
+		pending.defer(2, true, true);
+		assertTrue(pending.isPending());
+		assertEquals(2, pending.getRun());
+		assertTrue(pending.isActiveOnly());
+		assertTrue(pending.isAll());
+
+		assertTrue(pending.take());
+		assertFalse(pending.isPending());
+		assertFalse(pending.take());
+	}
+
+	/**
+	 * Deferrals of the same run are merged, and the whole dataframe is
+	 * assigned if any deferral needs it.
+	 */
+	@Test
+	public void testMergedDeferrals() {
+		PendingDataFrame pending = new PendingDataFrame();
+
+		pending.defer(0, false, false);
+		assertFalse(pending.isAll());
+
+		pending.defer(0, false, false);
+		assertFalse(pending.isAll());
+
+		pending.defer(0, false, true);
+		pending.defer(0, false, false);
+		assertTrue(pending.isAll());
+	}
+
+	/**
+	 * Changing which agents are rows needs the whole dataframe.
+	 */
+	@Test
+	public void testMergedActiveOnly() {
+		PendingDataFrame pending = new PendingDataFrame();
+
+		pending.defer(0, false, false);
+		pending.defer(0, true, false);
+		assertTrue(pending.isAll());
+		assertTrue(pending.isActiveOnly());
+	}
+
+	/**
+	 * Another run's dataframe must be materialized first, and isn't merged
+	 * with once taken.
+	 */
+	@Test
+	public void testOtherRun() {
+		PendingDataFrame pending = new PendingDataFrame();
+		assertFalse(pending.isPendingOtherRun(1));
+
+		pending.defer(0, false, true);
+		assertFalse(pending.isPendingOtherRun(0));
+		assertTrue(pending.isPendingOtherRun(1));
+
+		pending.take();
+		assertFalse(pending.isPendingOtherRun(1));
+
+		pending.defer(1, false, false);
+		assertEquals(1, pending.getRun());
+		assertFalse(pending.isAll());
+	}
+
+	/**
+	 * Referencing the pending dataframe materializes it.
+	 */
+	@Test
+	public void testMaterializeOnReference() {
+		PendingDataFrame pending = new PendingDataFrame();
+		assertFalse(pending.isReferencedBy("summary(people)", "people"));
+
+		pending.defer(0, false, false);
+		assertTrue(pending.isReferencedBy("summary(people)", "people"));
+		assertTrue(pending.isReferencedBy("people", "people"));
+		assertTrue(pending.isReferencedBy("x <- people$age", "people"));
+		assertTrue(pending.isReferencedBy("people[people$alive, ]",
+				"people"));
+		assertFalse(pending.isReferencedBy("summary(households)", "people"));
+
+		pending.take();
+		assertFalse(pending.isReferencedBy("summary(people)", "people"));
+	}
+
+	/**
+	 * Only whole R identifiers are references, and {@code .} and {@code _}
+	 * are part of identifiers, so eg: a snapshot doesn't reference the live
+	 * dataframe.
+	 */
+	@Test
+	public void testMentionsWholeIdentifiers() {
+		assertFalse(PendingDataFrame.mentions("mean(people.run1$age)",
+				"people"));
+		assertFalse(PendingDataFrame.mentions("old.people", "people"));
+		assertFalse(PendingDataFrame.mentions("my_people", "people"));
+		assertFalse(PendingDataFrame.mentions("people_1", "people"));
+		assertFalse(PendingDataFrame.mentions("people2", "people"));
+		assertFalse(PendingDataFrame.mentions("people.run10", "people.run1"));
+
+		assertTrue(PendingDataFrame.mentions("mean(people.run1$age)",
+				"people.run1"));
+		assertTrue(PendingDataFrame.mentions("get(\"people\")", "people"));
+		assertTrue(PendingDataFrame.mentions("`people`", "people"));
+		assertTrue(PendingDataFrame.mentions("f(x,people)", "people"));
+	}
+
+}
@@ -0,0 +1,79 @@
+package org.jamsim.ascape.r.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import org.jamsim.ascape.r.RExecutor;
+import org.junit.Test;
+
+public class RExecutorTest {
+
+	@Test
+	public void testTasksExecutedInSubmittedOrder() {
+		final List<Integer> executed =
+				Collections.synchronizedList(new ArrayList<Integer>());
+		RExecutor executor = new RExecutor(2);
+		List<Integer> expected = new ArrayList<Integer>();
+
+		// more tasks than the queue holds, so submit blocks
+		for (int i = 0; i < 20; i++) {
+			final int task = i;
+			expected.add(task);
+			executor.submit(i / 5, new Callable<Object>() {
+				@Override
+				public Object call() {
+					executed.add(task);
+					return null;
+				}
+			});
+		}
+
+		executor.awaitRun(1);
+		assertTrue(executed.size() >= 10);
+
+		executor.shutdown();
+		assertEquals(expected, executed);
+	}
+
+	@Test
+	public void testSubmitReturnsBeforeTaskCompletes() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final RExecutor executor = new RExecutor(4);
+
+		Future<Boolean> result = executor.submit(1, new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws InterruptedException {
+				release.await();
+				return executor.isExecutorThread();
+			}
+		});
+
+		assertFalse(result.isDone());
+		assertFalse(executor.isExecutorThread());
+
+		release.countDown();
+		assertTrue(RExecutor.await(result));
+		executor.shutdown();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAwaitRethrowsTaskFailure() {
+		RExecutor executor = new RExecutor(4);
+		executor.submit(1, new Callable<Object>() {
+			@Override
+			public Object call() {
+				throw new IllegalStateException("failed");
+			}
+		});
+		executor.awaitRun(1);
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.jamsim.ascape.r.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.jamsim.ascape.r.ROutputCache;
+import org.junit.Test;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPInteger;
+import org.rosuda.REngine.RList;
+
+public class ROutputCacheTest {
+
+	/**
+	 * A dataframe result with a key and a value column.
+	 */
+	private static REXP createResult() throws Exception {
+		return REXP.createDataFrame(new RList(new REXP[] {
+				new REXPInteger(new int[] { 1, 2 }),
+				new REXPDouble(new double[] { 0.5, 1.5 }) }, new String[] {
+				"key", "value" }));
+	}
+
+	@Test
+	public void testHitsAndMisses() throws Exception {
+		ROutputCache cache = new ROutputCache(1024 * 1024);
+		REXP result = createResult();
+
+		String key = ROutputCache.key("table(df$x)", "a", 1);
+		assertNull(cache.get(key));
+		cache.put(key, result);
+		assertSame(result, cache.get(key));
+
+		// new data version
+		assertNull(cache.get(ROutputCache.key("table(df$x)", "a", 2)));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testInvalidateRemovesOldVersions() throws Exception {
+		ROutputCache cache = new ROutputCache(1024 * 1024);
+		long version = cache.getVersion();
+		cache.put(ROutputCache.key("table(df$x)", "a", version),
+				createResult());
+
+		cache.invalidate();
+
+		assertEquals(version + 1, cache.getVersion());
+		assertEquals(0, cache.getCount());
+		assertEquals(0, cache.getSize());
+		assertNull(cache.get(ROutputCache.key("table(df$x)", "a",
+				cache.getVersion())));
+	}
+
+	@Test
+	public void testEstimatesSizeOfEachColumn() throws Exception {
+		long columnSize =
+				ROutputCache.estimateSize(new REXPDouble(new double[] { 0.5,
+						1.5 }));
+
+		assertEquals(2 * columnSize, ROutputCache.estimateSize(createResult()));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		REXP a = createResult();
+		long size = ROutputCache.estimateSize(a);
+
+		ROutputCache cache = new ROutputCache(2 * size);
+		cache.put("a", a);
+		cache.put("b", createResult());
+
+		// a is now more recently used than b
+		cache.get("a");
+		cache.put("c", createResult());
+
+		assertSame(a, cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals(2, cache.getCount());
+		assertEquals(2 * size, cache.getSize());
+		assertEquals(1, cache.getEvictions());
+	}
+
+}
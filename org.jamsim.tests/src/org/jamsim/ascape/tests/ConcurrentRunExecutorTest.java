@@ -0,0 +1,469 @@
+package org.jamsim.ascape.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.prefs.Preferences;
+
+import javax.swing.table.TableModel;
+
+import net.casper.data.model.CMarkedUpRow;
+
+import org.jamsim.ascape.ConcurrentRunExecutor;
+import org.jamsim.ascape.DataDictionary;
+import org.jamsim.ascape.MicroSimCell;
+import org.jamsim.ascape.RunFactory;
+import org.jamsim.ascape.RunListener;
+import org.jamsim.ascape.ScapeData;
+import org.jamsim.ascape.weights.WeightCalculator;
+import org.jamsim.io.ParameterSet;
+import org.jamsim.math.RNG;
+import org.jamsim.math.StreamRNG;
+import org.junit.Test;
+
+public class ConcurrentRunExecutorTest {
+
+	private static final long SEED = 42;
+
+	private static final int AGENTS = 50;
+
+	private static final int ITERATIONS = 20;
+
+	private static final int RUNS = 12;
+
+	/**
+	 * Iteration at the end of which odd walkers deactivate.
+	 */
+	private static final int DEACTIVATE_AT = 5;
+
+	/**
+	 * Adds a draw from its own random number stream, keyed by run, each
+	 * iteration. Weighted by whether its agent number is odd.
+	 */
+	public static class Walker extends MicroSimCell<WalkerData> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long agentNumber;
+
+		private RNG rng;
+
+		private double position;
+
+		private double weight;
+
+		private int iterations;
+
+		public Walker(long agentNumber) {
+			this.agentNumber = agentNumber;
+		}
+
+		@Override
+		public void initialize() {
+			rng = StreamRNG.forKey(SEED, getRun(), agentNumber);
+			position = agentNumber;
+		}
+
+		@Override
+		public void iterate() {
+			position += rng.nextUniform01();
+			iterations++;
+
+			if (agentNumber % 2 == 1 && iterations == DEACTIVATE_AT) {
+				deactivate();
+			}
+		}
+
+		public double getPosition() {
+			return position;
+		}
+
+		public double getWeight() {
+			return weight;
+		}
+
+		public int getIterations() {
+			return iterations;
+		}
+
+		@Override
+		public CMarkedUpRow getMarkedUpRow() {
+			return null;
+		}
+
+		@Override
+		public void setMarkedUpRow(CMarkedUpRow row) {
+			// not loaded from a base file
+		}
+
+		@Override
+		public void setWeight(WeightCalculator weightings) {
+			weight = weightings.getLevelWeight(Collections.singletonMap(
+					"odd", agentNumber % 2 == 1));
+		}
+	}
+
+	/**
+	 * Weights odd and even walkers.
+	 */
+	private static class OddWeights extends Observable implements
+			WeightCalculator {
+
+		private double odd;
+
+		private double even;
+
+		public OddWeights(double odd, double even) {
+			this.odd = odd;
+			this.even = even;
+		}
+
+		public void setWeights(double odd, double even) {
+			this.odd = odd;
+			this.even = even;
+			validateAndNotify();
+		}
+
+		@Override
+		public double getLevelWeight(Map<String, ?> vars) {
+			return Boolean.TRUE.equals(vars.get("odd")) ? odd : even;
+		}
+
+		@Override
+		public double[] getAllLevelProps() {
+			return new double[] { odd, even };
+		}
+
+		@Override
+		public double getWeightBase() {
+			return 1;
+		}
+
+		@Override
+		public void validateAndNotify() {
+			setChanged();
+			notifyObservers();
+		}
+
+		@Override
+		public void resetDefaults() {
+			// no defaults
+		}
+
+		@Override
+		public String getName() {
+			return "odd";
+		}
+
+		@Override
+		public TableModel getTableModel() {
+			return null;
+		}
+
+		@Override
+		public void saveState(Preferences prefs) {
+			// not saved
+		}
+
+		@Override
+		public void loadState(Preferences prefs) {
+			// not saved
+		}
+	}
+
+	/**
+	 * Creates {@link #AGENTS} walkers.
+	 */
+	public static class WalkerData implements ScapeData {
+
+		@Override
+		public Collection<Walker> loadAgents(File basefile) {
+			List<Walker> agents = new ArrayList<Walker>(AGENTS);
+			for (int i = 0; i < AGENTS; i++) {
+				agents.add(new Walker(i));
+			}
+			return agents;
+		}
+
+		@Override
+		public Map<String, TableModel> getInputDatasets() {
+			return null;
+		}
+
+		@Override
+		public Map<String, ParameterSet> getParameterSets() {
+			return null;
+		}
+
+		@Override
+		public RNG getRNG() {
+			return null;
+		}
+
+		@Override
+		public DataDictionary getDataDictionary() {
+			return null;
+		}
+	}
+
+	/**
+	 * Records the events it receives, the walkers' positions at the start and
+	 * end of each run, and their weights and number of iterations at the end
+	 * of each run.
+	 */
+	private static class Recorder implements RunListener {
+
+		private final String name;
+
+		private final List<String> events;
+
+		private final List<double[]> initialPositions =
+				new ArrayList<double[]>();
+
+		private final List<double[]> finalPositions =
+				new ArrayList<double[]>();
+
+		private final List<double[]> weights = new ArrayList<double[]>();
+
+		private final List<int[]> iterations = new ArrayList<int[]>();
+
+		public Recorder(String name, List<String> events) {
+			this.name = name;
+			this.events = events;
+		}
+
+		@Override
+		public Object runInitialized(int run,
+				List<? extends MicroSimCell<?>> agents) {
+			return positions(agents);
+		}
+
+		@Override
+		public void runStarted(int run, Object initialState) {
+			events.add(name + " started " + run);
+			initialPositions.add((double[]) initialState);
+		}
+
+		@Override
+		public void runCompleted(int run,
+				List<? extends MicroSimCell<?>> agents) {
+			events.add(name + " completed " + run);
+			finalPositions.add(positions(agents));
+
+			double[] runWeights = new double[agents.size()];
+			int[] runIterations = new int[agents.size()];
+			for (int i = 0; i < runWeights.length; i++) {
+				Walker walker = (Walker) agents.get(i);
+				runWeights[i] = walker.getWeight();
+				runIterations[i] = walker.getIterations();
+			}
+			weights.add(runWeights);
+			iterations.add(runIterations);
+		}
+
+		@Override
+		public void allRunsCompleted(int numberRuns) {
+			events.add(name + " all " + numberRuns);
+		}
+
+		private static double[] positions(
+				List<? extends MicroSimCell<?>> agents) {
+			double[] positions = new double[agents.size()];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = ((Walker) agents.get(i)).getPosition();
+			}
+			return positions;
+		}
+	}
+
+	private static ConcurrentRunExecutor<WalkerData> createExecutor(
+			int numThreads, RunListener... listeners) {
+		ConcurrentRunExecutor<WalkerData> executor =
+				new ConcurrentRunExecutor<WalkerData>(
+						new RunFactory<WalkerData>() {
+							@Override
+							public WalkerData createScapeData(int run) {
+								return new WalkerData();
+							}
+						}, null, ITERATIONS, numThreads, null);
+
+		for (RunListener listener : listeners) {
+			executor.addRunListener(listener);
+		}
+
+		return executor;
+	}
+
+	private static void execute(int numThreads, Recorder... recorders)
+			throws IOException {
+		createExecutor(numThreads, recorders).execute(RUNS);
+	}
+
+	/**
+	 * Runs executed at the same time produce the same events and results as
+	 * runs executed one after the other.
+	 */
+	@Test
+	public void testConcurrentSameAsSequential() throws IOException {
+		Recorder sequential = new Recorder("R", new ArrayList<String>());
+		Recorder concurrent = new Recorder("R", new ArrayList<String>());
+
+		execute(1, sequential);
+		execute(4, concurrent);
+
+		assertEquals(sequential.events, concurrent.events);
+		assertEquals(RUNS, concurrent.finalPositions.size());
+
+		for (int run = 0; run < RUNS; run++) {
+			assertArrayEquals(sequential.initialPositions.get(run),
+					concurrent.initialPositions.get(run), 0);
+			assertArrayEquals(sequential.finalPositions.get(run),
+					concurrent.finalPositions.get(run), 0);
+		}
+
+		// runs draw from different streams
+		assertTrue(concurrent.finalPositions.get(0)[0] != concurrent
+				.finalPositions.get(1)[0]);
+	}
+
+	/**
+	 * Each run is started by every listener before it is completed, runs are
+	 * reported in order, and listeners are told all runs are completed in
+	 * reverse order.
+	 */
+	@Test
+	public void testEventOrder() throws IOException {
+		List<String> events = new ArrayList<String>();
+		List<String> expected = new ArrayList<String>();
+
+		execute(4, new Recorder("A", events), new Recorder("B", events));
+
+		for (int run = 1; run <= RUNS; run++) {
+			expected.add("A started " + run);
+			expected.add("B started " + run);
+			expected.add("A completed " + run);
+			expected.add("B completed " + run);
+		}
+		expected.add("B all " + RUNS);
+		expected.add("A all " + RUNS);
+
+		assertEquals(expected, events);
+	}
+
+	/**
+	 * The state captured when a run is initialised is from before its agents
+	 * are iterated.
+	 */
+	@Test
+	public void testInitialState() throws IOException {
+		Recorder recorder = new Recorder("R", new ArrayList<String>());
+
+		execute(4, recorder);
+
+		for (int run = 0; run < RUNS; run++) {
+			double[] initial = recorder.initialPositions.get(run);
+			double[] last = recorder.finalPositions.get(run);
+			for (int i = 0; i < AGENTS; i++) {
+				assertEquals(i, initial[i], 0);
+				assertTrue(last[i] > initial[i]);
+			}
+		}
+	}
+
+	/**
+	 * Each run's agents are weighted the same as the agents of a scape are
+	 * weighted by {@link org.jamsim.ascape.MicroSimScape#setWeightCalculator}
+	 * for a sequential run, ie: by observing the weight calculator.
+	 */
+	@Test
+	public void testWeightsSameAsSequential() throws IOException {
+		OddWeights wcalc = new OddWeights(2, 3);
+
+		List<Walker> sequential =
+				new ArrayList<Walker>(new WalkerData().loadAgents(null));
+		for (Walker agent : sequential) {
+			wcalc.addObserver(agent);
+		}
+		wcalc.validateAndNotify();
+
+		Recorder recorder = new Recorder("R", new ArrayList<String>());
+		ConcurrentRunExecutor<WalkerData> executor =
+				createExecutor(4, recorder);
+		executor.setWeightCalculator(wcalc);
+		executor.execute(RUNS);
+
+		for (int run = 0; run < RUNS; run++) {
+			double[] weights = recorder.weights.get(run);
+			for (int i = 0; i < AGENTS; i++) {
+				assertEquals(sequential.get(i).getWeight(), weights[i], 0);
+			}
+			assertEquals(3, weights[0], 0);
+			assertEquals(2, weights[1], 0);
+		}
+	}
+
+	/**
+	 * Runs already loaded when the weight calculator changes are weighted
+	 * again before they are reported.
+	 */
+	@Test
+	public void testReweightedWhenCalculatorChanges() throws IOException {
+		final OddWeights wcalc = new OddWeights(2, 3);
+		Recorder recorder = new Recorder("R", new ArrayList<String>());
+
+		RunListener changer = new Recorder("C", new ArrayList<String>()) {
+			@Override
+			public void runCompleted(int run,
+					List<? extends MicroSimCell<?>> agents) {
+				if (run == 1) {
+					wcalc.setWeights(5, 7);
+				}
+			}
+		};
+
+		ConcurrentRunExecutor<WalkerData> executor =
+				createExecutor(4, changer, recorder);
+		executor.setWeightCalculator(wcalc);
+		executor.execute(RUNS);
+
+		assertEquals(2, recorder.weights.get(0)[1], 0);
+		for (int run = 1; run < RUNS; run++) {
+			assertEquals(7, recorder.weights.get(run)[0], 0);
+			assertEquals(5, recorder.weights.get(run)[1], 0);
+		}
+	}
+
+	/**
+	 * When iterating active agents only, agents are not iterated after they
+	 * deactivate.
+	 */
+	@Test
+	public void testActiveOnly() throws IOException {
+		Recorder all = new Recorder("R", new ArrayList<String>());
+		Recorder active = new Recorder("R", new ArrayList<String>());
+
+		createExecutor(4, all).execute(RUNS);
+
+		ConcurrentRunExecutor<WalkerData> executor = createExecutor(4, active);
+		executor.setActiveOnly(true);
+		executor.execute(RUNS);
+
+		for (int run = 0; run < RUNS; run++) {
+			for (int i = 0; i < AGENTS; i++) {
+				assertEquals(ITERATIONS, all.iterations.get(run)[i]);
+				assertEquals(i % 2 == 1 ? DEACTIVATE_AT : ITERATIONS,
+						active.iterations.get(run)[i]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package org.jamsim.ascape.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jamsim.ascape.EventHandler;
+import org.jamsim.ascape.EventScheduler;
+import org.junit.Test;
+
+public class EventSchedulerTest {
+
+	/**
+	 * Records the events it handles.
+	 */
+	private static class Recorder implements EventHandler {
+
+		private final List<Double> times = new ArrayList<Double>();
+
+		private final List<Integer> types = new ArrayList<Integer>();
+
+		@Override
+		public void handleEvent(int eventType, double time) {
+			times.add(time);
+			types.add(eventType);
+		}
+	}
+
+	@Test
+	public void testTimeOrder() {
+		EventScheduler scheduler = new EventScheduler(1);
+		Recorder recorder = new Recorder();
+		Random random = new Random(42);
+
+		for (int i = 0; i < 10000; i++) {
+			scheduler.schedule(recorder, i, random.nextDouble() * 100);
+		}
+
+		assertEquals(10000, scheduler.processUntil(100));
+		assertTrue(scheduler.isEmpty());
+
+		for (int i = 1; i < recorder.times.size(); i++) {
+			assertTrue(recorder.times.get(i - 1) <= recorder.times.get(i));
+		}
+	}
+
+	@Test
+	public void testTiesInScheduleOrder() {
+		EventScheduler scheduler = new EventScheduler();
+		Recorder recorder = new Recorder();
+
+		for (int i = 0; i < 100; i++) {
+			scheduler.schedule(recorder, i, i % 2 == 0 ? 2 : 1);
+		}
+		scheduler.processUntil(2);
+
+		for (int i = 0; i < 50; i++) {
+			assertEquals(2 * i + 1, (int) recorder.types.get(i));
+			assertEquals(2 * i, (int) recorder.types.get(50 + i));
+		}
+	}
+
+	/**
+	 * Each iteration handles events in (i-1, i], including events scheduled
+	 * while handling.
+	 */
+	@Test
+	public void testProcessUntil() {
+		final EventScheduler scheduler = new EventScheduler();
+		final Recorder recorder = new Recorder();
+
+		EventHandler repeating = new EventHandler() {
+			@Override
+			public void handleEvent(int eventType, double time) {
+				recorder.handleEvent(eventType, time);
+				scheduler.schedule(this, eventType, time + 0.4);
+			}
+		};
+
+		scheduler.schedule(repeating, 0, 0.5);
+		scheduler.schedule(recorder, 1, 1);
+		scheduler.schedule(recorder, 2, 1.5);
+
+		assertEquals(3, scheduler.processUntil(1));
+		assertEquals(1.0, scheduler.getTime(), 0);
+		assertEquals(1.3, scheduler.getNextTime(), 1e-12);
+
+		assertEquals(3, scheduler.processUntil(2));
+		assertEquals(6, recorder.times.size());
+		assertEquals(1.5, recorder.times.get(4), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testScheduleBeforeNow() {
+		EventScheduler scheduler = new EventScheduler();
+		scheduler.processUntil(1);
+		scheduler.schedule(new Recorder(), 0, 0.5);
+	}
+
+}
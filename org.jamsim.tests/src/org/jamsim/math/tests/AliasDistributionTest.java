@@ -0,0 +1,79 @@
+package org.jamsim.math.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jamsim.math.AliasDistribution;
+import org.jamsim.math.IntervalsIntMap;
+import org.jamsim.math.StreamRNG;
+import org.junit.Test;
+
+public class AliasDistributionTest {
+
+	private static final int DRAWS = 1000000;
+
+	private static final double[] PROBS = { 0.1, 0.0, 0.25, 0.05, 0.6 };
+
+	private static final int[] VALUES = { 10, 20, 30, 40, 50 };
+
+	/**
+	 * Draws are within 5 standard errors of the same frequencies as the
+	 * cumulative distribution.
+	 */
+	@Test
+	public void testFrequencies() {
+		AliasDistribution alias = new AliasDistribution(PROBS, VALUES);
+		IntervalsIntMap cumulative =
+				IntervalsIntMap.newProbabilityDistribution(PROBS, VALUES);
+		StreamRNG rng = new StreamRNG(42);
+
+		int[] aliasCounts = new int[VALUES.length];
+		int[] cumulativeCounts = new int[VALUES.length];
+
+		for (int i = 0; i < DRAWS; i++) {
+			double random = rng.nextUniform01();
+			aliasCounts[alias.draw(random) / 10 - 1]++;
+			cumulativeCounts[cumulative.draw(random) / 10 - 1]++;
+		}
+
+		assertEquals(0, aliasCounts[1]);
+
+		for (int i = 0; i < VALUES.length; i++) {
+			double se = Math.sqrt(PROBS[i] * (1 - PROBS[i]) / DRAWS);
+			assertEquals(PROBS[i], (double) aliasCounts[i] / DRAWS, 5 * se);
+			assertEquals(PROBS[i], (double) cumulativeCounts[i] / DRAWS,
+					5 * se);
+		}
+	}
+
+	/**
+	 * Probabilities are divided by their sum, ie: the share of evenly spaced
+	 * random numbers that draw each value is its probability.
+	 */
+	@Test
+	public void testUnnormalised() {
+		AliasDistribution alias =
+				new AliasDistribution(new double[] { 3, 1 }, new int[] { 1, 2 });
+		int steps = 1000;
+		int ones = 0;
+
+		for (int i = 1; i <= steps; i++) {
+			if (alias.draw((double) i / steps) == 1) {
+				ones++;
+			}
+		}
+
+		assertEquals(750, ones);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroRandom() {
+		new AliasDistribution(PROBS, VALUES).draw(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeProbability() {
+		new AliasDistribution(new double[] { 0.5, -0.5, 1 }, new int[] { 1,
+				2, 3 });
+	}
+
+}
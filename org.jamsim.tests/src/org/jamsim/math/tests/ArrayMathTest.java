@@ -0,0 +1,60 @@
+package org.jamsim.math.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.jamsim.math.ArrayMath;
+import org.junit.Test;
+
+public class ArrayMathTest {
+
+	private static final double DELTA = 1e-12;
+
+	private final double[] a = { 1, 2, 3, 4, 5 };
+	private final double[] b = { 0.5, -1, 2, 0, 10 };
+
+	@Test
+	public void testAddInPlace() {
+		double[] dest = a.clone();
+		ArrayMath.add(dest, b, dest);
+		assertArrayEquals(new double[] { 1.5, 1, 5, 4, 15 }, dest, DELTA);
+	}
+
+	@Test
+	public void testScaleAndMultiplyAdd() {
+		assertArrayEquals(new double[] { 2, 4, 6, 8, 10 }, ArrayMath.scale(a,
+				2, new double[5]), DELTA);
+		assertArrayEquals(new double[] { 1.5, 0, 9, 4, 55 }, ArrayMath
+				.multiplyAdd(a, b, a, new double[5]), DELTA);
+	}
+
+	@Test
+	public void testWeightedSum() {
+		double[] dest =
+				ArrayMath.weightedSum(new double[][] { a, b }, new double[] {
+						2, 1 }, new double[5]);
+		assertArrayEquals(new double[] { 2.5, 3, 8, 8, 20 }, dest, DELTA);
+	}
+
+	@Test
+	public void testReductions() {
+		assertEquals(15, ArrayMath.sum(a), DELTA);
+		assertEquals(0.5 - 2 + 6 + 50, ArrayMath.dot(a, b), DELTA);
+		assertEquals(1 + 3 + 5, ArrayMath.maskedSum(a, new boolean[] { true,
+				false, true, false, true }), DELTA);
+		assertArrayEquals(new double[] { 1, 3, 6, 10, 15 }, ArrayMath
+				.prefixSum(a, new double[5]), DELTA);
+	}
+
+	@Test
+	public void testCompensatedSum() {
+		double[] values = { 1e16, 1, -1e16, 1 };
+		assertEquals(2, ArrayMath.compensatedSum(values), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLengthMismatch() {
+		ArrayMath.add(a, new double[4], new double[5]);
+	}
+
+}
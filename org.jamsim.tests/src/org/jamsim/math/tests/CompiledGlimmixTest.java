@@ -0,0 +1,110 @@
+package org.jamsim.math.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jamsim.math.CompiledGlimmix;
+import org.jamsim.math.MathUtil;
+import org.jamsim.math.StreamRNG;
+import org.junit.Test;
+
+public class CompiledGlimmixTest {
+
+	private static final String[] VARIABLES = { "age", "Intercept", "unused",
+			"sexLvl1", "income" };
+
+	private static final int AGENTS = 1000;
+
+	private static CompiledGlimmix compile() {
+		Map<String, Double> effects = new LinkedHashMap<String, Double>();
+		effects.put("Intercept", -1.5);
+		effects.put("sexLvl1", 0.3);
+		effects.put("age", 0.02);
+		effects.put("income", -0.00001);
+		return new CompiledGlimmix(effects, VARIABLES);
+	}
+
+	private static double[][] columns() {
+		StreamRNG rng = new StreamRNG(1);
+		double[][] columns = new double[VARIABLES.length][AGENTS];
+
+		for (int j = 0; j < AGENTS; j++) {
+			columns[0][j] = Math.floor(rng.nextUniform01() * 100);
+			columns[1][j] = 1;
+			columns[3][j] = rng.nextUniform01() < 0.5 ? 1 : 0;
+			columns[4][j] = rng.nextUniform01() * 100000;
+		}
+		columns[2] = null;
+		return columns;
+	}
+
+	private static double[] row(double[][] columns, int agent) {
+		double[] row = new double[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			row[i] = columns[i] == null ? Double.NaN : columns[i][agent];
+		}
+		return row;
+	}
+
+	@Test
+	public void testSumOfProducts() {
+		CompiledGlimmix glimmix = compile();
+		double[][] columns = columns();
+		double[] sums = new double[AGENTS];
+
+		glimmix.sumOfProducts(columns, 0, AGENTS, sums);
+
+		for (int j = 0; j < AGENTS; j++) {
+			double[] row = row(columns, j);
+			double expected =
+					0 + -1.5 * row[1] + 0.3 * row[3] + 0.02 * row[0]
+							+ -0.00001 * row[4];
+
+			assertEquals(expected, glimmix.sumOfProducts(row), 0);
+			assertEquals(expected, sums[j], 0);
+		}
+	}
+
+	@Test
+	public void testBatchSameAsRows() {
+		CompiledGlimmix glimmix = compile();
+		double[][] columns = columns();
+		int from = 100;
+		int to = 900;
+
+		double[] probs = new double[AGENTS];
+		int[] draws = new int[AGENTS];
+		int[] integers = new int[AGENTS];
+		glimmix.evaluateLogitProb(columns, from, to, 0.1, probs);
+		glimmix.binaryLogitDraw(columns, from, to, 0.1, new StreamRNG(9),
+				draws);
+		glimmix.evaluateInteger(columns, from, to, 0.1, true, 0, 3, integers);
+
+		StreamRNG rng = new StreamRNG(9);
+		for (int j = from; j < to; j++) {
+			double[] row = row(columns, j);
+
+			assertEquals(MathUtil.probFromLogit(glimmix.sumOfProducts(row)
+					+ 0.1), probs[j], 0);
+			assertEquals(glimmix.evaluateLogitProb(row, 0.1), probs[j], 0);
+			assertEquals(glimmix.binaryLogitDraw(row, 0.1, rng), draws[j]);
+			assertEquals(glimmix.evaluateInteger(row, 0.1, true, 0, 3),
+					integers[j]);
+		}
+
+		// agents outside the range are untouched
+		assertArrayEquals(new int[from], Arrays.copyOf(draws, from));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingVariable() {
+		Map<String, Double> effects = new LinkedHashMap<String, Double>();
+		effects.put("Foo", 1.0);
+		new CompiledGlimmix(effects, VARIABLES);
+	}
+
+}
@@ -0,0 +1,110 @@
+package org.jamsim.math.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.jamsim.math.EytzingerIntervalsIntMap;
+import org.jamsim.math.IntervalsIntMap;
+import org.jamsim.math.StreamRNG;
+import org.junit.Test;
+
+public class EytzingerIntervalsIntMapTest {
+
+	/**
+	 * Assert both maps return the same value, or throw the same exception.
+	 */
+	private static void assertSameMapping(IntervalsIntMap expected,
+			IntervalsIntMap actual, double x) {
+		String expectedResult;
+		String actualResult;
+
+		try {
+			expectedResult = Integer.toString(expected.getMappedValue(x));
+		} catch (RuntimeException e) {
+			expectedResult = e.toString();
+		}
+
+		try {
+			actualResult = Integer.toString(actual.getMappedValue(x));
+		} catch (RuntimeException e) {
+			actualResult = e.toString();
+		}
+
+		assertEquals("x = " + x, expectedResult, actualResult);
+	}
+
+	private static void assertSameMappings(double leftBound,
+			double[] rightBounds, StreamRNG rng) {
+		int[] values = new int[rightBounds.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = i * 3 + 1;
+		}
+
+		IntervalsIntMap expected =
+				new IntervalsIntMap(leftBound, rightBounds, values);
+		IntervalsIntMap actual =
+				new EytzingerIntervalsIntMap(leftBound, rightBounds, values);
+		double range = rightBounds[rightBounds.length - 1] - leftBound;
+
+		// every bound, either side of every bound, and random points
+		for (double bound : expected.getIntervals()) {
+			assertSameMapping(expected, actual, bound);
+			assertSameMapping(expected, actual, Math.nextUp(bound));
+			assertSameMapping(expected, actual, Math.nextAfter(bound,
+					Double.NEGATIVE_INFINITY));
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertSameMapping(expected, actual, leftBound - 0.1 * range
+					+ rng.nextUniform01() * 1.2 * range);
+		}
+
+		assertSameMapping(expected, actual, Double.NaN);
+		assertSameMapping(expected, actual, Double.POSITIVE_INFINITY);
+		assertSameMapping(expected, actual, Double.NEGATIVE_INFINITY);
+	}
+
+	@Test
+	public void testSameAsBinarySearch() {
+		StreamRNG rng = new StreamRNG(3);
+
+		for (int n = 1; n <= 300; n++) {
+			double[] rightBounds = new double[n];
+			for (int i = 0; i < n; i++) {
+				rightBounds[i] = rng.nextUniform01() * 1000;
+			}
+			Arrays.sort(rightBounds);
+
+			assertSameMappings(-1, rightBounds, rng);
+		}
+	}
+
+	@Test
+	public void testRepeatedBounds() {
+		StreamRNG rng = new StreamRNG(5);
+
+		for (int n = 2; n <= 100; n++) {
+			double[] rightBounds = new double[n];
+			for (int i = 0; i < n; i++) {
+				rightBounds[i] = Math.floor(rng.nextUniform01() * 10);
+			}
+			Arrays.sort(rightBounds);
+
+			assertSameMappings(-1, rightBounds, rng);
+		}
+	}
+
+	@Test
+	public void testProbabilityDistribution() {
+		IntervalsIntMap expected =
+				IntervalsIntMap.newProbabilityDistribution(new double[] {
+						0.2, 0, 0.3, 0.5 }, new int[] { 1, 2, 3, 4 });
+		IntervalsIntMap actual = EytzingerIntervalsIntMap.of(expected);
+
+		for (int i = 1; i <= 1000; i++) {
+			assertSameMapping(expected, actual, i / 1000.0);
+		}
+		assertSameMapping(expected, actual, 0);
+	}
+
+}
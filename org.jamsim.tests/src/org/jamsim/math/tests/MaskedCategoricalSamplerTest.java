@@ -0,0 +1,121 @@
+package org.jamsim.math.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.jamsim.math.IntervalsIntMap;
+import org.jamsim.math.MaskedCategoricalSampler;
+import org.jamsim.math.StreamRNG;
+import org.junit.Test;
+
+public class MaskedCategoricalSamplerTest {
+
+	private static final double[] PROBS = { 0.1, 0.3, 0.05, 0.25, 0.2, 0.1 };
+
+	/**
+	 * Draw by creating the cumulative distribution of the included
+	 * probabilities.
+	 */
+	private static int drawFromDistribution(boolean[] includeProb,
+			double[] probabilities, double random) {
+		int[] indices = new int[includeProb.length];
+		double[] included = new double[includeProb.length];
+		int n = 0;
+
+		for (int i = 0; i < includeProb.length; i++) {
+			if (includeProb[i]) {
+				indices[n] = i;
+				included[n++] = probabilities[i];
+			}
+		}
+
+		if (n == 0) {
+			return -1;
+		}
+
+		return IntervalsIntMap.newProbabilityDistribution(
+				Arrays.copyOf(included, n), Arrays.copyOf(indices, n))
+				.getMappedValue(random);
+	}
+
+	private static boolean[] randomMask(StreamRNG rng, int length) {
+		boolean[] mask = new boolean[length];
+		for (int i = 0; i < length; i++) {
+			mask[i] = rng.nextUniform01() < 0.6;
+		}
+		return mask;
+	}
+
+	@Test
+	public void testSameAsDistribution() {
+		StreamRNG rng = new StreamRNG(7);
+		MaskedCategoricalSampler sampler = new MaskedCategoricalSampler(PROBS);
+
+		for (int i = 0; i < 100000; i++) {
+			boolean[] mask = randomMask(rng, PROBS.length);
+			double random = rng.nextUniform01();
+
+			assertEquals(drawFromDistribution(mask, PROBS, random),
+					sampler.draw(mask, random));
+		}
+	}
+
+	@Test
+	public void testBatch() {
+		StreamRNG rng = new StreamRNG(11);
+		MaskedCategoricalSampler sampler = new MaskedCategoricalSampler(PROBS);
+		int agents = 1000;
+
+		boolean[][] masks = new boolean[agents][];
+		double[] randoms = new double[agents];
+		int[] dest = new int[agents];
+
+		for (int i = 0; i < agents; i++) {
+			masks[i] = randomMask(rng, PROBS.length);
+			randoms[i] = rng.nextUniform01();
+		}
+
+		sampler.draw(masks, randoms, dest);
+
+		for (int i = 0; i < agents; i++) {
+			assertEquals(sampler.draw(masks[i], randoms[i]), dest[i]);
+		}
+	}
+
+	@Test
+	public void testNoneIncluded() {
+		assertEquals(-1, IntervalsIntMap.drawIndexFromProbs(
+				new boolean[PROBS.length], PROBS, 0.5));
+	}
+
+	@Test
+	public void testUpperBound() {
+		boolean[] mask = { false, true, false, true, false, false };
+
+		assertEquals(1, IntervalsIntMap.drawIndexFromProbs(mask, PROBS,
+				0.3 / 0.55));
+		assertEquals(3, IntervalsIntMap.drawIndexFromProbs(mask, PROBS, 1));
+	}
+
+	/**
+	 * A random number equal to a bound repeated by zero probabilities draws
+	 * the first index with that bound, never a zero probability index.
+	 */
+	@Test
+	public void testRepeatedBound() {
+		boolean[] mask = { true, true, true, true };
+
+		assertEquals(0, MaskedCategoricalSampler.drawIndex(mask, new double[] {
+				0.5, 0, 0, 0.5 }, 0.5));
+		assertEquals(2, MaskedCategoricalSampler.drawIndex(mask, new double[] {
+				0, 0.5, 0.5, 0 }, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNaN() {
+		IntervalsIntMap.drawIndexFromProbs(new boolean[] { true, true },
+				new double[] { 0.5, 0.5 }, Double.NaN);
+	}
+
+}
@@ -0,0 +1,190 @@
+package org.jamsim.math.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.jamsim.math.AbstractRNG;
+import org.jamsim.math.IntervalsIntMap;
+import org.jamsim.math.NonRNG;
+import org.jamsim.math.RNG;
+import org.jamsim.math.StreamRNG;
+import org.junit.Test;
+
+public class StreamRNGTest {
+
+	private static final int DRAWS = 10000;
+
+	@Test
+	public void testSameKeySameStream() {
+		StreamRNG a = StreamRNG.forKey(1, 2, 3);
+		StreamRNG b = StreamRNG.forKey(1, 2, 3);
+
+		for (int i = 0; i < DRAWS; i++) {
+			assertEquals(a.nextUniform01(), b.nextUniform01(), 0);
+		}
+	}
+
+	@Test
+	public void testDifferentKeysDifferentStreams() {
+		double first = StreamRNG.forKey(1, 2, 3).nextUniform01();
+
+		assertFalse(first == StreamRNG.forKey(1, 2, 4).nextUniform01());
+		assertFalse(first == StreamRNG.forKey(1, 3, 3).nextUniform01());
+		assertFalse(first == StreamRNG.forKey(2, 2, 3).nextUniform01());
+	}
+
+	/**
+	 * Draws from an agent's stream don't depend on draws from other agents'
+	 * streams, ie: on the order agents are iterated.
+	 */
+	@Test
+	public void testOrderIndependent() {
+		StreamRNG agent1 = StreamRNG.forKey(1, 1, 1);
+		StreamRNG agent2 = StreamRNG.forKey(1, 1, 2);
+		agent2.nextUniform01();
+		agent2.nextUniform01();
+		double x = agent1.nextUniform01();
+
+		assertEquals(StreamRNG.forKey(1, 1, 1).nextUniform01(), x, 0);
+	}
+
+	@Test
+	public void testSplitReproducible() {
+		StreamRNG a = new StreamRNG(42).split();
+		StreamRNG b = new StreamRNG(42).split();
+
+		for (int i = 0; i < DRAWS; i++) {
+			assertEquals(a.nextLong(), b.nextLong());
+		}
+	}
+
+	@Test
+	public void testUniformOpenInterval() {
+		StreamRNG rng = new StreamRNG(0);
+		double sum = 0;
+
+		for (int i = 0; i < DRAWS; i++) {
+			double x = rng.nextUniform01();
+			assertTrue(x > 0 && x < 1);
+			sum += x;
+		}
+
+		assertEquals(0.5, sum / DRAWS, 0.01);
+	}
+
+	@Test
+	public void testBulkUniformSameAsScalar() {
+		StreamRNG bulk = new StreamRNG(7);
+		StreamRNG scalar = new StreamRNG(7);
+		double[] dest = new double[DRAWS];
+
+		bulk.nextUniform01(dest, 1, DRAWS);
+
+		for (int i = 1; i < DRAWS; i++) {
+			assertEquals(scalar.nextUniform01(), dest[i], 0);
+		}
+
+		// streams are in the same place afterwards
+		assertEquals(scalar.nextLong(), bulk.nextLong());
+	}
+
+	@Test
+	public void testBulkGaussianSameAsScalar() {
+		StreamRNG bulk = new StreamRNG(7);
+		StreamRNG scalar = new StreamRNG(7);
+		double[] dest = new double[DRAWS];
+
+		bulk.nextGaussian(dest, 0, DRAWS, 10, 2);
+
+		for (int i = 0; i < DRAWS; i++) {
+			assertEquals(scalar.nextGaussian(10, 2), dest[i], 0);
+		}
+	}
+
+	@Test
+	public void testBulkMappedSameAsScalar() {
+		IntervalsIntMap map =
+				IntervalsIntMap.newProbabilityDistribution(new double[] {
+						0.2, 0.3, 0.5 }, new int[] { 1, 2, 3 });
+		StreamRNG bulk = new StreamRNG(7);
+		StreamRNG scalar = new StreamRNG(7);
+		int[] dest = new int[DRAWS];
+
+		bulk.nextMappedValues(map, dest, 0, DRAWS);
+
+		for (int i = 0; i < DRAWS; i++) {
+			assertEquals(map.getMappedValue(scalar.nextUniform01()), dest[i]);
+		}
+	}
+
+	/**
+	 * A restored stream continues with the draws the saved stream made.
+	 */
+	@Test
+	public void testRestoreState() throws IOException {
+		StreamRNG saved = StreamRNG.forKey(1, 2, 3);
+		saved.nextUniform01();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		saved.writeState(new DataOutputStream(bytes));
+
+		StreamRNG restored = new StreamRNG(0);
+		restored.readState(new DataInputStream(new ByteArrayInputStream(bytes
+				.toByteArray())));
+
+		for (int i = 0; i < DRAWS; i++) {
+			assertEquals(saved.nextUniform01(), restored.nextUniform01(), 0);
+		}
+	}
+
+	/**
+	 * Bulk draws from an {@link RNG} that is not an {@link AbstractRNG} are
+	 * the same as scalar draws.
+	 */
+	@Test
+	public void testFillFromPlainRNG() {
+		final StreamRNG stream = new StreamRNG(7);
+		RNG plain = new RNG() {
+			@Override
+			public double nextUniform01() {
+				return stream.nextUniform01();
+			}
+
+			@Override
+			public double nextGaussian(double mean, double standardDeviation) {
+				return stream.nextGaussian(mean, standardDeviation);
+			}
+		};
+		StreamRNG scalar = new StreamRNG(7);
+		double[] dest = new double[DRAWS];
+
+		AbstractRNG.fillUniform01(plain, dest, 0, DRAWS);
+
+		for (int i = 0; i < DRAWS; i++) {
+			assertEquals(scalar.nextUniform01(), dest[i], 0);
+		}
+	}
+
+	/**
+	 * An empty range doesn't draw from the map, so can't throw.
+	 */
+	@Test
+	public void testNonRNGEmptyMappedRange() {
+		IntervalsIntMap map =
+				IntervalsIntMap.newProbabilityDistribution(new double[] {
+						0.5, 0.5 }, new int[] { 1, 2 });
+		int[] dest = new int[1];
+
+		// 2 is outside the map's intervals
+		new NonRNG(2).nextMappedValues(map, dest, 0, 0);
+
+		assertEquals(0, dest[0]);
+	}
+}
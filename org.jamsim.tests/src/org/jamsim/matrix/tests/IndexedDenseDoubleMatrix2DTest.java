@@ -0,0 +1,90 @@
+package org.jamsim.matrix.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jamsim.matrix.IndexedDenseDoubleMatrix2D;
+import org.junit.Test;
+
+public class IndexedDenseDoubleMatrix2DTest {
+
+	private static final String[] INDEX_COLUMNS = { "Sex", "Age" };
+
+	private static final String[] COLUMNS = { "Value" };
+
+	private static IndexedDenseDoubleMatrix2D matrix(Object[][] index) {
+		double[][] values = new double[index.length][1];
+		for (int row = 0; row < index.length; row++) {
+			values[row][0] = row * 10;
+		}
+		return new IndexedDenseDoubleMatrix2D(INDEX_COLUMNS, index, COLUMNS,
+				values);
+	}
+
+	/**
+	 * Rows of every sex and age key.
+	 */
+	private static Object[][] keys(Object[] sexes, Object[] ages) {
+		Object[][] index = new Object[sexes.length * ages.length][];
+		int row = 0;
+		for (Object sex : sexes) {
+			for (Object age : ages) {
+				index[row++] = new Object[] { sex, age };
+			}
+		}
+		return index;
+	}
+
+	private static void assertLookups(Object[][] index) {
+		IndexedDenseDoubleMatrix2D matrix = matrix(index);
+
+		for (int row = 0; row < index.length; row++) {
+			assertEquals(row, matrix.indexLookupRow(index[row].clone()));
+			assertEquals(row * 10, matrix.indexLookupRowView(index[row])
+					.get(0), 0);
+		}
+	}
+
+	@Test
+	public void testPackedKeys() {
+		assertLookups(keys(new Object[] { 'F', 'M' }, new Object[] { -5, 0,
+				7, 100000 }));
+		assertLookups(keys(new Object[] { 'F', 'M' }, new Object[] {
+				Integer.MIN_VALUE, Integer.MAX_VALUE, 0 }));
+	}
+
+	@Test
+	public void testHashedKeys() {
+		assertLookups(keys(new Object[] { "F", "M" }, new Object[] { 1.0,
+				2.5, 3.0 }));
+		assertLookups(keys(new Object[] { 'F', null }, new Object[] { 1, 2 }));
+	}
+
+	@Test
+	public void testRepeatedKeyFirstRow() {
+		Object[][] index = { { 'F', 1 }, { 'M', 1 }, { 'F', 1 } };
+
+		assertEquals(0, matrix(index).indexLookupRow(new Object[] { 'F', 1 }));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testMissingKey() {
+		matrix(keys(new Object[] { 'F', 'M' }, new Object[] { 1, 2 }))
+				.indexLookupRow(new Object[] { 'F', 3 });
+	}
+
+	/**
+	 * Keys must be of the same type as the index.
+	 */
+	@Test(expected = RuntimeException.class)
+	public void testWrongKeyType() {
+		matrix(keys(new Object[] { 'F', 'M' }, new Object[] { 1, 2 }))
+				.indexLookupRow(new Object[] { 'F', 1.0 });
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testShortKey() {
+		matrix(keys(new Object[] { 'F', 'M' }, new Object[] { 1, 2 }))
+				.indexLookupRow(new Object[] { 'F' });
+	}
+
+}
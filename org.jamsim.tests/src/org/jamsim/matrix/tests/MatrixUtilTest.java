@@ -0,0 +1,59 @@
+package org.jamsim.matrix.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jamsim.matrix.MatrixUtil;
+import org.junit.Test;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+public class MatrixUtilTest {
+
+	private final DoubleMatrix2D matrix =
+			new DenseDoubleMatrix2D(new double[][] { { 1, 2, 3 },
+					{ 4, 5, 6 } });
+
+	private final DoubleMatrix2D adjustments =
+			new DenseDoubleMatrix2D(new double[][] { { 1, 10, 100 },
+					{ 0.5, 2, 0 } });
+
+	@Test
+	public void testAdjustedViewsMatchCopies() {
+		DoubleMatrix2D[] copies =
+				MatrixUtil.createAdjustedMatrixArray(matrix, adjustments);
+		DoubleMatrix2D[] views =
+				MatrixUtil.createAdjustedMatrixViews(matrix, adjustments);
+
+		assertEquals(2, views.length);
+		for (int i = 0; i < views.length; i++) {
+			assertEquals(copies[i], views[i]);
+		}
+		assertEquals(600, views[0].getQuick(1, 2), 0);
+		assertEquals(600, views[0].viewDice().getQuick(2, 1), 0);
+	}
+
+	@Test
+	public void testParallelAdjustIntoBuffers() {
+		DoubleMatrix2D[] buffers =
+				new DoubleMatrix2D[] { matrix.like(), matrix.like() };
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try {
+			MatrixUtil.createAdjustedMatrixArray(matrix, adjustments,
+					buffers, executor);
+		} finally {
+			executor.shutdown();
+		}
+
+		DoubleMatrix2D[] copies =
+				MatrixUtil.createAdjustedMatrixArray(matrix, adjustments);
+		for (int i = 0; i < buffers.length; i++) {
+			assertEquals(copies[i], buffers[i]);
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package org.jamsim.matrix.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jamsim.data.ValueProvider;
+import org.jamsim.matrix.IndexedDenseDoubleMatrix2D;
+import org.jamsim.matrix.RateTable;
+import org.jamsim.matrix.TableDimension;
+import org.junit.Test;
+
+public class RateTableTest {
+
+	private enum Sex implements ValueProvider<Character> {
+		FEMALE('F'), MALE('M');
+
+		private final char value;
+
+		private Sex(char value) {
+			this.value = value;
+		}
+
+		@Override
+		public Character getValue() {
+			return value;
+		}
+	}
+
+	private static final String[] INDEX_COLUMNS = { "Age", "Sex" };
+
+	private static final String[] COLUMNS = { "Rate", "Other" };
+
+	/**
+	 * Rows by age 1-3 and sex, in a different order to the table, plus a row
+	 * for an age outside the table.
+	 */
+	private static IndexedDenseDoubleMatrix2D matrix() {
+		Object[][] index = new Object[7][];
+		double[][] values = new double[7][];
+		int row = 0;
+
+		for (Sex sex : Sex.values()) {
+			for (int age = 3; age >= 1; age--) {
+				index[row] = new Object[] { Double.valueOf(age), sex.getValue() };
+				values[row] = new double[] { age * 10 + sex.ordinal(), -age };
+				row++;
+			}
+		}
+		index[row] = new Object[] { Double.valueOf(99), 'F' };
+		values[row] = new double[] { 0, 0 };
+
+		return new IndexedDenseDoubleMatrix2D(INDEX_COLUMNS, index, COLUMNS,
+				values);
+	}
+
+	@Test
+	public void testLookup() {
+		TableDimension sexes = TableDimension.of("Sex", Sex.values());
+		TableDimension ages = TableDimension.range("Age", 1, 3);
+		RateTable table = new RateTable(matrix(), sexes, ages);
+
+		assertEquals(6, table.getNumRows());
+		assertEquals(2, table.getNumColumns());
+
+		for (Sex sex : Sex.values()) {
+			for (int age = 1; age <= 3; age++) {
+				int row = table.row(sex.ordinal(), ages.rangeOrdinal(age));
+
+				assertEquals(age * 10 + sex.ordinal(), table.get(row, 0), 0);
+				assertEquals(-age, table.get(row, 1), 0);
+				assertEquals(row, table.row(new int[] { sex.ordinal(),
+						ages.rangeOrdinal(age) }));
+				assertEquals(sex.getValue(), table.getKeys(row)[0]);
+				assertEquals(age, table.getKeys(row)[1]);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingRow() {
+		new RateTable(matrix(), TableDimension.of("Sex", Sex.values()),
+				TableDimension.range("Age", 1, 4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotIndexColumn() {
+		new RateTable(matrix(), TableDimension.range("Rate", 1, 3));
+	}
+
+}
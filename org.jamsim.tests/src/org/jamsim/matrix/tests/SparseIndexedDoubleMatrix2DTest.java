@@ -0,0 +1,58 @@
+package org.jamsim.matrix.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.jamsim.math.IntervalsIntMap;
+import org.jamsim.matrix.IndexedDenseDoubleMatrix2D;
+import org.jamsim.matrix.SparseIndexedDoubleMatrix2D;
+import org.junit.Test;
+
+public class SparseIndexedDoubleMatrix2DTest {
+
+	private final String[] indexColumnNames = { "state" };
+	private final Object[][] index = { { 1 }, { 2 }, { 3 } };
+	private final String[] matrixColumnNames = { "s1", "s2", "s3" };
+	private final double[][] values = { { 0.9, 0.1, 0 }, { 0.2, 0.6, 0.2 },
+			{ 0, 0.3, 0.7 } };
+
+	private final SparseIndexedDoubleMatrix2D sparse =
+			new SparseIndexedDoubleMatrix2D(indexColumnNames, index,
+					matrixColumnNames, values);
+
+	@Test
+	public void testMatchesDense() {
+		IndexedDenseDoubleMatrix2D dense =
+				new IndexedDenseDoubleMatrix2D(indexColumnNames, index,
+						matrixColumnNames, values);
+
+		assertEquals(7, sparse.cardinality());
+		assertArrayEquals(dense.getAllColumnNames(), sparse
+				.getAllColumnNames());
+		for (int row = 0; row < values.length; row++) {
+			for (int col = 0; col < values[row].length; col++) {
+				assertEquals(dense.get(row, col), sparse.get(row, col), 0);
+			}
+		}
+		assertEquals(dense.indexLookupRow(new Object[] { 3 }), sparse
+				.indexLookupRow(new Object[] { 3 }));
+	}
+
+	@Test
+	public void testRowIteration() {
+		assertEquals(2, sparse.rowEnd(2) - sparse.rowStart(2));
+		assertEquals(1, sparse.getNonZeroColumn(sparse.rowStart(2)));
+		assertEquals(0.7, sparse.getNonZeroValue(sparse.rowEnd(2) - 1), 0);
+	}
+
+	@Test
+	public void testCreateDistribution() {
+		IntervalsIntMap dist =
+				sparse.createDistribution(0, new int[] { 1, 2, 3 });
+
+		assertArrayEquals(new int[] { 1, 2 }, dist.getValues());
+		assertEquals(1, dist.draw(0.9));
+		assertEquals(2, dist.draw(0.95));
+	}
+
+}